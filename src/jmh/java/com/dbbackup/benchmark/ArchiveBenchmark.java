@@ -0,0 +1,105 @@
+package com.dbbackup.benchmark;
+
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.ZipArchiveWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Zip write and read throughput of a single-file dump, as BackupService and RestoreService do it,
+// per codec and buffer size. The archive goes to a real file so the buffer size matters as it
+// does in production; the dump itself comes from memory so the tool's speed is left out.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ArchiveBenchmark {
+
+    @Param({"store", "deflate", "gzip", "zstd"})
+    public String codec;
+
+    @Param({"8", "64", "256"})
+    public int bufferKb;
+
+    @Param({"64"})
+    public int dumpMb;
+
+    private byte[] dump;
+    private CompressionSettings compression;
+    private Path written;
+    private Path archive;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dump = SyntheticData.mysqlDump(dumpMb, 8);
+        compression = new CompressionSettings(CompressionCodec.fromName(codec), 0);
+        written = Files.createTempFile("benchmark_archive_", ".zip");
+        archive = Files.createTempFile("benchmark_extract_", ".zip");
+        writeArchive(archive);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(written);
+        Files.deleteIfExists(archive);
+    }
+
+    @Benchmark
+    public long archive() throws IOException {
+        return writeArchive(written);
+    }
+
+    @Benchmark
+    public long extract() throws IOException {
+        long total = 0;
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(archive), bufferKb * 1024))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    try (InputStream sql = CompressionCodec.decode(zis)) {
+                        total += sql.transferTo(OutputStream.nullOutputStream());
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private long writeArchive(Path target) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), bufferKb * 1024)) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out);
+            OutputStream entryOut = writer.putNextEntry(compression.entryName("benchmark/benchmark.sql"), compression.zipLevel());
+            try (OutputStream entry = compression.wrap(entryOut)) {
+                new ByteArrayInputStream(dump).transferTo(entry);
+            }
+            writer.closeEntry();
+            writer.finish();
+            return writer.getBytesWritten();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.dbbackup.benchmark;
+
+import com.dbbackup.utility.ZipArchiveWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Directory dumps: walking a mongodump tree, zipping it, and extracting it again the way
+// RestoreService does for older directory-style MongoDB backups. Many small files make the
+// per-file overhead (stat, open, entry headers) show up next to the bytes themselves.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DumpTreeBenchmark {
+
+    @Param({"1000", "10000"})
+    public int collections;
+
+    @Param({"16"})
+    public int collectionKb;
+
+    @Param({"0", "6"})
+    public int zipLevel;
+
+    private Path tree;
+    private byte[] archive;
+    private Path extractDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tree = SyntheticData.dumpTree(collections, collectionKb);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zipTree(out);
+        archive = out.toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticData.deleteTree(tree);
+    }
+
+    @Setup(Level.Invocation)
+    public void createExtractDir() throws IOException {
+        extractDir = Files.createTempDirectory("benchmark_extract_");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteExtractDir() throws IOException {
+        SyntheticData.deleteTree(extractDir);
+    }
+
+    @Benchmark
+    public long walk() throws IOException {
+        long total = 0;
+        try (Stream<Path> paths = Files.walk(tree)) {
+            for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                total += Files.size(path);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long archive() throws IOException {
+        return zipTree(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long extract() throws IOException {
+        long total = 0;
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                Path target = extractDir.resolve(entry.getName());
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024)) {
+                    total += zis.transferTo(out);
+                }
+            }
+        }
+        return total;
+    }
+
+    private long zipTree(OutputStream target) throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(tree)) {
+            files = paths.filter(Files::isRegularFile).sorted().toList();
+        }
+        ZipArchiveWriter writer = new ZipArchiveWriter(new BufferedOutputStream(target, 64 * 1024));
+        for (Path file : files) {
+            OutputStream entry = writer.putNextEntry(tree.relativize(file).toString(), zipLevel);
+            Files.copy(file, entry);
+            writer.closeEntry();
+        }
+        writer.finish();
+        return writer.getBytesWritten();
+    }
+}
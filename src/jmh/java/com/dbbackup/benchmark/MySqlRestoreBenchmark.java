@@ -0,0 +1,128 @@
+package com.dbbackup.benchmark;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.service.ConnectionRegistry;
+import com.dbbackup.service.JdbcDumpService;
+import com.dbbackup.service.JdbcLoadService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Restore of a mysqldump script into a real server: the mysql client fed on stdin, as
+// RestoreService does, against JdbcLoadService's load over several sessions, with its INSERT
+// batches sent as LOAD DATA rows (jdbc) and as the INSERTs themselves (jdbc-insert). Needs a
+// server it may write to, BENCH_MYSQL=user:password@host:port, and the mysql client on the PATH;
+// the quickdump_bench database there is dropped and recreated before every restore. Excluded
+// from the default run for that reason: -Djmh.args="MySqlRestoreBenchmark" runs it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class MySqlRestoreBenchmark {
+
+    private static final Pattern SERVER = Pattern.compile("([^:@]+)(?::([^@]*))?@([^:]+):(\\d+)");
+    private static final String DATABASE = "quickdump_bench";
+
+    private static final String JDBC_INSERT = "jdbc-insert";
+
+    @Param({"mysql", "jdbc-insert", "jdbc"})
+    public String engine;
+
+    @Param({"256"})
+    public int dumpMb;
+
+    @Param({"16"})
+    public int tables;
+
+    @Param({"4"})
+    public int workers;
+
+    @Param({"4"})
+    public int batchMb;
+
+    private byte[] dump;
+    private BackupRequest request;
+    private JdbcLoadService loader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String server = System.getenv("BENCH_MYSQL");
+        Matcher m = server != null ? SERVER.matcher(server) : null;
+        if (m == null || !m.matches()) {
+            throw new IllegalStateException("MySqlRestoreBenchmark needs BENCH_MYSQL=user:password@host:port");
+        }
+        request = new BackupRequest();
+        request.setDbType("mysql");
+        request.setUsername(m.group(1));
+        request.setPassword(m.group(2) != null ? m.group(2) : "");
+        request.setHost(m.group(3));
+        request.setPort(Integer.parseInt(m.group(4)));
+        request.setDbName(DATABASE);
+
+        ConnectionRegistry registry = new ConnectionRegistry(4, Duration.ofMinutes(10), Duration.ofSeconds(5), 1,
+                new SimpleMeterRegistry());
+        loader = new JdbcLoadService(registry, JdbcDumpService.JDBC, workers, DataSize.ofMegabytes(batchMb),
+                !JDBC_INSERT.equals(engine));
+        dump = SyntheticData.mysqlDump(dumpMb, tables);
+    }
+
+    @Setup(Level.Invocation)
+    public void recreateDatabase() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:mysql://" + request.getHost() + ":" + request.getPort() + "/",
+                request.getUsername(), request.getPassword());
+             Statement st = conn.createStatement()) {
+            st.execute("DROP DATABASE IF EXISTS " + DATABASE);
+            st.execute("CREATE DATABASE " + DATABASE);
+        }
+    }
+
+    @Benchmark
+    public String restore() throws IOException, InterruptedException {
+        if (!"mysql".equals(engine)) {
+            return loader.load(request, new ByteArrayInputStream(dump), workers);
+        }
+        // Client messages go to the console, so nothing has to drain them while the dump is written
+        Process process = new ProcessBuilder("mysql", "-h", request.getHost(), "-P", String.valueOf(request.getPort()),
+                "-u", request.getUsername(), "-p" + request.getPassword(), DATABASE)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(dump);
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException("mysql failed. Exit code: " + exitCode);
+            }
+            return "";
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+}
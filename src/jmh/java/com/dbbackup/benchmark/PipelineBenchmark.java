@@ -0,0 +1,89 @@
+package com.dbbackup.benchmark;
+
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.BufferPool;
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.EntryPipeline;
+import com.dbbackup.utility.ZipArchiveWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+// The whole archive path of BackupService.createBackupZip: dump -> compress -> encrypt -> zip ->
+// digest -> file, with every step on the writing thread (depth 0) or on pipeline stages of its own.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"store", "zstd"})
+    public String codec;
+
+    @Param({"false", "true"})
+    public boolean encrypt;
+
+    @Param({"0", "4"})
+    public int depth;
+
+    @Param({"64"})
+    public int dumpMb;
+
+    private byte[] dump;
+    private CompressionSettings compression;
+    private Path written;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dump = SyntheticData.mysqlDump(dumpMb, 8);
+        EntryPipeline pipeline = new EntryPipeline(new BufferPool(1024 * 1024, 64), depth, encrypt ? new byte[32] : null);
+        compression = new CompressionSettings(CompressionCodec.fromName(codec), 0, pipeline);
+        written = Files.createTempFile("benchmark_pipeline_", ".zip");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(written);
+    }
+
+    @Benchmark
+    public String archive() throws IOException {
+        MessageDigest digest = ArchiveChecksums.newDigest();
+        EntryPipeline pipeline = compression.pipeline();
+        OutputStream file = pipeline.stage("pipeline-digest",
+                new DigestOutputStream(pipeline.stage("pipeline-write", Files.newOutputStream(written)), digest));
+        try (OutputStream out = new BufferedOutputStream(file, 64 * 1024)) {
+            ZipArchiveWriter writer = new ZipArchiveWriter(out);
+            OutputStream entryOut = writer.putNextEntry(compression.entryName("benchmark/benchmark.sql"), compression.zipLevel());
+            try (OutputStream entry = compression.wrap(entryOut)) {
+                new ByteArrayInputStream(dump).transferTo(entry);
+            }
+            writer.closeEntry();
+            writer.finish();
+        }
+        return ArchiveChecksums.hex(digest);
+    }
+}
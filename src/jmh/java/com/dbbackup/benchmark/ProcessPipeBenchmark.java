@@ -0,0 +1,80 @@
+package com.dbbackup.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of the stdin/stdout pipes to a dump/restore tool, with `cat` standing in for
+// mysqldump and mysql: the dump is written to the process while another thread drains its
+// output, as RestoreService.pipeAndWait does. bufferKb=8 matches InputStream.transferTo.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProcessPipeBenchmark {
+
+    @Param({"8", "64", "1024"})
+    public int bufferKb;
+
+    @Param({"64"})
+    public int dumpMb;
+
+    private byte[] dump;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dump = SyntheticData.mysqlDump(dumpMb, 8);
+    }
+
+    @Benchmark
+    public long pipeThroughProcess() throws IOException, InterruptedException, ExecutionException {
+        Process process = new ProcessBuilder("cat").start();
+        try {
+            CompletableFuture<Long> drained = CompletableFuture.supplyAsync(() -> {
+                try (InputStream out = process.getInputStream()) {
+                    return copy(out, OutputStream.nullOutputStream(), bufferKb * 1024);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            try (OutputStream stdin = process.getOutputStream()) {
+                copy(new ByteArrayInputStream(dump), stdin, bufferKb * 1024);
+            }
+            long total = drained.get();
+            process.waitFor();
+            return total;
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    private static long copy(InputStream in, OutputStream out, int bufferSize) throws IOException {
+        byte[] buffer = new byte[bufferSize];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,96 @@
+package com.dbbackup.benchmark;
+
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.MySqlDumpTableFilter;
+import com.dbbackup.utility.ProgressTracker;
+import com.dbbackup.utility.SqlDumpTableScanner;
+import com.dbbackup.utility.ZipArchiveWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Synthetic dump -> archive -> restore parsing, in memory and without the database tools: the
+// backup side scans and compresses the dump like BackupService, the restore side decodes it and
+// feeds it through the table scanner, and for a partial restore through the table filter too.
+// Shows what the Java side of the pipeline costs once the tools are out of the picture.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    @Param({"deflate", "zstd"})
+    public String codec;
+
+    @Param({"full", "one-table"})
+    public String restore;
+
+    @Param({"64"})
+    public int dumpMb;
+
+    @Param({"16"})
+    public int tables;
+
+    private byte[] dump;
+    private CompressionSettings compression;
+    private ByteArrayOutputStream archive;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dump = SyntheticData.mysqlDump(dumpMb, tables);
+        compression = new CompressionSettings(CompressionCodec.fromName(codec), 0);
+        archive = new ByteArrayOutputStream(dump.length);
+    }
+
+    @Benchmark
+    public long roundTrip() throws IOException {
+        archive.reset();
+        ProgressTracker progress = new ProgressTracker();
+
+        ZipArchiveWriter writer = new ZipArchiveWriter(progress.countArchive(archive));
+        OutputStream entryOut = writer.putNextEntry(compression.entryName("benchmark/benchmark.sql"), compression.zipLevel());
+        try (InputStream in = new SqlDumpTableScanner(progress.countDump(new ByteArrayInputStream(dump)), progress);
+             OutputStream entry = compression.wrap(entryOut)) {
+            in.transferTo(entry);
+        }
+        writer.closeEntry();
+        writer.finish();
+
+        long restored = 0;
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                try (InputStream decoded = CompressionCodec.decode(zis);
+                     InputStream sql = "full".equals(restore)
+                             ? decoded
+                             : MySqlDumpTableFilter.filter(decoded, Set.of(SyntheticData.tableName(tables / 2)));
+                     InputStream scanned = new SqlDumpTableScanner(sql, new ProgressTracker())) {
+                    restored += scanned.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+        }
+        return restored;
+    }
+}
@@ -0,0 +1,106 @@
+package com.dbbackup.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Generated datasets for the benchmarks. A fixed seed gives the same bytes on every run, so results
+// of two builds compare like for like; the text is repetitive the way real dumps are, so codecs
+// see realistic ratios instead of incompressible noise.
+final class SyntheticData {
+
+    private static final long SEED = 42;
+    private static final int ROWS_PER_INSERT = 500;
+    private static final String[] WORDS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot",
+            "golf", "hotel", "india", "juliet", "kilo", "lima", "mike", "november", "oscar"};
+
+    private SyntheticData() {
+    }
+
+    // A mysqldump-style script of about the given size, spread over the given number of tables
+    static byte[] mysqlDump(int megabytes, int tables) {
+        long target = megabytes * 1024L * 1024L;
+        long perTable = target / tables;
+        Random random = new Random(SEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, target + 64 * 1024));
+        StringBuilder sb = new StringBuilder(256 * 1024);
+
+        append(out, sb.append("-- MySQL dump 10.13  Distrib 8.0.36\n"));
+        long id = 0;
+        for (int t = 0; t < tables; t++) {
+            String table = tableName(t);
+            sb.append("\n--\n-- Table structure for table `").append(table).append("`\n--\n\n")
+                    .append("DROP TABLE IF EXISTS `").append(table).append("`;\n")
+                    .append("CREATE TABLE `").append(table).append("` (\n")
+                    .append("  `id` bigint NOT NULL,\n  `name` varchar(64) NOT NULL,\n")
+                    .append("  `amount` decimal(12,2) DEFAULT NULL,\n  `created_at` datetime NOT NULL,\n")
+                    .append("  PRIMARY KEY (`id`)\n) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;\n\n")
+                    .append("--\n-- Dumping data for table `").append(table).append("`\n--\n\n");
+            append(out, sb);
+
+            long tableStart = out.size();
+            while (out.size() - tableStart < perTable) {
+                sb.append("INSERT INTO `").append(table).append("` VALUES ");
+                for (int r = 0; r < ROWS_PER_INSERT; r++) {
+                    if (r > 0) {
+                        sb.append(',');
+                    }
+                    sb.append('(').append(++id).append(",'")
+                            .append(WORDS[random.nextInt(WORDS.length)]).append(' ')
+                            .append(WORDS[random.nextInt(WORDS.length)]).append("',")
+                            .append(random.nextInt(100_000)).append('.').append(random.nextInt(100))
+                            .append(",'2026-0").append(1 + random.nextInt(9)).append("-1")
+                            .append(random.nextInt(10)).append(" 12:00:00')");
+                }
+                sb.append(";\n");
+                append(out, sb);
+            }
+        }
+        append(out, sb.append("\n-- Dump completed\n"));
+        return out.toByteArray();
+    }
+
+    static String tableName(int index) {
+        return "table_" + index;
+    }
+
+    // A mongodump-style directory: <root>/<db>/<collection>.bson and .metadata.json per collection
+    static Path dumpTree(int collections, int kilobytesPerCollection) throws IOException {
+        Path root = Files.createTempDirectory("benchmark_dump_");
+        Path db = Files.createDirectories(root.resolve("benchmark"));
+        Random random = new Random(SEED);
+        byte[] bson = new byte[kilobytesPerCollection * 1024];
+        for (int c = 0; c < collections; c++) {
+            random.nextBytes(bson);
+            // Low entropy like real documents: only the first byte of every 8 varies
+            for (int i = 0; i < bson.length; i++) {
+                if (i % 8 != 0) {
+                    bson[i] = (byte) (i & 0x0f);
+                }
+            }
+            String name = "collection_" + c;
+            Files.write(db.resolve(name + ".bson"), bson);
+            Files.writeString(db.resolve(name + ".metadata.json"),
+                    "{\"indexes\":[{\"v\":2,\"key\":{\"_id\":1},\"name\":\"_id_\"}],\"collectionName\":\"" + name + "\"}");
+        }
+        return root;
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void append(ByteArrayOutputStream out, StringBuilder sb) {
+        out.writeBytes(sb.toString().getBytes(StandardCharsets.UTF_8));
+        sb.setLength(0);
+    }
+}
@@ -1,23 +1,43 @@
 package com.dbbackup.controller;
 
+import com.dbbackup.model.BackupChain;
 import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.VerifyResult;
+import com.dbbackup.service.ArchiveVerificationService;
 import com.dbbackup.service.BackupService;
+import com.dbbackup.service.IncrementalBackupService;
+import com.dbbackup.utility.ArchiveChecksums;
 import com.dbbackup.utility.DownloadResponse;
-import org.springframework.core.io.Resource;
+import com.dbbackup.utility.FileRangeSender;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/backup")
 public class BackupController {
 
     private final BackupService backupService;
+    private final IncrementalBackupService incrementalBackupService;
+    private final ArchiveVerificationService archiveVerificationService;
 
-    public BackupController(BackupService backupService) {
+    public BackupController(BackupService backupService, IncrementalBackupService incrementalBackupService,
+                            ArchiveVerificationService archiveVerificationService) {
         this.backupService = backupService;
+        this.incrementalBackupService = incrementalBackupService;
+        this.archiveVerificationService = archiveVerificationService;
     }
     @GetMapping("/test")
     public ResponseEntity<Boolean> testConnection(@RequestBody BackupRequest request) {
@@ -34,25 +54,85 @@ public class BackupController {
         try {
             String result = backupService.performBackup(request);
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Backup failed: " + e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Backup failed: " + e.getMessage());
         }
     }
 
+    // Full backups with backupType "full" and the incrementals taken after them
+    @GetMapping("/chains")
+    public ResponseEntity<List<BackupChain>> listChains() {
+        try {
+            return ResponseEntity.ok(incrementalBackupService.listChains());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
+    // Re-hashes every archive in backups/ against its .sha256 sidecar
+    @PostMapping("/verify")
+    public ResponseEntity<?> verifyAll() {
+        try {
+            return ResponseEntity.ok(archiveVerificationService.verifyAll());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Verification failed: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/verify")
+    public ResponseEntity<VerifyResult> verify(@RequestParam String file) {
+        try {
+            return ResponseEntity.ok(archiveVerificationService.verifyStored(file));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    // A stored archive by file name, e.g. /api/backup/files/shop_20261017_020000.zip. Supports Range
+    // (resume, segmented downloads) and If-None-Match; the bytes never pass through the heap.
+    @GetMapping("/files/{file}")
+    public void downloadStored(@PathVariable String file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path archive;
+        try {
+            archive = archiveVerificationService.resolveStored(file);
+        } catch (FileNotFoundException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        String type = file.endsWith(".zip") ? "application/zip" : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        FileRangeSender.send(archive, etag(archive), type, archive.getFileName().toString(), request, response);
+    }
+
+    // The content hash when the sidecar has it, so the tag survives copies and touch; else size and time
+    private static String etag(Path archive) throws IOException {
+        Optional<String> sha256 = ArchiveChecksums.readSidecar(archive);
+        if (sha256.isPresent()) {
+            return "\"" + sha256.get() + "\"";
+        }
+        return "\"" + Long.toHexString(Files.size(archive)) + "-"
+                + Long.toHexString(Files.getLastModifiedTime(archive).toMillis()) + "\"";
+    }
 
     @GetMapping("/download")
-    public ResponseEntity<Resource> backupAndDownload(@RequestParam String dbType,
+    public ResponseEntity<StreamingResponseBody> backupAndDownload(@RequestParam String dbType,
                                                       @RequestParam String host,
                                                       @RequestParam int port,
                                                       @RequestParam String username,
                                                       @RequestParam String password,
-                                                      @RequestParam String dbName) {
+                                                      @RequestParam String dbName,
+                                                      @RequestParam(required = false) String codec) {
         try {
-            DownloadResponse response = backupService.backupAndDownload(dbType, host, port, username, password, dbName);
+            DownloadResponse response = backupService.backupAndDownload(dbType, host, port, username, password, dbName, codec);
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + response.getFilename() + "\"")
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(response.getResource());
+                    .body(response.getBody());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(null);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
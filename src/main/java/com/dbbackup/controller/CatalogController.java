@@ -0,0 +1,61 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.BackupManifest;
+import com.dbbackup.model.CatalogEntry;
+import com.dbbackup.service.BackupCatalogService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.FileNotFoundException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/catalog")
+public class CatalogController {
+
+    private final BackupCatalogService backupCatalogService;
+
+    public CatalogController(BackupCatalogService backupCatalogService) {
+        this.backupCatalogService = backupCatalogService;
+    }
+
+    // Times are ISO-8601 instants, e.g. ?db=shop&from=2026-10-01T00:00:00Z
+    @GetMapping
+    public List<CatalogEntry> query(@RequestParam(required = false) String db,
+                                    @RequestParam(required = false) String host,
+                                    @RequestParam(required = false) Instant from,
+                                    @RequestParam(required = false) Instant to,
+                                    @RequestParam(defaultValue = "100") int limit) {
+        return backupCatalogService.query(db, host, from, to, limit);
+    }
+
+    // "The latest backup of db X before Tuesday"
+    @GetMapping("/latest")
+    public ResponseEntity<CatalogEntry> latest(@RequestParam String db,
+                                               @RequestParam(required = false) String host,
+                                               @RequestParam(required = false) Instant before) {
+        return ResponseEntity.of(backupCatalogService.latest(db, host, before));
+    }
+
+    @GetMapping("/manifest")
+    public ResponseEntity<BackupManifest> manifest(@RequestParam String path) {
+        try {
+            return ResponseEntity.ok(backupCatalogService.getManifest(path));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<?> rebuild() {
+        try {
+            return ResponseEntity.ok(Map.of("backups", backupCatalogService.rebuild()));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Rebuild failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.FleetBackup;
+import com.dbbackup.model.FleetBackupRequest;
+import com.dbbackup.service.FleetBackupService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/fleet")
+public class FleetController {
+
+    private final FleetBackupService fleetBackupService;
+
+    public FleetController(FleetBackupService fleetBackupService) {
+        this.fleetBackupService = fleetBackupService;
+    }
+
+    // Accepted at once: databases are discovered and backed up in the background; poll the id
+    @PostMapping("/backup")
+    public ResponseEntity<?> submitBackup(@RequestBody FleetBackupRequest request) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(fleetBackupService.submit(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid fleet backup: " + e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public List<FleetBackup> listBatches() {
+        return fleetBackupService.listBatches();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<FleetBackup> getBatch(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(fleetBackupService.getBatch(id));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.Job;
+import com.dbbackup.service.JobEventService;
+import com.dbbackup.service.JobService;
+import com.dbbackup.service.MetricsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/jobs")
+public class JobController {
+
+    private final JobService jobService;
+    private final JobEventService jobEventService;
+    private final MetricsService metricsService;
+
+    public JobController(JobService jobService, JobEventService jobEventService, MetricsService metricsService) {
+        this.jobService = jobService;
+        this.jobEventService = jobEventService;
+        this.metricsService = metricsService;
+    }
+
+    @PostMapping("/backup")
+    public ResponseEntity<Job> submitBackup(@RequestBody BackupRequest request) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobService.submitBackup(request));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @PostMapping(value = "/restore", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Job> submitRestore(
+            @RequestPart("zipFile") MultipartFile zipFile,
+            @RequestPart("request") String request) {
+        Path upload = null;
+        try {
+            BackupRequest backupRequest = new ObjectMapper().readValue(request, BackupRequest.class);
+            upload = Files.createTempFile("restore_upload_", ".zip");
+            long start = System.nanoTime();
+            zipFile.transferTo(upload);
+            metricsService.recordUpload(backupRequest, System.nanoTime() - start, zipFile.getSize());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(jobService.submitRestore(upload, backupRequest));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            log.error("Submitting restore of {} failed", zipFile.getOriginalFilename(), e);
+            try {
+                if (upload != null) Files.deleteIfExists(upload);
+            } catch (Exception ignored) {}
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping
+    public List<Job> listJobs() {
+        return jobService.listJobs();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Job> getJob(@PathVariable String id) {
+        return jobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Server-Sent Events: "progress" every second, "log" with new tool output, "done" at the end
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(jobEventService.subscribe(id));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.RepositorySnapshot;
+import com.dbbackup.service.BackupRepositoryService;
+import com.dbbackup.service.RestoreService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/repository")
+public class RepositoryController {
+
+    private final BackupRepositoryService repositoryService;
+    private final RestoreService restoreService;
+
+    public RepositoryController(BackupRepositoryService repositoryService, RestoreService restoreService) {
+        this.repositoryService = repositoryService;
+        this.restoreService = restoreService;
+    }
+
+    @GetMapping("/snapshots")
+    public ResponseEntity<List<RepositorySnapshot>> listSnapshots() {
+        try {
+            return ResponseEntity.ok(repositoryService.listSnapshots());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @DeleteMapping("/snapshots/{id}")
+    public ResponseEntity<String> deleteSnapshot(@PathVariable String id) {
+        try {
+            repositoryService.deleteSnapshot(id);
+            return ResponseEntity.ok("Snapshot " + id + " deleted. Run garbage collection to free its chunks.");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Delete failed: " + e.getMessage());
+        }
+    }
+
+    // Restores into the target described by the body; the snapshot is rebuilt from its chunks as it streams
+    @PostMapping("/snapshots/{id}/restore")
+    public ResponseEntity<String> restoreSnapshot(@PathVariable String id, @RequestBody BackupRequest request) {
+        try (InputStream archive = repositoryService.openSnapshot(id)) {
+            return ResponseEntity.ok(restoreService.restoreBackup(archive, request));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(404).body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Restore of snapshot {} failed", id, e);
+            return ResponseEntity.status(500).body("Restore failed: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/gc")
+    public ResponseEntity<Map<String, Object>> collectGarbage() {
+        try {
+            return ResponseEntity.ok(repositoryService.collectGarbage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    @PostMapping("/verify")
+    public ResponseEntity<Map<String, Object>> verify() {
+        try {
+            return ResponseEntity.ok(repositoryService.verify());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+}
@@ -1,22 +1,31 @@
 package com.dbbackup.controller;
 
 import com.dbbackup.model.BackupRequest;
+import com.dbbackup.service.IncrementalBackupService;
 import com.dbbackup.service.RestoreService;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+
+@Slf4j
 @RestController
 @RequestMapping("/api")
 public class RestoreController {
 
     private final RestoreService restoreService;
+    private final IncrementalBackupService incrementalBackupService;
 
-    public RestoreController(RestoreService restoreService) {
+    public RestoreController(RestoreService restoreService, IncrementalBackupService incrementalBackupService) {
         this.restoreService = restoreService;
+        this.incrementalBackupService = incrementalBackupService;
     }
 
     @PostMapping(value = "/restore", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -35,4 +44,72 @@ public class RestoreController {
             return ResponseEntity.status(500).body("Restore failed: " + e.getMessage());
         }
     }
+
+    // Raw archive body instead of multipart: the restore runs while the upload is still arriving
+    @PostMapping(value = "/restore/stream", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "application/zip"})
+    public ResponseEntity<String> restoreStream(InputStream body,
+                                                @RequestParam String dbType,
+                                                @RequestParam String host,
+                                                @RequestParam int port,
+                                                @RequestParam(required = false) String username,
+                                                @RequestParam(required = false) String password,
+                                                @RequestParam String dbName,
+                                                @RequestParam(required = false) List<String> tables,
+                                                @RequestParam(required = false) String sha256,
+                                                @RequestParam(required = false) String engine,
+                                                @RequestParam(defaultValue = "false") boolean allowUnencrypted) {
+        try {
+            BackupRequest backupRequest = new BackupRequest();
+            backupRequest.setDbType(dbType);
+            backupRequest.setHost(host);
+            backupRequest.setPort(port);
+            backupRequest.setUsername(username);
+            backupRequest.setPassword(password);
+            backupRequest.setDbName(dbName);
+            backupRequest.setTables(tables);
+            backupRequest.setSha256(sha256);
+            backupRequest.setEngine(engine);
+            backupRequest.setAllowUnencrypted(allowUnencrypted);
+
+            String result = restoreService.restoreBackup(body, backupRequest);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("Stream restore of {} failed", dbName, e);
+            return ResponseEntity.status(500).body("Restore failed: " + e.getMessage());
+        }
+    }
+
+    // A catalogued backup, by its location: a path in backups/ or an s3:// URL
+    @PostMapping("/restore/storage")
+    public ResponseEntity<String> restoreFromStorage(@RequestParam String location,
+                                                     @RequestBody BackupRequest request) {
+        try {
+            return ResponseEntity.ok(restoreService.restoreFromStorage(location, request));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(404).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Restore of {} failed", location, e);
+            return ResponseEntity.status(500).body("Restore failed: " + e.getMessage());
+        }
+    }
+
+    // Full backup plus its incrementals; pointInTime (ISO-8601, e.g. 2026-10-17T09:30:00Z) stops the replay there
+    @PostMapping("/restore/chain/{chainId}")
+    public ResponseEntity<String> restoreChain(@PathVariable String chainId,
+                                               @RequestParam(required = false) Instant pointInTime,
+                                               @RequestBody BackupRequest request) {
+        try {
+            String result = incrementalBackupService.restoreChain(chainId, request, pointInTime);
+            return ResponseEntity.ok(result);
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.status(404).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            log.error("Restore of chain {} failed", chainId, e);
+            return ResponseEntity.status(500).body("Restore failed: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.BackupSchedule;
+import com.dbbackup.service.ScheduleService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/schedules")
+public class ScheduleController {
+
+    private final ScheduleService scheduleService;
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    public ScheduleController(ScheduleService scheduleService) {
+        this.scheduleService = scheduleService;
+    }
+
+    @GetMapping
+    public List<BackupSchedule> listSchedules() {
+        return scheduleService.listSchedules().stream().map(this::withoutPassword).toList();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<BackupSchedule> getSchedule(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(withoutPassword(scheduleService.getSchedule(id)));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createSchedule(@RequestBody BackupSchedule schedule) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(withoutPassword(scheduleService.createSchedule(schedule)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid schedule: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Saving schedule failed: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateSchedule(@PathVariable String id, @RequestBody BackupSchedule schedule) {
+        try {
+            return ResponseEntity.ok(withoutPassword(scheduleService.updateSchedule(id, schedule)));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid schedule: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Saving schedule failed: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<String> deleteSchedule(@PathVariable String id) {
+        try {
+            scheduleService.deleteSchedule(id);
+            return ResponseEntity.ok("Schedule " + id + " deleted");
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Delete failed: " + e.getMessage());
+        }
+    }
+
+    // Queued like a due run, so it still respects the concurrency limits
+    @PostMapping("/{id}/run")
+    public ResponseEntity<BackupSchedule> runNow(@PathVariable String id) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(withoutPassword(scheduleService.runNow(id)));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Schedules keep credentials to run unattended, but never hand them back out
+    private BackupSchedule withoutPassword(BackupSchedule schedule) {
+        BackupSchedule copy = mapper.convertValue(schedule, BackupSchedule.class);
+        if (copy.getRequest() != null) {
+            copy.getRequest().setPassword(null);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,93 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.UploadSession;
+import com.dbbackup.service.ChunkedUploadService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
+
+// Resumable restore uploads:
+//   POST   /api/uploads                        {"fileName", "size", "chunkSize"?, "sha256"?} -> session
+//   PUT    /api/uploads/{id}/chunks/{index}    raw chunk bytes, optional X-Chunk-Sha256 header
+//   GET    /api/uploads/{id}                   session, with the chunks still missing
+//   POST   /api/uploads/{id}/complete          BackupRequest -> restore job
+//   DELETE /api/uploads/{id}
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadController {
+
+    private final ChunkedUploadService uploadService;
+
+    public UploadController(ChunkedUploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createUpload(@RequestBody UploadSession request) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(uploadService.create(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid upload: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Creating upload failed: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadSession> getUpload(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(uploadService.getSession(id));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PutMapping(value = "/{id}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> putChunk(@PathVariable String id,
+                                      @PathVariable int index,
+                                      @RequestHeader(value = "X-Chunk-Sha256", required = false) String sha256,
+                                      InputStream body) {
+        try {
+            return ResponseEntity.ok(uploadService.writeChunk(id, index, body, sha256));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Chunk rejected: " + e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Chunk upload failed: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> complete(@PathVariable String id, @RequestBody BackupRequest request) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(uploadService.complete(id, request));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Upload incomplete: " + e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many jobs queued, try again later");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Starting restore failed: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<String> cancel(@PathVariable String id) {
+        try {
+            uploadService.cancel(id);
+            return ResponseEntity.ok("Upload " + id + " cancelled");
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Cancel failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.dbbackup.model;
+
+// One zip entry as written: offset of its local header in the archive, stored and plain sizes, CRC-32
+public record ArchiveEntry(String name, long offset, long compressedSize, long size, long crc) {
+}
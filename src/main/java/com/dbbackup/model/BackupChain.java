@@ -0,0 +1,28 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// A full backup plus the incrementals taken after it. Positions are binlog "file:offset" for
+// MySQL and oplog "seconds:increment" timestamps for MongoDB.
+@Data
+public class BackupChain {
+    private String id;
+    private String dbType;
+    private String host;
+    private int port;
+    private String dbName;
+    private List<Link> links = new ArrayList<>();
+
+    @Data
+    public static class Link {
+        private String type;
+        private String file;
+        private Instant createdAt;
+        private String startPosition;
+        private String endPosition;
+    }
+}
@@ -0,0 +1,42 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Written next to every stored backup as <archive>.manifest.json, so it can be described and
+// searched without opening the zip
+@Data
+public class BackupManifest {
+    private String file;
+    private String dbType;
+    private String host;
+    private int port;
+    private String dbName;
+    private String backupType;
+    // Of the archive's entries: "store" for multi-volume backups, whose volumes are compressed instead
+    private String codec;
+    private int compressionLevel;
+    // "aes-gcm" when entry payloads are encrypted (restoring needs quickdump.encryption.key), else null
+    private String encryption;
+
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long size;
+    // Of the whole archive file, as in the .sha256 sidecar; of the reassembled archive for volume sets
+    private String sha256;
+
+    // Set for multi-volume backups, whose file is then only the index of the volumes
+    private VolumeSet volumes;
+
+    private List<ArchiveEntry> entries = new ArrayList<>();
+
+    // Tables (MySQL) or collections (MongoDB) with the entry holding each one and the offset of its
+    // first statement in that entry's uncompressed data; -1 where the format has no such position
+    private List<TableLocation> tables = new ArrayList<>();
+
+    public record TableLocation(String name, String entry, long offset) {
+    }
+}
@@ -1,6 +1,12 @@
 package com.dbbackup.model;
 
+import com.dbbackup.utility.ProgressTracker;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.util.List;
 
 @Data
 public class BackupRequest {
@@ -13,5 +19,49 @@ public class BackupRequest {
 
     private String backupType;
 
+    // Number of concurrent dump/restore workers; 0 or 1 keeps the single-stream dump
+    private int parallelism;
+
+    // MongoDB restore: insertion workers per collection (mongorestore default is 1)
+    private int insertionWorkers;
+
+    // MySQL backup and restore: "mysqldump" (mysqldump / the mysql client) or "jdbc" (in-process,
+    // no client tools needed); unset falls back to quickdump.mysql.engine
+    private String engine;
+
+    // store, deflate, gzip or zstd; unset falls back to quickdump.compression.codec
+    private String codec;
+    private int compressionLevel;
+
+    // "archive" (default): a zip in the configured archive storage (quickdump.storage.type);
+    // "local" or "s3": a zip in that storage; "repository": deduplicated chunk store
+    private String storage;
+
+    // Archive storage only: cut the archive into volumes of this size, e.g. "1GB", each compressed
+    // and checksummed on its own, at least 5MB; unset falls back to quickdump.volumes.size, "0" keeps one file
+    private String volumeSize;
+
+    // Restore: expected SHA-256 of the uploaded archive; a mismatch rejects it
+    private String sha256;
+
+    // Restore only these tables (MySQL) or collections (MongoDB); empty restores everything
+    private List<String> tables;
+
+    // Restore: accept an archive that isn't encrypted although quickdump.encryption.key is set,
+    // e.g. one taken before the key was; refused otherwise
+    private boolean allowUnencrypted;
+
+    // Not part of the request body: set while a volume set is restored, whose entries are stored
+    // plain inside volumes that were decrypted and checked on their own
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private boolean fromVolumes;
+
+    // Not part of the request body: counters of the operation running it, see JobService
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private ProgressTracker progress = new ProgressTracker();
 
 }
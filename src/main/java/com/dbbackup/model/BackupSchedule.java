@@ -0,0 +1,36 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BackupSchedule {
+    private String id;
+    private String name;
+
+    // Spring cron format with seconds: "0 0 2 * * *" is every day at 02:00 server time
+    private String cron;
+    // Random delay of up to this many seconds added to every run; -1 uses quickdump.scheduler.max-jitter
+    private int jitterSeconds = -1;
+    private boolean enabled = true;
+
+    private BackupRequest request;
+    private RetentionPolicy retention = new RetentionPolicy();
+
+    private Instant nextRunAt;
+    private Instant lastRunAt;
+    private String lastJobId;
+    private String lastResult;
+
+    // Backups this schedule produced and still keeps: zip paths or "repository:<snapshot id>"
+    private List<Archive> archives = new ArrayList<>();
+
+    @Data
+    public static class Archive {
+        private String location;
+        private Instant createdAt;
+    }
+}
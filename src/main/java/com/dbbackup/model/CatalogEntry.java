@@ -0,0 +1,37 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+// One line of the backup catalog: the searchable part of a manifest
+@Data
+public class CatalogEntry {
+    private String path;
+    private String dbType;
+    private String host;
+    private int port;
+    private String dbName;
+    private String backupType;
+    private String codec;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private long size;
+    private int tableCount;
+
+    public static CatalogEntry of(BackupManifest manifest, String path) {
+        CatalogEntry entry = new CatalogEntry();
+        entry.setPath(path);
+        entry.setDbType(manifest.getDbType());
+        entry.setHost(manifest.getHost());
+        entry.setPort(manifest.getPort());
+        entry.setDbName(manifest.getDbName());
+        entry.setBackupType(manifest.getBackupType());
+        entry.setCodec(manifest.getCodec());
+        entry.setStartedAt(manifest.getStartedAt());
+        entry.setFinishedAt(manifest.getFinishedAt());
+        entry.setSize(manifest.getSize());
+        entry.setTableCount(manifest.getTables().size());
+        return entry;
+    }
+}
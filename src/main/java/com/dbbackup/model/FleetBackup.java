@@ -0,0 +1,65 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// One batch backup over many databases; each database runs as its own backup job. Fields are
+// written by the planner and the job workers and read by whoever polls, hence volatile.
+@Data
+public class FleetBackup {
+    private final String id;
+
+    private volatile JobState state = JobState.QUEUED;
+    private volatile Instant submittedAt = Instant.now();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    // Biggest first, the order they are started in
+    private final List<Item> items = new CopyOnWriteArrayList<>();
+
+    public long getSucceeded() {
+        return items.stream().filter(i -> i.getState() == JobState.SUCCEEDED).count();
+    }
+
+    public long getFailed() {
+        return items.stream().filter(i -> i.getState() == JobState.FAILED).count();
+    }
+
+    public long getBytesWritten() {
+        return items.stream().mapToLong(Item::getBytes).sum();
+    }
+
+    public Long getDurationMillis() {
+        if (startedAt == null) return null;
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        return Duration.between(startedAt, end).toMillis();
+    }
+
+    public boolean isFinished() {
+        return state == JobState.SUCCEEDED || state == JobState.FAILED;
+    }
+
+    @Data
+    public static class Item {
+        private String dbType;
+        private String host;
+        private int port;
+        private String dbName;
+        // From the server's statistics; -1 when it couldn't be read
+        private long estimatedBytes;
+        private String disk;
+
+        private volatile JobState state = JobState.QUEUED;
+        private volatile String jobId;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String resultPath;
+        private volatile long bytes;
+        private volatile String error;
+    }
+}
@@ -0,0 +1,19 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class FleetBackupRequest {
+
+    // One backup per target; a target without dbName (or "*") stands for every database on that
+    // server except the system ones. Options such as codec, engine or storage apply per target.
+    private List<BackupRequest> targets = new ArrayList<>();
+
+    // 0 falls back to quickdump.fleet.max-concurrent / -per-host / -per-disk
+    private int maxConcurrent;
+    private int maxConcurrentPerHost;
+    private int maxConcurrentPerDisk;
+}
@@ -0,0 +1,48 @@
+package com.dbbackup.model;
+
+import com.dbbackup.utility.ProgressTracker;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Fields are written by the worker thread and read by whoever polls the job, hence volatile
+@Data
+public class Job {
+    private final String id;
+    private final String type;
+    private final String dbType;
+    private final String dbName;
+
+    private volatile JobState state = JobState.QUEUED;
+    private volatile Instant submittedAt = Instant.now();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+
+    private volatile long bytesProcessed;
+    private volatile String resultPath;
+    private volatile String message;
+    private volatile String error;
+
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private final ProgressTracker tracker = new ProgressTracker();
+
+    public ProgressSnapshot getProgress() {
+        return tracker.snapshot();
+    }
+
+    public Long getDurationMillis() {
+        if (startedAt == null) return null;
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        return Duration.between(startedAt, end).toMillis();
+    }
+
+    public boolean isFinished() {
+        return state == JobState.SUCCEEDED || state == JobState.FAILED;
+    }
+}
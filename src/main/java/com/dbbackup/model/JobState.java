@@ -0,0 +1,8 @@
+package com.dbbackup.model;
+
+public enum JobState {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED
+}
@@ -0,0 +1,19 @@
+package com.dbbackup.model;
+
+// Point-in-time view of a running backup or restore. Dump bytes are the plain SQL/BSON between the
+// database tool and us; archive bytes are the zip written (backup) or read (restore). Percent and
+// etaSeconds are null when there's nothing to measure against.
+public record ProgressSnapshot(String phase,
+                               long dumpBytes,
+                               long archiveBytes,
+                               long expectedBytes,
+                               Double percent,
+                               double dumpMbPerSecond,
+                               double archiveMbPerSecond,
+                               Long etaSeconds,
+                               long rows,
+                               int tablesDone,
+                               int tablesTotal,
+                               String currentTable,
+                               long logLinesDropped) {
+}
@@ -0,0 +1,32 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// A backup stored in the deduplicated repository: each archive entry is the concatenation of its chunks
+@Data
+public class RepositorySnapshot {
+    private String id;
+    private String dbType;
+    private String host;
+    private int port;
+    private String dbName;
+    private Instant createdAt;
+
+    private long size;
+    private long newBytes;
+    private List<Entry> entries = new ArrayList<>();
+
+    @Data
+    public static class Entry {
+        private String name;
+        private long size;
+        private List<ChunkRef> chunks = new ArrayList<>();
+    }
+
+    public record ChunkRef(String hash, int length) {
+    }
+}
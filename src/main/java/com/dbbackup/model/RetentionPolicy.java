@@ -0,0 +1,17 @@
+package com.dbbackup.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+// Keeps the newest backup of each of the last keepDaily days and keepWeekly ISO weeks that have
+// backups; everything else is pruned. Both 0 keeps everything.
+@Data
+public class RetentionPolicy {
+    private int keepDaily;
+    private int keepWeekly;
+
+    @JsonIgnore
+    public boolean isEnabled() {
+        return keepDaily > 0 || keepWeekly > 0;
+    }
+}
@@ -0,0 +1,34 @@
+package com.dbbackup.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+// A resumable upload of a restore archive, sent as fixed-size chunks in any order
+@Data
+public class UploadSession {
+    private String id;
+    private String fileName;
+    private long size;
+    // Every chunk is this long except the last one; 0 on create uses quickdump.uploads.chunk-size
+    private long chunkSize;
+    private int chunkCount;
+    // Optional SHA-256 of the whole archive, checked before the restore starts
+    private String sha256;
+
+    private Instant createdAt;
+    private Instant updatedAt;
+
+    // What a client resuming after a failure still has to send
+    private SortedSet<Integer> missingChunks = new TreeSet<>();
+
+    public long chunkOffset(int index) {
+        return index * chunkSize;
+    }
+
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, size - chunkOffset(index));
+    }
+}
@@ -0,0 +1,9 @@
+package com.dbbackup.model;
+
+// status: "ok", "mismatch", "no checksum" or "unreadable"
+public record VerifyResult(String file, String status, long size, String expected, String actual, String error) {
+
+    public boolean isOk() {
+        return "ok".equals(status);
+    }
+}
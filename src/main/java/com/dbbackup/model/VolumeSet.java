@@ -0,0 +1,12 @@
+package com.dbbackup.model;
+
+import java.util.List;
+
+// A backup cut into volumes: the archive is the volumes' decoded payloads concatenated in order.
+// size and sha256 are of that reassembled archive; each volume's own are of its stored file.
+public record VolumeSet(long volumeSize, long size, String sha256, List<Volume> volumes) {
+
+    // offset/length: the slice of the archive the volume holds
+    public record Volume(String file, long offset, long length, long size, String sha256) {
+    }
+}
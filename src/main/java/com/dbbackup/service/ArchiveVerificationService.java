@@ -0,0 +1,141 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.VerifyResult;
+import com.dbbackup.utility.ArchiveChecksums;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+// Re-hashes stored archives against the SHA-256 written when they were created. A single file is
+// hashed sequentially (SHA-256 can't be split), so the parallelism is across files.
+@Slf4j
+@Service
+public class ArchiveVerificationService {
+
+    private final BackupCatalogService backupCatalogService;
+    private final Path backupsDir;
+    private final int threads;
+
+    @Autowired
+    public ArchiveVerificationService(BackupCatalogService backupCatalogService,
+                                      @Value("${quickdump.verify.threads:0}") int threads) {
+        this(backupCatalogService, Paths.get("backups"), threads);
+    }
+
+    // For tests, against a directory other than backups/
+    ArchiveVerificationService(BackupCatalogService backupCatalogService, Path backupsDir, int threads) {
+        this.backupCatalogService = backupCatalogService;
+        this.backupsDir = backupsDir;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public VerifyResult verifyStored(String fileName) throws IOException {
+        return verify(resolveStored(fileName));
+    }
+
+    // By file name only, so endpoints can't be pointed at files outside backups/. Only archives in the
+    // catalog and their volumes: schedules.json (with its passwords), catalog.jsonl and sidecars are
+    // regular files in backups/ too.
+    public Path resolveStored(String fileName) throws IOException {
+        Path archive = backupsDir.resolve(fileName).normalize();
+        if (!backupsDir.equals(archive.getParent()) || !fileName.endsWith(".zip") || !Files.isRegularFile(archive)
+                || !backupCatalogService.holds(archive)) {
+            throw new FileNotFoundException("No backup " + fileName);
+        }
+        return archive;
+    }
+
+    public VerifyResult verify(Path archive) {
+        long size = 0;
+        try {
+            size = Files.size(archive);
+            Optional<String> expected = ArchiveChecksums.readSidecar(archive);
+            if (expected.isEmpty()) {
+                return new VerifyResult(archive.getFileName().toString(), "no checksum", size, null, null, null);
+            }
+            String actual = ArchiveChecksums.sha256(archive);
+            String status = actual.equals(expected.get()) ? "ok" : "mismatch";
+            return new VerifyResult(archive.getFileName().toString(), status, size, expected.get(), actual, null);
+        } catch (IOException e) {
+            return new VerifyResult(archive.getFileName().toString(), "unreadable", size, null, null, e.getMessage());
+        }
+    }
+
+    public Map<String, Object> verifyAll() throws IOException, InterruptedException {
+        List<Path> archives;
+        if (Files.isDirectory(backupsDir)) {
+            try (Stream<Path> files = Files.list(backupsDir)) {
+                archives = files.filter(p -> p.getFileName().toString().endsWith(".zip")).sorted().toList();
+            }
+        } else {
+            archives = List.of();
+        }
+
+        long started = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, archives.size())));
+        List<VerifyResult> results = new ArrayList<>();
+        try {
+            List<Future<VerifyResult>> futures = new ArrayList<>();
+            for (Path archive : archives) {
+                futures.add(executor.submit(() -> verify(archive)));
+            }
+            for (Future<VerifyResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        long millis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+
+        long bytes = results.stream().filter(r -> r.actual() != null).mapToLong(VerifyResult::size).sum();
+        List<VerifyResult> problems = results.stream().filter(r -> !r.isOk()).toList();
+        if (problems.stream().anyMatch(r -> !"no checksum".equals(r.status()))) {
+            log.warn("Backup verification found damaged archives: {}", problems);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("archives", results.size());
+        summary.put("ok", results.size() - problems.size());
+        summary.put("problems", problems);
+        summary.put("bytesHashed", bytes);
+        summary.put("millis", millis);
+        summary.put("mbPerSecond", bytes / 1024.0 / 1024.0 / (millis / 1000.0));
+        return summary;
+    }
+
+    // Before a restore from a file: a wrong checksum or a truncated zip fails here, before the
+    // restore tool has touched the database. Expected is the caller's checksum, else the sidecar.
+    public void checkBeforeRestore(Path archive, String expectedSha256) throws IOException {
+        String expected = expectedSha256 != null && !expectedSha256.isBlank()
+                ? expectedSha256.trim().toLowerCase()
+                : ArchiveChecksums.readSidecar(archive).orElse(null);
+        if (expected != null) {
+            String actual = ArchiveChecksums.sha256(archive);
+            if (!actual.equals(expected)) {
+                throw new IOException("Archive checksum mismatch: expected " + expected + ", got " + actual);
+            }
+        }
+        // Opening reads the central directory at the end of the file, which a truncated zip lacks
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            if (zip.size() == 0) {
+                throw new IOException("Archive holds no entries");
+            }
+        } catch (ZipException e) {
+            throw new IOException("Archive is damaged or incomplete: " + e.getMessage(), e);
+        }
+    }
+}
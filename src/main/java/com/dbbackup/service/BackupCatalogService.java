@@ -0,0 +1,290 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupManifest;
+import com.dbbackup.model.CatalogEntry;
+import com.dbbackup.model.VolumeSet;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Index of every stored backup, answered from memory. Each backup writes <archive>.manifest.json
+// next to itself and appends one line to backups/catalog.jsonl, which is read back at startup;
+// without it the catalog is rebuilt from the manifests. Archives in remote storage get a copy of
+// their manifest under backups/remote/, e.g. remote/s3/<bucket>/<key>.manifest.json.
+@Slf4j
+@Service
+public class BackupCatalogService {
+
+    public static final String MANIFEST_SUFFIX = ".manifest.json";
+    private static final String REMOTE_DIR = "remote";
+    private static final Pattern VOLUME_FILE = Pattern.compile("(.+)\\.vol\\d{4}\\.zip");
+
+    private final Path backupsDir;
+    private final Path catalogFile;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final Map<String, CatalogEntry> byPath = new HashMap<>();
+    // startedAt -> backups, overall and per database name, for range and "latest before" lookups
+    private final NavigableMap<Instant, List<CatalogEntry>> byTime = new TreeMap<>();
+    private final Map<String, NavigableMap<Instant, List<CatalogEntry>>> byDatabase = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public BackupCatalogService(@Value("${quickdump.catalog.path:backups/catalog.jsonl}") String catalogPath) {
+        this.catalogFile = Paths.get(catalogPath).toAbsolutePath();
+        this.backupsDir = catalogFile.getParent();
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!Files.exists(catalogFile)) {
+            rebuild();
+            return;
+        }
+        Lock write = lock.writeLock();
+        write.lock();
+        try (BufferedReader reader = Files.newBufferedReader(catalogFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    index(mapper.readValue(line, CatalogEntry.class));
+                }
+            }
+        } finally {
+            write.unlock();
+        }
+        log.info("Backup catalog loaded: {} backups", byPath.size());
+    }
+
+    public static Path manifestFile(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + MANIFEST_SUFFIX);
+    }
+
+    // A local path, or a URL such as s3://bucket/key for archives in remote storage
+    private Path manifestFile(String location) {
+        int scheme = location.indexOf("://");
+        if (scheme < 0) {
+            return manifestFile(Paths.get(location).toAbsolutePath());
+        }
+        return backupsDir.resolve(REMOTE_DIR).resolve(location.substring(0, scheme))
+                .resolve(location.substring(scheme + 3) + MANIFEST_SUFFIX);
+    }
+
+    private static String normalize(String location) {
+        return location.contains("://") ? location : Paths.get(location).toAbsolutePath().toString();
+    }
+
+    public byte[] serialize(BackupManifest manifest) throws IOException {
+        return mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest);
+    }
+
+    public void add(String location, BackupManifest manifest) throws IOException {
+        String path = normalize(location);
+        Path manifestFile = manifestFile(path);
+        Files.createDirectories(manifestFile.getParent());
+        Files.write(manifestFile, serialize(manifest));
+
+        CatalogEntry entry = CatalogEntry.of(manifest, path);
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            Files.createDirectories(catalogFile.getParent());
+            Files.writeString(catalogFile, mapper.writeValueAsString(entry) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            index(entry);
+        } finally {
+            write.unlock();
+        }
+    }
+
+    // For backups deleted by retention or by hand; the catalog file is compacted right away
+    public void remove(String location) throws IOException {
+        String path = normalize(location);
+        Files.deleteIfExists(manifestFile(path));
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            CatalogEntry entry = byPath.remove(path);
+            if (entry == null) {
+                return;
+            }
+            unindex(byTime, entry);
+            NavigableMap<Instant, List<CatalogEntry>> database = byDatabase.get(entry.getDbName());
+            if (database != null) {
+                unindex(database, entry);
+            }
+            writeCatalog();
+        } finally {
+            write.unlock();
+        }
+    }
+
+    // Newest first; every filter is optional
+    public List<CatalogEntry> query(String dbName, String host, Instant from, Instant to, int limit) {
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            NavigableMap<Instant, List<CatalogEntry>> source = dbName != null ? byDatabase.get(dbName) : byTime;
+            if (source == null) {
+                return List.of();
+            }
+            NavigableMap<Instant, List<CatalogEntry>> range = source;
+            if (from != null && to != null) {
+                range = source.subMap(from, true, to, true);
+            } else if (from != null) {
+                range = source.tailMap(from, true);
+            } else if (to != null) {
+                range = source.headMap(to, true);
+            }
+            return range.descendingMap().values().stream()
+                    .flatMap(List::stream)
+                    .filter(entry -> host == null || host.equalsIgnoreCase(entry.getHost()))
+                    .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                    .toList();
+        } finally {
+            read.unlock();
+        }
+    }
+
+    public Optional<CatalogEntry> latest(String dbName, String host, Instant before) {
+        return query(dbName, host, null, before, 1).stream().findFirst();
+    }
+
+    // Only for backups in the catalog, so this can't be used to read arbitrary files
+    public BackupManifest getManifest(String location) throws IOException {
+        String path = normalize(location);
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            if (!byPath.containsKey(path)) {
+                throw new FileNotFoundException("No backup " + path + " in the catalog");
+            }
+        } finally {
+            read.unlock();
+        }
+        return mapper.readValue(manifestFile(path).toFile(), BackupManifest.class);
+    }
+
+    // Whether file is a catalogued archive or one of the volumes of a catalogued multi-volume backup
+    public boolean holds(Path file) throws IOException {
+        String path = normalize(file.toString());
+        Matcher volume = VOLUME_FILE.matcher(file.getFileName().toString());
+        String index = volume.matches() ? file.resolveSibling(volume.group(1) + ".zip").toAbsolutePath().toString() : null;
+        Lock read = lock.readLock();
+        read.lock();
+        try {
+            if (byPath.containsKey(path)) {
+                return true;
+            }
+            if (index == null || !byPath.containsKey(index)) {
+                return false;
+            }
+        } finally {
+            read.unlock();
+        }
+        VolumeSet volumes = getManifest(index).getVolumes();
+        return volumes != null && volumes.volumes().stream()
+                .anyMatch(v -> v.file().equals(file.getFileName().toString()));
+    }
+
+    public int rebuild() throws IOException {
+        Lock write = lock.writeLock();
+        write.lock();
+        try {
+            byPath.clear();
+            byTime.clear();
+            byDatabase.clear();
+            if (Files.isDirectory(backupsDir)) {
+                List<Path> manifests;
+                try (Stream<Path> files = Files.list(backupsDir)) {
+                    manifests = files.filter(p -> p.getFileName().toString().endsWith(MANIFEST_SUFFIX)).toList();
+                }
+                for (Path manifestPath : manifests) {
+                    String name = manifestPath.getFileName().toString();
+                    Path archive = manifestPath.resolveSibling(name.substring(0, name.length() - MANIFEST_SUFFIX.length()));
+                    if (!Files.exists(archive)) {
+                        continue;
+                    }
+                    indexManifest(manifestPath, archive.toString());
+                }
+                // Remote archives aren't checked for: that would take a request per archive
+                Path remote = backupsDir.resolve(REMOTE_DIR);
+                if (Files.isDirectory(remote)) {
+                    try (Stream<Path> files = Files.walk(remote)) {
+                        manifests = files.filter(p -> p.getFileName().toString().endsWith(MANIFEST_SUFFIX)).toList();
+                    }
+                    for (Path manifestPath : manifests) {
+                        Path relative = remote.relativize(manifestPath);
+                        String key = relative.subpath(1, relative.getNameCount()).toString().replace(File.separatorChar, '/');
+                        indexManifest(manifestPath, relative.getName(0) + "://"
+                                + key.substring(0, key.length() - MANIFEST_SUFFIX.length()));
+                    }
+                }
+                writeCatalog();
+            }
+            log.info("Backup catalog rebuilt: {} backups", byPath.size());
+            return byPath.size();
+        } finally {
+            write.unlock();
+        }
+    }
+
+    private void indexManifest(Path manifestPath, String location) {
+        try {
+            index(CatalogEntry.of(mapper.readValue(manifestPath.toFile(), BackupManifest.class), location));
+        } catch (IOException e) {
+            log.warn("Skipping unreadable manifest {}: {}", manifestPath, e.getMessage());
+        }
+    }
+
+    private void index(CatalogEntry entry) {
+        CatalogEntry previous = byPath.put(entry.getPath(), entry);
+        if (previous != null) {
+            unindex(byTime, previous);
+            unindex(byDatabase.get(previous.getDbName()), previous);
+        }
+        byTime.computeIfAbsent(entry.getStartedAt(), t -> new ArrayList<>(1)).add(entry);
+        byDatabase.computeIfAbsent(entry.getDbName(), db -> new TreeMap<>())
+                .computeIfAbsent(entry.getStartedAt(), t -> new ArrayList<>(1)).add(entry);
+    }
+
+    private static void unindex(NavigableMap<Instant, List<CatalogEntry>> index, CatalogEntry entry) {
+        List<CatalogEntry> atTime = index.get(entry.getStartedAt());
+        if (atTime != null) {
+            atTime.remove(entry);
+            if (atTime.isEmpty()) {
+                index.remove(entry.getStartedAt());
+            }
+        }
+    }
+
+    private void writeCatalog() throws IOException {
+        Files.createDirectories(catalogFile.getParent());
+        Path temp = Files.createTempFile(catalogFile.getParent(), "catalog", ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (List<CatalogEntry> entries : byTime.values()) {
+                for (CatalogEntry entry : entries) {
+                    writer.write(mapper.writeValueAsString(entry));
+                    writer.write('\n');
+                }
+            }
+        }
+        Files.move(temp, catalogFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,38 @@
+package com.dbbackup.service;
+
+import com.dbbackup.utility.ConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// The application-wide caps on backups started by the scheduler and by fleet batches, per database
+// host and per disk. Each of those also keeps its own, smaller limiter; a backup starts only with
+// a permit from both, so two batches, or a batch next to the scheduler, can't double the load on
+// a host or a disk between them.
+@Service
+public class BackupPermitService {
+
+    private final ConcurrencyLimiter shared;
+
+    public BackupPermitService(@Value("${quickdump.limits.max-concurrent:8}") int maxConcurrent,
+                               @Value("${quickdump.limits.max-concurrent-per-host:2}") int maxConcurrentPerHost,
+                               @Value("${quickdump.limits.max-concurrent-per-disk:2}") int maxConcurrentPerDisk) {
+        this.shared = new ConcurrencyLimiter(maxConcurrent, maxConcurrentPerHost, maxConcurrentPerDisk);
+    }
+
+    // disk may be null when the caller doesn't know it; then only the host is limited
+    public boolean tryAcquire(ConcurrencyLimiter own, String host, String disk) {
+        if (!own.tryAcquire(host, disk)) {
+            return false;
+        }
+        if (!shared.tryAcquire(host, disk)) {
+            own.release(host, disk);
+            return false;
+        }
+        return true;
+    }
+
+    public void release(ConcurrencyLimiter own, String host, String disk) {
+        shared.release(host, disk);
+        own.release(host, disk);
+    }
+}
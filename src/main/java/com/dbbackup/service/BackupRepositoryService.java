@@ -0,0 +1,308 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.RepositorySnapshot;
+import com.dbbackup.model.RepositorySnapshot.ChunkRef;
+import com.dbbackup.utility.ArchiveWriter;
+import com.dbbackup.utility.BackgroundPipe;
+import com.dbbackup.utility.ContentDefinedChunker;
+import com.dbbackup.utility.ZipArchiveWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.github.luben.zstd.Zstd;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+// Content-addressed backup store: archive entries are split into content-defined chunks, each
+// unique chunk is kept once (zstd-compressed, named by the SHA-256 of its plain bytes) and a
+// backup is just a snapshot file listing the chunks of each entry.
+//
+// <repository>/chunks/ab/ab12...   chunk data
+// <repository>/snapshots/<id>.json chunk list
+@Slf4j
+@Service
+public class BackupRepositoryService {
+
+    private static final int CHUNK_COMPRESSION_LEVEL = 3;
+
+    private final Path chunksDir;
+    private final Path snapshotsDir;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // Backups share the lock; garbage collection takes it exclusively so it never deletes a chunk
+    // that a running backup has just referenced but not yet recorded in a snapshot
+    private final ReentrantReadWriteLock gcLock = new ReentrantReadWriteLock();
+
+    public BackupRepositoryService(@Value("${quickdump.repository.path:backups/repository}") String repositoryPath) {
+        Path root = Paths.get(repositoryPath);
+        this.chunksDir = root.resolve("chunks");
+        this.snapshotsDir = root.resolve("snapshots");
+    }
+
+    public Path root() {
+        return chunksDir.getParent();
+    }
+
+    public SnapshotWriter createSnapshot(BackupRequest request, String name) throws IOException {
+        Files.createDirectories(chunksDir);
+        Files.createDirectories(snapshotsDir);
+
+        RepositorySnapshot snapshot = new RepositorySnapshot();
+        snapshot.setId(uniqueId(name));
+        snapshot.setDbType(request.getDbType());
+        snapshot.setHost(request.getHost());
+        snapshot.setPort(request.getPort());
+        snapshot.setDbName(request.getDbName());
+        snapshot.setCreatedAt(Instant.now());
+        return new SnapshotWriter(snapshot);
+    }
+
+    public List<RepositorySnapshot> listSnapshots() throws IOException {
+        if (!Files.isDirectory(snapshotsDir)) {
+            return List.of();
+        }
+        List<RepositorySnapshot> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshotsDir, "*.json")) {
+            for (Path file : files) {
+                snapshots.add(mapper.readValue(file.toFile(), RepositorySnapshot.class));
+            }
+        }
+        snapshots.sort(Comparator.comparing(RepositorySnapshot::getCreatedAt).reversed());
+        return snapshots;
+    }
+
+    public RepositorySnapshot getSnapshot(String id) throws IOException {
+        Path file = snapshotFile(id);
+        if (!Files.exists(file)) {
+            throw new FileNotFoundException("No snapshot " + id);
+        }
+        return mapper.readValue(file.toFile(), RepositorySnapshot.class);
+    }
+
+    public void deleteSnapshot(String id) throws IOException {
+        // Chunks are left for garbage collection, other snapshots may share them
+        Files.delete(snapshotFile(id));
+    }
+
+    // Rebuilds the zip archive on the fly from the chunks, one chunk in memory at a time,
+    // so it can go straight into the regular streaming restore
+    public InputStream openSnapshot(String id) throws IOException {
+        RepositorySnapshot snapshot = getSnapshot(id);
+        return BackgroundPipe.start("snapshot-reader-" + id, out -> {
+            ZipArchiveWriter archive = new ZipArchiveWriter(out);
+            for (RepositorySnapshot.Entry entry : snapshot.getEntries()) {
+                OutputStream entryOut = archive.putNextEntry(entry.getName(), Deflater.NO_COMPRESSION);
+                for (ChunkRef chunk : entry.getChunks()) {
+                    entryOut.write(readChunk(chunk));
+                }
+                archive.closeEntry();
+            }
+            archive.finish();
+        });
+    }
+
+    public Map<String, Object> collectGarbage() throws IOException {
+        Lock lock = gcLock.writeLock();
+        lock.lock();
+        try {
+            Set<String> referenced = new HashSet<>();
+            for (RepositorySnapshot snapshot : listSnapshots()) {
+                chunksOf(snapshot).forEach(chunk -> referenced.add(chunk.hash()));
+            }
+
+            long deletedChunks = 0;
+            long freedBytes = 0;
+            if (Files.isDirectory(chunksDir)) {
+                List<Path> files;
+                try (Stream<Path> paths = Files.walk(chunksDir)) {
+                    files = paths.filter(Files::isRegularFile).toList();
+                }
+                for (Path file : files) {
+                    // Unreferenced chunks and temp files left behind by failed writes
+                    if (!referenced.contains(file.getFileName().toString())) {
+                        freedBytes += Files.size(file);
+                        Files.delete(file);
+                        deletedChunks++;
+                    }
+                }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("referencedChunks", referenced.size());
+            result.put("deletedChunks", deletedChunks);
+            result.put("freedBytes", freedBytes);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Re-reads every chunk once, however many snapshots share it, and checks it against its hash
+    public Map<String, Object> verify() throws IOException {
+        List<RepositorySnapshot> snapshots = listSnapshots();
+        Map<String, Integer> lengths = new HashMap<>();
+        snapshots.forEach(s -> chunksOf(s).forEach(c -> lengths.put(c.hash(), c.length())));
+
+        Map<String, String> problems = new ConcurrentHashMap<>();
+        AtomicLong checkedBytes = new AtomicLong();
+        lengths.entrySet().parallelStream().forEach(chunk -> {
+            try {
+                byte[] data = readChunk(new ChunkRef(chunk.getKey(), chunk.getValue()));
+                if (!sha256(data, data.length).equals(chunk.getKey())) {
+                    problems.put(chunk.getKey(), "checksum mismatch");
+                }
+                checkedBytes.addAndGet(data.length);
+            } catch (NoSuchFileException e) {
+                problems.put(chunk.getKey(), "missing");
+            } catch (Exception e) {
+                problems.put(chunk.getKey(), "unreadable: " + e.getMessage());
+            }
+        });
+
+        List<String> damagedSnapshots = snapshots.stream()
+                .filter(s -> chunksOf(s).anyMatch(c -> problems.containsKey(c.hash())))
+                .map(RepositorySnapshot::getId)
+                .toList();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("snapshots", snapshots.size());
+        result.put("chunks", lengths.size());
+        result.put("checkedBytes", checkedBytes.get());
+        result.put("damagedChunks", problems);
+        result.put("damagedSnapshots", damagedSnapshots);
+        return result;
+    }
+
+    private static Stream<ChunkRef> chunksOf(RepositorySnapshot snapshot) {
+        return snapshot.getEntries().stream().flatMap(entry -> entry.getChunks().stream());
+    }
+
+    private byte[] readChunk(ChunkRef chunk) throws IOException {
+        byte[] compressed = Files.readAllBytes(chunkFile(chunk.hash()));
+        byte[] data = Zstd.decompress(compressed, chunk.length());
+        if (data.length != chunk.length()) {
+            throw new IOException("Chunk " + chunk.hash() + " has " + data.length + " bytes, expected " + chunk.length());
+        }
+        return data;
+    }
+
+    private Path chunkFile(String hash) {
+        return chunksDir.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path snapshotFile(String id) {
+        if (id.contains("/") || id.contains("\\") || id.contains("..")) {
+            throw new IllegalArgumentException("Invalid snapshot id: " + id);
+        }
+        return snapshotsDir.resolve(id + ".json");
+    }
+
+    private String uniqueId(String name) {
+        String id = name;
+        for (int i = 2; Files.exists(snapshotFile(id)); i++) {
+            id = name + "_" + i;
+        }
+        return id;
+    }
+
+    private static String sha256(byte[] data, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Chunks each entry as it is written; nothing is visible until commit() writes the snapshot
+    public class SnapshotWriter implements ArchiveWriter, AutoCloseable {
+        private final RepositorySnapshot snapshot;
+        private final Lock lock = gcLock.readLock();
+        private RepositorySnapshot.Entry entry;
+        private ContentDefinedChunker chunker;
+        private boolean committed;
+        private boolean closed;
+
+        private SnapshotWriter(RepositorySnapshot snapshot) {
+            this.snapshot = snapshot;
+            lock.lock();
+        }
+
+        // The zip level is irrelevant here: chunks are compressed on their own
+        @Override
+        public OutputStream putNextEntry(String name, int zipLevel) {
+            entry = new RepositorySnapshot.Entry();
+            entry.setName(name);
+            snapshot.getEntries().add(entry);
+            chunker = new ContentDefinedChunker(this::storeChunk);
+            return chunker;
+        }
+
+        @Override
+        public void closeEntry() throws IOException {
+            chunker.close();
+            chunker = null;
+        }
+
+        @Override
+        public void finish() {
+            // the snapshot only becomes visible in commit()
+        }
+
+        public RepositorySnapshot commit() throws IOException {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(snapshotFile(snapshot.getId()).toFile(), snapshot);
+            committed = true;
+            log.info("Stored snapshot {}: {} bytes, {} new", snapshot.getId(), snapshot.getSize(), snapshot.getNewBytes());
+            return snapshot;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            if (!committed) {
+                log.warn("Snapshot {} was not committed; its new chunks are left for garbage collection", snapshot.getId());
+            }
+            lock.unlock();
+        }
+
+        private void storeChunk(byte[] data, int length) throws IOException {
+            String hash = sha256(data, length);
+            Path file = chunkFile(hash);
+            if (!Files.exists(file)) {
+                Files.createDirectories(file.getParent());
+                byte[] compressed = Zstd.compress(Arrays.copyOf(data, length), CHUNK_COMPRESSION_LEVEL);
+                // Write-then-rename: a concurrent backup storing the same chunk never sees half a file
+                Path temp = Files.createTempFile(file.getParent(), hash, ".tmp");
+                Files.write(temp, compressed);
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    Files.deleteIfExists(temp);
+                }
+                snapshot.setNewBytes(snapshot.getNewBytes() + compressed.length);
+            }
+            entry.getChunks().add(new ChunkRef(hash, length));
+            entry.setSize(entry.getSize() + length);
+            snapshot.setSize(snapshot.getSize() + length);
+        }
+    }
+}
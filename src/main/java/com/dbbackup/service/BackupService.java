@@ -1,152 +1,223 @@
 package com.dbbackup.service;
 
+import com.dbbackup.model.ArchiveEntry;
+import com.dbbackup.model.BackupManifest;
 import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.RepositorySnapshot;
+import com.dbbackup.model.VolumeSet;
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.ArchiveWriter;
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
 import com.dbbackup.utility.DownloadResponse;
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
+import com.dbbackup.utility.EntryPipeline;
+import com.dbbackup.utility.NonClosingOutputStream;
+import com.dbbackup.utility.BinlogPositionSniffer;
+import com.dbbackup.utility.ProcessOutputCollector;
+import com.dbbackup.utility.ProgressTracker;
+import com.dbbackup.utility.SqlDumpTableScanner;
+import com.dbbackup.utility.ZipArchiveWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.security.DigestOutputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 @Slf4j
 @Service
 public class BackupService {
 
+    static final String ARCHIVE_DIR = "backups";
+
+    private final MySqlParallelService mySqlParallelService;
+    private final JdbcDumpService jdbcDumpService;
+    private final BackupRepositoryService backupRepositoryService;
+    private final IncrementalBackupService incrementalBackupService;
+    private final ConnectionRegistry connectionRegistry;
+    private final BackupCatalogService backupCatalogService;
+    private final MetricsService metricsService;
+    private final PipelineService pipelineService;
+    private final StorageService storageService;
+    private final VolumeSetService volumeSetService;
+    private final String defaultCodec;
+    private final int defaultCompressionLevel;
+
+    public BackupService(MySqlParallelService mySqlParallelService,
+                         JdbcDumpService jdbcDumpService,
+                         BackupRepositoryService backupRepositoryService,
+                         IncrementalBackupService incrementalBackupService,
+                         ConnectionRegistry connectionRegistry,
+                         BackupCatalogService backupCatalogService,
+                         MetricsService metricsService,
+                         PipelineService pipelineService,
+                         StorageService storageService,
+                         VolumeSetService volumeSetService,
+                         @Value("${quickdump.compression.codec:deflate}") String defaultCodec,
+                         @Value("${quickdump.compression.level:0}") int defaultCompressionLevel) {
+        this.mySqlParallelService = mySqlParallelService;
+        this.jdbcDumpService = jdbcDumpService;
+        this.backupRepositoryService = backupRepositoryService;
+        this.incrementalBackupService = incrementalBackupService;
+        this.connectionRegistry = connectionRegistry;
+        this.backupCatalogService = backupCatalogService;
+        this.metricsService = metricsService;
+        this.pipelineService = pipelineService;
+        this.storageService = storageService;
+        this.volumeSetService = volumeSetService;
+        this.defaultCodec = defaultCodec;
+        this.defaultCompressionLevel = defaultCompressionLevel;
+    }
 
+    // Pooled and briefly cached, so repeated probes don't open a new connection each time
+    public boolean testConnection(BackupRequest request) {
+        return connectionRegistry.testConnection(request);
+    }
 
-    private void deleteDirectory(File directory) throws IOException {
-        if (directory.isDirectory()) {
-            for (File file : directory.listFiles()) {
-                deleteDirectory(file);
-            }
-        }
-        Files.deleteIfExists(directory.toPath());
+    public StoredArchive generateBackupZip(BackupRequest request) throws IOException, InterruptedException {
+        return metricsService.recordBackup(request, codecName(request), () -> createBackupZip(request));
     }
 
+    private StoredArchive createBackupZip(BackupRequest request) throws IOException, InterruptedException {
+        if (IncrementalBackupService.isIncrementalBackup(request)) {
+            File zipFile = incrementalBackupService.backupIncremental(request, compressionFor(request));
+            return new StoredArchive(zipFile.getAbsolutePath(), zipFile.length());
+        }
+        boolean startsChain = IncrementalBackupService.isFullBackup(request);
+        // Chains ignore quickdump.volumes.size; only a request asking for volumes outright is refused
+        if (startsChain && volumeSetService.requestedVolumeSize(request) > 0) {
+            throw new IllegalArgumentException("Backup chains are single archives; leave volumeSize unset for backupType full");
+        }
+        long volumeSize = startsChain ? 0 : volumeSetService.volumeSize(request);
+        // Chains are replayed from their files in backups/, so they stay there whatever the storage
+        BackupStorage storage = startsChain ? storageService.local() : storageService.forRequest(request);
 
-    private void zipDirectory(File folder, String parentFolder, ZipOutputStream zos) throws IOException {
-        for (File file : folder.listFiles()) {
-            if (file.isDirectory()) {
-                zipDirectory(file, parentFolder + "/" + file.getName(), zos);
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        BackupStorage.Upload upload = storage.create(request.getDbName() + "_" + timestamp, "");
+        String folderName = upload.name().substring(0, upload.name().length() - ".zip".length());
+        Instant takenAt = Instant.now();
+        CompressionSettings compression = compressionFor(request);
+        // Volumes compress their slices of the archive themselves, so its entries are only stored
+        VolumeSetService.Writer volumes = volumeSize > 0 ? volumeSetService.create(storage, upload, compression, volumeSize) : null;
+        CompressionSettings entryCompression = volumes != null ? new CompressionSettings(CompressionCodec.STORE, 0) : compression;
+        ZipArchiveWriter archive;
+        DumpResult dump;
+        // Hashed on the way out, so the checksum costs no second read of the archive. Hashing
+        // and writing get a pipeline stage each, so neither holds up the zip writer; with S3
+        // storage the write is the upload, which overlaps with the rest of the dump.
+        MessageDigest digest = ArchiveChecksums.newDigest();
+        ProgressTracker progress = request.getProgress();
+        EntryPipeline pipeline = compression.pipeline();
+        OutputStream sink = pipeline.stage("pipeline-digest", new DigestOutputStream(pipeline.stage("pipeline-write",
+                progress.timeOutput(ProgressTracker.WRITE, progress.countArchive(volumes != null ? volumes : upload))), digest));
+        VolumeSet volumeSet = null;
+        try {
+            try (OutputStream out = new BufferedOutputStream(sink, 64 * 1024)) {
+                archive = new ZipArchiveWriter(out);
+                dump = writeBackupArchive(request, folderName, archive, entryCompression, startsChain);
+            }
+            if (volumes != null) {
+                volumeSet = volumes.writeIndex(ArchiveChecksums.hex(digest));
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (volumes != null) {
+                volumes.abort();
             } else {
-                try (FileInputStream fis = new FileInputStream(file)) {
-                    ZipEntry zipEntry = new ZipEntry(parentFolder + "/" + file.getName());
-                    zos.putNextEntry(zipEntry);
-                    byte[] bytes = new byte[1024];
-                    int length;
-                    while ((length = fis.read(bytes)) >= 0) {
-                        zos.write(bytes, 0, length);
-                    }
-                }
+                upload.abort();
             }
+            throw e;
         }
-    }
-
-    public boolean testConnection(BackupRequest request) {
-        if (request.getDbType().equalsIgnoreCase("mysql")) {
-            return testMySqlConnection(request);
-        } else if (request.getDbType().equalsIgnoreCase("mongodb")) {
-            return testMongoConnection(request);
+        progress.phase("cataloguing");
+        String location = upload.location();
+        String sha256 = volumeSet != null ? volumeSet.sha256() : ArchiveChecksums.hex(digest);
+        if (volumeSet == null) {
+            storage.writeSidecar(location, ArchiveChecksums.SIDECAR_SUFFIX, ArchiveChecksums.sidecarLine(sha256, upload.name()));
         }
-        return false;
-    }
-
-    private boolean testMongoConnection(BackupRequest request) {
 
-        String uri;
-        if (request.getUsername() != null && !request.getUsername().isBlank()) {
-            // Use authentication
-            uri = String.format("mongodb://%s:%s@%s:%d/%s",
-                    request.getUsername(),
-                    request.getPassword(),
-                    request.getHost(),
-                    request.getPort(),
-                    request.getDbName());
-        } else {
-            // No authentication required
-            uri = String.format("mongodb://%s:%d/%s",
-                    request.getHost(),
-                    request.getPort(),
-                    request.getDbName());
-        }
-//        String uri = "mongodb://" + request.getUsername() + ":" + request.getPassword()
-//                + "@" + request.getHost() + ":" + request.getPort() + "/" + request.getDbName();
-        try (MongoClient mongoClient = MongoClients.create(uri)) {
-            mongoClient.getDatabase(request.getDbName()).runCommand(new Document("ping", 1));
-            return true;
-        } catch (Exception e) {
-            log.error("Mongodb connection failed: {}", e.getMessage(), e);
-            return false;
+        long size = volumes != null ? volumes.storedBytes() : upload.size();
+        BackupManifest manifest = buildManifest(request, upload.name(), size, archive, dump, entryCompression,
+                compression.pipeline().encrypts(), takenAt);
+        manifest.setSha256(sha256);
+        manifest.setVolumes(volumeSet);
+        if (!LocalBackupStorage.TYPE.equals(storage.getType())) {
+            // Kept with the archive too, so the bucket describes itself without this catalog
+            storage.writeSidecar(location, BackupCatalogService.MANIFEST_SUFFIX, backupCatalogService.serialize(manifest));
         }
-    }
-
-    private boolean testMySqlConnection(BackupRequest request) {
-        String url = "jdbc:mysql://" + request.getHost() + ":" + request.getPort() + "/" + request.getDbName();
-        try (Connection conn = DriverManager.getConnection(url, request.getUsername(), request.getPassword())) {
-            return conn != null && !conn.isClosed();
-        } catch (SQLException e) {
-            log.error("MySQL connection failed: {}", e.getMessage(), e);
-            return false;
+        backupCatalogService.add(location, manifest);
+        if (startsChain) {
+            incrementalBackupService.recordFull(request, new File(location), takenAt, dump.logPosition());
         }
-    }
 
+        return new StoredArchive(location, size);
+    }
 
-    private File generateBackupZip(BackupRequest request, boolean storePermanently) throws IOException, InterruptedException {
+    // Pipes the dump process stdout through the zip compressor straight into the given stream,
+    // so nothing is staged on disk and the first bytes leave as soon as the dump produces them.
+    // With capturePosition, the result holds the binlog position / oplog timestamp the dump corresponds to.
+    private DumpResult writeBackupArchive(BackupRequest request, String folderName, ArchiveWriter archive,
+                                      CompressionSettings compression, boolean capturePosition) throws IOException, InterruptedException {
         String dbType = request.getDbType().toLowerCase();
-
-        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        String filename = request.getDbName() + "_" + timestamp + ".zip";
-
-        File baseDir = storePermanently
-                ? new File("backups")
-                : Files.createTempDirectory("backup_").toFile();
-
-        if (storePermanently) {
-            Files.createDirectories(baseDir.toPath());
+        ProgressTracker progress = request.getProgress();
+        progress.phase("dumping");
+        estimateSize(request, progress);
+
+        if ("mysql".equals(dbType) && jdbcDumpService.handles(request)) {
+            if (request.getParallelism() > 1) {
+                String position = jdbcDumpService.dumpTables(request, folderName, archive, compression, capturePosition);
+                archive.finish();
+                return new DumpResult(position, null, Map.of());
+            }
+            String entryName = compression.entryName(folderName + "/" + request.getDbName() + ".sql");
+            OutputStream entryOut = archive.putNextEntry(entryName, compression.zipLevel());
+            JdbcDumpService.Result dump;
+            try (OutputStream entry = progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(entryOut))) {
+                dump = jdbcDumpService.dump(request, entry, capturePosition);
+            }
+            archive.closeEntry();
+            archive.finish();
+            return new DumpResult(dump.position(), entryName, dump.tableOffsets());
         }
 
-        File tempBackupDir = new File(baseDir, request.getDbName() + "_" + timestamp);
-        Files.createDirectories(tempBackupDir.toPath());
+        if ("mysql".equals(dbType) && request.getParallelism() > 1) {
+            String position = mySqlParallelService.dump(request, folderName, archive, compression, capturePosition);
+            archive.finish();
+            return new DumpResult(position, null, Map.of());
+        }
 
         ProcessBuilder pb;
+        String entryName;
+        String oplogPosition = null;
 
         if ("mysql".equals(dbType)) {
-            List<String> command = Arrays.asList(
+            List<String> command = new ArrayList<>(List.of(
                     "mysqldump",
                     "-h", request.getHost(),
                     "-P", String.valueOf(request.getPort()),
                     "-u", request.getUsername(),
                     "-p" + request.getPassword(),
-                    request.getDbName()
-            );
-
-            File sqlFile = new File(tempBackupDir, request.getDbName() + ".sql");
+                    // Per-table steps on stderr, which ends up in the job's live log
+                    "--verbose"
+            ));
+            if (capturePosition) {
+                command.addAll(incrementalBackupService.mySqlPositionOptions());
+            }
+            command.add(request.getDbName());
             pb = new ProcessBuilder(command);
-            pb.redirectOutput(sqlFile);
-            String nullDevice = System.getProperty("os.name").toLowerCase().contains("win") ? "NUL" : "/dev/null";
-            pb.redirectError(new File(nullDevice));
+            entryName = compression.entryName(folderName + "/" + request.getDbName() + ".sql");
 
         } else if ("mongodb".equals(dbType)) {
             List<String> command = new ArrayList<>(List.of(
@@ -159,34 +230,205 @@ public class BackupService {
                 command.add("--username=" + request.getUsername());
                 command.add("--password=" + request.getPassword());
             }
-            command.add("--out=" + tempBackupDir.getAbsolutePath());
-
+            // Archive on stdout: no dump directory, collections dumped side by side
+            command.add("--archive");
+            boolean gzip = compression.codec() != CompressionCodec.STORE;
+            if (gzip) {
+                command.add("--gzip");
+            }
+            if (request.getParallelism() > 0) {
+                command.add("--numParallelCollections=" + request.getParallelism());
+            }
+            if (capturePosition) {
+                oplogPosition = incrementalBackupService.currentOplogPosition(request);
+            }
             pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
+            entryName = folderName + "/" + request.getDbName() + (gzip ? ".archive.gz" : ".archive");
+            // Already gzipped by mongodump (or meant to stay uncompressed), never compressed again here
+            compression = compression.stored();
 
         } else {
             throw new UnsupportedOperationException("Unsupported database type: " + dbType);
         }
 
         Process process = pb.start();
-        if (process.waitFor() != 0) {
-            throw new RuntimeException("Backup failed.");
+        ProcessOutputCollector errors = ProcessOutputCollector.start(process.getErrorStream(), "dump-stderr", progress);
+        // Time blocked on the tool's stdout is the dump stage; compress excludes the archive sink below it
+        InputStream stdout = progress.timeInput(ProgressTracker.DUMP, progress.countDump(process.getInputStream()));
+        SqlDumpTableScanner tables = new SqlDumpTableScanner(stdout, "mysql".equals(dbType) ? progress : null);
+        BinlogPositionSniffer sniffer = new BinlogPositionSniffer(tables);
+        try {
+            OutputStream entryOut = archive.putNextEntry(entryName, compression.zipLevel());
+            try (InputStream dump = sniffer;
+                 OutputStream entry = progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(entryOut))) {
+                dump.transferTo(entry);
+            }
+            archive.closeEntry();
+
+            long waitStart = System.nanoTime();
+            int exitCode = process.waitFor();
+            progress.addStageTime(ProgressTracker.DUMP, System.nanoTime() - waitStart);
+            if (exitCode != 0) {
+                throw new RuntimeException("Backup failed. Exit code: " + exitCode + "\nOutput:\n" + errors.await());
+            }
+            archive.finish();
+            return "mysql".equals(dbType)
+                    ? new DumpResult(sniffer.getPosition(), entryName, tables.getTables())
+                    : new DumpResult(oplogPosition, entryName, Map.of());
+        } finally {
+            // The client may have gone away mid-download; don't leave the dump running
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    // Best effort, only for the percentage and ETA: table count and data size from the server's statistics
+    private void estimateSize(BackupRequest request, ProgressTracker progress) {
+        try {
+            if ("mysql".equalsIgnoreCase(request.getDbType())) {
+                try (Connection conn = connectionRegistry.mySqlConnection(request);
+                     PreparedStatement ps = conn.prepareStatement(
+                             "SELECT COUNT(*), COALESCE(SUM(DATA_LENGTH), 0) FROM information_schema.TABLES " +
+                                     "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'")) {
+                    ps.setString(1, request.getDbName());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            progress.expectTables(rs.getInt(1));
+                            progress.expectDumpBytes(rs.getLong(2));
+                        }
+                    }
+                }
+            } else if ("mongodb".equalsIgnoreCase(request.getDbType())) {
+                Document stats;
+                try (ConnectionRegistry.MongoLease mongo = connectionRegistry.mongoClient(request)) {
+                    stats = mongo.client().getDatabase(request.getDbName()).runCommand(new Document("dbStats", 1));
+                }
+                progress.expectTables(((Number) stats.get("collections")).intValue());
+                // mongodump --gzip output is compressed, so the BSON size only fits an uncompressed dump
+                if (compressionFor(request).codec() == CompressionCodec.STORE) {
+                    progress.expectDumpBytes(((Number) stats.get("dataSize")).longValue());
+                }
+            }
+        } catch (Exception e) {
+            log.debug("No size estimate for {}: {}", request.getDbName(), e.getMessage());
+        }
+    }
+
+    private BackupManifest buildManifest(BackupRequest request, String fileName, long size, ZipArchiveWriter archive,
+                                         DumpResult dump, CompressionSettings compression, boolean encrypted,
+                                         Instant startedAt) {
+        BackupManifest manifest = new BackupManifest();
+        manifest.setFile(fileName);
+        manifest.setDbType(request.getDbType().toLowerCase());
+        manifest.setHost(request.getHost());
+        manifest.setPort(request.getPort());
+        manifest.setDbName(request.getDbName());
+        manifest.setBackupType(request.getBackupType() != null ? request.getBackupType().toLowerCase() : IncrementalBackupService.FULL);
+        manifest.setCodec(compression.codec().name().toLowerCase());
+        manifest.setCompressionLevel(compression.codec().effectiveLevel(compression.level()));
+        manifest.setEncryption(encrypted ? "aes-gcm" : null);
+        manifest.setStartedAt(startedAt);
+        manifest.setFinishedAt(Instant.now());
+        manifest.setSize(size);
+        manifest.setEntries(List.copyOf(archive.getEntries()));
+
+        List<BackupManifest.TableLocation> tables = new ArrayList<>();
+        dump.tableOffsets().forEach((table, offset) -> tables.add(new BackupManifest.TableLocation(table, dump.tableEntry(), offset)));
+        for (ArchiveEntry entry : archive.getEntries()) {
+            // Per-table dumps: one data/<table>.sql entry per table
+            String table = MySqlParallelService.tableOf(entry.name());
+            if (table != null) {
+                tables.add(new BackupManifest.TableLocation(table, entry.name(), 0));
+            }
+        }
+        if ("mongodb".equals(manifest.getDbType())) {
+            // Collections are interleaved in a mongodump archive, so there is no offset to record
+            listCollections(request).forEach(c -> tables.add(new BackupManifest.TableLocation(c, dump.tableEntry(), -1)));
         }
+        manifest.setTables(tables);
+        return manifest;
+    }
 
-        File zipFile = new File(baseDir, filename);
-        try (FileOutputStream fos = new FileOutputStream(zipFile);
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
-            zipDirectory(tempBackupDir, tempBackupDir.getName(), zos);
+    private List<String> listCollections(BackupRequest request) {
+        try (ConnectionRegistry.MongoLease mongo = connectionRegistry.mongoClient(request)) {
+            return mongo.client().getDatabase(request.getDbName())
+                    .listCollectionNames().into(new ArrayList<>());
+        } catch (Exception e) {
+            log.warn("Could not list collections of {} for the manifest: {}", request.getDbName(), e.getMessage());
+            return List.of();
         }
+    }
 
-        deleteDirectory(tempBackupDir); // Clean temp
+    // tableOffsets: table -> offset in the uncompressed tableEntry, for single-file MySQL dumps
+    private record DumpResult(String logPosition, String tableEntry, Map<String, Long> tableOffsets) {
+    }
 
-        return zipFile;
+    // location: as BackupStorage hands it out, a path or an s3:// URL
+    public record StoredArchive(String location, long size) {
+    }
+
+    private String codecName(BackupRequest request) {
+        return compressionFor(request).codec().name().toLowerCase();
+    }
+
+    private CompressionSettings compressionFor(BackupRequest request) {
+        String codec = request.getCodec() != null && !request.getCodec().isBlank() ? request.getCodec() : defaultCodec;
+        int level = request.getCompressionLevel() > 0 ? request.getCompressionLevel() : defaultCompressionLevel;
+        return new CompressionSettings(CompressionCodec.fromName(codec), level, pipelineService.pipeline());
+    }
+
+    // Entry payloads are chunked uncompressed: compressed bytes would differ completely after any
+    // change and defeat deduplication. Chunks are compressed individually instead.
+    public RepositorySnapshot backupToRepository(BackupRequest request) throws IOException, InterruptedException {
+        return metricsService.recordBackup(request, "repository", () -> writeToRepository(request));
+    }
+
+    private RepositorySnapshot writeToRepository(BackupRequest request) throws IOException, InterruptedException {
+        if (IncrementalBackupService.isIncrementalBackup(request)) {
+            throw new UnsupportedOperationException("Incremental backups are stored as archives, not in the repository");
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        String folderName = request.getDbName() + "_" + timestamp;
+
+        try (BackupRepositoryService.SnapshotWriter writer = backupRepositoryService.createSnapshot(request, folderName)) {
+            writeBackupArchive(request, folderName, writer, new CompressionSettings(CompressionCodec.STORE, 0), false);
+            return writer.commit();
+        }
+    }
+
+    public static boolean isRepositoryBackup(BackupRequest request) {
+        return "repository".equalsIgnoreCase(request.getStorage());
+    }
+
+    // Where the backup's bytes land, so callers can tell which backups compete for the same disk or link
+    public String outputResource(BackupRequest request) {
+        if (isRepositoryBackup(request)) {
+            return LocalBackupStorage.fileStoreOf(backupRepositoryService.root());
+        }
+        return (IncrementalBackupService.isFullBackup(request) || IncrementalBackupService.isIncrementalBackup(request)
+                ? storageService.local() : storageService.forRequest(request)).resourceKey();
+    }
+
+    // Creates <name><suffix>.zip, or <name>_2<suffix>.zip and so on when that is taken: same-named
+    // databases on different hosts, backed up within the same second, must not share one file
+    static File claimArchiveFile(File dir, String name, String suffix) throws IOException {
+        Files.createDirectories(dir.toPath());
+        for (int attempt = 1; ; attempt++) {
+            File file = new File(dir, name + (attempt > 1 ? "_" + attempt : "") + suffix + ".zip");
+            if (file.createNewFile()) {
+                return file;
+            }
+        }
     }
 
     public String performBackup(BackupRequest request) throws IOException, InterruptedException {
-        File zipFile = generateBackupZip(request, true);
-        return "Backup successful. File: " + zipFile.getAbsolutePath();
+        if (isRepositoryBackup(request)) {
+            RepositorySnapshot snapshot = backupToRepository(request);
+            return "Backup successful. Snapshot: " + snapshot.getId() + " (" + snapshot.getNewBytes() + " new bytes stored)";
+        }
+        StoredArchive archive = generateBackupZip(request);
+        return "Backup successful. File: " + archive.location();
     }
 
     public DownloadResponse backupAndDownload(
@@ -195,7 +437,8 @@ public class BackupService {
             int port,
             String username,
             String password,
-            String dbName) throws IOException, InterruptedException {
+            String dbName,
+            String codec) {
 
         BackupRequest request = new BackupRequest();
         request.setDbType(dbType);
@@ -204,27 +447,33 @@ public class BackupService {
         request.setUsername(username);
         request.setPassword(password);
         request.setDbName(dbName);
+        request.setCodec(codec);
 
-        File zipFile = generateBackupZip(request, false); // store temporarily
+        if (!"mysql".equalsIgnoreCase(dbType) && !"mongodb".equalsIgnoreCase(dbType)) {
+            throw new UnsupportedOperationException("Unsupported database type: " + dbType);
+        }
 
-        InputStreamResource resource = new InputStreamResource(new FileInputStream(zipFile));
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        String folderName = dbName + "_" + timestamp;
 
-        // Auto delete zip after some time (5s)
-        new Thread(() -> {
+        // Nothing runs until the response body is written, so the dump streams to the client directly
+        CompressionSettings compression = compressionFor(request);
+        StreamingResponseBody body = out -> {
             try {
-                Thread.sleep(5000);
-                zipFile.delete();
-                File parent = zipFile.getParentFile();
-                if (parent.getName().startsWith("backup_")) {
-                    Files.walk(parent.toPath())
-                            .sorted(Comparator.reverseOrder())
-                            .map(Path::toFile)
-                            .forEach(File::delete);
+                ProgressTracker progress = request.getProgress();
+                // The response stream stays open for the container; closing the stage only drains it
+                try (OutputStream sink = compression.pipeline().stage("pipeline-send", new NonClosingOutputStream(
+                        progress.timeOutput(ProgressTracker.UPLOAD, progress.countArchive(out))))) {
+                    metricsService.recordBackup(request, codecName(request), () ->
+                            writeBackupArchive(request, folderName, new ZipArchiveWriter(sink), compression, false));
                 }
-            } catch (Exception ignored) {}
-        }).start();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Backup interrupted", e);
+            }
+        };
 
-        return new DownloadResponse(resource, zipFile.getName());
+        return new DownloadResponse(body, folderName + ".zip");
     }
 
 }
@@ -0,0 +1,46 @@
+package com.dbbackup.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Where finished archives are kept. A backup streams its archive into create() while it is being
+// dumped; the location it gets back is what jobs, schedules and the catalog refer to it by.
+public interface BackupStorage {
+
+    String getType();
+
+    // A new, uniquely named archive <name><suffix>.zip
+    Upload create(String name, String suffix) throws IOException;
+
+    // Small files kept next to an archive: <archive><suffix>, e.g. the .sha256 checksum
+    void writeSidecar(String location, String suffix, byte[] content) throws IOException;
+
+    InputStream open(String location) throws IOException;
+
+    // The archive and its sidecars
+    void delete(String location) throws IOException;
+
+    boolean owns(String location);
+
+    // Another file in the same directory, or object under the same prefix, e.g. a volume's
+    default String sibling(String location, String fileName) {
+        return location.substring(0, location.lastIndexOf('/') + 1) + fileName;
+    }
+
+    // Backups with the same key compete for the same disk or link, see FleetBackupService
+    String resourceKey();
+
+    abstract class Upload extends OutputStream {
+
+        public abstract String location();
+
+        // File name of the archive, without any directory or prefix
+        public abstract String name();
+
+        public abstract long size();
+
+        // Throws the partial archive away; the upload is unusable afterwards
+        public abstract void abort();
+    }
+}
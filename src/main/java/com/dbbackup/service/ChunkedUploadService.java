@@ -0,0 +1,337 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.Job;
+import com.dbbackup.model.UploadSession;
+import com.dbbackup.utility.ArchiveChecksums;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Restore archives uploaded in chunks. Each chunk goes straight to its place in a preallocated
+// file with positional FileChannel writes, so chunks can arrive in any order and in parallel, and
+// a chunk that failed or was corrupted is simply sent again. Session state is saved after every
+// chunk, so a client can ask which chunks are missing and resume, even across a restart. Once
+// all chunks are in, the file becomes an ordinary restore job.
+@Slf4j
+@Service
+public class ChunkedUploadService {
+
+    private static final int COPY_BUFFER = 64 * 1024;
+
+    private final JobService jobService;
+    private final Path uploadDir;
+    private final long defaultChunkSize;
+    private final long minChunkSize;
+    private final long maxChunkSize;
+    private final Duration expiry;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final Map<String, OpenUpload> uploads = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(JobService jobService,
+                                @Value("${quickdump.uploads.path:backups/uploads}") String uploadPath,
+                                @Value("${quickdump.uploads.chunk-size:8MB}") DataSize defaultChunkSize,
+                                @Value("${quickdump.uploads.min-chunk-size:1MB}") DataSize minChunkSize,
+                                @Value("${quickdump.uploads.max-chunk-size:64MB}") DataSize maxChunkSize,
+                                @Value("${quickdump.uploads.expiry:24h}") Duration expiry) {
+        this.jobService = jobService;
+        this.uploadDir = Paths.get(uploadPath);
+        this.defaultChunkSize = defaultChunkSize.toBytes();
+        this.minChunkSize = minChunkSize.toBytes();
+        this.maxChunkSize = maxChunkSize.toBytes();
+        this.expiry = expiry;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!Files.isDirectory(uploadDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(uploadDir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(".json")).toList()) {
+                try {
+                    UploadSession session = mapper.readValue(file.toFile(), UploadSession.class);
+                    if (Files.exists(dataFile(session.getId()))) {
+                        uploads.put(session.getId(), new OpenUpload(session));
+                    }
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable upload session {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        log.info("Resumable uploads: {} sessions", uploads.size());
+    }
+
+    public UploadSession create(UploadSession request) throws IOException {
+        if (request.getSize() <= 0) {
+            throw new IllegalArgumentException("Upload size must be positive");
+        }
+        long chunkSize = request.getChunkSize() > 0 ? request.getChunkSize() : defaultChunkSize;
+        if (chunkSize > maxChunkSize) {
+            throw new IllegalArgumentException("Chunk size " + chunkSize + " is above the limit of " + maxChunkSize + " bytes");
+        }
+        // Every chunk is an entry in the missing set, which is saved after each chunk
+        if (chunkSize < minChunkSize && chunkSize < request.getSize()) {
+            throw new IllegalArgumentException("Chunk size " + chunkSize + " is below the minimum of " + minChunkSize + " bytes");
+        }
+        long chunkCount = (request.getSize() + chunkSize - 1) / chunkSize;
+        if (chunkCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many chunks; use a larger chunk size");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setFileName(request.getFileName());
+        session.setSize(request.getSize());
+        session.setChunkSize(chunkSize);
+        session.setChunkCount((int) chunkCount);
+        session.setSha256(request.getSha256());
+        session.setCreatedAt(Instant.now());
+        session.setUpdatedAt(session.getCreatedAt());
+        IntStream.range(0, session.getChunkCount()).forEach(session.getMissingChunks()::add);
+
+        Files.createDirectories(uploadDir);
+        // Full length up front: sparse on most filesystems, and a chunk never has to extend the file
+        try (RandomAccessFile file = new RandomAccessFile(dataFile(session.getId()).toFile(), "rw")) {
+            file.setLength(session.getSize());
+        }
+        OpenUpload upload = new OpenUpload(session);
+        uploads.put(session.getId(), upload);
+        persist(upload);
+        return session;
+    }
+
+    public UploadSession getSession(String id) throws FileNotFoundException {
+        OpenUpload upload = upload(id);
+        synchronized (upload) {
+            return copy(upload.session);
+        }
+    }
+
+    // The chunk counts as received only if it has the exact length and, when given, the checksum
+    public UploadSession writeChunk(String id, int index, InputStream body, String sha256) throws IOException {
+        OpenUpload upload = upload(id);
+        UploadSession session = upload.session;
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk " + index + " is out of range 0-" + (session.getChunkCount() - 1));
+        }
+        long offset = session.chunkOffset(index);
+        long expected = session.chunkLength(index);
+        // A resent chunk overwrites the old bytes, so it is missing again until this copy checks out
+        synchronized (upload) {
+            if (session.getMissingChunks().add(index)) {
+                persist(upload);
+            }
+        }
+
+        FileChannel channel = upload.channel();
+        MessageDigest digest = ArchiveChecksums.newDigest();
+        byte[] buffer = new byte[COPY_BUFFER];
+        long written = 0;
+        int n;
+        while ((n = body.read(buffer)) != -1) {
+            if (written + n > expected) {
+                throw new IllegalArgumentException("Chunk " + index + " is longer than " + expected + " bytes");
+            }
+            digest.update(buffer, 0, n);
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, n);
+            while (data.hasRemaining()) {
+                written += channel.write(data, offset + written);
+            }
+        }
+        if (written != expected) {
+            throw new IllegalArgumentException("Chunk " + index + " has " + written + " bytes, expected " + expected);
+        }
+        String actual = ArchiveChecksums.hex(digest);
+        if (sha256 != null && !sha256.isBlank() && !actual.equalsIgnoreCase(sha256.trim())) {
+            throw new IllegalArgumentException("Chunk " + index + " checksum mismatch: expected " + sha256 + ", got " + actual);
+        }
+
+        synchronized (upload) {
+            session.getMissingChunks().remove(index);
+            session.setUpdatedAt(Instant.now());
+            persist(upload);
+            return copy(session);
+        }
+    }
+
+    // Hands the finished file to a restore job; the session is gone once the job is accepted
+    public Job complete(String id, BackupRequest request) throws IOException {
+        OpenUpload upload = upload(id);
+        synchronized (upload) {
+            UploadSession session = upload.session;
+            if (!session.getMissingChunks().isEmpty()) {
+                throw new IllegalStateException(session.getMissingChunks().size() + " chunks still missing: "
+                        + firstMissing(session));
+            }
+            upload.flushAndClose();
+            if ((request.getSha256() == null || request.getSha256().isBlank()) && session.getSha256() != null) {
+                request.setSha256(session.getSha256());
+            }
+
+            // The job deletes its file when done, and also when it is rejected. A second link to
+            // the data keeps the upload around for another try if the queue is full.
+            Path archive = uploadDir.resolve(id + ".zip");
+            try {
+                Files.createLink(archive, dataFile(id));
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                Files.move(dataFile(id), archive, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Job job = jobService.submitRestore(archive, request);
+            uploads.remove(id);
+            Files.deleteIfExists(dataFile(id));
+            Files.deleteIfExists(sessionFile(id));
+            return job;
+        }
+    }
+
+    public void cancel(String id) throws IOException {
+        OpenUpload upload = upload(id);
+        synchronized (upload) {
+            uploads.remove(id);
+            upload.closeQuietly();
+            Files.deleteIfExists(dataFile(id));
+            Files.deleteIfExists(sessionFile(id));
+        }
+    }
+
+    // Sessions nobody has sent a chunk to for the expiry time are dropped with their data
+    @Scheduled(fixedDelayString = "${quickdump.uploads.cleanup-interval:600000}")
+    public void expireSessions() {
+        Instant cutoff = Instant.now().minus(expiry);
+        for (OpenUpload upload : List.copyOf(uploads.values())) {
+            if (upload.session.getUpdatedAt().isBefore(cutoff)) {
+                try {
+                    log.info("Upload session {} expired", upload.session.getId());
+                    cancel(upload.session.getId());
+                } catch (IOException e) {
+                    log.warn("Could not remove expired upload {}: {}", upload.session.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploads.values().forEach(upload -> {
+            synchronized (upload) {
+                upload.closeQuietly();
+            }
+        });
+    }
+
+    private OpenUpload upload(String id) throws FileNotFoundException {
+        OpenUpload upload = uploads.get(id);
+        if (upload == null) {
+            throw new FileNotFoundException("No upload session " + id);
+        }
+        return upload;
+    }
+
+    private Path dataFile(String id) {
+        return uploadDir.resolve(id + ".part");
+    }
+
+    private Path sessionFile(String id) {
+        return uploadDir.resolve(id + ".json");
+    }
+
+    private void persist(OpenUpload upload) throws IOException {
+        Path temp = Files.createTempFile(uploadDir, "upload", ".tmp");
+        mapper.writeValue(temp.toFile(), upload.session);
+        Files.move(temp, sessionFile(upload.session.getId()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private UploadSession copy(UploadSession session) {
+        return mapper.convertValue(session, UploadSession.class);
+    }
+
+    private static String firstMissing(UploadSession session) {
+        List<Integer> first = new ArrayList<>();
+        for (Integer index : session.getMissingChunks()) {
+            if (first.size() == 20) break;
+            first.add(index);
+        }
+        return first + (session.getMissingChunks().size() > first.size() ? " ..." : "");
+    }
+
+    // The channel is shared by all chunk writers of the session: positional writes need no lock
+    private class OpenUpload {
+        private final UploadSession session;
+        private volatile FileChannel channel;
+
+        OpenUpload(UploadSession session) {
+            this.session = session;
+        }
+
+        FileChannel channel() throws IOException {
+            FileChannel current = channel;
+            if (current == null) {
+                synchronized (this) {
+                    if (channel == null) {
+                        channel = FileChannel.open(dataFile(session.getId()), StandardOpenOption.WRITE);
+                    }
+                    current = channel;
+                }
+            }
+            return current;
+        }
+
+        // Chunks are only in the page cache until now; the restore must not start from less
+        void flushAndClose() throws IOException {
+            FileChannel current = channel;
+            channel = null;
+            if (current != null) {
+                try (current) {
+                    current.force(false);
+                }
+            }
+        }
+
+        void closeQuietly() {
+            FileChannel current = channel;
+            channel = null;
+            if (current == null) {
+                return;
+            }
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("Could not close upload {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+}
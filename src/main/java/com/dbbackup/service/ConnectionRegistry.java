@@ -0,0 +1,349 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsConnectionPoolListener;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Keeps one JDBC pool or MongoClient per target (host, port, database, credentials) so connection
+// tests and metadata queries reuse warm connections instead of paying a handshake every time.
+// Targets unused for the idle timeout are closed, and the least recently used one goes when the
+// registry is full. A target is never closed while something has borrowed it: a dump can hold a
+// connection or tail the oplog for hours, so one that has to go is closed on its last release.
+// Connection test results are cached for a few seconds.
+@Slf4j
+@Service
+public class ConnectionRegistry {
+
+    private final int maxTargets;
+    private final long idleTimeoutMillis;
+    private final long healthTtlMillis;
+    private final int mySqlPoolSize;
+    private final MeterRegistry registry;
+
+    // Access-ordered, so iteration starts at the least recently used target
+    private final LinkedHashMap<Target, PooledTarget> targets = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Target, HealthResult> health = new ConcurrentHashMap<>();
+    private final Set<String> poolNames = ConcurrentHashMap.newKeySet();
+
+    public ConnectionRegistry(@Value("${quickdump.connections.max-targets:32}") int maxTargets,
+                              @Value("${quickdump.connections.idle-timeout:10m}") Duration idleTimeout,
+                              @Value("${quickdump.connections.health-ttl:5s}") Duration healthTtl,
+                              @Value("${quickdump.connections.mysql-pool-size:4}") int mySqlPoolSize,
+                              MeterRegistry registry) {
+        this.maxTargets = maxTargets;
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.healthTtlMillis = healthTtl.toMillis();
+        this.mySqlPoolSize = mySqlPoolSize;
+        this.registry = registry;
+    }
+
+    // Borrowed from the target's pool; closing it hands it back
+    public Connection mySqlConnection(BackupRequest request) throws SQLException {
+        PooledTarget pooled = acquire(Target.of(request, "mysql"));
+        Connection conn;
+        try {
+            conn = ((HikariDataSource) pooled.resource).getConnection();
+        } catch (SQLException | RuntimeException e) {
+            release(pooled);
+            throw e;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                        try {
+                            conn.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) {
+                                release(pooled);
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    // Not pooled: for sessions whose state must not be handed to the next borrower, like an open
+    // snapshot transaction or a streaming result. Driver properties come on top of the credentials.
+    public Connection openMySqlConnection(BackupRequest request, Properties properties) throws SQLException {
+        Properties info = new Properties();
+        info.putAll(properties);
+        info.setProperty("user", request.getUsername());
+        info.setProperty("password", request.getPassword() != null ? request.getPassword() : "");
+        return DriverManager.getConnection(
+                "jdbc:mysql://" + request.getHost() + ":" + request.getPort() + "/" + request.getDbName(), info);
+    }
+
+    // The client is shared by every caller of the same target: close the lease, never the client
+    public MongoLease mongoClient(BackupRequest request) {
+        return new MongoLease(this, acquire(Target.of(request, "mongodb")));
+    }
+
+    public boolean testConnection(BackupRequest request) {
+        String dbType = request.getDbType().toLowerCase();
+        if (!"mysql".equals(dbType) && !"mongodb".equals(dbType)) {
+            return false;
+        }
+        Target target = Target.of(request, dbType);
+        HealthResult cached = health.get(target);
+        if (cached != null && System.currentTimeMillis() - cached.checkedAt() < healthTtlMillis) {
+            return cached.healthy();
+        }
+
+        boolean healthy = "mysql".equals(dbType) ? pingMySql(request) : pingMongo(request);
+        health.put(target, new HealthResult(healthy, System.currentTimeMillis()));
+        return healthy;
+    }
+
+    private boolean pingMySql(BackupRequest request) {
+        try (Connection conn = mySqlConnection(request)) {
+            return conn.isValid(5);
+        } catch (SQLException e) {
+            log.error("MySQL connection failed: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private boolean pingMongo(BackupRequest request) {
+        try (MongoLease mongo = mongoClient(request)) {
+            mongo.client().getDatabase(request.getDbName()).runCommand(new Document("ping", 1));
+            return true;
+        } catch (Exception e) {
+            log.error("Mongodb connection failed: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private PooledTarget acquire(Target target) {
+        PooledTarget evicted = null;
+        PooledTarget pooled;
+        synchronized (targets) {
+            pooled = targets.get(target);
+            if (pooled == null) {
+                pooled = new PooledTarget(open(target));
+                targets.put(target, pooled);
+            }
+            pooled.borrowers++;
+            pooled.lastUsed = System.currentTimeMillis();
+            if (targets.size() > maxTargets) {
+                evicted = evictLeastRecentlyUsed();
+            }
+        }
+        if (evicted != null) {
+            close(evicted);
+        }
+        return pooled;
+    }
+
+    // The least recently used target nobody is borrowing is closed right away. If every one is in
+    // use, the eldest leaves the registry and is closed when its last borrower releases it.
+    private PooledTarget evictLeastRecentlyUsed() {
+        Map.Entry<Target, PooledTarget> eldest = null;
+        for (Map.Entry<Target, PooledTarget> entry : targets.entrySet()) {
+            if (eldest == null) {
+                eldest = entry;
+            }
+            if (entry.getValue().borrowers == 0) {
+                eldest = entry;
+                break;
+            }
+        }
+        targets.remove(eldest.getKey());
+        health.remove(eldest.getKey());
+        PooledTarget pooled = eldest.getValue();
+        if (pooled.borrowers > 0) {
+            log.info("Connection registry full, closing least recently used {} once it is released", eldest.getKey());
+            pooled.retired = true;
+            return null;
+        }
+        log.info("Connection registry full, closing least recently used {}", eldest.getKey());
+        return pooled;
+    }
+
+    private void release(PooledTarget pooled) {
+        boolean close;
+        synchronized (targets) {
+            pooled.borrowers--;
+            pooled.lastUsed = System.currentTimeMillis();
+            close = pooled.retired && pooled.borrowers == 0;
+        }
+        if (close) {
+            close(pooled);
+        }
+    }
+
+    // Pools are created lazily and don't connect until first used, so this never blocks on the network
+    private Object open(Target target) {
+        if ("mysql".equals(target.dbType())) {
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl("jdbc:mysql://" + target.host() + ":" + target.port() + "/" + target.dbName());
+            config.setUsername(target.username());
+            config.setPassword(target.password());
+            config.setPoolName(poolName(target));
+            config.setMaximumPoolSize(mySqlPoolSize);
+            config.setMinimumIdle(0);
+            config.setIdleTimeout(Math.max(idleTimeoutMillis, 10_000));
+            config.setConnectionTimeout(5_000);
+            config.setInitializationFailTimeout(-1);
+            // hikaricp_connections_* per pool name
+            config.setMetricRegistry(registry);
+            return new HikariDataSource(config);
+        }
+
+        MongoClientSettings settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(mongoUri(target)))
+                .applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(5, TimeUnit.SECONDS))
+                .applyToSocketSettings(socket -> socket.connectTimeout(5, TimeUnit.SECONDS))
+                .applyToConnectionPoolSettings(pool -> pool
+                        .minSize(0)
+                        .maxConnectionIdleTime(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                        .addConnectionPoolListener(new MongoMetricsConnectionPoolListener(registry)))
+                .build();
+        return MongoClients.create(settings);
+    }
+
+    // hikaricp_* meters are tagged with the pool name, so no two live pools may share one. A
+    // changed password opens a second pool for the same user while the old one is still around.
+    private String poolName(Target target) {
+        String base = "quickdump-" + (target.username() != null && !target.username().isEmpty() ? target.username() + "@" : "")
+                + target.host() + ":" + target.port() + "/" + target.dbName();
+        String name = base;
+        for (int i = 2; !poolNames.add(name); i++) {
+            name = base + "#" + i;
+        }
+        return name;
+    }
+
+    private void close(PooledTarget pooled) {
+        pooled.close();
+        if (pooled.resource instanceof HikariDataSource dataSource) {
+            poolNames.remove(dataSource.getPoolName());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${quickdump.connections.eviction-interval:60000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        List<PooledTarget> idle = new ArrayList<>();
+        synchronized (targets) {
+            Iterator<Map.Entry<Target, PooledTarget>> it = targets.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Target, PooledTarget> entry = it.next();
+                if (entry.getValue().borrowers == 0 && entry.getValue().lastUsed < cutoff) {
+                    it.remove();
+                    health.remove(entry.getKey());
+                    idle.add(entry.getValue());
+                }
+            }
+        }
+        if (!idle.isEmpty()) {
+            log.info("Closing {} idle connection pools", idle.size());
+        }
+        idle.forEach(this::close);
+        health.values().removeIf(result -> System.currentTimeMillis() - result.checkedAt() >= healthTtlMillis);
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        List<PooledTarget> all;
+        synchronized (targets) {
+            all = new ArrayList<>(targets.values());
+            targets.clear();
+        }
+        all.forEach(this::close);
+    }
+
+    private static String mongoUri(Target target) {
+        if (target.username() == null || target.username().isEmpty()) {
+            return "mongodb://" + target.host() + ":" + target.port() + "/" + target.dbName();
+        }
+        return "mongodb://" + target.username() + ":" + target.password() + "@" +
+                target.host() + ":" + target.port() + "/" + target.dbName();
+    }
+
+    // Credentials are part of the key: a changed password gets its own pool rather than a broken one
+    private record Target(String dbType, String host, int port, String dbName, String username, String password) {
+        static Target of(BackupRequest request, String dbType) {
+            return new Target(dbType, request.getHost(), request.getPort(), request.getDbName(),
+                    request.getUsername(), request.getPassword());
+        }
+
+        @Override
+        public String toString() {
+            return dbType + "://" + (username != null ? username + "@" : "") + host + ":" + port + "/" + dbName;
+        }
+    }
+
+    private record HealthResult(boolean healthy, long checkedAt) {
+    }
+
+    public static final class MongoLease implements AutoCloseable {
+        private final ConnectionRegistry registry;
+        private final PooledTarget pooled;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private MongoLease(ConnectionRegistry registry, PooledTarget pooled) {
+            this.registry = registry;
+            this.pooled = pooled;
+        }
+
+        public MongoClient client() {
+            return (MongoClient) pooled.resource;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                registry.release(pooled);
+            }
+        }
+    }
+
+    // borrowers, lastUsed and retired are guarded by the targets lock
+    private static final class PooledTarget {
+        private final Object resource;
+        private int borrowers;
+        private long lastUsed;
+        private boolean retired;
+
+        private PooledTarget(Object resource) {
+            this.resource = resource;
+        }
+
+        private void close() {
+            try {
+                ((AutoCloseable) resource).close();
+            } catch (Exception e) {
+                log.warn("Closing connection pool failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.FleetBackup;
+import com.dbbackup.model.FleetBackupRequest;
+import com.dbbackup.model.Job;
+import com.dbbackup.model.JobState;
+import com.dbbackup.utility.ConcurrencyLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Backs up many databases as one batch. Targets naming no database are expanded to every
+// non-system database on that server. Each database becomes an ordinary backup job, started
+// biggest first (longest processing time first keeps the slowest dump from starting last and
+// stretching the whole batch) whenever the batch's global, per-host and per-disk permits allow,
+// and the application-wide ones shared with the scheduler and other batches; a database whose
+// host or disk is busy is passed over for the next biggest one that can start.
+@Slf4j
+@Service
+public class FleetBackupService {
+
+    private static final Set<String> MYSQL_SYSTEM_DATABASES = Set.of("information_schema", "performance_schema", "mysql", "sys");
+    private static final Set<String> MONGO_SYSTEM_DATABASES = Set.of("admin", "local", "config");
+
+    private final JobService jobService;
+    private final BackupService backupService;
+    private final ConnectionRegistry connectionRegistry;
+    private final BackupPermitService backupPermitService;
+    private final int defaultMaxConcurrent;
+    private final int defaultMaxConcurrentPerHost;
+    private final int defaultMaxConcurrentPerDisk;
+    private final int maxFinishedBatches;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService planner;
+
+    // Guarded by "this"
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+
+    public FleetBackupService(JobService jobService,
+                              BackupService backupService,
+                              ConnectionRegistry connectionRegistry,
+                              BackupPermitService backupPermitService,
+                              @Value("${quickdump.fleet.max-concurrent:4}") int defaultMaxConcurrent,
+                              @Value("${quickdump.fleet.max-concurrent-per-host:2}") int defaultMaxConcurrentPerHost,
+                              @Value("${quickdump.fleet.max-concurrent-per-disk:2}") int defaultMaxConcurrentPerDisk,
+                              @Value("${quickdump.fleet.history-size:50}") int maxFinishedBatches) {
+        this.jobService = jobService;
+        this.backupService = backupService;
+        this.connectionRegistry = connectionRegistry;
+        this.backupPermitService = backupPermitService;
+        this.defaultMaxConcurrent = defaultMaxConcurrent;
+        this.defaultMaxConcurrentPerHost = defaultMaxConcurrentPerHost;
+        this.defaultMaxConcurrentPerDisk = defaultMaxConcurrentPerDisk;
+        this.maxFinishedBatches = maxFinishedBatches;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Discovery talks to every server of the batch, so it runs off the request thread
+        this.planner = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fleet-planner-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Returns at once; the batch is planned and run in the background and polled by id
+    public synchronized FleetBackup submit(FleetBackupRequest request) {
+        if (request.getTargets() == null || request.getTargets().isEmpty()) {
+            throw new IllegalArgumentException("A fleet backup needs at least one target");
+        }
+        for (BackupRequest target : request.getTargets()) {
+            if (target.getHost() == null || target.getDbType() == null) {
+                throw new IllegalArgumentException("Every target needs a dbType and a host");
+            }
+            String dbType = target.getDbType().toLowerCase();
+            if (!"mysql".equals(dbType) && !"mongodb".equals(dbType)) {
+                throw new IllegalArgumentException("Unsupported database type: " + target.getDbType());
+            }
+        }
+
+        Batch batch = new Batch(new FleetBackup(UUID.randomUUID().toString()), new ConcurrencyLimiter(
+                orDefault(request.getMaxConcurrent(), defaultMaxConcurrent),
+                orDefault(request.getMaxConcurrentPerHost(), defaultMaxConcurrentPerHost),
+                orDefault(request.getMaxConcurrentPerDisk(), defaultMaxConcurrentPerDisk)));
+        batches.put(batch.fleet.getId(), batch);
+        evictFinishedBatches();
+
+        List<BackupRequest> targets = request.getTargets().stream().map(this::copy).toList();
+        planner.execute(() -> {
+            try {
+                plan(batch, targets);
+            } catch (RuntimeException e) {
+                log.error("Fleet backup {} could not be planned: {}", batch.fleet.getId(), e.getMessage(), e);
+                synchronized (this) {
+                    batch.fleet.setError(e.getMessage());
+                    batch.fleet.setFinishedAt(Instant.now());
+                    batch.fleet.setState(JobState.FAILED);
+                }
+            }
+        });
+        return batch.fleet;
+    }
+
+    public synchronized FleetBackup getBatch(String id) throws FileNotFoundException {
+        Batch batch = batches.get(id);
+        if (batch == null) {
+            throw new FileNotFoundException("No fleet backup " + id);
+        }
+        return batch.fleet;
+    }
+
+    public synchronized List<FleetBackup> listBatches() {
+        List<FleetBackup> all = new ArrayList<>();
+        batches.values().forEach(b -> all.add(b.fleet));
+        Collections.reverse(all);
+        return all;
+    }
+
+    private void plan(Batch batch, List<BackupRequest> targets) {
+        List<Planned> planned = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Map<String, Map<String, Long>> sizesByServer = new HashMap<>();
+        for (BackupRequest target : targets) {
+            boolean all = target.getDbName() == null || target.getDbName().isBlank() || "*".equals(target.getDbName());
+            Map<String, Long> sizes;
+            try {
+                sizes = sizesByServer.computeIfAbsent(serverKey(target), k -> discover(target));
+            } catch (RuntimeException e) {
+                log.warn("Fleet backup {}: could not list databases on {}:{}: {}",
+                        batch.fleet.getId(), target.getHost(), target.getPort(), e.getMessage());
+                if (all) {
+                    // Nothing to back up, but the target must not vanish from the result
+                    planned.add(new Planned(target, failedItem(target, "*", "Could not list databases: " + e.getMessage())));
+                    continue;
+                }
+                sizes = Map.of();
+            }
+
+            List<String> names = all ? new ArrayList<>(sizes.keySet()) : List.of(target.getDbName());
+            for (String name : names) {
+                if (!seen.add(serverKey(target) + "/" + name)) {
+                    continue;
+                }
+                BackupRequest request = copy(target);
+                request.setDbName(name);
+                FleetBackup.Item item = newItem(request);
+                item.setEstimatedBytes(sizes.getOrDefault(name, -1L));
+                item.setDisk(diskOf(request));
+                planned.add(new Planned(request, item));
+            }
+        }
+
+        // Biggest first; a database whose size is unknown might be the biggest, so it goes first too
+        planned.sort(Comparator.comparingLong((Planned p) -> p.item.getEstimatedBytes() < 0 ? Long.MAX_VALUE : p.item.getEstimatedBytes())
+                .reversed());
+
+        synchronized (this) {
+            batch.fleet.setStartedAt(Instant.now());
+            batch.fleet.setState(JobState.RUNNING);
+            for (Planned p : planned) {
+                batch.fleet.getItems().add(p.item);
+                if (p.item.getState() == JobState.QUEUED) {
+                    batch.pending.add(p);
+                }
+            }
+            log.info("Fleet backup {}: {} databases planned", batch.fleet.getId(), batch.pending.size());
+            dispatch(batch);
+            finishIfDone(batch);
+        }
+    }
+
+    // Database name -> estimated size in bytes, system databases left out
+    private Map<String, Long> discover(BackupRequest target) {
+        BackupRequest server = copy(target);
+        server.setDbName("");
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        if ("mysql".equalsIgnoreCase(target.getDbType())) {
+            try (Connection conn = connectionRegistry.mySqlConnection(server);
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery(
+                         "SELECT s.SCHEMA_NAME, COALESCE(SUM(t.DATA_LENGTH), 0) FROM information_schema.SCHEMATA s " +
+                                 "LEFT JOIN information_schema.TABLES t ON t.TABLE_SCHEMA = s.SCHEMA_NAME " +
+                                 "GROUP BY s.SCHEMA_NAME")) {
+                while (rs.next()) {
+                    if (!MYSQL_SYSTEM_DATABASES.contains(rs.getString(1).toLowerCase())) {
+                        sizes.put(rs.getString(1), rs.getLong(2));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        } else {
+            try (ConnectionRegistry.MongoLease mongo = connectionRegistry.mongoClient(server)) {
+                for (Document db : mongo.client().listDatabases()) {
+                    String name = db.getString("name");
+                    if (!MONGO_SYSTEM_DATABASES.contains(name)) {
+                        Number size = db.get("sizeOnDisk", Number.class);
+                        sizes.put(name, size != null ? size.longValue() : -1L);
+                    }
+                }
+            }
+        }
+        return sizes;
+    }
+
+    // Starts every pending database that has permits, biggest first; the others wait for a finishing one
+    private void dispatch(Batch batch) {
+        Iterator<Planned> it = batch.pending.iterator();
+        while (it.hasNext()) {
+            Planned p = it.next();
+            String host = p.request.getHost();
+            String disk = p.item.getDisk();
+            if (!backupPermitService.tryAcquire(batch.limiter, host, disk)) {
+                continue;
+            }
+            try {
+                Job job = jobService.submitBackup(p.request, finished -> onFinished(batch, p, finished));
+                it.remove();
+                batch.running++;
+                p.item.setJobId(job.getId());
+                p.item.setStartedAt(Instant.now());
+                p.item.setState(JobState.RUNNING);
+            } catch (RejectedExecutionException e) {
+                // Job queue is full; the database stays pending until a job finishes or the next tick
+                backupPermitService.release(batch.limiter, host, disk);
+                return;
+            }
+        }
+    }
+
+    private synchronized void onFinished(Batch batch, Planned p, Job job) {
+        backupPermitService.release(batch.limiter, p.request.getHost(), p.item.getDisk());
+        batch.running--;
+        FleetBackup.Item item = p.item;
+        item.setFinishedAt(job.getFinishedAt());
+        item.setBytes(job.getBytesProcessed());
+        item.setResultPath(job.getResultPath());
+        item.setError(job.getError());
+        item.setState(job.getState());
+        dispatch(batch);
+        finishIfDone(batch);
+    }
+
+    private void finishIfDone(Batch batch) {
+        if (!batch.pending.isEmpty() || batch.running > 0 || batch.fleet.isFinished()) {
+            return;
+        }
+        FleetBackup fleet = batch.fleet;
+        fleet.setFinishedAt(Instant.now());
+        fleet.setState(fleet.getFailed() == 0 ? JobState.SUCCEEDED : JobState.FAILED);
+        log.info("Fleet backup {} finished: {} succeeded, {} failed, {} bytes in {} ms",
+                fleet.getId(), fleet.getSucceeded(), fleet.getFailed(), fleet.getBytesWritten(), fleet.getDurationMillis());
+    }
+
+    // Picks up databases left pending because the job queue was full
+    @Scheduled(fixedDelayString = "${quickdump.fleet.tick:15000}")
+    public synchronized void tick() {
+        batches.values().stream().filter(b -> !b.fleet.isFinished()).forEach(this::dispatch);
+    }
+
+    // The file store (or bucket) the backup is written to; backups sharing one compete for it
+    private String diskOf(BackupRequest request) {
+        return backupService.outputResource(request);
+    }
+
+    private FleetBackup.Item newItem(BackupRequest request) {
+        FleetBackup.Item item = new FleetBackup.Item();
+        item.setDbType(request.getDbType().toLowerCase());
+        item.setHost(request.getHost());
+        item.setPort(request.getPort());
+        item.setDbName(request.getDbName());
+        item.setEstimatedBytes(-1);
+        return item;
+    }
+
+    private FleetBackup.Item failedItem(BackupRequest target, String dbName, String error) {
+        FleetBackup.Item item = newItem(target);
+        item.setDbName(dbName);
+        item.setState(JobState.FAILED);
+        item.setError(error);
+        return item;
+    }
+
+    private void evictFinishedBatches() {
+        List<String> finished = batches.values().stream()
+                .filter(b -> b.fleet.isFinished())
+                .map(b -> b.fleet.getId())
+                .toList();
+        for (int i = 0; i < finished.size() - maxFinishedBatches; i++) {
+            batches.remove(finished.get(i));
+        }
+    }
+
+    // Every database gets its own request, and with it its own progress tracker
+    private BackupRequest copy(BackupRequest request) {
+        return mapper.convertValue(request, BackupRequest.class);
+    }
+
+    private static String serverKey(BackupRequest request) {
+        return request.getDbType().toLowerCase() + "://" + request.getUsername() + "@" + request.getHost().toLowerCase() + ":" + request.getPort();
+    }
+
+    private static int orDefault(int value, int fallback) {
+        return value > 0 ? value : fallback;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        planner.shutdownNow();
+    }
+
+    private static final class Batch {
+        private final FleetBackup fleet;
+        private final ConcurrencyLimiter limiter;
+        private final Deque<Planned> pending = new ArrayDeque<>();
+        private int running;
+
+        private Batch(FleetBackup fleet, ConcurrencyLimiter limiter) {
+            this.fleet = fleet;
+            this.limiter = limiter;
+        }
+    }
+
+    private record Planned(BackupRequest request, FleetBackup.Item item) {
+    }
+}
@@ -0,0 +1,504 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupChain;
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.BackgroundPipe;
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.ProcessOutputCollector;
+import com.dbbackup.utility.ZipArchiveWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Backup chains: a full backup records where the binlog (MySQL) or oplog (MongoDB) stood when it
+// was taken, and each incremental captures only the changes from the previous link's position up
+// to now. Restoring a chain loads the full backup and replays the incrementals in order, optionally
+// stopping at a point in time.
+//
+// Needs binary logging on the MySQL server (REPLICATION CLIENT/SLAVE privileges for the backup user)
+// and a replica set on the MongoDB side, since a standalone mongod keeps no oplog.
+@Slf4j
+@Service
+public class IncrementalBackupService {
+
+    public static final String FULL = "full";
+    public static final String INCREMENTAL = "incremental";
+
+    private static final String BINLOG_ENTRY = ".binlog.sql";
+    private static final String OPLOG_ENTRY = "oplog.bson";
+    private static final String TRANSACTION_NS = "admin.$cmd";
+
+    private final RestoreService restoreService;
+    private final ConnectionRegistry connectionRegistry;
+    private final ArchiveVerificationService archiveVerificationService;
+    private final PipelineService pipelineService;
+    private final Path chainsDir;
+    private final String sourceDataOption;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // One lock per source database: two incrementals of the same chain must not overlap
+    private final Map<String, Object> chainLocks = new ConcurrentHashMap<>();
+
+    public IncrementalBackupService(RestoreService restoreService,
+                                    ConnectionRegistry connectionRegistry,
+                                    ArchiveVerificationService archiveVerificationService,
+                                    PipelineService pipelineService,
+                                    @Value("${quickdump.chains.path:backups/chains}") String chainsPath,
+                                    @Value("${quickdump.mysql.source-data-option:--source-data=2}") String sourceDataOption) {
+        this.restoreService = restoreService;
+        this.connectionRegistry = connectionRegistry;
+        this.archiveVerificationService = archiveVerificationService;
+        this.pipelineService = pipelineService;
+        this.chainsDir = Paths.get(chainsPath);
+        this.sourceDataOption = sourceDataOption;
+    }
+
+    public static boolean isFullBackup(BackupRequest request) {
+        return FULL.equalsIgnoreCase(request.getBackupType());
+    }
+
+    public static boolean isIncrementalBackup(BackupRequest request) {
+        return INCREMENTAL.equalsIgnoreCase(request.getBackupType());
+    }
+
+    // mysqldump options that make a single-stream dump consistent and write the binlog position
+    // into its header (--master-data=2 on servers older than 8.0.26)
+    public List<String> mySqlPositionOptions() {
+        return List.of("--single-transaction", sourceDataOption);
+    }
+
+    // SHOW MASTER STATUS was renamed in 8.4; older servers only know the old name
+    public static String readBinlogPosition(Connection conn) throws SQLException {
+        try {
+            return readBinlogPosition(conn, "SHOW BINARY LOG STATUS");
+        } catch (SQLSyntaxErrorException e) {
+            return readBinlogPosition(conn, "SHOW MASTER STATUS");
+        }
+    }
+
+    private static String readBinlogPosition(Connection conn, String query) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(query)) {
+            if (!rs.next()) {
+                throw new SQLException("Binary logging is disabled on the server");
+            }
+            return rs.getString("File") + ":" + rs.getLong("Position");
+        }
+    }
+
+    // Taken before mongodump starts; replaying from a slightly earlier point is harmless since
+    // oplog entries are idempotent
+    public String currentOplogPosition(BackupRequest request) {
+        try (ConnectionRegistry.MongoLease mongo = connectionRegistry.mongoClient(request)) {
+            RawBsonDocument last = oplog(mongo.client()).find().sort(Sorts.descending("$natural")).limit(1).first();
+            if (last == null) {
+                throw new IllegalStateException("The oplog is empty; is " + request.getHost() + " a replica set member?");
+            }
+            return formatTimestamp(last.getTimestamp("ts"));
+        }
+    }
+
+    // Starts a new chain with the full backup just written
+    public BackupChain recordFull(BackupRequest request, File zipFile, Instant takenAt, String position) throws IOException {
+        if (position == null) {
+            throw new IllegalStateException("The full backup did not report a log position; it cannot start a chain");
+        }
+        synchronized (lockFor(request)) {
+            BackupChain chain = new BackupChain();
+            chain.setId(chainKey(request) + "_" + takenAt.toEpochMilli());
+            chain.setDbType(request.getDbType().toLowerCase());
+            chain.setHost(request.getHost());
+            chain.setPort(request.getPort());
+            chain.setDbName(request.getDbName());
+            chain.getLinks().add(link(FULL, zipFile, takenAt, null, position));
+            saveChain(chain);
+            log.info("Started backup chain {} at {}", chain.getId(), position);
+            return chain;
+        }
+    }
+
+    public File backupIncremental(BackupRequest request, CompressionSettings compression) throws IOException, InterruptedException {
+        String dbType = request.getDbType().toLowerCase();
+        if (!"mysql".equals(dbType) && !"mongodb".equals(dbType)) {
+            throw new UnsupportedOperationException("Unsupported database type: " + dbType);
+        }
+
+        synchronized (lockFor(request)) {
+            BackupChain chain = latestChain(request).orElseThrow(() -> new IllegalStateException(
+                    "No full backup recorded for " + request.getDbName() + " on " + request.getHost() + "; take a full backup first"));
+            String start = chain.getLinks().get(chain.getLinks().size() - 1).getEndPosition();
+            request.getProgress().phase("dumping");
+
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            File zipFile = BackupService.claimArchiveFile(new File(BackupService.ARCHIVE_DIR), request.getDbName() + "_" + timestamp, "_incr");
+            String folderName = zipFile.getName().substring(0, zipFile.getName().length() - ".zip".length());
+            Instant takenAt = Instant.now();
+
+            String end;
+            MessageDigest digest = ArchiveChecksums.newDigest();
+            try (OutputStream out = new BufferedOutputStream(new DigestOutputStream(new FileOutputStream(zipFile), digest), 64 * 1024)) {
+                ZipArchiveWriter archive = new ZipArchiveWriter(out);
+                if ("mysql".equals(dbType)) {
+                    OutputStream entryOut = archive.putNextEntry(
+                            compression.entryName(folderName + "/" + request.getDbName() + BINLOG_ENTRY), compression.zipLevel());
+                    try (OutputStream entry = compression.wrap(entryOut)) {
+                        end = dumpBinlog(request, start, entry);
+                    }
+                } else {
+                    OutputStream entryOut = archive.putNextEntry(
+                            compression.entryName(folderName + "/" + OPLOG_ENTRY), compression.zipLevel());
+                    try (OutputStream entry = compression.wrap(entryOut)) {
+                        end = dumpOplog(request, start, entry);
+                    }
+                }
+                archive.closeEntry();
+                archive.finish();
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                Files.deleteIfExists(zipFile.toPath());
+                throw e;
+            }
+            ArchiveChecksums.writeSidecar(zipFile.toPath(), ArchiveChecksums.hex(digest));
+
+            chain.getLinks().add(link(INCREMENTAL, zipFile, takenAt, start, end));
+            saveChain(chain);
+            log.info("Incremental backup of {} from {} to {} added to chain {}", request.getDbName(), start, end, chain.getId());
+            return zipFile;
+        }
+    }
+
+    // Binlog events of this database between the two positions, as SQL that mysql can replay
+    private String dumpBinlog(BackupRequest request, String start, OutputStream target) throws IOException, InterruptedException {
+        String end;
+        List<String> logFiles;
+        try (Connection conn = connectionRegistry.mySqlConnection(request)) {
+            end = readBinlogPosition(conn);
+            logFiles = binlogFilesBetween(conn, logFile(start), logFile(end));
+        } catch (SQLException e) {
+            throw new IOException("Could not read binlog status: " + e.getMessage(), e);
+        }
+
+        List<String> command = new ArrayList<>(List.of(
+                "mysqlbinlog",
+                "--read-from-remote-server",
+                "--host=" + request.getHost(),
+                "--port=" + request.getPort(),
+                "--user=" + request.getUsername(),
+                "--password=" + request.getPassword(),
+                "--database=" + request.getDbName(),
+                "--start-position=" + logOffset(start),
+                "--stop-position=" + logOffset(end)
+        ));
+        command.addAll(logFiles);
+
+        Process process = new ProcessBuilder(command).start();
+        ProcessOutputCollector errors = ProcessOutputCollector.start(process.getErrorStream(), "binlog-stderr", request.getProgress());
+        try {
+            try (InputStream events = request.getProgress().countDump(process.getInputStream())) {
+                events.transferTo(target);
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new RuntimeException("Incremental backup failed. Exit code: " + exitCode + "\nOutput:\n" + errors.await());
+            }
+            return end;
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    // start/stop positions apply to the first/last file, so every file in between is read whole
+    private List<String> binlogFilesBetween(Connection conn, String first, String last) throws SQLException {
+        List<String> files = new ArrayList<>();
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SHOW BINARY LOGS")) {
+            while (rs.next()) {
+                String name = rs.getString("Log_name");
+                if (name.compareTo(first) >= 0 && name.compareTo(last) <= 0) {
+                    files.add(name);
+                }
+            }
+        }
+        if (files.isEmpty() || !files.get(0).equals(first)) {
+            throw new IllegalStateException("Binlog " + first + " has been purged; take a new full backup");
+        }
+        return files;
+    }
+
+    // Oplog entries for this database after the start timestamp, written back to back as raw BSON:
+    // the oplog.bson layout mongorestore --oplogReplay expects
+    private String dumpOplog(BackupRequest request, String start, OutputStream target) throws IOException {
+        BsonTimestamp from = parseTimestamp(start);
+        try (ConnectionRegistry.MongoLease mongo = connectionRegistry.mongoClient(request)) {
+            MongoCollection<RawBsonDocument> oplog = oplog(mongo.client());
+
+            RawBsonDocument oldest = oplog.find().sort(Sorts.ascending("$natural")).limit(1).first();
+            if (oldest == null || oldest.getTimestamp("ts").compareTo(from) > 0) {
+                throw new IllegalStateException("The oplog no longer reaches back to " + start + "; take a new full backup");
+            }
+
+            BsonTimestamp last = from;
+            String namespace = "^" + Pattern.quote(request.getDbName()) + "\\.";
+            for (RawBsonDocument op : oplog.find(Filters.and(
+                            Filters.gt("ts", from),
+                            // Multi-document transactions are logged as applyOps commands on admin.$cmd
+                            Filters.or(
+                                    Filters.regex("ns", namespace),
+                                    Filters.and(Filters.eq("ns", TRANSACTION_NS), Filters.regex("o.applyOps.ns", namespace)))))
+                    .sort(Sorts.ascending("$natural"))) {
+                ByteBuffer bytes = forDatabase(op, request.getDbName()).getByteBuffer().asNIO();
+                target.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                last = op.getTimestamp("ts");
+            }
+            return formatTimestamp(last);
+        }
+    }
+
+    // A transaction may also have written to other databases; only this one's operations are kept
+    static RawBsonDocument forDatabase(RawBsonDocument op, String dbName) {
+        if (!TRANSACTION_NS.equals(op.getString("ns").getValue())) {
+            return op;
+        }
+        BsonDocument entry = op.decode(new BsonDocumentCodec());
+        BsonDocument command = entry.getDocument("o");
+        BsonArray ops = command.getArray("applyOps");
+        BsonArray kept = new BsonArray();
+        for (BsonValue inner : ops) {
+            BsonValue ns = inner.asDocument().get("ns");
+            if (ns != null && ns.isString() && ns.asString().getValue().startsWith(dbName + ".")) {
+                kept.add(inner);
+            }
+        }
+        if (kept.size() == ops.size()) {
+            return op;
+        }
+        command.put("applyOps", kept);
+        return new RawBsonDocument(entry, new BsonDocumentCodec());
+    }
+
+    public List<BackupChain> listChains() throws IOException {
+        if (!Files.isDirectory(chainsDir)) {
+            return List.of();
+        }
+        List<BackupChain> chains = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(chainsDir, "*.json")) {
+            for (Path file : files) {
+                chains.add(mapper.readValue(file.toFile(), BackupChain.class));
+            }
+        }
+        chains.sort(Comparator.comparing((BackupChain c) -> c.getLinks().get(0).getCreatedAt()).reversed());
+        return chains;
+    }
+
+    public BackupChain getChain(String id) throws IOException {
+        Path file = chainFile(id);
+        if (!Files.exists(file)) {
+            throw new FileNotFoundException("No backup chain " + id);
+        }
+        return mapper.readValue(file.toFile(), BackupChain.class);
+    }
+
+    // Loads the full backup, then replays incrementals in order. With a point in time, the first
+    // incremental taken after it is cut at that time and the rest are skipped.
+    public String restoreChain(String chainId, BackupRequest target, Instant pointInTime) throws IOException, InterruptedException {
+        BackupChain chain = getChain(chainId);
+        if (!chain.getDbType().equalsIgnoreCase(target.getDbType())) {
+            throw new IllegalArgumentException("Chain " + chainId + " holds " + chain.getDbType() + " backups");
+        }
+        // Incrementals replay into the database they were taken from: binlog events name it in
+        // their USE statements and oplog entries in their namespaces. A full backup restored under
+        // another name would leave the chain split across two databases.
+        if (target.getDbName() == null || target.getDbName().isBlank()) {
+            target.setDbName(chain.getDbName());
+        } else if (chain.getLinks().size() > 1 && !target.getDbName().equals(chain.getDbName())) {
+            throw new IllegalArgumentException("Chain " + chainId + " replays into " + chain.getDbName()
+                    + "; restore it there, or restore only its full backup to use another database name");
+        }
+        BackupChain.Link full = chain.getLinks().get(0);
+        if (pointInTime != null && full.getCreatedAt().isAfter(pointInTime)) {
+            throw new IllegalArgumentException("Point in time " + pointInTime + " is before the full backup of chain " + chainId);
+        }
+
+        StringBuilder output = new StringBuilder();
+        // Every incremental is checked up front: a damaged one must not be found halfway through the
+        // replay. The full backup is checked by restoreBackup.
+        for (BackupChain.Link link : chain.getLinks().subList(1, chain.getLinks().size())) {
+            archiveVerificationService.checkBeforeRestore(Path.of(link.getFile()), null);
+        }
+        output.append(restoreService.restoreBackup(Path.of(full.getFile()), target));
+
+        int applied = 0;
+        for (BackupChain.Link link : chain.getLinks().subList(1, chain.getLinks().size())) {
+            target.getProgress().phase("replaying " + Path.of(link.getFile()).getFileName());
+            boolean last = pointInTime != null && link.getCreatedAt().isAfter(pointInTime);
+            output.append(applyIncremental(chain, link, target, last ? pointInTime : null));
+            applied++;
+            if (last) {
+                break;
+            }
+        }
+
+        return "Backup chain " + chainId + " restored (full backup + " + applied + " incrementals" +
+                (pointInTime != null ? ", up to " + pointInTime : "") + ").\nOutput:\n" + output;
+    }
+
+    private String applyIncremental(BackupChain chain, BackupChain.Link link, BackupRequest target, Instant until) throws IOException, InterruptedException {
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(Path.of(link.getFile())), 64 * 1024))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                String name = CompressionCodec.baseName(entry.getName());
+                if ("mysql".equals(chain.getDbType()) && name.endsWith(BINLOG_ENTRY)) {
+                    try (InputStream events = pipelineService.decode(zis, target);
+                         InputStream sql = until == null ? events : cutAt(events, until)) {
+                        return restoreService.restoreMySQL(target, sql);
+                    }
+                }
+                if ("mongodb".equals(chain.getDbType()) && name.endsWith(OPLOG_ENTRY)) {
+                    return replayOplog(target, zis, until);
+                }
+            }
+        }
+        throw new FileNotFoundException("No change log found in incremental backup " + link.getFile());
+    }
+
+    // mysqlbinlog writes SET TIMESTAMP before every transaction; everything from the first one past
+    // the limit is dropped, so a transaction is either replayed whole or not at all
+    private InputStream cutAt(InputStream events, Instant until) throws IOException {
+        long limit = until.getEpochSecond();
+        return BackgroundPipe.start("binlog-cut", out -> {
+            // ISO-8859-1 maps bytes 1:1, so string literals in the events pass through untouched
+            BufferedReader reader = new BufferedReader(new InputStreamReader(events, StandardCharsets.ISO_8859_1), 64 * 1024);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.ISO_8859_1), 64 * 1024);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("SET TIMESTAMP=") && eventSeconds(line) > limit) {
+                    break;
+                }
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+        });
+    }
+
+    // "SET TIMESTAMP=1697500000/*!*/;" or with microseconds "SET TIMESTAMP=1697500000.123456/*!*/;"
+    private static long eventSeconds(String line) {
+        int startIndex = "SET TIMESTAMP=".length();
+        int endIndex = startIndex;
+        while (endIndex < line.length() && Character.isDigit(line.charAt(endIndex))) {
+            endIndex++;
+        }
+        return Long.parseLong(line.substring(startIndex, endIndex));
+    }
+
+    private String replayOplog(BackupRequest target, InputStream oplog, Instant until) throws IOException, InterruptedException {
+        Path dumpDir = Files.createTempDirectory("oplog_replay_");
+        try {
+            try (InputStream in = pipelineService.decode(oplog, target)) {
+                Files.copy(in, dumpDir.resolve(OPLOG_ENTRY));
+            }
+            // --oplogLimit is exclusive: everything within the chosen second is still applied
+            String limit = until == null ? null : (until.getEpochSecond() + 1) + ":0";
+            return restoreService.replayMongoOplog(target, dumpDir, limit);
+        } finally {
+            restoreService.deleteDirectory(dumpDir);
+        }
+    }
+
+    private Optional<BackupChain> latestChain(BackupRequest request) throws IOException {
+        String key = chainKey(request);
+        return listChains().stream()
+                .filter(chain -> chain.getId().startsWith(key + "_"))
+                .findFirst();
+    }
+
+    private void saveChain(BackupChain chain) throws IOException {
+        Files.createDirectories(chainsDir);
+        Path file = chainFile(chain.getId());
+        Path temp = Files.createTempFile(chainsDir, chain.getId(), ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), chain);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path chainFile(String id) {
+        if (id.contains("/") || id.contains("\\") || id.contains("..")) {
+            throw new IllegalArgumentException("Invalid chain id: " + id);
+        }
+        return chainsDir.resolve(id + ".json");
+    }
+
+    private Object lockFor(BackupRequest request) {
+        return chainLocks.computeIfAbsent(chainKey(request), k -> new Object());
+    }
+
+    private static String chainKey(BackupRequest request) {
+        String key = request.getDbType().toLowerCase() + "_" + request.getHost() + "_" + request.getPort() + "_" + request.getDbName();
+        return key.replaceAll("[^A-Za-z0-9._-]", "-");
+    }
+
+    private static BackupChain.Link link(String type, File file, Instant createdAt, String start, String end) {
+        BackupChain.Link link = new BackupChain.Link();
+        link.setType(type);
+        link.setFile(file.getAbsolutePath());
+        link.setCreatedAt(createdAt);
+        link.setStartPosition(start);
+        link.setEndPosition(end);
+        return link;
+    }
+
+    private static MongoCollection<RawBsonDocument> oplog(MongoClient client) {
+        return client.getDatabase("local").getCollection("oplog.rs", RawBsonDocument.class);
+    }
+
+    private static String logFile(String position) {
+        return position.substring(0, position.lastIndexOf(':'));
+    }
+
+    private static String logOffset(String position) {
+        return position.substring(position.lastIndexOf(':') + 1);
+    }
+
+    private static String formatTimestamp(BsonTimestamp ts) {
+        return ts.getTime() + ":" + ts.getInc();
+    }
+
+    private static BsonTimestamp parseTimestamp(String position) {
+        String[] parts = position.split(":");
+        return new BsonTimestamp(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+}
@@ -0,0 +1,518 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.ArchiveWriter;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.CountingOutputStream;
+import com.dbbackup.utility.NonClosingOutputStream;
+import com.dbbackup.utility.ProgressTracker;
+import com.dbbackup.utility.SqlInsertWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// In-process MySQL dump over JDBC, for hosts without the client tools. Rows are streamed one at a
+// time (fetch size Integer.MIN_VALUE) and written as extended INSERTs through pooled buffers, in
+// mysqldump's layout, so restores, table selection and manifest offsets work on either engine's
+// output. Every session reads from one consistent snapshot: the tables are read-locked only for
+// as long as it takes the sessions to start their transactions and the binlog position to be read.
+@Slf4j
+@Service
+public class JdbcDumpService {
+
+    public static final String MYSQLDUMP = "mysqldump";
+    public static final String JDBC = "jdbc";
+
+    // Generated columns can't be inserted into; DEFAULT_GENERATED only marks an expression default
+    private static final Pattern GENERATED = Pattern.compile("\\b(?:VIRTUAL|STORED) GENERATED\\b|\\bPERSISTENT\\b");
+    private static final int ROWS_PER_PROGRESS_UPDATE = 1000;
+
+    private final ConnectionRegistry connectionRegistry;
+    private final String defaultEngine;
+    private final int statementSize;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+    public JdbcDumpService(ConnectionRegistry connectionRegistry,
+                           @Value("${quickdump.mysql.engine:mysqldump}") String defaultEngine,
+                           @Value("${quickdump.mysql.jdbc.statement-size:1MB}") DataSize statementSize) {
+        this.connectionRegistry = connectionRegistry;
+        this.defaultEngine = defaultEngine;
+        this.statementSize = (int) statementSize.toBytes();
+    }
+
+    public boolean handles(BackupRequest request) {
+        return usesJdbc(request, defaultEngine);
+    }
+
+    // Shared with JdbcLoadService: one engine setting covers backup and restore
+    static boolean usesJdbc(BackupRequest request, String defaultEngine) {
+        String engine = request.getEngine() != null && !request.getEngine().isBlank() ? request.getEngine() : defaultEngine;
+        if (JDBC.equalsIgnoreCase(engine)) {
+            return true;
+        }
+        if (MYSQLDUMP.equalsIgnoreCase(engine)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Unknown MySQL dump engine: " + engine);
+    }
+
+    // The whole database as one script, written straight into out. Returns each table's offset in
+    // it and, with capturePosition, the binlog position the snapshot corresponds to
+    public Result dump(BackupRequest request, OutputStream out, boolean capturePosition) throws IOException {
+        ProgressTracker progress = request.getProgress();
+        boolean failed = true;
+        Snapshot snapshot = null;
+        try {
+            snapshot = openSnapshot(request, 1, capturePosition, false);
+            Connection conn = snapshot.sessions.get(0);
+            progress.expectTables(snapshot.tables.size());
+
+            Map<String, Long> offsets = new LinkedHashMap<>();
+            CountingOutputStream script = new CountingOutputStream(
+                    new BufferedOutputStream(progress.countDump(new NonClosingOutputStream(out)), 64 * 1024));
+            writeHeader(script, request, snapshot.position);
+            for (String table : snapshot.tables) {
+                progress.tableStarted(table);
+                offsets.put(table, script.getCount() + "\n--\n".length());
+                writeTableStructure(script, conn, table);
+                writeTableData(script, conn, request, table);
+                writeTriggers(script, conn, request.getDbName(), table);
+                progress.tableDone();
+            }
+            writeViews(script, conn, request.getDbName());
+            writeFooter(script);
+            script.close();
+            failed = false;
+            return new Result(snapshot.position, offsets);
+        } catch (SQLException e) {
+            throw new IOException("JDBC dump of " + request.getDbName() + " failed: " + e.getMessage(), e);
+        } finally {
+            if (snapshot != null) {
+                snapshot.close(failed);
+            }
+        }
+    }
+
+    // MySqlParallelService's layout, schema.sql and one data/<table>.sql per table, with one
+    // snapshot session per worker. Table entries are spooled compressed by their worker and zipped
+    // in completion order, since the archive takes one entry at a time.
+    public String dumpTables(BackupRequest request, String folderName, ArchiveWriter archive, CompressionSettings compression,
+                             boolean capturePosition) throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        Path spoolDir = Files.createTempDirectory("jdbc_dump_");
+        ExecutorService executor = null;
+        boolean failed = true;
+        Snapshot snapshot = null;
+        try {
+            snapshot = openSnapshot(request, request.getParallelism(), capturePosition, true);
+            progress.expectTables(snapshot.tables.size());
+            BlockingQueue<Connection> sessions = new LinkedBlockingQueue<>(snapshot.sessions);
+            executor = Executors.newFixedThreadPool(snapshot.sessions.size());
+
+            CompletionService<TableDump> completion = new ExecutorCompletionService<>(executor);
+            for (String table : snapshot.tables) {
+                String position = snapshot.position;
+                completion.submit(() -> {
+                    Path spoolFile = Files.createTempFile(spoolDir, "table_", ".sql");
+                    Connection conn = sessions.take();
+                    try (OutputStream file = new BufferedOutputStream(
+                            progress.timeOutput(ProgressTracker.WRITE, Files.newOutputStream(spoolFile)), 64 * 1024);
+                         OutputStream out = new BufferedOutputStream(progress.countDump(
+                                 progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(file))), 64 * 1024)) {
+                        writeHeader(out, request, position);
+                        writeTableData(out, conn, request, table);
+                        writeTriggers(out, conn, request.getDbName(), table);
+                        writeFooter(out);
+                    } finally {
+                        sessions.add(conn);
+                    }
+                    return new TableDump(table, spoolFile);
+                });
+            }
+
+            // Schema from the coordinator while the workers dump; DDL isn't part of the snapshot anyway
+            OutputStream schemaOut = archive.putNextEntry(
+                    compression.entryName(folderName + "/" + MySqlParallelService.SCHEMA_ENTRY), compression.zipLevel());
+            try (OutputStream entry = progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(schemaOut));
+                 OutputStream out = new BufferedOutputStream(progress.countDump(entry), 64 * 1024)) {
+                writeHeader(out, request, snapshot.position);
+                for (String table : snapshot.tables) {
+                    writeTableStructure(out, snapshot.coordinator, table);
+                }
+                writeViews(out, snapshot.coordinator, request.getDbName());
+                writeFooter(out);
+            }
+            archive.closeEntry();
+
+            for (int i = 0; i < snapshot.tables.size(); i++) {
+                TableDump dump = awaitNext(completion);
+                progress.tableStarted(dump.table());
+                OutputStream tableOut = archive.putNextEntry(compression.entryName(
+                        folderName + "/" + MySqlParallelService.DATA_DIR + dump.table() + ".sql"), compression.zipLevel());
+                Files.copy(dump.file(), progress.timeOutput(ProgressTracker.COMPRESS, tableOut));
+                archive.closeEntry();
+                Files.delete(dump.file());
+                progress.tableDone();
+            }
+            failed = false;
+            return snapshot.position;
+        } catch (SQLException e) {
+            throw new IOException("JDBC dump of " + request.getDbName() + " failed: " + e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            // Aborting the sessions also unblocks workers still waiting on the server
+            if (snapshot != null) {
+                snapshot.close(failed);
+            }
+            deleteDirectory(spoolDir);
+        }
+    }
+
+    public record Result(String position, Map<String, Long> tableOffsets) {
+    }
+
+    private void writeTableData(OutputStream out, Connection conn, BackupRequest request, String table)
+            throws SQLException, IOException {
+        ProgressTracker progress = request.getProgress();
+        List<String> columns = new ArrayList<>();
+        boolean allColumns = true;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COLUMN_NAME, EXTRA FROM information_schema.COLUMNS " +
+                        "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? ORDER BY ORDINAL_POSITION")) {
+            ps.setString(1, request.getDbName());
+            ps.setString(2, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String extra = rs.getString(2) != null ? rs.getString(2).toUpperCase() : "";
+                    if (GENERATED.matcher(extra).find()) {
+                        allColumns = false;
+                    } else {
+                        // INSERT without a column list leaves invisible columns out
+                        allColumns &= !extra.contains("INVISIBLE");
+                        columns.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+
+        write(out, "\n--\n-- Dumping data for table " + quoteIdentifier(table) + "\n--\n\n");
+        write(out, "/*!40000 ALTER TABLE " + quoteIdentifier(table) + " DISABLE KEYS */;\n");
+        String select = columns.stream().map(JdbcDumpService::quoteIdentifier)
+                .collect(Collectors.joining(",", "SELECT ", " FROM " + quoteIdentifier(table)));
+        byte[] buffer = buffers.poll();
+        SqlInsertWriter writer = new SqlInsertWriter(out, table, allColumns ? null : columns,
+                buffer != null ? buffer : new byte[statementSize + 64 * 1024], statementSize);
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Connector/J streams the result row by row instead of loading the table into memory
+            st.setFetchSize(Integer.MIN_VALUE);
+            try (ProgressTracker.StageTimer ignored = progress.time(ProgressTracker.DUMP)) {
+                ResultSet rs = st.executeQuery(select);
+                SqlInsertWriter.ValueKind[] kinds = valueKinds(rs.getMetaData());
+                int pending = 0;
+                while (rs.next()) {
+                    writer.startRow();
+                    for (int i = 0; i < kinds.length; i++) {
+                        // Raw text-protocol bytes: numbers and dates as the server formats them
+                        writer.add(kinds[i], rs.getBytes(i + 1));
+                    }
+                    writer.endRow();
+                    if (++pending == ROWS_PER_PROGRESS_UPDATE) {
+                        progress.addRows(pending);
+                        pending = 0;
+                    }
+                }
+                writer.finish();
+                progress.addRows(pending);
+                rs.close();
+            } catch (IOException | RuntimeException e) {
+                // Closing a half-read streaming result would first read the rest of the table
+                abort(conn);
+                throw e;
+            }
+        } finally {
+            // A buffer grown by a huge row isn't kept around
+            if (writer.getBuffer().length <= 2 * statementSize + 64 * 1024) {
+                buffers.offer(writer.getBuffer());
+            }
+        }
+        write(out, "/*!40000 ALTER TABLE " + quoteIdentifier(table) + " ENABLE KEYS */;\n");
+    }
+
+    private static SqlInsertWriter.ValueKind[] valueKinds(ResultSetMetaData meta) throws SQLException {
+        SqlInsertWriter.ValueKind[] kinds = new SqlInsertWriter.ValueKind[meta.getColumnCount()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = SqlInsertWriter.ValueKind.of(meta.getColumnType(i + 1));
+        }
+        return kinds;
+    }
+
+    private void writeTableStructure(OutputStream out, Connection conn, String table) throws SQLException, IOException {
+        String create;
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SHOW CREATE TABLE " + quoteIdentifier(table))) {
+            rs.next();
+            create = rs.getString(2);
+        }
+        write(out, "\n--\n-- Table structure for table " + quoteIdentifier(table) + "\n--\n\n"
+                + "DROP TABLE IF EXISTS " + quoteIdentifier(table) + ";\n" + create + ";\n");
+    }
+
+    // After the data, as mysqldump does, so loading the rows doesn't fire them
+    private void writeTriggers(OutputStream out, Connection conn, String dbName, String table) throws SQLException, IOException {
+        List<String> triggers = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT TRIGGER_NAME FROM information_schema.TRIGGERS " +
+                        "WHERE TRIGGER_SCHEMA = ? AND EVENT_OBJECT_TABLE = ? ORDER BY ACTION_ORDER")) {
+            ps.setString(1, dbName);
+            ps.setString(2, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    triggers.add(rs.getString(1));
+                }
+            }
+        }
+        for (String trigger : triggers) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SHOW CREATE TRIGGER " + quoteIdentifier(trigger))) {
+                rs.next();
+                write(out, "/*!50003 SET @saved_sql_mode = @@sql_mode */;\n"
+                        + "/*!50003 SET sql_mode = '" + rs.getString("sql_mode") + "' */;\n"
+                        + "DELIMITER ;;\n" + rs.getString("SQL Original Statement") + " ;;\nDELIMITER ;\n"
+                        + "/*!50003 SET sql_mode = @saved_sql_mode */;\n");
+            }
+        }
+    }
+
+    // Views may select from each other, so every one is first created as a stand-in with the right
+    // columns, and the real definitions replace them at the end
+    private void writeViews(OutputStream out, Connection conn, String dbName) throws SQLException, IOException {
+        Map<String, List<String>> views = new LinkedHashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT c.TABLE_NAME, c.COLUMN_NAME FROM information_schema.COLUMNS c " +
+                        "JOIN information_schema.TABLES t ON t.TABLE_SCHEMA = c.TABLE_SCHEMA AND t.TABLE_NAME = c.TABLE_NAME " +
+                        "WHERE c.TABLE_SCHEMA = ? AND t.TABLE_TYPE = 'VIEW' ORDER BY c.TABLE_NAME, c.ORDINAL_POSITION")) {
+            ps.setString(1, dbName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    views.computeIfAbsent(rs.getString(1), v -> new ArrayList<>()).add(rs.getString(2));
+                }
+            }
+        }
+        for (Map.Entry<String, List<String>> view : views.entrySet()) {
+            String name = quoteIdentifier(view.getKey());
+            write(out, "\n--\n-- Temporary view structure for view " + name + "\n--\n\n"
+                    + "DROP TABLE IF EXISTS " + name + ";\nDROP VIEW IF EXISTS " + name + ";\n"
+                    + view.getValue().stream().map(c -> "1 AS " + quoteIdentifier(c))
+                    .collect(Collectors.joining(",", "CREATE VIEW " + name + " AS SELECT ", ";\n")));
+        }
+        for (String view : views.keySet()) {
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SHOW CREATE VIEW " + quoteIdentifier(view))) {
+                rs.next();
+                write(out, "\n--\n-- Final view structure for view " + quoteIdentifier(view) + "\n--\n\n"
+                        + "DROP VIEW IF EXISTS " + quoteIdentifier(view) + ";\n" + rs.getString(2) + ";\n");
+            }
+        }
+    }
+
+    private static void writeHeader(OutputStream out, BackupRequest request, String position) throws IOException {
+        StringBuilder header = new StringBuilder()
+                .append("-- QuickDump JDBC dump\n--\n-- Host: ").append(request.getHost())
+                .append("    Database: ").append(request.getDbName()).append("\n")
+                .append("-- ------------------------------------------------------\n\n")
+                .append("/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;\n")
+                .append("/*!40101 SET @OLD_CHARACTER_SET_RESULTS=@@CHARACTER_SET_RESULTS */;\n")
+                .append("/*!40101 SET @OLD_COLLATION_CONNECTION=@@COLLATION_CONNECTION */;\n")
+                .append("/*!50503 SET NAMES utf8mb4 */;\n")
+                .append("/*!40103 SET @OLD_TIME_ZONE=@@TIME_ZONE */;\n")
+                .append("/*!40103 SET TIME_ZONE='+00:00' */;\n")
+                .append("/*!40014 SET @OLD_UNIQUE_CHECKS=@@UNIQUE_CHECKS, UNIQUE_CHECKS=0 */;\n")
+                .append("/*!40014 SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0 */;\n")
+                .append("/*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;\n")
+                .append("/*!40111 SET @OLD_SQL_NOTES=@@SQL_NOTES, SQL_NOTES=0 */;\n");
+        if (position != null) {
+            // Same comment as mysqldump --source-data=2, for BinlogPositionSniffer and for people
+            int colon = position.lastIndexOf(':');
+            header.append("\n--\n-- Position to start replication or point-in-time recovery from\n--\n\n")
+                    .append("-- CHANGE MASTER TO MASTER_LOG_FILE='").append(position, 0, colon)
+                    .append("', MASTER_LOG_POS=").append(position.substring(colon + 1)).append(";\n");
+        }
+        write(out, header.append("\n").toString());
+    }
+
+    private static void writeFooter(OutputStream out) throws IOException {
+        write(out, "\n/*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;\n"
+                + "/*!40101 SET SQL_MODE=@OLD_SQL_MODE */;\n"
+                + "/*!40014 SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS */;\n"
+                + "/*!40014 SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS */;\n"
+                + "/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;\n"
+                + "/*!40101 SET CHARACTER_SET_RESULTS=@OLD_CHARACTER_SET_RESULTS */;\n"
+                + "/*!40101 SET COLLATION_CONNECTION=@OLD_COLLATION_CONNECTION */;\n"
+                + "/*!40111 SET SQL_NOTES=@OLD_SQL_NOTES */;\n\n-- Dump completed\n");
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Sessions with their own settings and open transactions, so never from the shared pool
+    private Connection openSession(BackupRequest request) throws SQLException {
+        Properties properties = new Properties();
+        // Text values arrive converted to utf8mb4 whatever the column's charset (by default the driver
+        // asks for no conversion), matching the header's SET NAMES; TINYINT(1) stays a number
+        properties.setProperty("characterEncoding", "UTF-8");
+        properties.setProperty("characterSetResults", "UTF-8");
+        properties.setProperty("tinyInt1isBit", "false");
+        Connection conn = connectionRegistry.openMySqlConnection(request, properties);
+        try (Statement st = conn.createStatement()) {
+            // Backticked SHOW CREATE output and TIMESTAMPs in UTC, like the header declares
+            st.execute("SET SESSION sql_mode = '', time_zone = '+00:00'");
+            st.execute("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private static void abort(Connection conn) {
+        try {
+            conn.abort(Runnable::run);
+        } catch (SQLException e) {
+            log.debug("Could not abort dump session: {}", e.getMessage());
+        }
+    }
+
+    private Snapshot openSnapshot(BackupRequest request, int workers, boolean capturePosition, boolean biggestFirst)
+            throws SQLException {
+        Snapshot snapshot = new Snapshot();
+        try {
+            snapshot.coordinator = openSession(request);
+            snapshot.tables = listTables(snapshot.coordinator, request.getDbName(), biggestFirst);
+            int sessions = Math.max(1, Math.min(workers, snapshot.tables.size()));
+            for (int i = 0; i < sessions; i++) {
+                snapshot.sessions.add(openSession(request));
+            }
+
+            // Writers wait on the read lock while the sessions start their transactions, so all of
+            // them see the same data, and the binlog position is exactly where that data ends.
+            // One session with no position to read needs no lock at all.
+            boolean lock = (sessions > 1 || capturePosition) && !snapshot.tables.isEmpty();
+            if (lock) {
+                try (Statement st = snapshot.coordinator.createStatement()) {
+                    st.execute(snapshot.tables.stream()
+                            .map(t -> quoteIdentifier(t) + " READ")
+                            .collect(Collectors.joining(", ", "LOCK TABLES ", "")));
+                }
+            }
+            try {
+                for (Connection session : snapshot.sessions) {
+                    try (Statement st = session.createStatement()) {
+                        st.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                    }
+                }
+                if (capturePosition) {
+                    snapshot.position = IncrementalBackupService.readBinlogPosition(snapshot.coordinator);
+                }
+            } finally {
+                if (lock) {
+                    try (Statement st = snapshot.coordinator.createStatement()) {
+                        st.execute("UNLOCK TABLES");
+                    }
+                }
+            }
+            return snapshot;
+        } catch (SQLException | RuntimeException e) {
+            snapshot.close(true);
+            throw e;
+        }
+    }
+
+    // One coordinator plus the sessions that read the data, all in the same snapshot
+    private static final class Snapshot {
+        private final List<Connection> sessions = new ArrayList<>();
+        private Connection coordinator;
+        private List<String> tables;
+        private String position;
+
+        void close(boolean failed) {
+            List<Connection> all = new ArrayList<>(sessions);
+            if (coordinator != null) {
+                all.add(coordinator);
+            }
+            for (Connection conn : all) {
+                if (failed) {
+                    abort(conn);
+                    continue;
+                }
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    log.debug("Could not close dump session: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static List<String> listTables(Connection conn, String dbName, boolean biggestFirst) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT TABLE_NAME FROM information_schema.TABLES " +
+                        "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' ORDER BY " +
+                        (biggestFirst ? "DATA_LENGTH + INDEX_LENGTH DESC" : "TABLE_NAME"))) {
+            ps.setString(1, dbName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+        }
+        return tables;
+    }
+
+    private <T> T awaitNext(CompletionService<T> completion) throws IOException, InterruptedException {
+        try {
+            return completion.take().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof SQLException sql) throw new IOException("JDBC dump failed: " + sql.getMessage(), sql);
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private static String quoteIdentifier(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+
+    private record TableDump(String table, Path file) {
+    }
+
+    private void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
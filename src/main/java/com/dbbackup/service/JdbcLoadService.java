@@ -0,0 +1,452 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.ProgressTracker;
+import com.dbbackup.utility.SqlLoadDataWriter;
+import com.dbbackup.utility.SqlStatementReader;
+import com.mysql.cj.jdbc.JdbcStatement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// In-process MySQL restore over JDBC. The script is split into statements as it streams in, the
+// INSERTs are grouped per table into batches, and several sessions run the batches side by side,
+// one transaction each. A batch of plain extended INSERTs is sent as the rows of one LOAD DATA
+// LOCAL, which the server loads without parsing each value as SQL; other batches go in as they
+// are, rewriteBatchedStatements sending them in as few round trips as the packet size allows.
+// The driver only ever sends the rows handed to it, never a local file the server names.
+// Everything else runs in script order on a coordinator session: a statement on one table first
+// waits for that table's batches, one the loader can't place waits for all.
+// Every session is the load's own, opened with unique and foreign key checks off and autocommit
+// off, and closed at the end, so the relaxed settings go away with it.
+@Slf4j
+@Service
+public class JdbcLoadService {
+
+    // A table name, optionally schema-qualified; group 1 is the table
+    private static final String NAME = "(?:(?:`(?:[^`]|``)++`|[\\w$]++)\\s*\\.\\s*)?(`(?:[^`]|``)++`|[\\w$]++)";
+    // "/*!40101 SET NAMES utf8mb4 */": the server runs what's inside, so that's what gets classified
+    private static final Pattern VERSION_COMMENT = Pattern.compile("/\\*!\\d*\\s*");
+    private static final Pattern INSERT = Pattern.compile(
+            "(?i)(?:INSERT|REPLACE)(?:\\s+(?:LOW_PRIORITY|DELAYED|HIGH_PRIORITY|IGNORE))*\\s+(?:INTO\\s+)?" + NAME);
+    // Not followed by a comma: "DROP TABLE a, b" touches more than one table
+    private static final Pattern TABLE_DDL = Pattern.compile(
+            "(?i)(?:DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?|CREATE\\s+TABLE(?:\\s+IF\\s+NOT\\s+EXISTS)?|ALTER\\s+TABLE|TRUNCATE(?:\\s+TABLE)?)\\s+"
+                    + NAME + "\\s*+(?!,)");
+    // mysqldump wraps each table's data in these; the locks would block the other sessions, and
+    // DISABLE KEYS only helps MyISAM while waiting on ENABLE KEYS would serialize the tables
+    private static final Pattern SKIPPED = Pattern.compile(
+            "(?i)(?:LOCK\\s+TABLES?|UNLOCK\\s+TABLES?)\\b|ALTER\\s+TABLE\\s+" + NAME + "\\s+(?:DISABLE|ENABLE)\\s+KEYS\\b");
+    private static final Pattern CHARSET = Pattern.compile(
+            "(?i)SET\\s+(?:NAMES|CHARACTER\\s+SET|CHARSET|(?:@@(?:SESSION\\.)?)?(?:CHARACTER_SET_\\w+|COLLATION_CONNECTION)\\s*:?=)");
+    private static final Pattern NAMES = Pattern.compile("(?i)SET\\s+NAMES\\s+'?(\\w+)");
+    private static final Pattern USER_VARIABLE = Pattern.compile("(?i)SET\\s+@\\w+\\s*:?=[^,]*$");
+    private static final Pattern GLOBAL = Pattern.compile("(?i)SET\\s+(?:GLOBAL\\b|@@GLOBAL\\.)");
+    private static final Pattern SESSION = Pattern.compile("(?i)(?:SET|USE)\\b");
+    // ER_NOT_ALLOWED_COMMAND, ER_CLIENT_LOCAL_FILES_DISABLED and ER_LOAD_INFILE_CAPABILITY_DISABLED
+    private static final Set<Integer> LOAD_DATA_REFUSED = Set.of(1148, 2068, 3948);
+
+    private final ConnectionRegistry connectionRegistry;
+    private final String defaultEngine;
+    private final int defaultParallelism;
+    private final long batchSize;
+    private final boolean loadData;
+
+    public JdbcLoadService(ConnectionRegistry connectionRegistry,
+                           @Value("${quickdump.mysql.engine:mysqldump}") String defaultEngine,
+                           @Value("${quickdump.mysql.parallelism:4}") int defaultParallelism,
+                           @Value("${quickdump.mysql.jdbc.batch-size:4MB}") DataSize batchSize,
+                           @Value("${quickdump.mysql.jdbc.load-data:true}") boolean loadData) {
+        this.connectionRegistry = connectionRegistry;
+        this.defaultEngine = defaultEngine;
+        this.defaultParallelism = defaultParallelism;
+        this.batchSize = batchSize.toBytes();
+        this.loadData = loadData;
+    }
+
+    public boolean handles(BackupRequest request) {
+        return JdbcDumpService.usesJdbc(request, defaultEngine);
+    }
+
+    public String load(BackupRequest request, InputStream sql) throws IOException, InterruptedException {
+        return load(request, sql, request.getParallelism() > 0 ? request.getParallelism() : defaultParallelism);
+    }
+
+    // workers: sessions running INSERT batches; with one, batches run on the coordinator in script order
+    public String load(BackupRequest request, InputStream sql, int workers) throws IOException, InterruptedException {
+        SqlStatementReader reader = new SqlStatementReader(sql);
+        Load load = new Load(request, workers);
+        boolean failed = true;
+        try {
+            load.open();
+            String statement;
+            while ((statement = reader.next()) != null) {
+                load.accept(statement);
+            }
+            load.finish();
+            failed = false;
+            return "Loaded " + load.statements + " statements, " + load.batches + " INSERT batches over "
+                    + Math.max(1, workers) + (workers > 1 ? " sessions" : " session") + ".\n";
+        } catch (SQLException e) {
+            throw new IOException("JDBC restore of " + request.getDbName() + " failed: " + e.getMessage(), e);
+        } finally {
+            load.close(failed);
+        }
+    }
+
+    // State of one load; the coordinator thread reads the script and is the only one touching
+    // the batches and futures, workers only take sessions and run what they're given
+    private final class Load {
+        private final BackupRequest request;
+        private final ProgressTracker progress;
+        private final int workers;
+        private final List<Session> all = new ArrayList<>();
+        private final BlockingQueue<Session> sessions = new LinkedBlockingQueue<>();
+        // Session settings from the script, replayed on each worker before its next batch
+        private final List<String> preamble = new CopyOnWriteArrayList<>();
+        private final Map<String, Batch> open = new LinkedHashMap<>();
+        private final Map<String, List<Future<?>>> pending = new HashMap<>();
+        private Connection coordinator;
+        private ExecutorService executor;
+        // Bounds the batches held in memory waiting for a free session
+        private Semaphore permits;
+        private volatile boolean workerFailed;
+        // Set once the server refuses LOAD DATA LOCAL; batches go in as INSERTs from then on
+        private volatile boolean loadDataRefused;
+        private long statements;
+        private int batches;
+
+        Load(BackupRequest request, int workers) {
+            this.request = request;
+            this.progress = request.getProgress();
+            this.workers = workers;
+        }
+
+        void open() throws SQLException {
+            coordinator = openSession();
+            if (workers > 1) {
+                for (int i = 0; i < workers; i++) {
+                    Session session = new Session(openSession());
+                    all.add(session);
+                    sessions.add(session);
+                }
+                executor = Executors.newFixedThreadPool(workers);
+                permits = new Semaphore(workers * 2);
+            }
+        }
+
+        void accept(String sql) throws SQLException, InterruptedException {
+            if (workerFailed) {
+                awaitAll();
+            }
+            statements++;
+            int start = 0;
+            Matcher comment = VERSION_COMMENT.matcher(sql);
+            if (comment.lookingAt()) {
+                start = comment.end();
+            }
+
+            Matcher m;
+            if ((m = head(INSERT, sql, start)) != null) {
+                add(unquote(m.group(1)), sql);
+            } else if (head(SKIPPED, sql, start) != null) {
+                log.debug("Skipping {}", sql);
+            } else if ((m = head(TABLE_DDL, sql, start)) != null) {
+                await(unquote(m.group(1)));
+                execute(sql);
+            } else if ((m = head(CHARSET, sql, start)) != null) {
+                // The driver talks utf8mb4 and the statements were decoded as UTF-8
+                Matcher names = head(NAMES, sql, start);
+                if (names != null && !names.group(1).toLowerCase().startsWith("utf8")) {
+                    throw new IllegalArgumentException("The script uses SET NAMES " + names.group(1)
+                            + "; the jdbc engine only restores UTF-8 scripts, use the mysqldump engine for it");
+                }
+            } else if (head(GLOBAL, sql, start) != null) {
+                execute(sql);
+            } else if (head(SESSION, sql, start) != null) {
+                // A new setting may only apply to the rows after it, so the queued ones go first;
+                // "SET SQL_MODE=@OLD_SQL_MODE" at the end of a dump must not reach them. User
+                // variables don't change how rows load, but later settings may read them.
+                if (head(USER_VARIABLE, sql, start) == null) {
+                    awaitAll();
+                }
+                if (workers > 1) {
+                    preamble.add(sql);
+                }
+                execute(sql);
+            } else {
+                awaitAll();
+                execute(sql);
+            }
+        }
+
+        void finish() throws SQLException, InterruptedException {
+            awaitAll();
+            coordinator.commit();
+        }
+
+        void close(boolean failed) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            List<Connection> connections = new ArrayList<>();
+            all.forEach(session -> connections.add(session.conn));
+            if (coordinator != null) {
+                connections.add(coordinator);
+            }
+            for (Connection conn : connections) {
+                // Aborting also unblocks workers still waiting on the server
+                if (failed) {
+                    abort(conn);
+                    continue;
+                }
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    log.debug("Could not close restore session: {}", e.getMessage());
+                }
+            }
+        }
+
+        private void add(String table, String sql) throws SQLException, InterruptedException {
+            Batch batch = open.computeIfAbsent(table, Batch::new);
+            batch.statements.add(sql);
+            batch.size += sql.length();
+            if (batch.size >= batchSize) {
+                open.remove(table);
+                submit(batch);
+            }
+        }
+
+        private void submit(Batch batch) throws SQLException, InterruptedException {
+            batches++;
+            if (workers <= 1) {
+                run(coordinator, batch);
+                return;
+            }
+            permits.acquire();
+            Future<?> future;
+            try {
+                future = executor.submit(() -> {
+                    try {
+                        Session session = sessions.take();
+                        try {
+                            while (session.applied < preamble.size()) {
+                                try (Statement st = session.conn.createStatement()) {
+                                    st.execute(preamble.get(session.applied));
+                                }
+                                session.applied++;
+                            }
+                            run(session.conn, batch);
+                        } finally {
+                            sessions.add(session);
+                        }
+                        return null;
+                    } catch (Exception e) {
+                        workerFailed = true;
+                        throw e;
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+            List<Future<?>> tableFutures = pending.computeIfAbsent(batch.table, t -> new ArrayList<>());
+            tableFutures.removeIf(Future::isDone);
+            tableFutures.add(future);
+        }
+
+        private void run(Connection conn, Batch batch) throws SQLException {
+            if (loadData && !loadDataRefused) {
+                SqlLoadDataWriter rows = new SqlLoadDataWriter();
+                if (batch.statements.stream().allMatch(rows::add) && loadRows(conn, batch, rows)) {
+                    return;
+                }
+            }
+            try (ProgressTracker.StageTimer ignored = progress.time(ProgressTracker.LOAD);
+                 Statement st = conn.createStatement()) {
+                // The statements go to the server exactly as the dump wrote them
+                st.setEscapeProcessing(false);
+                // Connector/J only rewrites batches of more than four statements into multi-statement
+                // packets; smaller ones it would run one by one, scanning each for ON DUPLICATE KEY
+                if (batch.statements.size() > 4) {
+                    for (String sql : batch.statements) {
+                        st.addBatch(sql);
+                    }
+                    st.executeBatch();
+                } else {
+                    for (String sql : batch.statements) {
+                        st.execute(sql);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                throw new SQLException("loading " + batch.table + ": " + e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
+            }
+        }
+
+        // False, with nothing applied, when the batch has to run as INSERTs after all
+        private boolean loadRows(Connection conn, Batch batch, SqlLoadDataWriter rows) throws SQLException {
+            try (ProgressTracker.StageTimer ignored = progress.time(ProgressTracker.LOAD);
+                 Statement st = conn.createStatement()) {
+                st.setEscapeProcessing(false);
+                // The stream is the session's, so it goes back to the empty one right after
+                JdbcStatement driver = st.unwrap(JdbcStatement.class);
+                driver.setLocalInfileInputStream(rows.open());
+                long loaded;
+                try {
+                    loaded = st.executeLargeUpdate(rows.loadStatement());
+                } finally {
+                    driver.setLocalInfileInputStream(InputStream.nullInputStream());
+                }
+                // With LOCAL the server can't stop the client mid-file, so a value it would refuse
+                // or a taken key only skips the row with a warning. The INSERTs get to decide.
+                if (st.getWarnings() != null || !rows.toleratesDuplicates() && loaded != rows.getRows()) {
+                    log.debug("LOAD DATA into {} took {} of {} rows{}; running its INSERTs",
+                            batch.table, loaded, rows.getRows(), warnings(st));
+                    conn.rollback();
+                    return false;
+                }
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                // Whatever the server has against the rows, the INSERTs get to say it the way the
+                // mysql client would have seen it
+                conn.rollback();
+                if (!LOAD_DATA_REFUSED.contains(e.getErrorCode())) {
+                    log.debug("LOAD DATA into {} failed ({}); running its INSERTs", batch.table, e.getMessage());
+                } else if (!loadDataRefused) {
+                    loadDataRefused = true;
+                    log.info("Server refuses LOAD DATA LOCAL ({}); restoring {} with INSERTs", e.getMessage(), request.getDbName());
+                }
+                return false;
+            }
+        }
+
+        private void execute(String sql) throws SQLException {
+            try (ProgressTracker.StageTimer ignored = progress.time(ProgressTracker.LOAD);
+                 Statement st = coordinator.createStatement()) {
+                st.setEscapeProcessing(false);
+                st.execute(sql);
+                coordinator.commit();
+            } catch (SQLException e) {
+                String head = sql.length() > 200 ? sql.substring(0, 200) + "..." : sql;
+                throw new SQLException(e.getMessage() + " in: " + head, e.getSQLState(), e.getErrorCode(), e);
+            }
+        }
+
+        // The table's queued rows are sent, then everything sent for it has to finish
+        private void await(String table) throws SQLException, InterruptedException {
+            Batch batch = open.remove(table);
+            if (batch != null) {
+                submit(batch);
+            }
+            List<Future<?>> futures = pending.remove(table);
+            if (futures != null) {
+                for (Future<?> future : futures) {
+                    awaitNext(future);
+                }
+            }
+        }
+
+        private void awaitAll() throws SQLException, InterruptedException {
+            for (String table : new ArrayList<>(open.keySet())) {
+                submit(open.remove(table));
+            }
+            for (String table : new ArrayList<>(pending.keySet())) {
+                await(table);
+            }
+        }
+
+        private Connection openSession() throws SQLException {
+            Properties properties = new Properties();
+            properties.setProperty("characterEncoding", "UTF-8");
+            properties.setProperty("rewriteBatchedStatements", "true");
+            properties.setProperty("allowLoadLocalInfile", String.valueOf(loadData));
+            Connection conn = connectionRegistry.openMySqlConnection(request, properties);
+            try (Statement st = conn.createStatement()) {
+                // The driver answers a file request with the session's stream when it has one, and
+                // only reads the named local file when it doesn't
+                st.unwrap(JdbcStatement.class).setLocalInfileInputStream(InputStream.nullInputStream());
+                st.execute("SET SESSION foreign_key_checks = 0, unique_checks = 0");
+                conn.setAutoCommit(false);
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+            return conn;
+        }
+    }
+
+    // The first few warnings, which name the rows and columns at fault
+    private static String warnings(Statement st) throws SQLException {
+        StringBuilder text = new StringBuilder();
+        SQLWarning warning = st.getWarnings();
+        for (int i = 0; warning != null && i < 3; i++, warning = warning.getNextWarning()) {
+            text.append(i == 0 ? ": " : "; ").append(warning.getMessage());
+        }
+        return text.toString();
+    }
+
+    private static final class Session {
+        private final Connection conn;
+        // How much of the preamble this session has run
+        private int applied;
+
+        Session(Connection conn) {
+            this.conn = conn;
+        }
+    }
+
+    private static final class Batch {
+        private final String table;
+        private final List<String> statements = new ArrayList<>();
+        private long size;
+
+        Batch(String table) {
+            this.table = table;
+        }
+    }
+
+    private static Matcher head(Pattern pattern, String sql, int start) {
+        Matcher m = pattern.matcher(sql).region(start, sql.length());
+        return m.lookingAt() ? m : null;
+    }
+
+    private static String unquote(String name) {
+        return name.startsWith("`") ? name.substring(1, name.length() - 1).replace("``", "`") : name;
+    }
+
+    private static void abort(Connection conn) {
+        try {
+            conn.abort(Runnable::run);
+        } catch (SQLException e) {
+            log.debug("Could not abort restore session: {}", e.getMessage());
+        }
+    }
+
+    private static void awaitNext(Future<?> future) throws SQLException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sql) throw sql;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+}
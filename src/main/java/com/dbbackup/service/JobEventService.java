@@ -0,0 +1,83 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.Job;
+import com.dbbackup.utility.LogRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Live job progress as Server-Sent Events. Every subscriber gets a "progress" event with the job
+// and its counters each interval, "log" events with the tool output lines it hasn't seen yet, and
+// a final "done" event once the job has finished. Events are pushed from one scheduler thread, so
+// many watchers cost no request threads while a multi-hour job runs.
+@Slf4j
+@Service
+public class JobEventService {
+
+    private final JobService jobService;
+    private final Map<SseEmitter, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    public JobEventService(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    public SseEmitter subscribe(String jobId) throws FileNotFoundException {
+        Job job = jobService.getJob(jobId).orElseThrow(() -> new FileNotFoundException("No job " + jobId));
+        // No timeout: the stream lasts as long as the job, and a client that goes away fails the next send
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscription subscription = new Subscription(job, emitter);
+        subscriptions.put(emitter, subscription);
+        emitter.onCompletion(() -> subscriptions.remove(emitter));
+        emitter.onError(e -> subscriptions.remove(emitter));
+        publish(subscription);
+        return emitter;
+    }
+
+    @Scheduled(fixedRateString = "${quickdump.jobs.progress-interval:1000}")
+    public void publishAll() {
+        subscriptions.values().forEach(this::publish);
+    }
+
+    private void publish(Subscription subscription) {
+        Job job = subscription.job;
+        SseEmitter emitter = subscription.emitter;
+        synchronized (subscription) {
+            try {
+                List<LogRingBuffer.Line> lines = job.getTracker().logsSince(subscription.nextLogLine);
+                if (!lines.isEmpty()) {
+                    emitter.send(SseEmitter.event().name("log").data(lines, MediaType.APPLICATION_JSON));
+                    subscription.nextLogLine = lines.get(lines.size() - 1).seq() + 1;
+                }
+                boolean finished = job.isFinished();
+                emitter.send(SseEmitter.event().name(finished ? "done" : "progress").data(job, MediaType.APPLICATION_JSON));
+                if (finished) {
+                    subscriptions.remove(emitter);
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client disconnected, or the emitter was already completed
+                subscriptions.remove(emitter);
+                log.debug("Stopped progress events of job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private static class Subscription {
+        private final Job job;
+        private final SseEmitter emitter;
+        private long nextLogLine;
+
+        Subscription(Job job, SseEmitter emitter) {
+            this.job = job;
+            this.emitter = emitter;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.Job;
+import com.dbbackup.model.JobState;
+import com.dbbackup.model.RepositorySnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+@Slf4j
+@Service
+public class JobService {
+
+    private final BackupService backupService;
+    private final RestoreService restoreService;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final int maxFinishedJobs;
+
+    public JobService(BackupService backupService,
+                      RestoreService restoreService,
+                      MeterRegistry registry,
+                      @Value("${quickdump.jobs.workers:4}") int workers,
+                      @Value("${quickdump.jobs.queue-capacity:100}") int queueCapacity,
+                      @Value("${quickdump.jobs.history-size:500}") int maxFinishedJobs) {
+        this.backupService = backupService;
+        this.restoreService = restoreService;
+        this.maxFinishedJobs = maxFinishedJobs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Bounded queue: once it is full, submissions are rejected instead of piling up in memory
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "job-worker-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        Gauge.builder("quickdump.jobs.queued", executor, e -> e.getQueue().size())
+                .description("Jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("quickdump.jobs.running", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Jobs being worked on")
+                .register(registry);
+    }
+
+    public Job submitBackup(BackupRequest request) {
+        return submitBackup(request, null);
+    }
+
+    // onFinished runs on the worker thread once the job has succeeded or failed
+    public Job submitBackup(BackupRequest request, Consumer<Job> onFinished) {
+        Job job = newJob("backup", request);
+        submit(job, () -> {
+            if (BackupService.isRepositoryBackup(request)) {
+                RepositorySnapshot snapshot = backupService.backupToRepository(request);
+                job.setBytesProcessed(snapshot.getSize());
+                job.setResultPath("repository:" + snapshot.getId());
+                job.setMessage("Backup successful. Snapshot: " + snapshot.getId());
+                return;
+            }
+            BackupService.StoredArchive archive = backupService.generateBackupZip(request);
+            job.setBytesProcessed(archive.size());
+            job.setResultPath(archive.location());
+            job.setMessage("Backup successful. File: " + archive.location());
+        }, null, onFinished);
+        return job;
+    }
+
+    // The uploaded archive must already be on disk: the multipart request is gone once the caller returns
+    public Job submitRestore(Path zipPath, BackupRequest request) {
+        Job job = newJob("restore", request);
+        submit(job, () -> {
+            job.setBytesProcessed(Files.size(zipPath));
+            job.setMessage(restoreService.restoreBackup(zipPath, request));
+        }, zipPath, null);
+        return job;
+    }
+
+    public Optional<Job> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<Job> listJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(Job::getSubmittedAt).reversed())
+                .toList();
+    }
+
+    // The job's tracker goes into the request, which every dump and restore step already receives
+    private Job newJob(String type, BackupRequest request) {
+        Job job = new Job(UUID.randomUUID().toString(), type, request.getDbType(), request.getDbName());
+        request.setProgress(job.getTracker());
+        return job;
+    }
+
+    private void submit(Job job, JobTask task, Path cleanup, Consumer<Job> onFinished) {
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, task, cleanup, onFinished));
+        } catch (RuntimeException e) {
+            jobs.remove(job.getId());
+            deleteQuietly(cleanup);
+            throw e;
+        }
+        evictFinishedJobs();
+    }
+
+    private void run(Job job, JobTask task, Path cleanup, Consumer<Job> onFinished) {
+        job.setStartedAt(Instant.now());
+        job.setState(JobState.RUNNING);
+        try {
+            task.run();
+            job.setState(JobState.SUCCEEDED);
+        } catch (Exception e) {
+            log.error("Job {} ({}) failed: {}", job.getId(), job.getType(), e.getMessage(), e);
+            job.setError(e.getMessage());
+            job.setState(JobState.FAILED);
+        } finally {
+            job.getTracker().finish(job.getState() == JobState.SUCCEEDED ? "finished" : "failed");
+            job.setFinishedAt(Instant.now());
+            deleteQuietly(cleanup);
+            if (onFinished != null) {
+                try {
+                    onFinished.accept(job);
+                } catch (RuntimeException e) {
+                    log.warn("Completion callback of job {} failed: {}", job.getId(), e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void evictFinishedJobs() {
+        List<Job> finished = jobs.values().stream()
+                .filter(Job::isFinished)
+                .sorted(Comparator.comparing(Job::getFinishedAt))
+                .toList();
+        for (int i = 0; i < finished.size() - maxFinishedJobs; i++) {
+            jobs.remove(finished.get(i).getId());
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (Exception e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface JobTask {
+        void run() throws Exception;
+    }
+}
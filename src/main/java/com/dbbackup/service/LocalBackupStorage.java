@@ -0,0 +1,127 @@
+package com.dbbackup.service;
+
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.CountingOutputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Archives as files under backups/, located by their absolute path
+public class LocalBackupStorage implements BackupStorage {
+
+    public static final String TYPE = "local";
+
+    private final Path dir;
+
+    public LocalBackupStorage(Path dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public Upload create(String name, String suffix) throws IOException {
+        File file = BackupService.claimArchiveFile(dir.toFile(), name, suffix);
+        CountingOutputStream out = new CountingOutputStream(new FileOutputStream(file));
+        return new Upload() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+
+            @Override
+            public String location() {
+                return file.getAbsolutePath();
+            }
+
+            @Override
+            public String name() {
+                return file.getName();
+            }
+
+            @Override
+            public long size() {
+                return out.getCount();
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    out.close();
+                    Files.deleteIfExists(file.toPath());
+                } catch (IOException e) {
+                    // Nothing more to do with a half-written file we can't delete
+                }
+            }
+        };
+    }
+
+    @Override
+    public void writeSidecar(String location, String suffix, byte[] content) throws IOException {
+        Path archive = Paths.get(location);
+        Files.write(archive.resolveSibling(archive.getFileName() + suffix), content);
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        return new FileInputStream(location);
+    }
+
+    @Override
+    public void delete(String location) throws IOException {
+        Path archive = Paths.get(location);
+        Files.delete(archive);
+        Files.deleteIfExists(ArchiveChecksums.sidecar(archive));
+        Files.deleteIfExists(BackupCatalogService.manifestFile(archive));
+    }
+
+    @Override
+    public boolean owns(String location) {
+        return !location.contains("://") && !location.startsWith("repository:");
+    }
+
+    @Override
+    public String sibling(String location, String fileName) {
+        return Paths.get(location).resolveSibling(fileName).toString();
+    }
+
+    // The file store: archives on the same disk compete for it
+    @Override
+    public String resourceKey() {
+        return fileStoreOf(dir);
+    }
+
+    static String fileStoreOf(Path dir) {
+        Path absolute = dir.toAbsolutePath();
+        try {
+            Files.createDirectories(absolute);
+            return Files.getFileStore(absolute).toString();
+        } catch (IOException e) {
+            return absolute.toString();
+        }
+    }
+}
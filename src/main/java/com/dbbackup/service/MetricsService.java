@@ -0,0 +1,140 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.ProgressTracker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Micrometer meters of backups and restores, published at /actuator/prometheus. An operation records
+// its duration and outcome when it ends; stage times and byte counts are taken from its
+// ProgressTracker then, so the data path itself only pays for the tracker's counters and clocks.
+//
+//   quickdump.operation.duration{operation,db.type,outcome}   timer, with histogram buckets
+//   quickdump.operation.failures{operation,db.type}           counter
+//   quickdump.operations.active{operation}                    gauge
+//   quickdump.stage.duration{operation,stage,db.type}         timer: dump, compress, write, upload, read, extract, load
+//   quickdump.bytes{operation,kind,db.type}                   counter: kind=dump (plain SQL/BSON), archive or upload
+//   quickdump.backup.size{db.type}                            summary of archive bytes, with histogram buckets
+//   quickdump.backup.compression.ratio{db.type,codec}         summary of dump bytes / archive bytes
+@Service
+public class MetricsService {
+
+    public static final String BACKUP = "backup";
+    public static final String RESTORE = "restore";
+
+    private final MeterRegistry registry;
+    private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+
+    public MetricsService(MeterRegistry registry) {
+        this.registry = registry;
+        for (String operation : new String[]{BACKUP, RESTORE}) {
+            AtomicInteger running = new AtomicInteger();
+            active.put(operation, running);
+            Gauge.builder("quickdump.operations.active", running, AtomicInteger::get)
+                    .description("Backups or restores running right now")
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Operation<T> {
+        T run() throws IOException, InterruptedException;
+    }
+
+    public <T> T recordBackup(BackupRequest request, String codec, Operation<T> operation) throws IOException, InterruptedException {
+        return record(BACKUP, request, codec, operation);
+    }
+
+    public <T> T recordRestore(BackupRequest request, Operation<T> operation) throws IOException, InterruptedException {
+        return record(RESTORE, request, null, operation);
+    }
+
+    // Time taken to store an upload before a restore job can start
+    public void recordUpload(BackupRequest request, long nanos, long bytes) {
+        String dbType = dbType(request);
+        stageTimer(RESTORE, ProgressTracker.UPLOAD, dbType).record(nanos, TimeUnit.NANOSECONDS);
+        registry.counter("quickdump.bytes", "operation", RESTORE, "kind", "upload", "db.type", dbType).increment(bytes);
+    }
+
+    private <T> T record(String operation, BackupRequest request, String codec, Operation<T> body) throws IOException, InterruptedException {
+        String dbType = dbType(request);
+        ProgressTracker progress = request.getProgress();
+        // The tracker may outlive this operation (a chain restore runs several), so only the difference counts
+        Map<String, Long> stagesBefore = progress.getStageNanos();
+        long dumpBefore = progress.getDumpBytes();
+        long archiveBefore = progress.getArchiveBytes();
+
+        AtomicInteger running = active.get(operation);
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = body.run();
+            succeeded = true;
+            return result;
+        } finally {
+            running.decrementAndGet();
+            Timer.builder("quickdump.operation.duration")
+                    .description("Backup or restore time, start to finish")
+                    .tags("operation", operation, "db.type", dbType, "outcome", succeeded ? "success" : "failure")
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofSeconds(1))
+                    .maximumExpectedValue(Duration.ofHours(24))
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!succeeded) {
+                registry.counter("quickdump.operation.failures", "operation", operation, "db.type", dbType).increment();
+            }
+
+            progress.getStageNanos().forEach((stage, nanos) -> {
+                long spent = nanos - stagesBefore.getOrDefault(stage, 0L);
+                if (spent > 0) {
+                    stageTimer(operation, stage, dbType).record(spent, TimeUnit.NANOSECONDS);
+                }
+            });
+
+            long dump = progress.getDumpBytes() - dumpBefore;
+            long archive = progress.getArchiveBytes() - archiveBefore;
+            registry.counter("quickdump.bytes", "operation", operation, "kind", "dump", "db.type", dbType).increment(dump);
+            registry.counter("quickdump.bytes", "operation", operation, "kind", "archive", "db.type", dbType).increment(archive);
+            if (succeeded && BACKUP.equals(operation) && archive > 0) {
+                DistributionSummary.builder("quickdump.backup.size")
+                        .baseUnit("bytes")
+                        .tag("db.type", dbType)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(1024.0 * 1024)
+                        .maximumExpectedValue(1024.0 * 1024 * 1024 * 1024)
+                        .register(registry)
+                        .record(archive);
+                if (dump > 0) {
+                    DistributionSummary.builder("quickdump.backup.compression.ratio")
+                            .tags("db.type", dbType, "codec", codec != null ? codec : "unknown")
+                            .register(registry)
+                            .record((double) dump / archive);
+                }
+            }
+        }
+    }
+
+    private Timer stageTimer(String operation, String stage, String dbType) {
+        return Timer.builder("quickdump.stage.duration")
+                .description("Time spent in one stage of the backup/restore pipeline")
+                .tags("operation", operation, "stage", stage, "db.type", dbType)
+                .register(registry);
+    }
+
+    private static String dbType(BackupRequest request) {
+        return request.getDbType() != null ? request.getDbType().toLowerCase() : "unknown";
+    }
+}
@@ -0,0 +1,534 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.ArchiveWriter;
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.MySqlDumpTableFilter;
+import com.dbbackup.utility.MySqlDumpTableSplitter;
+import com.dbbackup.utility.ProcessOutputCollector;
+import com.dbbackup.utility.ProgressTracker;
+import com.dbbackup.utility.SqlDumpTableScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+// Per-table MySQL dump/restore: schema.sql first, then one data/<table>.sql entry per table,
+// produced and loaded by several mysqldump/mysql workers at once, and last the triggers/<table>.sql
+// entries, which are only created once every table is loaded
+@Slf4j
+@Service
+public class MySqlParallelService {
+
+    public static final String SCHEMA_ENTRY = "schema.sql";
+    public static final String DATA_DIR = "data/";
+    public static final String TRIGGERS_DIR = "triggers/";
+
+    private final ConnectionRegistry connectionRegistry;
+    private final JdbcLoadService jdbcLoadService;
+    private final PipelineService pipelineService;
+    private final int defaultParallelism;
+
+    public MySqlParallelService(ConnectionRegistry connectionRegistry,
+                                JdbcLoadService jdbcLoadService,
+                                PipelineService pipelineService,
+                                @Value("${quickdump.mysql.parallelism:4}") int defaultParallelism) {
+        this.connectionRegistry = connectionRegistry;
+        this.jdbcLoadService = jdbcLoadService;
+        this.pipelineService = pipelineService;
+        this.defaultParallelism = defaultParallelism;
+    }
+
+    public static boolean isSchemaEntry(String entryName) {
+        String name = CompressionCodec.baseName(entryName);
+        return name.equals(SCHEMA_ENTRY) || name.endsWith("/" + SCHEMA_ENTRY);
+    }
+
+    // With capturePosition, returns the binlog position read while the tables are locked
+    public String dump(BackupRequest request, String folderName, ArchiveWriter archive, CompressionSettings compression,
+                       boolean capturePosition) throws IOException, InterruptedException {
+        int workers = workerCount(request);
+        ProgressTracker progress = request.getProgress();
+        Path spoolDir = Files.createTempDirectory("parallel_dump_");
+        Set<Process> running = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = null;
+        String position = null;
+
+        Connection conn = null;
+        boolean locked = false;
+        try {
+            conn = connectionRegistry.mySqlConnection(request);
+            Map<String, Long> tables = listTables(conn, request.getDbName());
+            List<String> triggerTables = listTriggerTables(conn, request.getDbName());
+            progress.expectTables(tables.size());
+            List<List<String>> groups = groupTables(tables, workers);
+            executor = Executors.newFixedThreadPool(Math.max(1, groups.size()));
+
+            // Writers wait on the read lock while every worker opens its snapshot, so all of them
+            // see the same data, and the binlog position is exactly where that data ends
+            if (!tables.isEmpty()) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute(tables.keySet().stream()
+                            .map(t -> quoteIdentifier(t) + " READ")
+                            .collect(Collectors.joining(", ", "LOCK TABLES ", "")));
+                }
+                locked = true;
+            }
+            if (capturePosition) {
+                position = IncrementalBackupService.readBinlogPosition(conn);
+            }
+
+            List<CountDownLatch> snapshots = new ArrayList<>();
+            List<Future<?>> dumps = new ArrayList<>();
+            BlockingQueue<TableDump> dumped = new LinkedBlockingQueue<>();
+            for (List<String> group : groups) {
+                CountDownLatch snapshot = new CountDownLatch(1);
+                snapshots.add(snapshot);
+                dumps.add(executor.submit(() -> {
+                    dumpGroup(request, group, spoolDir, compression, running, snapshot, dumped);
+                    return null;
+                }));
+            }
+            // mysqldump starts its transaction before it writes the first table's data, so from
+            // here on the lock only holds up writers
+            for (CountDownLatch snapshot : snapshots) {
+                snapshot.await();
+            }
+            releaseConnection(conn, locked);
+            conn = null;
+
+            // Schema goes in first while the table workers are already busy. Triggers stay out of
+            // it: created before the parallel data loads, they would fire on the restored rows
+            List<String> schemaCommand = new ArrayList<>(baseCommand("mysqldump", request));
+            schemaCommand.addAll(List.of("--no-data", "--skip-triggers", "--skip-lock-tables", request.getDbName()));
+            OutputStream schemaOut = archive.putNextEntry(compression.entryName(folderName + "/" + SCHEMA_ENTRY), compression.zipLevel());
+            try (OutputStream entry = progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(schemaOut))) {
+                runDump(schemaCommand, entry, running, progress);
+            }
+            archive.closeEntry();
+
+            // Tables are zipped in completion order and their spool files dropped right away
+            for (int i = 0; i < tables.size(); i++) {
+                TableDump dump = nextTable(dumped, dumps);
+                progress.tableStarted(dump.table());
+                OutputStream tableOut = archive.putNextEntry(
+                        compression.entryName(folderName + "/" + DATA_DIR + dump.table() + ".sql"), compression.zipLevel());
+                // Deflate, if any, happens here; the per-table codec already ran on the worker
+                Files.copy(dump.file(), progress.timeOutput(ProgressTracker.COMPRESS, tableOut));
+                archive.closeEntry();
+                Files.delete(dump.file());
+                progress.tableDone();
+            }
+            // A worker that failed on its last table has still handed over every table
+            for (Future<?> dump : dumps) {
+                awaitNext(dump);
+            }
+
+            // Restored once all the data is in
+            for (String table : triggerTables) {
+                List<String> command = new ArrayList<>(baseCommand("mysqldump", request));
+                command.addAll(List.of("--no-data", "--no-create-info", "--skip-lock-tables", request.getDbName(), table));
+                OutputStream triggerOut = archive.putNextEntry(
+                        compression.entryName(folderName + "/" + TRIGGERS_DIR + table + ".sql"), compression.zipLevel());
+                try (OutputStream entry = progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(triggerOut))) {
+                    runDump(command, entry, running, progress);
+                }
+                archive.closeEntry();
+            }
+
+            return position;
+        } catch (SQLException e) {
+            throw new IOException("Could not read table list: " + e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            running.forEach(Process::destroyForcibly);
+            deleteDirectory(spoolDir);
+            // Pooled connection: it must not go back to the pool still holding the table locks
+            releaseConnection(conn, locked);
+        }
+    }
+
+    // One mysqldump session for the whole group, so one snapshot; its output is cut into a spool
+    // file per table, compressed on this worker, and each finished table is handed over
+    private void dumpGroup(BackupRequest request, List<String> tables, Path spoolDir, CompressionSettings compression,
+                           Set<Process> running, CountDownLatch snapshot, BlockingQueue<TableDump> dumped)
+            throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        List<String> command = new ArrayList<>(baseCommand("mysqldump", request));
+        command.addAll(List.of("--no-create-info", "--skip-triggers", "--single-transaction", "--skip-lock-tables",
+                request.getDbName()));
+        command.addAll(tables);
+        try (MySqlDumpTableSplitter splitter = new MySqlDumpTableSplitter(table -> {
+            snapshot.countDown();
+            Path spoolFile = Files.createTempFile(spoolDir, "table_", ".sql");
+            OutputStream file = new BufferedOutputStream(
+                    progress.timeOutput(ProgressTracker.WRITE, Files.newOutputStream(spoolFile)), 64 * 1024);
+            return new FilterOutputStream(progress.timeOutput(ProgressTracker.COMPRESS, compression.wrap(file))) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    dumped.add(new TableDump(table, spoolFile));
+                }
+            };
+        })) {
+            runDump(command, splitter, running, progress);
+        } finally {
+            // Also lets the coordinator go on when the dump failed before its first table
+            snapshot.countDown();
+        }
+    }
+
+    private TableDump nextTable(BlockingQueue<TableDump> dumped, List<Future<?>> dumps) throws IOException, InterruptedException {
+        while (true) {
+            TableDump dump = dumped.poll(1, TimeUnit.SECONDS);
+            if (dump != null) {
+                return dump;
+            }
+            boolean finished = true;
+            for (Future<?> future : dumps) {
+                if (future.isDone()) {
+                    awaitNext(future);
+                } else {
+                    finished = false;
+                }
+            }
+            if (finished && dumped.isEmpty()) {
+                throw new IOException("mysqldump finished without dumping every table; was one dropped during the backup?");
+            }
+        }
+    }
+
+    // Data entry name -> table name: ".../data/orders.sql.zst" -> "orders"
+    public static String tableOf(String entryName) {
+        return tableIn(entryName, DATA_DIR);
+    }
+
+    // Trigger entry name -> the table the triggers are on: ".../triggers/orders.sql" -> "orders"
+    public static String triggersOf(String entryName) {
+        return tableIn(entryName, TRIGGERS_DIR);
+    }
+
+    private static String tableIn(String entryName, String dir) {
+        String name = CompressionCodec.baseName(entryName);
+        int start = name.lastIndexOf("/" + dir);
+        if (start < 0 || !name.endsWith(".sql")) {
+            return null;
+        }
+        return name.substring(start + dir.length() + 1, name.length() - ".sql".length());
+    }
+
+    // Called with the stream positioned on the schema entry; the data entries follow it
+    public String restore(BackupRequest request, ZipInputStream zis) throws IOException, InterruptedException {
+        int workers = workerCount(request);
+        Set<String> selected = RestoreService.selectedTables(request);
+        StringBuilder output = new StringBuilder();
+
+        try (InputStream schema = pipelineService.decode(zis, request)) {
+            output.append(runLoad(request, selected == null ? schema : MySqlDumpTableFilter.filter(schema, selected)));
+        }
+
+        Path spoolDir = Files.createTempDirectory("parallel_restore_");
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        // Bounds how many table files sit on disk waiting for a free worker
+        Semaphore spoolSlots = new Semaphore(workers * 2);
+        List<Future<String>> loads = new ArrayList<>();
+
+        int tables = 0;
+        try {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (entry.isDirectory() || !CompressionCodec.baseName(entry.getName()).endsWith(".sql")) {
+                    continue;
+                }
+                String triggersOn = triggersOf(entry.getName());
+                if (triggersOn != null) {
+                    // Trigger entries come last: every table is loaded before any trigger exists
+                    if (selected == null || selected.contains(triggersOn)) {
+                        tables += awaitLoads(loads, output);
+                        try (InputStream triggers = pipelineService.decode(zis, request)) {
+                            output.append(runLoad(request, triggers));
+                        }
+                    }
+                    continue;
+                }
+                if (selected != null && !selected.contains(tableOf(entry.getName()))) {
+                    continue;
+                }
+                // Stop reading the upload as soon as any table load has failed
+                for (Future<String> load : loads) {
+                    if (load.isDone()) {
+                        awaitNext(load);
+                    }
+                }
+
+                spoolSlots.acquire();
+                Path spoolFile = Files.createTempFile(spoolDir, "table_", ".sql");
+                Files.copy(zis, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+
+                // Spooled still compressed; each worker decodes its own table
+                loads.add(executor.submit(() -> {
+                    try (InputStream file = Files.newInputStream(spoolFile);
+                         InputStream in = pipelineService.decode(file, request)) {
+                        return runLoad(request, new SqlDumpTableScanner(in, request.getProgress()));
+                    } finally {
+                        Files.deleteIfExists(spoolFile);
+                        spoolSlots.release();
+                    }
+                }));
+            }
+
+            tables += awaitLoads(loads, output);
+        } finally {
+            executor.shutdownNow();
+            deleteDirectory(spoolDir);
+        }
+
+        return "MySQL database restored successfully (" + tables + " tables, " + workers + " workers).\nOutput:\n" + output;
+    }
+
+    private int awaitLoads(List<Future<String>> loads, StringBuilder output) throws IOException, InterruptedException {
+        int count = loads.size();
+        for (Future<String> load : loads) {
+            output.append(awaitNext(load));
+        }
+        loads.clear();
+        return count;
+    }
+
+    // Selected tables from a stored archive: only their entries are read, straight from the zip
+    // through its central directory, and the table files load side by side without spooling
+    public String restoreTables(BackupRequest request, ZipFile zip, ZipEntry schemaEntry, List<ZipEntry> dataEntries,
+                                List<ZipEntry> triggerEntries) throws IOException, InterruptedException {
+        int workers = workerCount(request);
+        Set<String> selected = RestoreService.selectedTables(request);
+        StringBuilder output = new StringBuilder();
+
+        try (InputStream raw = zip.getInputStream(schemaEntry);
+             InputStream schema = pipelineService.decode(raw, request)) {
+            output.append(runLoad(request, MySqlDumpTableFilter.filter(schema, selected)));
+        }
+
+        request.getProgress().expectTables(dataEntries.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<String>> loads = new ArrayList<>();
+            for (ZipEntry entry : dataEntries) {
+                loads.add(executor.submit(() -> {
+                    try (InputStream raw = zip.getInputStream(entry);
+                         InputStream in = pipelineService.decode(raw, request)) {
+                        return runLoad(request, new SqlDumpTableScanner(in, request.getProgress()));
+                    }
+                }));
+            }
+            awaitLoads(loads, output);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (ZipEntry entry : triggerEntries) {
+            try (InputStream raw = zip.getInputStream(entry);
+                 InputStream triggers = pipelineService.decode(raw, request)) {
+                output.append(runLoad(request, triggers));
+            }
+        }
+
+        return "MySQL tables " + selected + " restored (" + dataEntries.size() + " data files).\nOutput:\n" + output;
+    }
+
+    private String runLoad(BackupRequest request, InputStream sql) throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        if (jdbcLoadService.handles(request)) {
+            // The tables already load side by side, so each file gets one session
+            return jdbcLoadService.load(request, progress.timeInput(ProgressTracker.EXTRACT, progress.countDump(sql)), 1);
+        }
+
+        List<String> command = new ArrayList<>(baseCommand("mysql", request));
+        command.add(request.getDbName());
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        ProcessOutputCollector output = ProcessOutputCollector.start(process.getInputStream(), "parallel-restore-output", progress);
+        try {
+            try (OutputStream stdin = progress.timeOutput(ProgressTracker.LOAD, process.getOutputStream())) {
+                progress.timeInput(ProgressTracker.EXTRACT, progress.countDump(sql)).transferTo(stdin);
+            } catch (IOException e) {
+                if (process.isAlive()) {
+                    throw e;
+                }
+            }
+            long waitStart = System.nanoTime();
+            int exitCode = process.waitFor();
+            progress.addStageTime(ProgressTracker.LOAD, System.nanoTime() - waitStart);
+            String text = output.await();
+            if (exitCode != 0) {
+                throw new RuntimeException("MySQL restore failed. Exit code: " + exitCode + "\nOutput:\n" + text);
+            }
+            return text;
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private void runDump(List<String> command, OutputStream target, Set<Process> running,
+                         ProgressTracker progress) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).start();
+        running.add(process);
+        try {
+            ProcessOutputCollector errors = ProcessOutputCollector.start(process.getErrorStream(), "parallel-dump-stderr", progress);
+            try (InputStream dump = progress.timeInput(ProgressTracker.DUMP, progress.countDump(process.getInputStream()))) {
+                dump.transferTo(target);
+            }
+            long waitStart = System.nanoTime();
+            int exitCode = process.waitFor();
+            progress.addStageTime(ProgressTracker.DUMP, System.nanoTime() - waitStart);
+            if (exitCode != 0) {
+                throw new RuntimeException("Backup failed. Exit code: " + exitCode + "\nOutput:\n" + errors.await());
+            }
+        } finally {
+            running.remove(process);
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private <T> T awaitNext(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    // Biggest tables first, with their size on disk
+    private Map<String, Long> listTables(Connection conn, String dbName) throws SQLException {
+        Map<String, Long> tables = new LinkedHashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT TABLE_NAME, DATA_LENGTH + INDEX_LENGTH FROM information_schema.TABLES " +
+                        "WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE' " +
+                        "ORDER BY DATA_LENGTH + INDEX_LENGTH DESC")) {
+            ps.setString(1, dbName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    tables.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+        }
+        return tables;
+    }
+
+    private List<String> listTriggerTables(Connection conn, String dbName) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT DISTINCT EVENT_OBJECT_TABLE FROM information_schema.TRIGGERS " +
+                        "WHERE TRIGGER_SCHEMA = ? ORDER BY EVENT_OBJECT_TABLE")) {
+            ps.setString(1, dbName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    tables.add(rs.getString(1));
+                }
+            }
+        }
+        return tables;
+    }
+
+    // Each table, biggest first, goes to the least loaded worker, so the workers finish together
+    static List<List<String>> groupTables(Map<String, Long> tables, int workers) {
+        int count = Math.min(workers, tables.size());
+        List<List<String>> groups = new ArrayList<>();
+        long[] loads = new long[count];
+        for (int i = 0; i < count; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (Map.Entry<String, Long> table : tables.entrySet()) {
+            int least = 0;
+            for (int i = 1; i < count; i++) {
+                if (loads[i] < loads[least]) {
+                    least = i;
+                }
+            }
+            groups.get(least).add(table.getKey());
+            loads[least] += table.getValue();
+        }
+        return groups;
+    }
+
+    private void releaseConnection(Connection conn, boolean locked) {
+        if (conn == null) {
+            return;
+        }
+        try (conn) {
+            if (locked) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("UNLOCK TABLES");
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Could not release table locks: {}", e.getMessage());
+        }
+    }
+
+    private List<String> baseCommand(String tool, BackupRequest request) {
+        return List.of(
+                tool,
+                "-h", request.getHost(),
+                "-P", String.valueOf(request.getPort()),
+                "-u", request.getUsername(),
+                "-p" + request.getPassword()
+        );
+    }
+
+    private int workerCount(BackupRequest request) {
+        return request.getParallelism() > 0 ? request.getParallelism() : defaultParallelism;
+    }
+
+    private static String quoteIdentifier(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+
+    private record TableDump(String table, Path file) {
+    }
+
+    private void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.BufferPool;
+import com.dbbackup.utility.EntryPipeline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+// The configured entry pipeline, shared by every backup and restore: stage buffers come from one
+// pool, and the same key that encrypts new archives decrypts the ones being restored.
+@Slf4j
+@Service
+public class PipelineService {
+
+    private final EntryPipeline pipeline;
+
+    public PipelineService(@Value("${quickdump.pipeline.queue-depth:0}") int depth,
+                           @Value("${quickdump.pipeline.buffer-size:1MB}") DataSize bufferSize,
+                           @Value("${quickdump.pipeline.max-idle-buffers:64}") int maxIdleBuffers,
+                           @Value("${quickdump.encryption.key:}") String key) {
+        byte[] keyBytes = null;
+        if (key != null && !key.isBlank()) {
+            try {
+                keyBytes = Base64.getDecoder().decode(key.trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("quickdump.encryption.key must be base64", e);
+            }
+        }
+        BufferPool pool = depth > 0 ? new BufferPool((int) bufferSize.toBytes(), maxIdleBuffers) : null;
+        this.pipeline = new EntryPipeline(pool, depth, keyBytes);
+        log.info("Backup pipeline: {}, {}", depth > 0 ? depth + " buffers of " + bufferSize + " per stage" : "stages off",
+                keyBytes != null ? "entries encrypted with AES-" + keyBytes.length * 8 + "-GCM" : "not encrypted");
+    }
+
+    public EntryPipeline pipeline() {
+        return pipeline;
+    }
+
+    // Restores refuse unencrypted entries while a key is set, unless the request allows them
+    public InputStream decode(InputStream entry, BackupRequest request) throws IOException {
+        return pipeline.decode(entry, allowsPlaintext(request));
+    }
+
+    public InputStream decrypt(InputStream entry, BackupRequest request) throws IOException {
+        return pipeline.decrypt(entry, allowsPlaintext(request));
+    }
+
+    // A volume set's entries are stored plain inside its volumes, which were decrypted already
+    private static boolean allowsPlaintext(BackupRequest request) {
+        return request.isAllowUnencrypted() || request.isFromVolumes();
+    }
+}
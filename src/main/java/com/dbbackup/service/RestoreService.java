@@ -1,83 +1,307 @@
 package com.dbbackup.service;
 
+import com.dbbackup.model.BackupManifest;
 import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.VolumeSet;
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.MySqlDumpTableFilter;
+import com.dbbackup.utility.NonClosingInputStream;
+import com.dbbackup.utility.ProcessOutputCollector;
+import com.dbbackup.utility.ProgressTracker;
+import com.dbbackup.utility.SqlDumpTableScanner;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 
 @Service
 public class RestoreService {
 
+    private final MySqlParallelService mySqlParallelService;
+    private final JdbcLoadService jdbcLoadService;
+    private final ArchiveVerificationService archiveVerificationService;
+    private final MetricsService metricsService;
+    private final PipelineService pipelineService;
+    private final StorageService storageService;
+    private final BackupCatalogService backupCatalogService;
+    private final VolumeSetService volumeSetService;
+
+    public RestoreService(MySqlParallelService mySqlParallelService,
+                          JdbcLoadService jdbcLoadService,
+                          ArchiveVerificationService archiveVerificationService,
+                          MetricsService metricsService,
+                          PipelineService pipelineService,
+                          StorageService storageService,
+                          BackupCatalogService backupCatalogService,
+                          VolumeSetService volumeSetService) {
+        this.mySqlParallelService = mySqlParallelService;
+        this.jdbcLoadService = jdbcLoadService;
+        this.archiveVerificationService = archiveVerificationService;
+        this.metricsService = metricsService;
+        this.pipelineService = pipelineService;
+        this.storageService = storageService;
+        this.backupCatalogService = backupCatalogService;
+        this.volumeSetService = volumeSetService;
+    }
+
     public String restoreBackup(MultipartFile zipFile, BackupRequest request) throws IOException, InterruptedException {
-        // 1. Create temporary directory
-        String tempDirPath = System.getProperty("java.io.tmpdir") + File.separator + "restore_temp_" + System.currentTimeMillis();
-        Path tempDir = Paths.get(tempDirPath);
-        Files.createDirectories(tempDir);
+        return metricsService.recordRestore(request, () -> restoreUpload(zipFile, request));
+    }
+
+    private String restoreUpload(MultipartFile zipFile, BackupRequest request) throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        // The upload is complete by now, so a checksum can be checked before anything is restored
+        if (request.getSha256() != null && !request.getSha256().isBlank()) {
+            progress.phase("verifying");
+            try (InputStream in = zipFile.getInputStream()) {
+                String actual = ArchiveChecksums.sha256(in);
+                if (!actual.equalsIgnoreCase(request.getSha256().trim())) {
+                    throw new IOException("Archive checksum mismatch: expected " + request.getSha256() + ", got " + actual);
+                }
+            }
+        }
+        progress.expectArchiveBytes(zipFile.getSize());
+        try (InputStream in = progress.timeInput(ProgressTracker.READ, progress.countArchive(zipFile.getInputStream()))) {
+            return restoreArchive(in, request);
+        }
+    }
 
-        // 2. Save uploaded zip file
-        Path zipPath = tempDir.resolve(zipFile.getOriginalFilename());
-        Files.copy(zipFile.getInputStream(), zipPath, StandardCopyOption.REPLACE_EXISTING);
+    // Used by restore jobs, which receive the upload as a file before the request thread returns
+    public String restoreBackup(Path zipPath, BackupRequest request) throws IOException, InterruptedException {
+        return metricsService.recordRestore(request, () -> restoreStored(zipPath, request));
+    }
 
-        // 3. Extract zip file
-        Path extractDir = tempDir.resolve("extracted");
-        Files.createDirectories(extractDir);
-        unzip(zipPath.toFile(), extractDir.toFile());
+    private String restoreStored(Path zipPath, BackupRequest request) throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        progress.phase("verifying");
+        archiveVerificationService.checkBeforeRestore(zipPath, request.getSha256());
+        if (selectedTables(request) != null) {
+            return restoreSelected(zipPath, request);
+        }
+        progress.expectArchiveBytes(Files.size(zipPath));
+        try (InputStream in = progress.timeInput(ProgressTracker.READ, progress.countArchive(Files.newInputStream(zipPath)))) {
+            return restoreArchive(in, request);
+        }
+    }
 
-        // 4. Find .sql or .archive file (recursive)
+    // A streamed archive can only be checked once it has been read to the end, after the restore
+    // ran; a mismatch still fails the request so the caller knows the data can't be trusted
+    public String restoreBackup(InputStream archive, BackupRequest request) throws IOException, InterruptedException {
+        return metricsService.recordRestore(request, () -> restoreStream(archive, request));
+    }
+
+    private String restoreStream(InputStream body, BackupRequest request) throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        // Waiting on the client is the upload stage here, there being no stored copy to read
+        InputStream archive = progress.timeInput(ProgressTracker.UPLOAD, progress.countArchive(body));
+        if (request.getSha256() == null || request.getSha256().isBlank()) {
+            return restoreArchive(archive, request);
+        }
+        MessageDigest digest = ArchiveChecksums.newDigest();
+        DigestInputStream in = new DigestInputStream(archive, digest);
+        // Kept open through the restore, which closes its streams, so the rest can be hashed after
+        String result = restoreArchive(new NonClosingInputStream(in), request);
+        in.transferTo(OutputStream.nullOutputStream());
+        String actual = ArchiveChecksums.hex(digest);
+        if (!actual.equalsIgnoreCase(request.getSha256().trim())) {
+            throw new IOException("Archive checksum mismatch after restore: expected " + request.getSha256() + ", got " + actual);
+        }
+        return result;
+    }
+
+    // A backup this application stored, by the location its job reported. Only catalogued
+    // archives, so this can't be pointed at arbitrary files. Local archives take the stored-file
+    // path; remote ones and volume sets stream from their storage, checked against the manifest's
+    // checksum.
+    public String restoreFromStorage(String location, BackupRequest request) throws IOException, InterruptedException {
+        BackupManifest manifest = backupCatalogService.getManifest(location);
+        BackupStorage storage = storageService.forLocation(location);
+        VolumeSet volumes = manifest.getVolumes();
+        if (volumes != null) {
+            if (request.getSha256() == null || request.getSha256().isBlank()) {
+                request.setSha256(volumes.sha256());
+            }
+            request.getProgress().expectArchiveBytes(volumes.size());
+            request.setFromVolumes(true);
+            try (InputStream in = volumeSetService.open(storage, location, volumes, request.isAllowUnencrypted())) {
+                return restoreBackup(in, request);
+            }
+        }
+        if (LocalBackupStorage.TYPE.equals(storage.getType())) {
+            return restoreBackup(Path.of(location), request);
+        }
+        if (request.getSha256() == null || request.getSha256().isBlank()) {
+            request.setSha256(manifest.getSha256());
+        }
+        request.getProgress().expectArchiveBytes(manifest.getSize());
+        try (InputStream in = storage.open(location)) {
+            return restoreBackup(in, request);
+        }
+    }
+
+    // Reads the archive as it arrives and pipes the dump entry straight into the restore tool,
+    // so the restore starts with the first bytes and nothing is extracted to disk
+    private String restoreArchive(InputStream archive, BackupRequest request) throws IOException, InterruptedException {
         String dbType = request.getDbType().toLowerCase();
+        if (!"mysql".equals(dbType) && !"mongodb".equals(dbType)) {
+            throw new UnsupportedOperationException("Unsupported DB type: " + request.getDbType());
+        }
+        request.getProgress().phase("restoring");
 
-        if ("mysql".equals(dbType)) {
-            File backupFile = findBackupFile(extractDir.toFile());
-            if (backupFile == null) {
-                throw new FileNotFoundException("No .sql file found in the uploaded zip.");
+        ZipInputStream zis = new ZipInputStream(new BufferedInputStream(archive, 64 * 1024));
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = CompressionCodec.baseName(entry.getName());
+            if (VolumeSetService.INDEX_ENTRY.equals(name)) {
+                throw new IllegalArgumentException("This is the index of a multi-volume backup; restore it with /api/restore/storage");
+            }
+
+            if ("mysql".equals(dbType) && MySqlParallelService.isSchemaEntry(name)) {
+                // Per-table backup: schema first, then the table files loaded concurrently
+                return mySqlParallelService.restore(request, zis);
+            }
+            if ("mysql".equals(dbType) && name.endsWith(".sql")) {
+                try (InputStream sql = pipelineService.decode(zis, request)) {
+                    return restoreMySQL(request, filterTables(request, sql));
+                }
             }
-            return restoreMySQL(request, backupFile);
+            if ("mongodb".equals(dbType) && (name.endsWith(".archive") || name.endsWith(".archive.gz"))) {
+                try (InputStream dump = pipelineService.decrypt(zis, request)) {
+                    return restoreMongoArchive(request, dump, name.endsWith(".gz"));
+                }
+            }
+            if ("mongodb".equals(dbType) && (name.endsWith(".bson") || name.endsWith(".json") || name.endsWith(".gz"))) {
+                // Older backups hold a mongodump directory tree, which mongorestore can only read from disk
+                return restoreMongoDirectory(request, zis, entry);
+            }
+        }
 
-        } else if ("mongodb".equals(dbType)) {
-            return restoreMongoDB(request, extractDir.toFile());
+        if ("mysql".equals(dbType)) {
+            throw new FileNotFoundException("No .sql file found in the uploaded zip.");
+        }
+        throw new FileNotFoundException("No MongoDB dump found in the uploaded zip.");
+    }
 
-        } else {
-            throw new UnsupportedOperationException("Unsupported DB type: " + request.getDbType());
+    public static Set<String> selectedTables(BackupRequest request) {
+        if (request.getTables() == null || request.getTables().isEmpty()) {
+            return null;
         }
+        return new LinkedHashSet<>(request.getTables());
+    }
 
+    // Partial restore of a stored archive: the zip's central directory says where each entry is,
+    // so only the entries holding the selected tables/collections are read
+    private String restoreSelected(Path zipPath, BackupRequest request) throws IOException, InterruptedException {
+        String dbType = request.getDbType().toLowerCase();
+        Set<String> selected = selectedTables(request);
+        request.getProgress().phase("restoring");
+
+        try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+            List<? extends ZipEntry> entries = zip.stream().filter(e -> !e.isDirectory()).toList();
+
+            if ("mysql".equals(dbType)) {
+                Optional<? extends ZipEntry> schema = entries.stream()
+                        .filter(e -> MySqlParallelService.isSchemaEntry(e.getName()))
+                        .findFirst();
+                if (schema.isPresent()) {
+                    List<ZipEntry> data = entries.stream()
+                            .filter(e -> selected.contains(MySqlParallelService.tableOf(e.getName())))
+                            .map(e -> (ZipEntry) e)
+                            .toList();
+                    List<ZipEntry> triggers = entries.stream()
+                            .filter(e -> selected.contains(MySqlParallelService.triggersOf(e.getName())))
+                            .map(e -> (ZipEntry) e)
+                            .toList();
+                    return mySqlParallelService.restoreTables(request, zip, schema.get(), data, triggers);
+                }
+                // Single-file dump: the selected tables are cut out of the script as it streams by
+                for (ZipEntry entry : entries) {
+                    if (CompressionCodec.baseName(entry.getName()).endsWith(".sql")) {
+                        try (InputStream raw = zip.getInputStream(entry);
+                             InputStream sql = pipelineService.decode(raw, request)) {
+                            return restoreMySQL(request, MySqlDumpTableFilter.filter(sql, selected));
+                        }
+                    }
+                }
+                throw new FileNotFoundException("No .sql file found in the backup.");
+            }
 
-        // 5. Restore based on dbType
-//        String dbType = request.getDbType().toLowerCase();
-//        return switch (dbType) {
-//            case "mysql" -> restoreMySQL(request, backupFile);
-//            case "mongodb" -> restoreMongoDB(request, backupFile);
-//            default -> throw new UnsupportedOperationException("Unsupported DB type: " + request.getDbType());
-//        };
+            if ("mongodb".equals(dbType)) {
+                for (ZipEntry entry : entries) {
+                    String name = CompressionCodec.baseName(entry.getName());
+                    if (name.endsWith(".archive") || name.endsWith(".archive.gz")) {
+                        try (InputStream raw = zip.getInputStream(entry);
+                             InputStream archive = pipelineService.decrypt(raw, request)) {
+                            return restoreMongoArchive(request, archive, name.endsWith(".gz"));
+                        }
+                    }
+                }
+                Path tempDir = Files.createTempDirectory("restore_temp_");
+                try {
+                    for (ZipEntry entry : entries) {
+                        if (isCollectionFile(entry.getName(), selected)) {
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                extractEntry(in, entry, tempDir.toFile());
+                            }
+                        }
+                    }
+                    return restoreMongoDB(request, tempDir.toFile());
+                } finally {
+                    deleteDirectory(tempDir);
+                }
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported DB type: " + request.getDbType());
     }
 
-    private File findBackupFile(File dir) {
-        File[] files = dir.listFiles();
-        if (files == null) return null;
+    private InputStream filterTables(BackupRequest request, InputStream sql) throws IOException {
+        Set<String> selected = selectedTables(request);
+        return selected == null ? sql : MySqlDumpTableFilter.filter(sql, selected);
+    }
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                File result = findBackupFile(file);
-                if (result != null) return result;
-            } else if (file.getName().endsWith(".sql") || file.getName().endsWith(".archive")) {
-                return file;
+    // mongodump writes <collection>.bson and <collection>.metadata.json, optionally gzipped
+    private static boolean isCollectionFile(String entryName, Set<String> collections) {
+        String fileName = entryName.substring(entryName.lastIndexOf('/') + 1);
+        if (fileName.endsWith(".gz")) {
+            fileName = fileName.substring(0, fileName.length() - ".gz".length());
+        }
+        for (String suffix : List.of(".bson", ".metadata.json")) {
+            if (fileName.endsWith(suffix) && collections.contains(fileName.substring(0, fileName.length() - suffix.length()))) {
+                return true;
             }
         }
-        return null;
+        return false;
     }
 
-    private String restoreMySQL(BackupRequest request, File backupFile) throws IOException, InterruptedException {
+    private static List<String> nsIncludeOptions(BackupRequest request, String dbName) {
+        Set<String> selected = selectedTables(request);
+        if (selected == null) {
+            return List.of("--nsInclude=" + dbName + ".*");
+        }
+        return selected.stream().map(collection -> "--nsInclude=" + dbName + "." + collection).toList();
+    }
+
+    String restoreMySQL(BackupRequest request, InputStream sql) throws IOException, InterruptedException {
+        ProgressTracker progress = request.getProgress();
+        if (jdbcLoadService.handles(request)) {
+            return "MySQL database restored successfully.\nOutput:\n" + jdbcLoadService.load(request,
+                    progress.timeInput(ProgressTracker.EXTRACT, new SqlDumpTableScanner(progress.countDump(sql), progress)));
+        }
+
         List<String> command = List.of(
                 "mysql",
                 "-h", request.getHost(),
@@ -91,67 +315,93 @@ public class RestoreService {
         pb.redirectErrorStream(true);  // Merge stderr with stdout
         Process process = pb.start();
 
-        // Pipe the .sql file into mysql
-        try (OutputStream os = process.getOutputStream();
-             FileInputStream fis = new FileInputStream(backupFile)) {
-            fis.transferTo(os);
+        String output = pipeAndWait(process, new SqlDumpTableScanner(progress.countDump(sql), progress), progress);
+        if (process.exitValue() != 0) {
+            throw new RuntimeException("MySQL restore failed. Exit code: " + process.exitValue() + "\nOutput:\n" + output);
         }
 
-        // Read process output for debugging
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
+        return "MySQL database restored successfully.\nOutput:\n" + output;
+    }
+
+    // Archives produced by the streaming backup (mongodump --archive), fed to mongorestore on stdin
+    private String restoreMongoArchive(BackupRequest request, InputStream archive, boolean gzip) throws IOException, InterruptedException {
+        String uri = buildMongoURI(request);
+
+        List<String> command = new ArrayList<>(List.of(
+                "mongorestore",
+                "--uri=" + uri,
+                "--archive"
+        ));
+        if (gzip) {
+            command.add("--gzip");
         }
+        if (selectedTables(request) != null) {
+            command.addAll(nsIncludeOptions(request, request.getDbName()));
+        }
+        command.addAll(mongoParallelOptions(request));
 
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            throw new RuntimeException("MySQL restore failed. Exit code: " + exitCode + "\nOutput:\n" + output);
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+
+        ProgressTracker progress = request.getProgress();
+        String output = pipeAndWait(process, progress.countDump(archive), progress);
+        if (process.exitValue() != 0) {
+            throw new RuntimeException("MongoDB restore failed. Exit code: " + process.exitValue() + "\nOutput:\n" + output);
         }
 
-        return "MySQL database restored successfully.\nOutput:\n" + output;
+        return "MongoDB database restored successfully.\nOutput:\n" + output;
     }
-    private String restoreMongoDB(BackupRequest request, File backupDir) throws IOException, InterruptedException {
-        String uri = buildMongoURI(request);
 
-        // Expecting structure: backupDir -> someFolder -> actual MongoDB db folder
-        File[] topLevelDirs = backupDir.listFiles(File::isDirectory);
-        if (topLevelDirs == null || topLevelDirs.length == 0) {
-            throw new FileNotFoundException("No subdirectories found in extracted backup.");
-        }
+    private String restoreMongoDirectory(BackupRequest request, ZipInputStream zis, ZipEntry firstEntry) throws IOException, InterruptedException {
+        Path tempDir = Files.createTempDirectory("restore_temp_");
+        try {
+            File extractDir = tempDir.toFile();
+            Set<String> selected = selectedTables(request);
+            InputStream in = request.getProgress().timeInput(ProgressTracker.EXTRACT, zis);
+            ZipEntry entry = firstEntry;
+            do {
+                if (selected == null || entry.isDirectory() || isCollectionFile(entry.getName(), selected)) {
+                    extractEntry(in, entry, extractDir);
+                    zis.closeEntry();
+                }
+            } while ((entry = zis.getNextEntry()) != null);
 
-        // Go one level deeper: expected structure is something like /extracted/backupFolder/dbFolder
-        File[] dbFolders = topLevelDirs[0].listFiles(File::isDirectory);
-        if (dbFolders == null || dbFolders.length == 0) {
-            throw new FileNotFoundException("No MongoDB database folder found in backup.");
+            return restoreMongoDB(request, extractDir);
+        } finally {
+            deleteDirectory(tempDir);
         }
+    }
+
+    private String restoreMongoDB(BackupRequest request, File backupDir) throws IOException, InterruptedException {
+        String uri = buildMongoURI(request);
 
-        File actualDbFolder = dbFolders[0]; // This is the folder like 'employees/'
+        File actualDbFolder = findMongoDbFolder(backupDir, request.getDbName()); // This is the folder like 'employees/'
         String actualDbName = actualDbFolder.getName();
+        boolean gzip = containsGzipFiles(actualDbFolder);
 
-        List<String> command = List.of(
+        List<String> command = new ArrayList<>(List.of(
                 "mongorestore",
                 "--uri=" + uri,
-                "--nsInclude=" + actualDbName + ".*",
                 "--dir=" + actualDbFolder.getAbsolutePath()
-        );
+        ));
+        command.addAll(nsIncludeOptions(request, actualDbName));
+        if (gzip) {
+            command.add("--gzip");
+        }
+        command.addAll(mongoParallelOptions(request));
 
         ProcessBuilder pb = new ProcessBuilder(command);
         pb.redirectErrorStream(true);
         Process process = pb.start();
+        process.getOutputStream().close();
 
         // Read process output for debugging
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-        }
+        long start = System.nanoTime();
+        String output = ProcessOutputCollector.start(process.getInputStream(), "restore-output", request.getProgress()).await();
 
         int exitCode = process.waitFor();
+        request.getProgress().addStageTime(ProgressTracker.LOAD, System.nanoTime() - start);
         if (exitCode != 0) {
             throw new RuntimeException("MongoDB restore failed. Exit code: " + exitCode + "\nOutput:\n" + output);
         }
@@ -159,6 +409,107 @@ public class RestoreService {
         return "MongoDB database restored successfully.\nOutput:\n" + output;
     }
 
+    // Replays dumpDir/oplog.bson. Oplog entries carry their own namespaces, so they land in the
+    // source database, which is why restoreChain only accepts that one as target; no --uri, since a
+    // database in it reads as --db, which mongorestore refuses together with --oplogReplay.
+    String replayMongoOplog(BackupRequest request, Path dumpDir, String oplogLimit) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(
+                "mongorestore",
+                "--host=" + request.getHost(),
+                "--port=" + request.getPort(),
+                "--oplogReplay",
+                "--dir=" + dumpDir.toAbsolutePath()
+        ));
+        if (request.getUsername() != null && !request.getUsername().isBlank()) {
+            command.add("--username=" + request.getUsername());
+            command.add("--password=" + request.getPassword());
+            command.add("--authenticationDatabase=" + request.getDbName());
+        }
+        if (oplogLimit != null) {
+            command.add("--oplogLimit=" + oplogLimit);
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        process.getOutputStream().close();
+
+        String output = ProcessOutputCollector.start(process.getInputStream(), "oplog-replay-output", request.getProgress()).await();
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new RuntimeException("MongoDB oplog replay failed. Exit code: " + exitCode + "\nOutput:\n" + output);
+        }
+        return "MongoDB oplog replayed.\nOutput:\n" + output;
+    }
+
+    // A database folder is wherever the collection files are, however deep the zip nested it.
+    // With several candidates, the one named like the target database wins.
+    private File findMongoDbFolder(File backupDir, String dbName) throws IOException {
+        List<File> dbFolders;
+        try (Stream<Path> paths = Files.walk(backupDir.toPath())) {
+            dbFolders = paths
+                    .filter(Files::isRegularFile)
+                    .filter(p -> {
+                        String fileName = p.getFileName().toString();
+                        return fileName.endsWith(".bson") || fileName.endsWith(".bson.gz");
+                    })
+                    .map(p -> p.getParent().toFile())
+                    .distinct()
+                    .toList();
+        }
+
+        if (dbFolders.isEmpty()) {
+            throw new FileNotFoundException("No MongoDB database folder found in backup.");
+        }
+        if (dbFolders.size() == 1) {
+            return dbFolders.get(0);
+        }
+        return dbFolders.stream()
+                .filter(dir -> dir.getName().equals(dbName))
+                .findFirst()
+                .orElseThrow(() -> new FileNotFoundException("Backup holds several databases " +
+                        dbFolders.stream().map(File::getName).toList() + " and none is named " + dbName));
+    }
+
+    private boolean containsGzipFiles(File dbFolder) {
+        File[] gzipped = dbFolder.listFiles((dir, fileName) -> fileName.endsWith(".bson.gz"));
+        return gzipped != null && gzipped.length > 0;
+    }
+
+    private List<String> mongoParallelOptions(BackupRequest request) {
+        List<String> options = new ArrayList<>();
+        if (request.getParallelism() > 0) {
+            options.add("--numParallelCollections=" + request.getParallelism());
+        }
+        if (request.getInsertionWorkers() > 0) {
+            options.add("--numInsertionWorkersPerCollection=" + request.getInsertionWorkers());
+        }
+        return options;
+    }
+
+    // Feeds the process stdin while its output is drained on another thread, then waits for it to exit
+    private String pipeAndWait(Process process, InputStream input, ProgressTracker progress) throws IOException, InterruptedException {
+        ProcessOutputCollector output = ProcessOutputCollector.start(process.getInputStream(), "restore-output", progress);
+        try {
+            try (OutputStream stdin = progress.timeOutput(ProgressTracker.LOAD, process.getOutputStream())) {
+                progress.timeInput(ProgressTracker.EXTRACT, input).transferTo(stdin);
+            } catch (IOException e) {
+                // The tool exited early (bad credentials, SQL error); its exit code and output explain why
+                if (process.isAlive()) {
+                    throw e;
+                }
+            }
+            long waitStart = System.nanoTime();
+            process.waitFor();
+            progress.addStageTime(ProgressTracker.LOAD, System.nanoTime() - waitStart);
+            return output.await();
+        } finally {
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
 
     private String buildMongoURI(BackupRequest request) {
         if (request.getUsername() == null || request.getUsername().isEmpty()) {
@@ -168,28 +519,29 @@ public class RestoreService {
                 request.getHost() + ":" + request.getPort() + "/" + request.getDbName();
     }
 
-    private void unzip(File zipFile, File destDir) throws IOException {
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                File newFile = new File(destDir, entry.getName());
-                if (entry.isDirectory()) {
-                    newFile.mkdirs();
-                } else {
-                    File parent = newFile.getParentFile();
-                    if (parent != null && !parent.exists()) {
-                        parent.mkdirs();
-                    }
-                    try (FileOutputStream fos = new FileOutputStream(newFile)) {
-                        byte[] buffer = new byte[1024];
-                        int len;
-                        while ((len = zis.read(buffer)) > 0) {
-                            fos.write(buffer, 0, len);
-                        }
-                    }
-                }
-                zis.closeEntry();
+    private void extractEntry(InputStream in, ZipEntry entry, File destDir) throws IOException {
+        File newFile = new File(destDir, entry.getName());
+        if (!newFile.getCanonicalPath().startsWith(destDir.getCanonicalPath() + File.separator)) {
+            throw new IOException("Zip entry is outside of the target dir: " + entry.getName());
+        }
+        if (entry.isDirectory()) {
+            newFile.mkdirs();
+        } else {
+            File parent = newFile.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
             }
+            try (OutputStream fos = new BufferedOutputStream(new FileOutputStream(newFile), 64 * 1024)) {
+                in.transferTo(fos);
+            }
+        }
+    }
+
+    void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(File::delete);
         }
     }
 }
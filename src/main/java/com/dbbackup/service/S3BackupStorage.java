@@ -0,0 +1,162 @@
+package com.dbbackup.service;
+
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.S3Client;
+import com.dbbackup.utility.S3MultipartOutputStream;
+import com.dbbackup.utility.S3RangeInputStream;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+// Archives as objects in an S3 bucket, located as s3://bucket/key. The archive is uploaded while
+// the backup is written, part by part, and read back with parallel ranged GETs for restores.
+public class S3BackupStorage implements BackupStorage {
+
+    public static final String TYPE = "s3";
+
+    private final S3Client client;
+    private final String prefix;
+    private final int partSize;
+    private final int uploadConcurrency;
+    private final int chunkSize;
+    private final int downloadConcurrency;
+    private final ExecutorService executor;
+    // Keys handed out but not uploaded yet, which a HEAD wouldn't find
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    public S3BackupStorage(S3Client client, String prefix, int partSize, int uploadConcurrency,
+                           int chunkSize, int downloadConcurrency, ExecutorService executor) {
+        if (partSize < S3MultipartOutputStream.MIN_PART_SIZE) {
+            throw new IllegalArgumentException("S3 parts must be at least 5MB");
+        }
+        this.client = client;
+        this.prefix = prefix == null || prefix.isBlank() ? "" : prefix.replaceAll("^/+|/+$", "") + "/";
+        this.partSize = partSize;
+        this.uploadConcurrency = Math.max(1, uploadConcurrency);
+        this.chunkSize = chunkSize;
+        this.downloadConcurrency = Math.max(1, downloadConcurrency);
+        this.executor = executor;
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    // Same naming as on disk: <name><suffix>.zip, then <name>_2<suffix>.zip and so on
+    @Override
+    public Upload create(String name, String suffix) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            String fileName = name + (attempt > 1 ? "_" + attempt : "") + suffix + ".zip";
+            String key = prefix + fileName;
+            if (!claimed.add(key)) {
+                continue;
+            }
+            if (exists(key)) {
+                claimed.remove(key);
+                continue;
+            }
+            return upload(key, fileName);
+        }
+    }
+
+    private Upload upload(String key, String fileName) {
+        S3MultipartOutputStream out = new S3MultipartOutputStream(client, key, partSize, uploadConcurrency, executor);
+        return new Upload() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    out.close();
+                } finally {
+                    claimed.remove(key);
+                }
+            }
+
+            @Override
+            public String location() {
+                return locationOf(key);
+            }
+
+            @Override
+            public String name() {
+                return fileName;
+            }
+
+            @Override
+            public long size() {
+                return out.getSize();
+            }
+
+            @Override
+            public void abort() {
+                out.abort();
+                claimed.remove(key);
+            }
+        };
+    }
+
+    @Override
+    public void writeSidecar(String location, String suffix, byte[] content) throws IOException {
+        client.putObject(keyOf(location) + suffix, content, content.length);
+    }
+
+    @Override
+    public InputStream open(String location) throws IOException {
+        return new S3RangeInputStream(client, keyOf(location), chunkSize, downloadConcurrency, executor);
+    }
+
+    @Override
+    public void delete(String location) throws IOException {
+        String key = keyOf(location);
+        // S3 deletes succeed for missing keys; the HEAD keeps "already gone" visible to retention
+        client.headObject(key);
+        client.deleteObject(key);
+        client.deleteObject(key + ArchiveChecksums.SIDECAR_SUFFIX);
+        client.deleteObject(key + BackupCatalogService.MANIFEST_SUFFIX);
+    }
+
+    @Override
+    public boolean owns(String location) {
+        return location.startsWith(locationOf(prefix));
+    }
+
+    // Uploads to one bucket share the link to it
+    @Override
+    public String resourceKey() {
+        return "s3://" + client.getBucket();
+    }
+
+    private boolean exists(String key) throws IOException {
+        try {
+            client.headObject(key);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    private String locationOf(String key) {
+        return "s3://" + client.getBucket() + "/" + key;
+    }
+
+    private String keyOf(String location) {
+        if (!owns(location)) {
+            throw new IllegalArgumentException("Not an archive of " + locationOf(prefix) + ": " + location);
+        }
+        return location.substring(("s3://" + client.getBucket() + "/").length());
+    }
+}
@@ -0,0 +1,342 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.BackupSchedule;
+import com.dbbackup.model.Job;
+import com.dbbackup.model.JobState;
+import com.dbbackup.model.RetentionPolicy;
+import com.dbbackup.model.VolumeSet;
+import com.dbbackup.utility.ConcurrencyLimiter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.*;
+import java.time.temporal.IsoFields;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Cron-driven backups. Due runs wait in a pending queue and only start as backup jobs when both a
+// global and a per-host permit are free, so a burst of schedules at the same minute can't pile up
+// on one database server. Each run also gets a random start delay (jitter) to spread them out.
+// After every successful run, and periodically, the schedule's retention policy prunes its old backups.
+@Slf4j
+@Service
+public class ScheduleService {
+
+    private final JobService jobService;
+    private final BackupRepositoryService backupRepositoryService;
+    private final BackupCatalogService backupCatalogService;
+    private final StorageService storageService;
+    private final VolumeSetService volumeSetService;
+    private final BackupService backupService;
+    private final BackupPermitService backupPermitService;
+    private final Path scheduleFile;
+    private final int defaultJitterSeconds;
+    private final ConcurrencyLimiter limiter;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // Guarded by "this", like everything that reads or changes schedule state
+    private final Map<String, BackupSchedule> schedules = new LinkedHashMap<>();
+    private final Deque<String> pending = new ArrayDeque<>();
+    private final Set<String> running = new HashSet<>();
+
+    public ScheduleService(JobService jobService,
+                           BackupRepositoryService backupRepositoryService,
+                           BackupCatalogService backupCatalogService,
+                           StorageService storageService,
+                           VolumeSetService volumeSetService,
+                           BackupService backupService,
+                           BackupPermitService backupPermitService,
+                           @Value("${quickdump.scheduler.path:backups/schedules.json}") String schedulePath,
+                           @Value("${quickdump.scheduler.max-jitter:300}") int defaultJitterSeconds,
+                           @Value("${quickdump.scheduler.max-concurrent:4}") int maxConcurrent,
+                           @Value("${quickdump.scheduler.max-concurrent-per-host:1}") int maxConcurrentPerHost) {
+        this.jobService = jobService;
+        this.backupRepositoryService = backupRepositoryService;
+        this.backupCatalogService = backupCatalogService;
+        this.storageService = storageService;
+        this.volumeSetService = volumeSetService;
+        this.backupService = backupService;
+        this.backupPermitService = backupPermitService;
+        this.scheduleFile = Paths.get(schedulePath);
+        this.defaultJitterSeconds = defaultJitterSeconds;
+        this.limiter = new ConcurrencyLimiter(maxConcurrent, maxConcurrentPerHost);
+    }
+
+    @PostConstruct
+    public synchronized void load() throws IOException {
+        if (!Files.exists(scheduleFile)) {
+            return;
+        }
+        List<BackupSchedule> stored = mapper.readValue(scheduleFile.toFile(), new TypeReference<>() {});
+        Instant now = Instant.now();
+        for (BackupSchedule schedule : stored) {
+            // Runs missed while the application was down are skipped, not replayed in a burst
+            schedule.setNextRunAt(schedule.isEnabled() ? nextRun(schedule, now) : null);
+            schedules.put(schedule.getId(), schedule);
+        }
+        log.info("Loaded {} backup schedules", schedules.size());
+    }
+
+    public synchronized List<BackupSchedule> listSchedules() {
+        return new ArrayList<>(schedules.values());
+    }
+
+    public synchronized BackupSchedule getSchedule(String id) throws FileNotFoundException {
+        BackupSchedule schedule = schedules.get(id);
+        if (schedule == null) {
+            throw new FileNotFoundException("No schedule " + id);
+        }
+        return schedule;
+    }
+
+    public synchronized BackupSchedule createSchedule(BackupSchedule schedule) throws IOException {
+        schedule.setId(UUID.randomUUID().toString());
+        schedule.setArchives(new ArrayList<>());
+        return saveSchedule(schedule);
+    }
+
+    // Replaces definition fields; run history and the list of kept backups stay
+    public synchronized BackupSchedule updateSchedule(String id, BackupSchedule changes) throws IOException {
+        BackupSchedule schedule = getSchedule(id);
+        schedule.setName(changes.getName());
+        schedule.setCron(changes.getCron());
+        schedule.setJitterSeconds(changes.getJitterSeconds());
+        schedule.setEnabled(changes.isEnabled());
+        BackupRequest request = changes.getRequest();
+        // Schedules are handed out without the password, so an edited copy comes back without it
+        if (request != null && schedule.getRequest() != null
+                && (request.getPassword() == null || request.getPassword().isBlank())) {
+            request.setPassword(schedule.getRequest().getPassword());
+        }
+        schedule.setRequest(request);
+        schedule.setRetention(changes.getRetention());
+        return saveSchedule(schedule);
+    }
+
+    // Backups already taken are kept: deleting a schedule must not delete data
+    public synchronized void deleteSchedule(String id) throws IOException {
+        getSchedule(id);
+        schedules.remove(id);
+        pending.remove(id);
+        persist();
+    }
+
+    public synchronized BackupSchedule runNow(String id) throws FileNotFoundException {
+        BackupSchedule schedule = getSchedule(id);
+        enqueue(schedule);
+        dispatch();
+        return schedule;
+    }
+
+    private BackupSchedule saveSchedule(BackupSchedule schedule) throws IOException {
+        if (schedule.getRequest() == null || schedule.getRequest().getHost() == null) {
+            throw new IllegalArgumentException("A schedule needs a backup request with a host");
+        }
+        CronExpression.parse(schedule.getCron());
+        if (schedule.getRetention() == null) {
+            schedule.setRetention(new RetentionPolicy());
+        }
+        schedule.setNextRunAt(schedule.isEnabled() ? nextRun(schedule, Instant.now()) : null);
+        schedules.put(schedule.getId(), schedule);
+        persist();
+        return schedule;
+    }
+
+    @Scheduled(fixedDelayString = "${quickdump.scheduler.tick:15000}")
+    public synchronized void tick() {
+        Instant now = Instant.now();
+        for (BackupSchedule schedule : schedules.values()) {
+            if (schedule.isEnabled() && schedule.getNextRunAt() != null && !schedule.getNextRunAt().isAfter(now)) {
+                enqueue(schedule);
+                schedule.setNextRunAt(nextRun(schedule, now));
+            }
+        }
+        dispatch();
+    }
+
+    private void enqueue(BackupSchedule schedule) {
+        if (pending.contains(schedule.getId()) || running.contains(schedule.getId())) {
+            log.warn("Schedule {} is due but its previous run hasn't finished; skipping this run", schedule.getId());
+            return;
+        }
+        pending.add(schedule.getId());
+    }
+
+    // Starts every pending run that has permits, oldest first; the others wait for a finishing run
+    private void dispatch() {
+        Iterator<String> it = pending.iterator();
+        while (it.hasNext()) {
+            BackupSchedule schedule = schedules.get(it.next());
+            if (schedule == null) {
+                it.remove();
+                continue;
+            }
+            String host = schedule.getRequest().getHost();
+            String disk = diskOf(schedule.getRequest());
+            if (!backupPermitService.tryAcquire(limiter, host, disk)) {
+                continue;
+            }
+            try {
+                Job job = jobService.submitBackup(schedule.getRequest(), finished -> onFinished(schedule.getId(), host, disk, finished));
+                it.remove();
+                running.add(schedule.getId());
+                schedule.setLastRunAt(Instant.now());
+                schedule.setLastJobId(job.getId());
+            } catch (RejectedExecutionException e) {
+                // Job queue is full; the run stays pending
+                backupPermitService.release(limiter, host, disk);
+                return;
+            }
+        }
+    }
+
+    // The file store (or bucket) the run writes to, shared with fleet batches; a storage that isn't
+    // configured fails the job itself, so it isn't limited here
+    private String diskOf(BackupRequest request) {
+        try {
+            return backupService.outputResource(request);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private synchronized void onFinished(String scheduleId, String host, String disk, Job job) {
+        backupPermitService.release(limiter, host, disk);
+        running.remove(scheduleId);
+        BackupSchedule schedule = schedules.get(scheduleId);
+        if (schedule != null) {
+            if (job.getState() == JobState.SUCCEEDED) {
+                BackupSchedule.Archive archive = new BackupSchedule.Archive();
+                archive.setLocation(job.getResultPath());
+                archive.setCreatedAt(job.getStartedAt());
+                schedule.getArchives().add(archive);
+                schedule.setLastResult(job.getMessage());
+                prune(schedule);
+            } else {
+                schedule.setLastResult("Backup failed: " + job.getError());
+            }
+            persistQuietly();
+        }
+        dispatch();
+    }
+
+    @Scheduled(cron = "${quickdump.scheduler.retention-cron:0 30 * * * *}")
+    public synchronized void pruneAll() {
+        schedules.values().forEach(this::prune);
+        persistQuietly();
+    }
+
+    private void prune(BackupSchedule schedule) {
+        if (!schedule.getRetention().isEnabled()) {
+            return;
+        }
+        // A chain's full backup is needed by every incremental after it, so age alone can't decide
+        String backupType = schedule.getRequest().getBackupType();
+        if (IncrementalBackupService.FULL.equalsIgnoreCase(backupType) || IncrementalBackupService.INCREMENTAL.equalsIgnoreCase(backupType)) {
+            return;
+        }
+
+        Set<BackupSchedule.Archive> keep = selectKept(schedule.getArchives(), schedule.getRetention(), ZoneId.systemDefault());
+        Iterator<BackupSchedule.Archive> it = schedule.getArchives().iterator();
+        while (it.hasNext()) {
+            BackupSchedule.Archive archive = it.next();
+            if (keep.contains(archive)) {
+                continue;
+            }
+            try {
+                deleteArchive(archive.getLocation());
+                it.remove();
+                log.info("Retention of schedule {} pruned {}", schedule.getId(), archive.getLocation());
+            } catch (NoSuchFileException | FileNotFoundException e) {
+                it.remove();
+            } catch (IOException | IllegalArgumentException e) {
+                // IllegalArgumentException: the storage holding it is no longer configured
+                log.warn("Could not prune {}: {}", archive.getLocation(), e.getMessage());
+            }
+        }
+    }
+
+    private void deleteArchive(String location) throws IOException {
+        if (location.startsWith("repository:")) {
+            backupRepositoryService.deleteSnapshot(location.substring("repository:".length()));
+        } else {
+            BackupStorage storage = storageService.forLocation(location);
+            VolumeSet volumes = volumesOf(location);
+            if (volumes != null) {
+                volumeSetService.delete(storage, location, volumes);
+            }
+            storage.delete(location);
+            backupCatalogService.remove(location);
+        }
+    }
+
+    private VolumeSet volumesOf(String location) throws IOException {
+        try {
+            return backupCatalogService.getManifest(location).getVolumes();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Newest backup of each of the last keepDaily days and keepWeekly weeks that have a backup
+    static Set<BackupSchedule.Archive> selectKept(List<BackupSchedule.Archive> archives, RetentionPolicy policy, ZoneId zone) {
+        List<BackupSchedule.Archive> newestFirst = archives.stream()
+                .sorted(Comparator.comparing(BackupSchedule.Archive::getCreatedAt).reversed())
+                .toList();
+
+        Set<BackupSchedule.Archive> keep = new HashSet<>();
+        Set<LocalDate> days = new HashSet<>();
+        Set<String> weeks = new HashSet<>();
+        for (BackupSchedule.Archive archive : newestFirst) {
+            LocalDate day = LocalDate.ofInstant(archive.getCreatedAt(), zone);
+            String week = day.get(IsoFields.WEEK_BASED_YEAR) + "-W" + day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            if (days.size() < policy.getKeepDaily() && days.add(day)) {
+                keep.add(archive);
+            }
+            if (weeks.size() < policy.getKeepWeekly() && weeks.add(week)) {
+                keep.add(archive);
+            }
+        }
+        return keep;
+    }
+
+    private Instant nextRun(BackupSchedule schedule, Instant after) {
+        ZonedDateTime next = CronExpression.parse(schedule.getCron()).next(after.atZone(ZoneId.systemDefault()));
+        if (next == null) {
+            return null;
+        }
+        int jitter = schedule.getJitterSeconds() >= 0 ? schedule.getJitterSeconds() : defaultJitterSeconds;
+        return next.toInstant().plusSeconds(jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0);
+    }
+
+    private void persist() throws IOException {
+        Path parent = scheduleFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "schedules", ".tmp");
+        mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), new ArrayList<>(schedules.values()));
+        Files.move(temp, scheduleFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void persistQuietly() {
+        try {
+            persist();
+        } catch (IOException e) {
+            log.error("Could not save schedules: {}", e.getMessage(), e);
+        }
+    }
+}
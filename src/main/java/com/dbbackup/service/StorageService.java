@@ -0,0 +1,103 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.utility.S3Client;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The configured archive storages: the local backups/ directory, always, and an S3 bucket when
+// quickdump.storage.s3.bucket is set. quickdump.storage.type picks where archives go by default;
+// a request can ask for the other one with storage=local or storage=s3.
+@Slf4j
+@Service
+public class StorageService {
+
+    private final LocalBackupStorage local;
+    private final S3BackupStorage s3;
+    private final BackupStorage defaultStorage;
+    private final ExecutorService transfers;
+
+    public StorageService(@Value("${quickdump.storage.type:local}") String type,
+                          @Value("${quickdump.storage.s3.endpoint:https://s3.amazonaws.com}") String endpoint,
+                          @Value("${quickdump.storage.s3.region:us-east-1}") String region,
+                          @Value("${quickdump.storage.s3.bucket:}") String bucket,
+                          @Value("${quickdump.storage.s3.prefix:}") String prefix,
+                          @Value("${quickdump.storage.s3.access-key:}") String accessKey,
+                          @Value("${quickdump.storage.s3.secret-key:}") String secretKey,
+                          @Value("${quickdump.storage.s3.path-style:true}") boolean pathStyle,
+                          @Value("${quickdump.storage.s3.part-size:16MB}") DataSize partSize,
+                          @Value("${quickdump.storage.s3.upload-concurrency:4}") int uploadConcurrency,
+                          @Value("${quickdump.storage.s3.download-chunk-size:8MB}") DataSize chunkSize,
+                          @Value("${quickdump.storage.s3.download-concurrency:4}") int downloadConcurrency) {
+        this.local = new LocalBackupStorage(Paths.get(BackupService.ARCHIVE_DIR));
+        // Part uploads and ranged reads block on the network, not the CPU, so the pool isn't capped
+        // here: upload-concurrency and download-concurrency bound each transfer
+        AtomicInteger threads = new AtomicInteger();
+        this.transfers = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "storage-transfer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (bucket != null && !bucket.isBlank()) {
+            S3Client client = new S3Client(URI.create(endpoint), region, bucket, accessKey, secretKey, pathStyle);
+            this.s3 = new S3BackupStorage(client, prefix, (int) partSize.toBytes(), uploadConcurrency,
+                    (int) chunkSize.toBytes(), downloadConcurrency, transfers);
+        } else {
+            this.s3 = null;
+        }
+        this.defaultStorage = byType(type);
+        log.info("Archive storage: {}", defaultStorage == s3
+                ? "s3://" + bucket + " via " + endpoint + ", " + partSize + " parts, " + uploadConcurrency + " uploads at once"
+                : "local " + Paths.get(BackupService.ARCHIVE_DIR).toAbsolutePath());
+    }
+
+    public LocalBackupStorage local() {
+        return local;
+    }
+
+    // Where the request's archive goes: its storage, or the configured default
+    public BackupStorage forRequest(BackupRequest request) {
+        String storage = request.getStorage();
+        if (storage == null || storage.isBlank() || "archive".equalsIgnoreCase(storage)) {
+            return defaultStorage;
+        }
+        return byType(storage);
+    }
+
+    public BackupStorage forLocation(String location) {
+        if (s3 != null && s3.owns(location)) {
+            return s3;
+        }
+        if (local.owns(location)) {
+            return local;
+        }
+        throw new IllegalArgumentException("No configured storage holds " + location);
+    }
+
+    private BackupStorage byType(String type) {
+        if (LocalBackupStorage.TYPE.equalsIgnoreCase(type)) {
+            return local;
+        }
+        if (S3BackupStorage.TYPE.equalsIgnoreCase(type)) {
+            if (s3 == null) {
+                throw new IllegalArgumentException("S3 storage needs quickdump.storage.s3.bucket");
+            }
+            return s3;
+        }
+        throw new IllegalArgumentException("Unknown storage: " + type + " (expected local or s3)");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        transfers.shutdownNow();
+    }
+}
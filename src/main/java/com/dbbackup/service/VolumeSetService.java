@@ -0,0 +1,390 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.VolumeSet;
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.CompressionSettings;
+import com.dbbackup.utility.S3MultipartOutputStream;
+import com.dbbackup.utility.VolumeSetInputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Multi-volume archives. The archive stream is cut every volumeSize bytes; each slice is compressed
+// (and encrypted) on its own into <name>.vol0001.zip, <name>.vol0002.zip... with a .sha256 each,
+// and <name>.zip becomes a small index of them. Finished volumes upload while the next one is
+// written, and restores decode several volumes ahead of the one being loaded.
+@Service
+public class VolumeSetService {
+
+    // The single entry of an index file
+    public static final String INDEX_ENTRY = "volumes.json";
+    // The smallest S3 multipart part: no volume is worth less than one
+    public static final long MIN_VOLUME_SIZE = S3MultipartOutputStream.MIN_PART_SIZE;
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final PipelineService pipelineService;
+    private final long defaultVolumeSize;
+    private final int concurrentUploads;
+    private final int readAhead;
+    private final int readAheadChunks;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ExecutorService executor;
+
+    public VolumeSetService(PipelineService pipelineService,
+                            @Value("${quickdump.volumes.size:0}") DataSize volumeSize,
+                            @Value("${quickdump.volumes.concurrent-uploads:2}") int concurrentUploads,
+                            @Value("${quickdump.volumes.read-ahead:3}") int readAhead,
+                            @Value("${quickdump.volumes.read-ahead-buffer:16MB}") DataSize readAheadBuffer) {
+        this.pipelineService = pipelineService;
+        this.defaultVolumeSize = checked(volumeSize.toBytes(), "quickdump.volumes.size");
+        this.concurrentUploads = Math.max(1, concurrentUploads);
+        this.readAhead = readAhead;
+        this.readAheadChunks = (int) Math.max(1, readAheadBuffer.toBytes() / CHUNK_SIZE);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "volume-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 0: a single archive
+    public long volumeSize(BackupRequest request) {
+        String size = request.getVolumeSize();
+        return size == null || size.isBlank() ? defaultVolumeSize : requestedVolumeSize(request);
+    }
+
+    // What the request itself asks for, without falling back to quickdump.volumes.size
+    public long requestedVolumeSize(BackupRequest request) {
+        String size = request.getVolumeSize();
+        if (size == null || size.isBlank()) {
+            return 0;
+        }
+        return checked(DataSize.parse(size.trim()).toBytes(), "volumeSize");
+    }
+
+    // Each volume is a file, a .sha256 and an upload of its own, so tiny ones would mean one per KB
+    private static long checked(long bytes, String name) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException(name + " can't be negative: " + bytes);
+        }
+        if (bytes > 0 && bytes < MIN_VOLUME_SIZE) {
+            throw new IllegalArgumentException(name + " must be 0 or at least " + MIN_VOLUME_SIZE + " bytes, not " + bytes);
+        }
+        return bytes;
+    }
+
+    // index: the archive's own upload, which receives the index once the volumes are written
+    public Writer create(BackupStorage storage, BackupStorage.Upload index, CompressionSettings compression, long volumeSize) {
+        return new Writer(storage, index, compression, volumeSize);
+    }
+
+    // The reassembled archive, read from the volumes next to the index at location. Unencrypted
+    // volumes are refused while a key is set unless allowUnencrypted.
+    public InputStream open(BackupStorage storage, String location, VolumeSet set, boolean allowUnencrypted) {
+        List<VolumeSet.Volume> volumes = set.volumes();
+        return new VolumeSetInputStream(volumes.size(), i -> openVolume(storage, location, volumes.get(i), allowUnencrypted),
+                readAhead, CHUNK_SIZE, readAheadChunks, executor);
+    }
+
+    public void delete(BackupStorage storage, String location, VolumeSet set) throws IOException {
+        for (VolumeSet.Volume volume : set.volumes()) {
+            try {
+                storage.delete(storage.sibling(location, volume.file()));
+            } catch (NoSuchFileException | FileNotFoundException e) {
+                // Already gone; the rest still goes
+            }
+        }
+    }
+
+    // Decoded payload of one volume. Its checksum and length are checked when it has been read
+    // to the end, the rest of the file included.
+    private InputStream openVolume(BackupStorage storage, String location, VolumeSet.Volume volume,
+                                   boolean allowUnencrypted) throws IOException {
+        InputStream file = storage.open(storage.sibling(location, volume.file()));
+        MessageDigest digest = ArchiveChecksums.newDigest();
+        DigestInputStream hashed = new DigestInputStream(file, digest);
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(hashed, 64 * 1024));
+        if (zip.getNextEntry() == null) {
+            file.close();
+            throw new IOException(volume.file() + " holds no volume");
+        }
+        InputStream payload = pipelineService.pipeline().decode(zip, allowUnencrypted);
+        return new FilterInputStream(payload) {
+            private long length;
+            private boolean checked;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                count(b < 0 ? -1 : 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                count(n);
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                file.close();
+            }
+
+            private void count(int n) throws IOException {
+                if (n >= 0) {
+                    length += n;
+                    return;
+                }
+                if (checked) {
+                    return;
+                }
+                checked = true;
+                if (length != volume.length()) {
+                    throw new IOException(volume.file() + " is incomplete: " + length + " of " + volume.length() + " bytes");
+                }
+                hashed.transferTo(OutputStream.nullOutputStream());
+                String actual = ArchiveChecksums.hex(digest);
+                if (!actual.equalsIgnoreCase(volume.sha256())) {
+                    throw new IOException(volume.file() + " is damaged: checksum " + actual + ", expected " + volume.sha256());
+                }
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // The archive stream goes in; close() ends the last volume and waits for the uploads, and
+    // writeIndex() then completes the set. abort() removes whatever was stored.
+    public class Writer extends OutputStream {
+
+        private final BackupStorage storage;
+        private final BackupStorage.Upload index;
+        private final CompressionSettings compression;
+        private final long volumeSize;
+        private final String baseName;
+        private final Semaphore uploadPermits = new Semaphore(concurrentUploads);
+        private final List<VolumeSet.Volume> volumes = new ArrayList<>();
+        private final List<BackupStorage.Upload> created = new ArrayList<>();
+        private final List<Future<?>> uploads = new ArrayList<>();
+        private final byte[] single = new byte[1];
+        private OpenVolume current;
+        private long offset;
+        private boolean closed;
+
+        private Writer(BackupStorage storage, BackupStorage.Upload index, CompressionSettings compression, long volumeSize) {
+            this.storage = storage;
+            this.index = index;
+            this.compression = compression;
+            this.volumeSize = volumeSize;
+            this.baseName = index.name().substring(0, index.name().length() - ".zip".length());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Volume set " + baseName + " is closed");
+            }
+            while (len > 0) {
+                if (current == null) {
+                    current = openVolume();
+                }
+                int n = (int) Math.min(len, volumeSize - current.length);
+                current.payload.write(b, off, n);
+                current.length += n;
+                offset += n;
+                off += n;
+                len -= n;
+                if (current.length == volumeSize) {
+                    finishVolume();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // An empty archive still gets its one (empty) volume
+            if (current != null || volumes.isEmpty()) {
+                if (current == null) {
+                    current = openVolume();
+                }
+                finishVolume();
+            }
+            for (Future<?> upload : uploads) {
+                await(upload);
+            }
+        }
+
+        public VolumeSet writeIndex(String sha256) throws IOException {
+            VolumeSet set = new VolumeSet(volumeSize, offset, sha256, List.copyOf(volumes));
+            MessageDigest digest = ArchiveChecksums.newDigest();
+            try (ZipOutputStream zip = new ZipOutputStream(new DigestOutputStream(index, digest))) {
+                zip.putNextEntry(new ZipEntry(INDEX_ENTRY));
+                zip.write(mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(set));
+                zip.closeEntry();
+            }
+            storage.writeSidecar(index.location(), ArchiveChecksums.SIDECAR_SUFFIX,
+                    ArchiveChecksums.sidecarLine(ArchiveChecksums.hex(digest), index.name()));
+            return set;
+        }
+
+        public void abort() {
+            closed = true;
+            for (Future<?> upload : uploads) {
+                try {
+                    upload.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // Failed uploads are what is being thrown away
+                }
+            }
+            for (BackupStorage.Upload upload : created) {
+                try {
+                    storage.delete(upload.location());
+                } catch (IOException e) {
+                    // Not stored yet; the abort below drops it
+                }
+                upload.abort();
+            }
+            index.abort();
+        }
+
+        public long storedBytes() {
+            return volumes.stream().mapToLong(VolumeSet.Volume::size).sum();
+        }
+
+        private OpenVolume openVolume() throws IOException {
+            String suffix = String.format(".vol%04d", volumes.size() + 1);
+            BackupStorage.Upload upload = storage.create(baseName, suffix);
+            created.add(upload);
+            return new OpenVolume(upload, compression, compression.entryName(baseName + suffix), offset);
+        }
+
+        private void finishVolume() throws IOException {
+            OpenVolume volume = current;
+            current = null;
+            volume.finish();
+            String sha256 = ArchiveChecksums.hex(volume.digest);
+            BackupStorage.Upload upload = volume.upload;
+            volumes.add(new VolumeSet.Volume(upload.name(), volume.offset, volume.length, upload.size(), sha256));
+
+            // Completing the upload runs beside the next volume, up to concurrentUploads at once
+            try {
+                uploadPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a volume upload");
+            }
+            try {
+                uploads.add(executor.submit(() -> {
+                    try {
+                        upload.close();
+                        storage.writeSidecar(upload.location(), ArchiveChecksums.SIDECAR_SUFFIX,
+                                ArchiveChecksums.sidecarLine(sha256, upload.name()));
+                        return null;
+                    } finally {
+                        uploadPermits.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                uploadPermits.release();
+                throw e;
+            }
+            for (Future<?> previous : uploads) {
+                if (previous.isDone()) {
+                    await(previous);
+                }
+            }
+        }
+
+        private void await(Future<?> upload) throws IOException {
+            try {
+                upload.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a volume upload");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Volume upload failed", e.getCause());
+            }
+        }
+    }
+
+    // One volume being written: a zip of a single entry, its payload encoded through the pipeline
+    private static final class OpenVolume {
+
+        private final BackupStorage.Upload upload;
+        private final MessageDigest digest = ArchiveChecksums.newDigest();
+        private final OutputStream buffered;
+        private final ZipOutputStream zip;
+        private final OutputStream payload;
+        private final long offset;
+        private long length;
+
+        private OpenVolume(BackupStorage.Upload upload, CompressionSettings compression, String entryName, long offset)
+                throws IOException {
+            this.upload = upload;
+            this.offset = offset;
+            this.buffered = new BufferedOutputStream(new DigestOutputStream(upload, digest), 64 * 1024);
+            this.zip = new ZipOutputStream(buffered);
+            zip.setLevel(compression.zipLevel());
+            zip.putNextEntry(new ZipEntry(entryName));
+            this.payload = compression.wrap(zip);
+        }
+
+        // Everything but closing the upload, which may take a while for remote storage
+        private void finish() throws IOException {
+            payload.close();
+            zip.closeEntry();
+            zip.finish();
+            buffered.flush();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.dbbackup.utility;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+// Reads what AesGcmOutputStream wrote. A segment's bytes are only handed out once its tag has
+// been checked, and a stream that ends without its last segment is reported as truncated.
+public class AesGcmInputStream extends InputStream {
+
+    private final DataInputStream in;
+    private final Cipher cipher;
+    private final SecretKeySpec key;
+    private final byte[] header;
+    private final byte[] sealed;
+    private final byte[] plain;
+    private int position;
+    private int limit;
+    private int counter;
+    private boolean last;
+
+    public AesGcmInputStream(InputStream in, byte[] masterKey) throws IOException {
+        this.in = new DataInputStream(in);
+        this.header = this.in.readNBytes(AesGcmOutputStream.HEADER_LENGTH);
+        if (!isEncrypted(header)) {
+            throw new IOException("Not an encrypted QuickDump stream");
+        }
+        int segmentSize = ByteBuffer.wrap(header, AesGcmOutputStream.MAGIC.length, 4).getInt();
+        if (segmentSize <= 0 || segmentSize > 64 * 1024 * 1024) {
+            throw new IOException("Invalid segment size in encrypted stream: " + segmentSize);
+        }
+        byte[] salt = Arrays.copyOfRange(header, AesGcmOutputStream.MAGIC.length + 4, AesGcmOutputStream.HEADER_LENGTH);
+        this.key = AesGcmOutputStream.streamKey(masterKey, salt);
+        this.cipher = AesGcmOutputStream.newCipher();
+        this.sealed = new byte[segmentSize + AesGcmOutputStream.TAG_LENGTH];
+        this.plain = new byte[segmentSize];
+    }
+
+    public static boolean isEncrypted(byte[] start) {
+        return start.length >= AesGcmOutputStream.MAGIC.length
+                && Arrays.equals(start, 0, AesGcmOutputStream.MAGIC.length, AesGcmOutputStream.MAGIC, 0, AesGcmOutputStream.MAGIC.length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !open()) {
+            return -1;
+        }
+        return plain[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !open()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(plain, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Decrypts the next segment into plain; false at the end of the stream
+    private boolean open() throws IOException {
+        while (!last) {
+            boolean segmentIsLast;
+            int length;
+            try {
+                int flag = in.readUnsignedByte();
+                if (flag > 1) {
+                    throw new IOException("Corrupted encrypted stream: bad segment flag");
+                }
+                segmentIsLast = flag == 1;
+                length = in.readInt();
+                if (length < 0 || length > plain.length) {
+                    throw new IOException("Corrupted encrypted stream: bad segment length " + length);
+                }
+                in.readFully(sealed, 0, length + AesGcmOutputStream.TAG_LENGTH);
+            } catch (EOFException e) {
+                throw new IOException("Encrypted stream is truncated", e);
+            }
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(AesGcmOutputStream.TAG_LENGTH * 8,
+                        AesGcmOutputStream.nonce(counter, segmentIsLast)));
+                cipher.updateAAD(header);
+                limit = cipher.doFinal(sealed, 0, length + AesGcmOutputStream.TAG_LENGTH, plain, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("Encrypted data can't be authenticated: wrong key, or the archive is corrupted", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Decryption failed: " + e.getMessage(), e);
+            }
+            position = 0;
+            counter++;
+            last = segmentIsLast;
+            if (limit > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
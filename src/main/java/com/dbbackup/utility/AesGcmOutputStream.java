@@ -0,0 +1,143 @@
+package com.dbbackup.utility;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+// AES-GCM in independent segments, so neither side ever holds more than one segment in memory
+// (a single GCM message can't be checked before all of it is read). Layout:
+//   "QDE1" | segment size (int) | 16-byte salt | segments...
+//   segment: last flag (byte) | plaintext length (int) | ciphertext + 16-byte tag
+// Each stream encrypts under its own key, HMAC-SHA256(key, salt), so the nonce can simply be the
+// segment counter plus the last flag: reordered, dropped or truncated segments fail authentication.
+public class AesGcmOutputStream extends OutputStream {
+
+    static final byte[] MAGIC = {'Q', 'D', 'E', '1'};
+    static final int SALT_LENGTH = 16;
+    static final int TAG_LENGTH = 16;
+    static final int HEADER_LENGTH = MAGIC.length + 4 + SALT_LENGTH;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final OutputStream out;
+    private final Cipher cipher;
+    private final SecretKeySpec key;
+    private final byte[] header;
+    private final byte[] plain;
+    private final byte[] sealed;
+    private int position;
+    private int counter;
+    private boolean closed;
+
+    public AesGcmOutputStream(OutputStream out, byte[] masterKey) throws IOException {
+        this(out, masterKey, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public AesGcmOutputStream(OutputStream out, byte[] masterKey, int segmentSize) throws IOException {
+        this.out = out;
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        this.header = ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).putInt(segmentSize).put(salt).array();
+        this.key = streamKey(masterKey, salt);
+        this.cipher = newCipher();
+        this.plain = new byte[segmentSize];
+        this.sealed = new byte[segmentSize + TAG_LENGTH];
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == plain.length) {
+            seal(false);
+        }
+        plain[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (position == plain.length) {
+                seal(false);
+            }
+            int n = Math.min(len, plain.length - position);
+            System.arraycopy(b, off, plain, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    // Writes the last segment, possibly empty, which is what marks the stream as complete
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            seal(true);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void seal(boolean last) throws IOException {
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce(counter, last)));
+            cipher.updateAAD(header);
+            int length = cipher.doFinal(plain, 0, position, sealed, 0);
+            out.write(last ? 1 : 0);
+            out.write(ByteBuffer.allocate(4).putInt(position).array());
+            out.write(sealed, 0, length);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encryption failed: " + e.getMessage(), e);
+        }
+        position = 0;
+        if (++counter == 0) {
+            throw new IOException("Too many segments for one encrypted stream");
+        }
+    }
+
+    static SecretKeySpec streamKey(byte[] masterKey, byte[] salt) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+            mac.update(salt);
+            mac.update("quickdump-entry".getBytes(StandardCharsets.US_ASCII));
+            byte[] derived = mac.doFinal();
+            // AES-128/192/256 follows the configured key's length
+            return new SecretKeySpec(derived, 0, masterKey.length, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Key derivation failed: " + e.getMessage(), e);
+        }
+    }
+
+    static Cipher newCipher() throws IOException {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IOException("AES-GCM is not available: " + e.getMessage(), e);
+        }
+    }
+
+    static byte[] nonce(int counter, boolean last) {
+        return ByteBuffer.allocate(12).putInt(7, counter).put(11, (byte) (last ? 1 : 0)).array();
+    }
+
+    public static boolean isValidKeyLength(int length) {
+        return length == 16 || length == 24 || length == 32;
+    }
+}
@@ -0,0 +1,84 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+// SHA-256 of backup archives, kept next to each archive as <archive>.sha256 in sha256sum format,
+// so `sha256sum -c` can check a backup without this application
+public final class ArchiveChecksums {
+
+    public static final String SIDECAR_SUFFIX = ".sha256";
+
+    // Mapped a window at a time: files over 2 GB can't be mapped whole
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    private ArchiveChecksums() {
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static Path sidecar(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    public static void writeSidecar(Path archive, String sha256) throws IOException {
+        Files.write(sidecar(archive), sidecarLine(sha256, archive.getFileName().toString()));
+    }
+
+    public static byte[] sidecarLine(String sha256, String archiveName) {
+        return (sha256 + "  " + archiveName + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static Optional<String> readSidecar(Path archive) throws IOException {
+        Path file = sidecar(archive);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        String content = Files.readString(file, StandardCharsets.UTF_8).trim();
+        int space = content.indexOf(' ');
+        return Optional.of((space > 0 ? content.substring(0, space) : content).toLowerCase());
+    }
+
+    // Memory-mapped: the page cache is hashed in place, no copies into a heap buffer
+    public static String sha256(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_WINDOW) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                digest.update(window);
+            }
+        }
+        return hex(digest);
+    }
+
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+        }
+        return hex(digest);
+    }
+}
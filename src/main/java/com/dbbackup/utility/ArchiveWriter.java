@@ -0,0 +1,15 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Where a backup's entries go: a zip file/stream, or the deduplicated repository
+public interface ArchiveWriter {
+
+    // The returned stream is only valid until closeEntry(); closing it is not required
+    OutputStream putNextEntry(String name, int zipLevel) throws IOException;
+
+    void closeEntry() throws IOException;
+
+    void finish() throws IOException;
+}
@@ -0,0 +1,65 @@
+package com.dbbackup.utility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Runs a producer on its own thread and hands back what it writes as an InputStream.
+// A failure in the producer surfaces as an IOException at the reader's end of stream.
+public final class BackgroundPipe {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    @FunctionalInterface
+    public interface Producer {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    private BackgroundPipe() {
+    }
+
+    public static InputStream start(String name, Producer producer) throws IOException {
+        PipedInputStream in = new PipedInputStream(BUFFER_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread thread = new Thread(() -> {
+            try (out) {
+                producer.writeTo(out);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                return checked(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return checked(super.read(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                thread.interrupt();
+            }
+
+            private int checked(int result) throws IOException {
+                if (result < 0 && failure.get() != null) {
+                    throw new IOException(name + " failed: " + failure.get().getMessage(), failure.get());
+                }
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package com.dbbackup.utility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Watches the head of a mysqldump --source-data=2 stream for the commented
+// CHANGE REPLICATION SOURCE / CHANGE MASTER line and remembers the binlog position in it
+public class BinlogPositionSniffer extends FilterInputStream {
+
+    private static final int HEAD_SIZE = 64 * 1024;
+    private static final Pattern POSITION = Pattern.compile(
+            "(?:SOURCE|MASTER)_LOG_FILE='([^']+)',\\s*(?:SOURCE|MASTER)_LOG_POS=(\\d+)");
+
+    private final byte[] head = new byte[HEAD_SIZE];
+    private int headLength;
+
+    public BinlogPositionSniffer(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0 && headLength < HEAD_SIZE) {
+            head[headLength++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0 && headLength < HEAD_SIZE) {
+            int copy = Math.min(n, HEAD_SIZE - headLength);
+            System.arraycopy(b, off, head, headLength, copy);
+            headLength += copy;
+        }
+        return n;
+    }
+
+    // "binlog.000042:1234", or null when the dump carried no position
+    public String getPosition() {
+        Matcher m = POSITION.matcher(new String(head, 0, headLength, StandardCharsets.ISO_8859_1));
+        return m.find() ? m.group(1) + ":" + m.group(2) : null;
+    }
+}
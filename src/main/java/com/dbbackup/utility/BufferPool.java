@@ -0,0 +1,40 @@
+package com.dbbackup.utility;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Reusable byte arrays of one size, so pipeline stages don't allocate a fresh buffer set for
+// every zip entry. Keeps at most maxIdle arrays; anything beyond that is left to the GC.
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<byte[]> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = idle.poll();
+        if (buffer == null) {
+            return new byte[bufferSize];
+        }
+        idleCount.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize && idleCount.incrementAndGet() <= maxIdle) {
+            idle.add(buffer);
+        } else if (buffer.length == bufferSize) {
+            idleCount.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.dbbackup.utility;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+// How dump data is compressed inside the backup zip. STORE and DEFLATE use the zip's own entry
+// compression; GZIP and ZSTD compress the entry payload themselves (on several cores) and the
+// zip only stores the result. Restores recognise the payload by its magic bytes.
+public enum CompressionCodec {
+    STORE("", 0, 0, 0),
+    DEFLATE("", 6, 1, 9),
+    GZIP(".gz", 6, 1, 9),
+    ZSTD(".zst", 3, 1, 22);
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final String extension;
+    private final int defaultLevel;
+    private final int minLevel;
+    private final int maxLevel;
+
+    CompressionCodec(String extension, int defaultLevel, int minLevel, int maxLevel) {
+        this.extension = extension;
+        this.defaultLevel = defaultLevel;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+    }
+
+    public static CompressionCodec fromName(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unsupported compression codec: " + name);
+        }
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // Out-of-range or unset (0) levels fall back to the codec's default
+    public int effectiveLevel(int level) {
+        return level >= minLevel && level <= maxLevel && level != 0 ? level : defaultLevel;
+    }
+
+    // Compression level for the zip entry itself
+    public int zipLevel(int level) {
+        return this == DEFLATE ? effectiveLevel(level) : 0;
+    }
+
+    // Closing the returned stream finishes the codec but leaves the zip entry open
+    public OutputStream wrap(OutputStream entry, int level) throws IOException {
+        return encode(new NonClosingOutputStream(entry), level);
+    }
+
+    // Like wrap, but closing the returned stream closes target too
+    public OutputStream encode(OutputStream target, int level) throws IOException {
+        return switch (this) {
+            case STORE, DEFLATE -> target;
+            case GZIP -> new ParallelGzipOutputStream(target, effectiveLevel(level));
+            case ZSTD -> {
+                ZstdOutputStream zstd = new ZstdOutputStream(target, effectiveLevel(level));
+                zstd.setWorkers(THREADS);
+                yield zstd;
+            }
+        };
+    }
+
+    // Entry name without the codec suffix, e.g. db/schema.sql.zst -> db/schema.sql
+    public static String baseName(String entryName) {
+        if (entryName.endsWith(ZSTD.extension)) {
+            return entryName.substring(0, entryName.length() - ZSTD.extension.length());
+        }
+        // .archive.gz is mongodump's own gzip format and stays as it is
+        if (entryName.endsWith(GZIP.extension) && !entryName.endsWith(".archive" + GZIP.extension)) {
+            return entryName.substring(0, entryName.length() - GZIP.extension.length());
+        }
+        return entryName;
+    }
+
+    // Wraps an entry stream in the matching decoder. Closing the result never closes the entry stream.
+    public static InputStream decode(InputStream entry) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new NonClosingInputStream(entry), 64 * 1024);
+        in.mark(4);
+        byte[] magic = in.readNBytes(4);
+        in.reset();
+
+        if (magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        if (magic.length == 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5
+                && (magic[2] & 0xff) == 0x2f && (magic[3] & 0xff) == 0xfd) {
+            return new ZstdInputStream(in);
+        }
+        return in;
+    }
+}
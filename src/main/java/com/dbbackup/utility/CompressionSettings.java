@@ -0,0 +1,28 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public record CompressionSettings(CompressionCodec codec, int level, EntryPipeline pipeline) {
+
+    public CompressionSettings(CompressionCodec codec, int level) {
+        this(codec, level, EntryPipeline.DIRECT);
+    }
+
+    public int zipLevel() {
+        return codec.zipLevel(level);
+    }
+
+    public String entryName(String name) {
+        return name + codec.getExtension();
+    }
+
+    public OutputStream wrap(OutputStream entry) throws IOException {
+        return pipeline.encode(entry, codec, level);
+    }
+
+    // Same pipeline, no compression of our own: for payloads that come compressed already
+    public CompressionSettings stored() {
+        return new CompressionSettings(CompressionCodec.STORE, 0, pipeline);
+    }
+}
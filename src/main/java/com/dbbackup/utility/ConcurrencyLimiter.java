@@ -0,0 +1,73 @@
+package com.dbbackup.utility;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+// Non-blocking permits for running backups: one pool for the whole application, one per
+// database host and, optionally, one per disk the archives are written to. A caller that can't
+// get all of them simply tries again later.
+public class ConcurrencyLimiter {
+
+    private final Semaphore global;
+    private final int perHost;
+    private final int perDisk;
+    private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+    private final Map<String, Semaphore> disks = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimiter(int global, int perHost) {
+        this(global, perHost, 0);
+    }
+
+    // perDisk 0: disks aren't limited
+    public ConcurrencyLimiter(int global, int perHost, int perDisk) {
+        this.global = new Semaphore(global);
+        this.perHost = perHost;
+        this.perDisk = perDisk;
+    }
+
+    public boolean tryAcquire(String host) {
+        return tryAcquire(host, null);
+    }
+
+    public boolean tryAcquire(String host, String disk) {
+        if (!global.tryAcquire()) {
+            return false;
+        }
+        if (!hostPermits(host).tryAcquire()) {
+            global.release();
+            return false;
+        }
+        Semaphore diskPermits = diskPermits(disk);
+        if (diskPermits != null && !diskPermits.tryAcquire()) {
+            hostPermits(host).release();
+            global.release();
+            return false;
+        }
+        return true;
+    }
+
+    public void release(String host) {
+        release(host, null);
+    }
+
+    public void release(String host, String disk) {
+        Semaphore diskPermits = diskPermits(disk);
+        if (diskPermits != null) {
+            diskPermits.release();
+        }
+        hostPermits(host).release();
+        global.release();
+    }
+
+    private Semaphore hostPermits(String host) {
+        return hosts.computeIfAbsent(host.toLowerCase(), h -> new Semaphore(perHost));
+    }
+
+    private Semaphore diskPermits(String disk) {
+        if (disk == null || perDisk <= 0) {
+            return null;
+        }
+        return disks.computeIfAbsent(disk, d -> new Semaphore(perDisk));
+    }
+}
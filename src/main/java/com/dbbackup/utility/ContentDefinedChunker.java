@@ -0,0 +1,78 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+
+// Cuts a byte stream into variable-size chunks at content-defined boundaries (gear rolling hash,
+// as in FastCDC). An insert or delete only changes the chunks around it, so two dumps of a
+// mostly unchanged database share almost all of their chunks.
+public class ContentDefinedChunker extends OutputStream {
+
+    public static final int MIN_SIZE = 64 * 1024;
+    public static final int MAX_SIZE = 1024 * 1024;
+    // 18 bits: a boundary every ~256 KB past the minimum
+    private static final long BOUNDARY_MASK = (1L << 18) - 1;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: boundaries must land in the same places on every run
+        SplittableRandom random = new SplittableRandom(0x51d0_c4d5L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkSink {
+        void accept(byte[] data, int length) throws IOException;
+    }
+
+    private final ChunkSink sink;
+    private final byte[] buffer = new byte[MAX_SIZE];
+    private int length;
+    private long hash;
+    private boolean closed;
+
+    public ContentDefinedChunker(ChunkSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        buffer[length++] = (byte) b;
+        hash = (hash << 1) + GEAR[b & 0xff];
+        if (length == MAX_SIZE || (length >= MIN_SIZE && (hash & BOUNDARY_MASK) == 0)) {
+            emit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte value = b[i];
+            buffer[length++] = value;
+            hash = (hash << 1) + GEAR[value & 0xff];
+            if (length == MAX_SIZE || (length >= MIN_SIZE && (hash & BOUNDARY_MASK) == 0)) {
+                emit();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (length > 0) {
+            emit();
+        }
+    }
+
+    private void emit() throws IOException {
+        sink.accept(buffer, length);
+        length = 0;
+        hash = 0;
+    }
+}
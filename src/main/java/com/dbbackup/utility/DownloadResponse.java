@@ -1,18 +1,18 @@
 package com.dbbackup.utility;
 
-import org.springframework.core.io.Resource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 public class DownloadResponse {
-    private final Resource resource;
+    private final StreamingResponseBody body;
     private final String filename;
 
-    public DownloadResponse(Resource resource, String filename) {
-        this.resource = resource;
+    public DownloadResponse(StreamingResponseBody body, String filename) {
+        this.body = body;
         this.filename = filename;
     }
 
-    public Resource getResource() {
-        return resource;
+    public StreamingResponseBody getBody() {
+        return body;
     }
 
     public String getFilename() {
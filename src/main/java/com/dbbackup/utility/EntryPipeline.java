@@ -0,0 +1,81 @@
+package com.dbbackup.utility;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// How an entry's payload travels from the dump into the zip: compressed, then encrypted when a
+// key is set. With stages on (depth > 0) the dump reader, the compressor, the encryptor and,
+// below the zip, the digest and the file writer each run on a thread of their own with bounded
+// buffers in between, so CPU work overlaps with the dump's I/O instead of taking turns with it.
+public final class EntryPipeline {
+
+    // Everything on the calling thread, nothing encrypted
+    public static final EntryPipeline DIRECT = new EntryPipeline(null, 0, null);
+
+    private final BufferPool pool;
+    private final int depth;
+    private final byte[] key;
+
+    public EntryPipeline(BufferPool pool, int depth, byte[] key) {
+        if (key != null && !AesGcmOutputStream.isValidKeyLength(key.length)) {
+            throw new IllegalArgumentException("Encryption key must be 16, 24 or 32 bytes, got " + key.length);
+        }
+        this.pool = pool;
+        this.depth = pool != null ? depth : 0;
+        this.key = key;
+    }
+
+    public boolean encrypts() {
+        return key != null;
+    }
+
+    // A thread of its own for whatever downstream does; downstream itself when stages are off
+    public OutputStream stage(String name, OutputStream downstream) {
+        return depth > 0 ? new PipelineStage(name, downstream, pool, depth) : downstream;
+    }
+
+    // Closing the returned stream finishes every stage but leaves the zip entry open
+    public OutputStream encode(OutputStream entry, CompressionCodec codec, int level) throws IOException {
+        OutputStream target = new NonClosingOutputStream(entry);
+        if (key != null) {
+            target = stage("pipeline-encrypt", new AesGcmOutputStream(target, key));
+        }
+        return stage("pipeline-compress", codec.encode(target, level));
+    }
+
+    // Decrypts when the entry is encrypted, leaving any compression in place (mongodump's gzip).
+    // With a key set, an entry that isn't encrypted is refused unless allowPlaintext: otherwise an
+    // archive swapped for an unencrypted one would be restored without anyone noticing.
+    public InputStream decrypt(InputStream entry, boolean allowPlaintext) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new NonClosingInputStream(entry), 64 * 1024);
+        in.mark(AesGcmOutputStream.HEADER_LENGTH);
+        byte[] magic = in.readNBytes(AesGcmOutputStream.HEADER_LENGTH);
+        in.reset();
+        if (!AesGcmInputStream.isEncrypted(magic)) {
+            if (key != null && !allowPlaintext) {
+                throw new IOException("The archive is not encrypted although quickdump.encryption.key is set;"
+                        + " set allowUnencrypted on the restore to accept it");
+            }
+            return in;
+        }
+        if (key == null) {
+            throw new IOException("The archive is encrypted; set quickdump.encryption.key to restore it");
+        }
+        return new AesGcmInputStream(in, key);
+    }
+
+    public InputStream decrypt(InputStream entry) throws IOException {
+        return decrypt(entry, false);
+    }
+
+    // Decrypted and decompressed. Closing the result never closes the entry stream.
+    public InputStream decode(InputStream entry, boolean allowPlaintext) throws IOException {
+        return CompressionCodec.decode(decrypt(entry, allowPlaintext));
+    }
+
+    public InputStream decode(InputStream entry) throws IOException {
+        return decode(entry, false);
+    }
+}
@@ -0,0 +1,55 @@
+package com.dbbackup.utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The last lines of a process log. Older lines are overwritten and only counted, so a tool that
+// prints for hours can't grow the job's memory. Lines get increasing sequence numbers, which lets
+// a reader ask for just the lines it hasn't seen yet.
+public class LogRingBuffer {
+
+    private static final int MAX_LINE_LENGTH = 1000;
+
+    private final String[] lines;
+    private long next;
+
+    public LogRingBuffer(int capacity) {
+        this.lines = new String[capacity];
+    }
+
+    public record Line(long seq, String text) {
+    }
+
+    public synchronized void add(String line) {
+        if (line.length() > MAX_LINE_LENGTH) {
+            line = line.substring(0, MAX_LINE_LENGTH) + "...";
+        }
+        lines[(int) (next % lines.length)] = line;
+        next++;
+    }
+
+    // Lines from sequence number "from" on that are still held
+    public synchronized List<Line> since(long from) {
+        long first = Math.max(from, next - lines.length);
+        List<Line> result = new ArrayList<>((int) Math.max(0, next - first));
+        for (long seq = first; seq < next; seq++) {
+            result.add(new Line(seq, lines[(int) (seq % lines.length)]));
+        }
+        return result;
+    }
+
+    public synchronized long dropped() {
+        return Math.max(0, next - lines.length);
+    }
+
+    public synchronized String text() {
+        StringBuilder text = new StringBuilder();
+        if (dropped() > 0) {
+            text.append("... ").append(dropped()).append(" earlier lines dropped\n");
+        }
+        for (Line line : since(0)) {
+            text.append(line.text()).append('\n');
+        }
+        return text.toString();
+    }
+}
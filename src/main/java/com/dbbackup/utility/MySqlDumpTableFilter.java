@@ -0,0 +1,133 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Passes through only the parts of a mysqldump script that belong to the selected tables, plus the
+// header and the session settings restored at the end. Sections are recognised by the comments
+// mysqldump writes before each table's structure and data. Only short comment lines are looked at;
+// INSERT lines of any length are copied or dropped without being buffered.
+public class MySqlDumpTableFilter extends OutputStream {
+
+    private static final int LINE_LIMIT = 512;
+    private static final Pattern SECTION = Pattern.compile(
+            "^-- (?:Table structure for table|Dumping data for table|Temporary view structure for view|Final view structure for view) `(.+)`\\s*$");
+
+    private final OutputStream out;
+    private final Set<String> tables;
+
+    private boolean keep = true;
+    private boolean atLineStart = true;
+    private boolean lineKept = true;
+    private final byte[] line = new byte[LINE_LIMIT];
+    private int lineLength = -1;
+
+    public MySqlDumpTableFilter(OutputStream out, Set<String> tables) {
+        this.out = out;
+        this.tables = tables;
+    }
+
+    // The filtered script as a stream, produced on a background thread
+    public static InputStream filter(InputStream sql, Set<String> tables) throws IOException {
+        return BackgroundPipe.start("sql-table-filter", out -> {
+            try (OutputStream filter = new MySqlDumpTableFilter(out, tables)) {
+                sql.transferTo(filter);
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int run = -1;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            if (atLineStart) {
+                atLineStart = false;
+                if (c == '-' || c == '/') {
+                    // May be a section comment or a session restore line: hold it until it is complete
+                    run = flushRun(b, run, i);
+                    lineLength = 0;
+                } else {
+                    lineKept = keep;
+                }
+            }
+
+            if (lineLength >= 0) {
+                if (lineLength < LINE_LIMIT) {
+                    line[lineLength++] = c;
+                    if (c == '\n') {
+                        finishLine();
+                        atLineStart = true;
+                    }
+                    continue;
+                }
+                // Too long for a comment we care about: it follows the current section
+                lineKept = keep;
+                if (lineKept) {
+                    out.write(line, 0, lineLength);
+                }
+                lineLength = -1;
+            }
+
+            if (lineKept) {
+                if (run < 0) run = i;
+            } else {
+                run = flushRun(b, run, i);
+            }
+            if (c == '\n') {
+                atLineStart = true;
+            }
+        }
+        flushRun(b, run, end);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lineLength > 0) {
+            finishLine();
+        }
+        out.close();
+    }
+
+    private int flushRun(byte[] b, int run, int end) throws IOException {
+        if (run >= 0 && end > run) {
+            out.write(b, run, end - run);
+        }
+        return -1;
+    }
+
+    private void finishLine() throws IOException {
+        String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+        Matcher section = SECTION.matcher(text);
+        if (section.find()) {
+            keep = tables.contains(section.group(1).replace("``", "`"));
+        } else if (text.startsWith("-- Dumping ")) {
+            // Routines, events: not part of any one table
+            keep = false;
+        } else if (text.startsWith("-- Dump completed")) {
+            keep = true;
+        }
+        // "/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;" and friends at the end
+        boolean sessionRestore = text.startsWith("/*!") && text.contains("@OLD_");
+        if (keep || sessionRestore) {
+            out.write(line, 0, lineLength);
+        }
+        lineLength = -1;
+    }
+}
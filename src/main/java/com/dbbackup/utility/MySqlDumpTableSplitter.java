@@ -0,0 +1,133 @@
+package com.dbbackup.utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Cuts the data-only script of a mysqldump run over several tables into one script per table, each
+// starting with the run's header so it loads on its own; the closing session restores end up in
+// the last table's script. Sections are found by the "-- Dumping data for table `t`" comments and,
+// as in MySqlDumpTableFilter, only short comment lines are held back.
+public class MySqlDumpTableSplitter extends OutputStream {
+
+    @FunctionalInterface
+    public interface TableOutput {
+        // Where the named table's script goes; closed when the next table starts or the dump ends
+        OutputStream open(String table) throws IOException;
+    }
+
+    private static final int LINE_LIMIT = 512;
+    private static final Pattern DATA_SECTION = Pattern.compile("^-- Dumping data for table `(.+)`\\s*$");
+    private static final byte[] SEPARATOR = "--\n".getBytes(StandardCharsets.UTF_8);
+
+    private final TableOutput tables;
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    private OutputStream current;
+
+    private boolean atLineStart = true;
+    private final byte[] line = new byte[LINE_LIMIT];
+    private int lineLength = -1;
+    // A bare "--" line opens each section comment, so it goes with the next line
+    private boolean separatorHeld;
+
+    public MySqlDumpTableSplitter(TableOutput tables) {
+        this.tables = tables;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        int run = -1;
+        for (int i = off; i < end; i++) {
+            byte c = b[i];
+            if (atLineStart) {
+                atLineStart = false;
+                if (c == '-') {
+                    run = flushRun(b, run, i);
+                    lineLength = 0;
+                } else {
+                    releaseSeparator();
+                }
+            }
+
+            if (lineLength >= 0) {
+                if (lineLength < LINE_LIMIT) {
+                    line[lineLength++] = c;
+                    if (c == '\n') {
+                        finishLine();
+                        atLineStart = true;
+                    }
+                    continue;
+                }
+                // Too long for a section comment
+                releaseSeparator();
+                target().write(line, 0, lineLength);
+                lineLength = -1;
+            }
+
+            if (run < 0) run = i;
+            if (c == '\n') {
+                atLineStart = true;
+            }
+        }
+        flushRun(b, run, end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lineLength > 0) {
+            finishLine();
+        }
+        releaseSeparator();
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    private OutputStream target() {
+        return current != null ? current : header;
+    }
+
+    private int flushRun(byte[] b, int run, int end) throws IOException {
+        if (run >= 0 && end > run) {
+            target().write(b, run, end - run);
+        }
+        return -1;
+    }
+
+    private void releaseSeparator() throws IOException {
+        if (separatorHeld) {
+            separatorHeld = false;
+            target().write(SEPARATOR);
+        }
+    }
+
+    private void finishLine() throws IOException {
+        String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+        if (text.equals("--\n")) {
+            releaseSeparator();
+            separatorHeld = true;
+        } else {
+            Matcher section = DATA_SECTION.matcher(text);
+            if (section.find()) {
+                if (current != null) {
+                    current.close();
+                }
+                current = tables.open(section.group(1).replace("``", "`"));
+                header.writeTo(current);
+            }
+            releaseSeparator();
+            target().write(line, 0, lineLength);
+        }
+        lineLength = -1;
+    }
+}
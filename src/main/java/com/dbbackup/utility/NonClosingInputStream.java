@@ -0,0 +1,17 @@
+package com.dbbackup.utility;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+// Lets a decoder be closed (to free its buffers) without closing the zip stream it reads from
+public class NonClosingInputStream extends FilterInputStream {
+
+    public NonClosingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public void close() {
+        // the owner of the underlying stream closes it
+    }
+}
@@ -0,0 +1,171 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// One stage of a backup pipeline: bytes written here are handed over in filled buffers to a
+// thread of the stage's own, which writes them on downstream. Only depth buffers exist per stage,
+// so a slow downstream blocks the writer (backpressure) and memory stays at depth * buffer size.
+// A downstream failure is thrown from the next write, flush or close; close waits until
+// everything is written and downstream is closed.
+public final class PipelineStage extends OutputStream {
+
+    private static final Chunk END = new Chunk(null, 0, false);
+
+    private final String name;
+    private final OutputStream downstream;
+    private final BufferPool pool;
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<Chunk> full;
+    private final Thread thread;
+    private volatile Throwable failure;
+
+    private byte[] current;
+    private int position;
+    private boolean closed;
+
+    public PipelineStage(String name, OutputStream downstream, BufferPool pool, int depth) {
+        this.name = name;
+        this.downstream = downstream;
+        this.pool = pool;
+        this.free = new ArrayBlockingQueue<>(depth);
+        // Never more chunks than buffers, plus the end marker: handing over never blocks
+        this.full = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; i++) {
+            free.add(pool.acquire());
+        }
+        this.thread = new Thread(this::drain, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current == null || position == current.length) {
+            handOff(false);
+        }
+        current[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null || position == current.length) {
+                handOff(false);
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // Passes on what is buffered and asks downstream to flush it, without waiting for either
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (current == null) {
+            handOff(false);
+        }
+        handOff(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current != null) {
+            full.add(new Chunk(current, position, false));
+            current = null;
+        }
+        full.add(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(name + " interrupted");
+        } finally {
+            byte[] buffer;
+            while ((buffer = free.poll()) != null) {
+                pool.release(buffer);
+            }
+        }
+        checkFailure();
+    }
+
+    private void handOff(boolean flush) throws IOException {
+        checkFailure();
+        if (closed) {
+            throw new IOException(name + " is closed");
+        }
+        if (current != null && (position > 0 || flush)) {
+            full.add(new Chunk(current, position, flush));
+            current = null;
+        }
+        if (current == null) {
+            try {
+                current = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(name + " interrupted");
+            }
+            position = 0;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IOException(name + " failed: " + t.getMessage(), t);
+        }
+    }
+
+    // After a failure chunks are still taken and their buffers returned, so the writer never
+    // blocks on a dead stage before it sees the failure
+    private void drain() {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = full.take();
+            } catch (InterruptedException e) {
+                if (failure == null) {
+                    failure = new InterruptedIOException(name + " interrupted");
+                }
+                continue;
+            }
+            if (chunk == END) {
+                break;
+            }
+            if (failure == null) {
+                try {
+                    downstream.write(chunk.buffer(), 0, chunk.length());
+                    if (chunk.flush()) {
+                        downstream.flush();
+                    }
+                } catch (Throwable t) {
+                    failure = t;
+                }
+            }
+            free.add(chunk.buffer());
+        }
+        try {
+            downstream.close();
+        } catch (Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        }
+    }
+
+    private record Chunk(byte[] buffer, int length, boolean flush) {
+    }
+}
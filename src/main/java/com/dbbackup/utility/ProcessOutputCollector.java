@@ -0,0 +1,48 @@
+package com.dbbackup.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+// Drains a process stream on a background thread so the process never blocks on a full pipe
+// while we are busy feeding or reading its other end. Only the last lines are kept; with a
+// tracker, every line is also passed on as it arrives.
+public class ProcessOutputCollector {
+    private static final int KEPT_LINES = 200;
+
+    private final LogRingBuffer output = new LogRingBuffer(KEPT_LINES);
+    private final Thread thread;
+
+    private ProcessOutputCollector(InputStream stream, String name, ProgressTracker progress) {
+        this.thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.add(line);
+                    if (progress != null) {
+                        progress.log(line);
+                    }
+                }
+            } catch (IOException ignored) {
+                // stream closed because the process went away
+            }
+        }, name);
+        this.thread.setDaemon(true);
+    }
+
+    public static ProcessOutputCollector start(InputStream stream, String name) {
+        return start(stream, name, null);
+    }
+
+    public static ProcessOutputCollector start(InputStream stream, String name, ProgressTracker progress) {
+        ProcessOutputCollector collector = new ProcessOutputCollector(stream, name, progress);
+        collector.thread.start();
+        return collector;
+    }
+
+    public String await() throws InterruptedException {
+        thread.join();
+        return output.text();
+    }
+}
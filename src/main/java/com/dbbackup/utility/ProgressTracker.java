@@ -0,0 +1,362 @@
+package com.dbbackup.utility;
+
+import com.dbbackup.model.ProgressSnapshot;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Live counters of one backup or restore. The streams that move the data count bytes as they pass,
+// so progress costs no extra reads; parallel workers update the same tracker. Rates are measured
+// over the last few seconds, not since the start, so a stall shows up as soon as it happens.
+// Timed streams also add up the time spent in each pipeline stage, for MetricsService.
+public class ProgressTracker {
+
+    // Pipeline stages timed for the metrics
+    public static final String DUMP = "dump";
+    public static final String COMPRESS = "compress";
+    public static final String WRITE = "write";
+    public static final String UPLOAD = "upload";
+    public static final String READ = "read";
+    public static final String EXTRACT = "extract";
+    public static final String LOAD = "load";
+
+    private static final int LOG_LINES = 200;
+    private static final long SAMPLE_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long RATE_WINDOW_NANOS = 10_000_000_000L;
+
+    // mongodump "done dumping shop.orders (1200 documents)", mongorestore "finished restoring shop.orders (1200 documents, 0 failures)"
+    private static final Pattern MONGO_COLLECTION_DONE = Pattern.compile("(?:done dumping|finished restoring) (\\S+) \\((\\d+) documents?");
+
+    private final LongAdder dumpBytes = new LongAdder();
+    private final LongAdder archiveBytes = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final AtomicInteger tablesDone = new AtomicInteger();
+    private volatile int tablesTotal;
+    private volatile long expectedDumpBytes;
+    private volatile long expectedArchiveBytes;
+    private volatile String phase = "starting";
+    private volatile String currentTable;
+    private volatile boolean finished;
+
+    // Exclusive time per stage: time spent in a nested timed stream on the same thread is
+    // subtracted from the enclosing one, so compress doesn't also count the write it calls into
+    private final Map<String, LongAdder> stageNanos = new ConcurrentHashMap<>();
+    private static final ThreadLocal<long[]> NESTED_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final LogRingBuffer logs = new LogRingBuffer(LOG_LINES);
+    // {time, dump bytes, archive bytes}, oldest first
+    private final Deque<long[]> samples = new ArrayDeque<>();
+
+    public void phase(String phase) {
+        this.phase = phase;
+    }
+
+    public void finish(String phase) {
+        this.phase = phase;
+        this.finished = true;
+    }
+
+    // Backups: an estimate from the database's own size statistics
+    public void expectDumpBytes(long bytes) {
+        this.expectedDumpBytes = bytes;
+    }
+
+    // Restores: the archive size, exact
+    public void expectArchiveBytes(long bytes) {
+        this.expectedArchiveBytes = bytes;
+    }
+
+    public void expectTables(int tables) {
+        this.tablesTotal = tables;
+    }
+
+    public void tableStarted(String table) {
+        this.currentTable = table;
+    }
+
+    public void tableDone() {
+        tablesDone.incrementAndGet();
+    }
+
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    // Tool output; mongodump/mongorestore report finished collections there
+    public void log(String line) {
+        logs.add(line);
+        Matcher done = MONGO_COLLECTION_DONE.matcher(line);
+        if (done.find()) {
+            currentTable = done.group(1);
+            rows.add(Long.parseLong(done.group(2)));
+            tablesDone.incrementAndGet();
+        }
+    }
+
+    public List<LogRingBuffer.Line> logsSince(long seq) {
+        return logs.since(seq);
+    }
+
+    public InputStream countDump(InputStream in) {
+        return new CountingInput(in, dumpBytes);
+    }
+
+    public OutputStream countDump(OutputStream out) {
+        return new CountingOutput(out, dumpBytes);
+    }
+
+    public InputStream countArchive(InputStream in) {
+        return new CountingInput(in, archiveBytes);
+    }
+
+    public OutputStream countArchive(OutputStream out) {
+        return new CountingOutput(out, archiveBytes);
+    }
+
+    public InputStream timeInput(String stage, InputStream in) {
+        return new TimedInput(in, stage(stage));
+    }
+
+    public OutputStream timeOutput(String stage, OutputStream out) {
+        return new TimedOutput(out, stage(stage));
+    }
+
+    // For work outside a stream, like waiting for the tool to exit
+    public void addStageTime(String stage, long nanos) {
+        stage(stage).add(nanos);
+    }
+
+    // For work done in place rather than behind a stream, like reading rows over JDBC;
+    // timed streams written to inside the block still count as their own stage
+    public StageTimer time(String stage) {
+        return new StageTimer(stage(stage));
+    }
+
+    public Map<String, Long> getStageNanos() {
+        Map<String, Long> result = new HashMap<>();
+        stageNanos.forEach((stage, nanos) -> result.put(stage, nanos.sum()));
+        return result;
+    }
+
+    public long getDumpBytes() {
+        return dumpBytes.sum();
+    }
+
+    public long getArchiveBytes() {
+        return archiveBytes.sum();
+    }
+
+    private LongAdder stage(String stage) {
+        return stageNanos.computeIfAbsent(stage, s -> new LongAdder());
+    }
+
+    private static long enterStage() {
+        long[] nested = NESTED_NANOS.get();
+        long outer = nested[0];
+        nested[0] = 0;
+        return outer;
+    }
+
+    private static void exitStage(LongAdder stage, long start, long outer) {
+        long elapsed = System.nanoTime() - start;
+        long[] nested = NESTED_NANOS.get();
+        stage.add(elapsed - nested[0]);
+        nested[0] = outer + elapsed;
+    }
+
+    public ProgressSnapshot snapshot() {
+        long now = System.nanoTime();
+        long dump = dumpBytes.sum();
+        long archive = archiveBytes.sum();
+        long[] oldest;
+        synchronized (samples) {
+            if (samples.isEmpty() || now - samples.peekLast()[0] >= SAMPLE_INTERVAL_NANOS) {
+                samples.addLast(new long[]{now, dump, archive});
+            }
+            while (samples.size() > 2 && now - samples.peekFirst()[0] > RATE_WINDOW_NANOS) {
+                samples.removeFirst();
+            }
+            oldest = samples.peekFirst();
+        }
+        double seconds = (now - oldest[0]) / 1e9;
+        double dumpRate = seconds > 0 ? (dump - oldest[1]) / seconds : 0;
+        double archiveRate = seconds > 0 ? (archive - oldest[2]) / seconds : 0;
+
+        // Archive bytes are the better measure when known: the archive size is exact, the dump size a guess
+        boolean byArchive = expectedArchiveBytes > 0;
+        long expected = byArchive ? expectedArchiveBytes : expectedDumpBytes;
+        long done = byArchive ? archive : dump;
+        double rate = byArchive ? archiveRate : dumpRate;
+        Double percent = null;
+        Long eta = null;
+        if (finished) {
+            percent = 100.0;
+        } else if (expected > 0) {
+            percent = Math.min(100.0, done * 100.0 / expected);
+            if (rate > 0) {
+                eta = (long) Math.ceil(Math.max(0, expected - done) / rate);
+            }
+        }
+
+        return new ProgressSnapshot(phase, dump, archive, expected, percent,
+                dumpRate / (1024 * 1024), archiveRate / (1024 * 1024), eta,
+                rows.sum(), tablesDone.get(), tablesTotal, currentTable, logs.dropped());
+    }
+
+    public static final class StageTimer implements AutoCloseable {
+        private final LongAdder nanos;
+        private final long start = System.nanoTime();
+        private final long outer = enterStage();
+
+        private StageTimer(LongAdder nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public void close() {
+            exitStage(nanos, start, outer);
+        }
+    }
+
+    private static class CountingInput extends FilterInputStream {
+        private final LongAdder count;
+
+        CountingInput(InputStream in, LongAdder count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count.increment();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count.add(n);
+            return n;
+        }
+    }
+
+    private static class TimedInput extends FilterInputStream {
+        private final LongAdder nanos;
+
+        TimedInput(InputStream in, LongAdder nanos) {
+            super(in);
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            long outer = enterStage();
+            try {
+                return in.read();
+            } finally {
+                exitStage(nanos, start, outer);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            long outer = enterStage();
+            try {
+                return in.read(b, off, len);
+            } finally {
+                exitStage(nanos, start, outer);
+            }
+        }
+    }
+
+    // Flush and close count too: compressors write their last block there
+    private static class TimedOutput extends FilterOutputStream {
+        private final LongAdder nanos;
+
+        TimedOutput(OutputStream out, LongAdder nanos) {
+            super(out);
+            this.nanos = nanos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            long outer = enterStage();
+            try {
+                out.write(b);
+            } finally {
+                exitStage(nanos, start, outer);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            long outer = enterStage();
+            try {
+                out.write(b, off, len);
+            } finally {
+                exitStage(nanos, start, outer);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            long outer = enterStage();
+            try {
+                out.flush();
+            } finally {
+                exitStage(nanos, start, outer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            long outer = enterStage();
+            try {
+                out.close();
+            } finally {
+                exitStage(nanos, start, outer);
+            }
+        }
+    }
+
+    private static class CountingOutput extends FilterOutputStream {
+        private final LongAdder count;
+
+        CountingOutput(OutputStream out, LongAdder count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count.add(len);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.dbbackup.utility;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// The handful of S3 REST calls archive storage needs, signed with AWS Signature Version 4, on the
+// JDK's HTTP client. Works with AWS and S3-compatible servers (MinIO, Ceph, R2...); pathStyle puts
+// the bucket in the path (http://host/bucket/key) rather than in the host name, as most of the
+// compatible servers expect.
+public class S3Client {
+
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
+    private static final Pattern ERROR_CODE = Pattern.compile("<Code>([^<]+)</Code>");
+    private static final Pattern ERROR_MESSAGE = Pattern.compile("<Message>([^<]*)</Message>");
+    private static final int ATTEMPTS = 5;
+    // Retry n waits between half and all of min(BACKOFF_CAP, BACKOFF_BASE * 2^(n-1)): growing delays
+    // let a throttling endpoint (503 SlowDown) recover, the jitter keeps parallel part uploads apart
+    private static final long BACKOFF_BASE_MILLIS = 200;
+    private static final long BACKOFF_CAP_MILLIS = 20_000;
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final HttpClient http;
+
+    public S3Client(URI endpoint, String region, String bucket, String accessKey, String secretKey, boolean pathStyle) {
+        this.endpoint = endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void putObject(String key, byte[] data, int length) throws IOException {
+        send("PUT", key, Map.of(), Map.of(), data, length, "PutObject");
+    }
+
+    public String createMultipartUpload(String key) throws IOException {
+        String body = text(send("POST", key, Map.of("uploads", ""), Map.of(), null, 0, "CreateMultipartUpload"));
+        Matcher m = UPLOAD_ID.matcher(body);
+        if (!m.find()) {
+            throw new IOException("S3 CreateMultipartUpload of " + key + " returned no upload id");
+        }
+        return m.group(1);
+    }
+
+    // Returns the part's ETag, which CompleteMultipartUpload needs
+    public String uploadPart(String key, String uploadId, int partNumber, byte[] data, int length) throws IOException {
+        HttpResponse<InputStream> response = send("PUT", key,
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId), Map.of(), data, length, "UploadPart");
+        text(response);
+        return response.headers().firstValue("ETag")
+                .orElseThrow(() -> new IOException("S3 UploadPart " + partNumber + " of " + key + " returned no ETag"));
+    }
+
+    public void completeMultipartUpload(String key, String uploadId, List<String> etags) throws IOException {
+        StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(etags.get(i).replace("\"", "&quot;")).append("</ETag></Part>");
+        }
+        byte[] body = xml.append("</CompleteMultipartUpload>").toString().getBytes(StandardCharsets.UTF_8);
+        // S3 may fail the completion after answering 200, with the error in the body
+        String result = text(send("POST", key, Map.of("uploadId", uploadId), Map.of(), body, body.length, "CompleteMultipartUpload"));
+        if (result.contains("<Error>")) {
+            throw new IOException("S3 CompleteMultipartUpload of " + key + " failed: " + describeError(result));
+        }
+    }
+
+    public void abortMultipartUpload(String key, String uploadId) throws IOException {
+        text(send("DELETE", key, Map.of("uploadId", uploadId), Map.of(), null, 0, "AbortMultipartUpload"));
+    }
+
+    // Size in bytes; FileNotFoundException when there is no such object
+    public long headObject(String key) throws IOException {
+        HttpResponse<InputStream> response = send("HEAD", key, Map.of(), Map.of(), null, 0, "HeadObject");
+        text(response);
+        return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+    }
+
+    public byte[] getObject(String key) throws IOException {
+        try (InputStream in = send("GET", key, Map.of(), Map.of(), null, 0, "GetObject").body()) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Bytes first..last (inclusive) of the object
+    public byte[] getRange(String key, long first, long last) throws IOException {
+        HttpResponse<InputStream> response = send("GET", key, Map.of(), Map.of("Range", "bytes=" + first + "-" + last),
+                null, 0, "GetObject");
+        try (InputStream in = response.body()) {
+            byte[] data = in.readAllBytes();
+            if (data.length != last - first + 1) {
+                throw new IOException("S3 GetObject of " + key + " returned " + data.length + " bytes for range "
+                        + first + "-" + last);
+            }
+            return data;
+        }
+    }
+
+    public void deleteObject(String key) throws IOException {
+        text(send("DELETE", key, Map.of(), Map.of(), null, 0, "DeleteObject"));
+    }
+
+    // Retried with backoff on I/O errors, 5xx and 429 answers; every S3 call here is idempotent
+    private HttpResponse<InputStream> send(String method, String key, Map<String, String> query, Map<String, String> headers,
+                                           byte[] body, int length, String operation) throws IOException {
+        IOException last = null;
+        for (int attempt = 1; attempt <= ATTEMPTS; attempt++) {
+            if (attempt > 1) {
+                backoff(attempt - 1, operation);
+            }
+            HttpResponse<InputStream> response;
+            try {
+                response = http.send(request(method, key, query, headers, body, length),
+                        HttpResponse.BodyHandlers.ofInputStream());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("S3 " + operation + " interrupted");
+            } catch (IOException e) {
+                last = e;
+                continue;
+            }
+            int status = response.statusCode();
+            if (status / 100 == 2) {
+                return response;
+            }
+            String error = text(response);
+            if (status == 404) {
+                throw new FileNotFoundException("No object " + key + " in bucket " + bucket);
+            }
+            last = new IOException("S3 " + operation + " of " + key + " failed: HTTP " + status
+                    + (error.isEmpty() ? "" : " " + describeError(error)));
+            if (status < 500 && status != 429) {
+                throw last;
+            }
+        }
+        throw last;
+    }
+
+    static long backoffMillis(int retry) {
+        long ceiling = Math.min(BACKOFF_CAP_MILLIS, BACKOFF_BASE_MILLIS << Math.min(retry - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static void backoff(int retry, String operation) throws InterruptedIOException {
+        try {
+            Thread.sleep(backoffMillis(retry));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S3 " + operation + " interrupted");
+        }
+    }
+
+    private HttpRequest request(String method, String key, Map<String, String> query, Map<String, String> headers,
+                                byte[] body, int length) throws IOException {
+        String host = pathStyle ? endpoint.getRawAuthority() : bucket + "." + endpoint.getRawAuthority();
+        String path = (pathStyle ? "/" + bucket : "") + "/" + encode(key, false);
+        String queryString = canonicalQuery(query);
+        URI uri = URI.create(endpoint.getScheme() + "://" + host + path + (queryString.isEmpty() ? "" : "?" + queryString));
+
+        String payloadHash = body == null ? EMPTY_SHA256 : sha256Hex(body, length);
+        String amzDate = ZonedDateTime.now(ZoneOffset.UTC).format(AMZ_DATE);
+        Map<String, String> signed = new TreeMap<>();
+        headers.forEach((name, value) -> signed.put(name.toLowerCase(), value));
+        signed.put("host", host);
+        signed.put("x-amz-content-sha256", payloadHash);
+        signed.put("x-amz-date", amzDate);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(5))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body, 0, length));
+        // The client sets Host itself, from the URI
+        signed.forEach((name, value) -> {
+            if (!name.equals("host")) {
+                builder.header(name, value);
+            }
+        });
+        builder.header("Authorization", authorization(method, path, queryString, signed, payloadHash, amzDate));
+        return builder.build();
+    }
+
+    // Signature Version 4: https://docs.aws.amazon.com/IAM/latest/UserGuide/create-signed-request.html
+    String authorization(String method, String path, String canonicalQuery, Map<String, String> signedHeaders,
+                         String payloadHash, String amzDate) throws IOException {
+        StringBuilder canonicalHeaders = new StringBuilder();
+        signedHeaders.forEach((name, value) -> canonicalHeaders.append(name).append(':').append(value.trim()).append('\n'));
+        String headerNames = String.join(";", signedHeaders.keySet());
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery + "\n" + canonicalHeaders + "\n"
+                + headerNames + "\n" + payloadHash;
+
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/s3/aws4_request";
+        byte[] canonical = canonicalRequest.getBytes(StandardCharsets.UTF_8);
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n" + sha256Hex(canonical, canonical.length);
+
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope + ", SignedHeaders=" + headerNames
+                + ", Signature=" + signature;
+    }
+
+    private static String canonicalQuery(Map<String, String> query) {
+        List<String> pairs = new ArrayList<>();
+        new TreeMap<>(query).forEach((name, value) -> pairs.add(encode(name, true) + "=" + encode(value, true)));
+        return String.join("&", pairs);
+    }
+
+    // RFC 3986 unreserved characters stay, everything else is percent-encoded; "/" too, except in keys
+    static String encode(String value, boolean encodeSlash) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && !encodeSlash)) {
+                out.append(c);
+            } else {
+                out.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return out.toString();
+    }
+
+    private static String text(HttpResponse<InputStream> response) throws IOException {
+        try (InputStream in = response.body()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String describeError(String xml) {
+        Matcher code = ERROR_CODE.matcher(xml);
+        Matcher message = ERROR_MESSAGE.matcher(xml);
+        return (code.find() ? code.group(1) : "") + (message.find() ? ": " + message.group(1) : "");
+    }
+
+    private static String sha256Hex(byte[] data, int length) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+}
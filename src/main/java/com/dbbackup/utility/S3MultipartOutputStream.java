@@ -0,0 +1,190 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Uploads what is written to it as one S3 object while it is being written: every full part goes
+// out as an UploadPart on the executor, up to `concurrency` at once, and the writer only waits
+// when all part buffers are in flight. An object that fits in one part is sent with a single
+// PutObject instead. close() completes the upload; abort() throws the parts (or the finished
+// object) away.
+public class S3MultipartOutputStream extends OutputStream {
+
+    // S3 rejects parts below 5MB, the last one excepted, and uploads of more than 10000 parts
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    public static final int MAX_PARTS = 10_000;
+
+    private final S3Client client;
+    private final String key;
+    private final ExecutorService executor;
+    private final BlockingQueue<byte[]> free;
+    private final List<Future<String>> parts = new ArrayList<>();
+    private final byte[] single = new byte[1];
+    private byte[] buffer;
+    private int position;
+    private long size;
+    private String uploadId;
+    private boolean closed;
+    private boolean completed;
+
+    public S3MultipartOutputStream(S3Client client, String key, int partSize, int concurrency, ExecutorService executor) {
+        this.client = client;
+        this.key = key;
+        this.executor = executor;
+        // One buffer being filled while `concurrency` parts upload
+        this.free = new ArrayBlockingQueue<>(concurrency + 1);
+        for (int i = 0; i < concurrency + 1; i++) {
+            free.add(new byte[partSize]);
+        }
+        this.buffer = free.poll();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (position == buffer.length) {
+                sendPart();
+            }
+            int n = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, n);
+            position += n;
+            size += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (uploadId == null) {
+                client.putObject(key, buffer, position);
+            } else {
+                if (position > 0) {
+                    sendPart();
+                }
+                client.completeMultipartUpload(key, uploadId, etags());
+            }
+            completed = true;
+        } catch (IOException | RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    // Drops everything uploaded so far; safe to call before or after close()
+    public void abort() {
+        closed = true;
+        discard();
+    }
+
+    private void sendPart() throws IOException {
+        if (uploadId == null) {
+            uploadId = client.createMultipartUpload(key);
+        }
+        int partNumber = parts.size() + 1;
+        if (partNumber > MAX_PARTS) {
+            throw new IOException("Archive " + key + " needs more than " + MAX_PARTS + " parts; raise the part size");
+        }
+        failFast();
+        byte[] part = buffer;
+        int length = position;
+        parts.add(executor.submit(() -> {
+            try {
+                return client.uploadPart(key, uploadId, partNumber, part, length);
+            } finally {
+                free.add(part);
+            }
+        }));
+        try {
+            buffer = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an upload buffer");
+        }
+        position = 0;
+    }
+
+    // A failed part ends the upload at the next part rather than at close()
+    private void failFast() throws IOException {
+        for (Future<String> part : parts) {
+            if (part.isDone()) {
+                result(part);
+            }
+        }
+    }
+
+    private List<String> etags() throws IOException {
+        List<String> etags = new ArrayList<>(parts.size());
+        for (Future<String> part : parts) {
+            etags.add(result(part));
+        }
+        return etags;
+    }
+
+    private String result(Future<String> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an upload");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Upload of " + key + " failed", e.getCause());
+        }
+    }
+
+    private void discard() {
+        // A part still uploading after the abort would be stored (and billed) all the same
+        for (Future<String> part : parts) {
+            try {
+                part.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // Failed parts are what is being thrown away
+            }
+        }
+        try {
+            if (completed) {
+                client.deleteObject(key);
+            } else if (uploadId != null) {
+                client.abortMultipartUpload(key, uploadId);
+            }
+        } catch (IOException e) {
+            // Left for the bucket's lifecycle rule on incomplete uploads
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload of " + key + " is closed");
+        }
+    }
+}
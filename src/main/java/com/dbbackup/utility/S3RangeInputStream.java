@@ -0,0 +1,119 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Reads an S3 object as a sequence of ranged GETs, keeping `concurrency` of them in flight ahead
+// of the reader so a restore isn't bound by a single connection's throughput. Chunks are handed
+// out in order; memory stays at about concurrency x chunkSize.
+public class S3RangeInputStream extends InputStream {
+
+    private final S3Client client;
+    private final String key;
+    private final long size;
+    private final int chunkSize;
+    private final int concurrency;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private long nextOffset;
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean closed;
+
+    public S3RangeInputStream(S3Client client, String key, int chunkSize, int concurrency, ExecutorService executor)
+            throws IOException {
+        this.client = client;
+        this.key = key;
+        this.size = client.headObject(key);
+        this.chunkSize = chunkSize;
+        this.concurrency = concurrency;
+        this.executor = executor;
+        prefetch();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream of " + key + " is closed");
+        }
+        while (position == chunk.length) {
+            Future<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            chunk = await(next);
+            position = 0;
+            prefetch();
+        }
+        return true;
+    }
+
+    private void prefetch() {
+        while (pending.size() < concurrency && nextOffset < size) {
+            long first = nextOffset;
+            long last = Math.min(size, first + chunkSize) - 1;
+            pending.add(executor.submit(() -> client.getRange(key, first, last)));
+            nextOffset = last + 1;
+        }
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading " + key);
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Read of " + key + " failed", e.getCause());
+        }
+    }
+}
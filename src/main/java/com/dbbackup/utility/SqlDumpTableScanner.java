@@ -0,0 +1,124 @@
+package com.dbbackup.utility;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Notes where each table starts in a mysqldump stream as it passes through, using the
+// "-- Table structure for table `t`" / "-- Dumping data for table `t`" comments mysqldump writes.
+// With a tracker it also reports tables and rows as they go by. Rows are counted from the "),("
+// separators of extended INSERTs, so a string value containing one makes the count approximate.
+public class SqlDumpTableScanner extends FilterInputStream {
+
+    private static final String STRUCTURE_MARKER = "-- Table structure for table `";
+    private static final String DATA_MARKER = "-- Dumping data for table `";
+    private static final int LINE_LIMIT = 512;
+
+    private final Map<String, Long> tables = new LinkedHashMap<>();
+    private final ProgressTracker progress;
+    private final byte[] line = new byte[LINE_LIMIT];
+    private int lineLength;
+    private boolean comment;
+    private long position;
+    private long lineStart;
+    private boolean insert;
+    private byte previous;
+    private byte beforePrevious;
+    private String currentTable;
+
+    public SqlDumpTableScanner(InputStream in) {
+        this(in, null);
+    }
+
+    public SqlDumpTableScanner(InputStream in, ProgressTracker progress) {
+        super(in);
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            scan((byte) b);
+        } else {
+            finish();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        for (int i = 0; i < n; i++) {
+            scan(b[off + i]);
+        }
+        if (n < 0) {
+            finish();
+        }
+        return n;
+    }
+
+    // Table name -> offset of its first marker line, in dump order
+    public Map<String, Long> getTables() {
+        return tables;
+    }
+
+    private void scan(byte b) {
+        if (position == lineStart) {
+            // Only comment lines are kept; INSERT lines are skipped without copying
+            comment = b == '-';
+            lineLength = 0;
+            if (progress != null) {
+                insert = b == 'I';
+                if (insert) {
+                    progress.addRows(1);
+                }
+            }
+        }
+        position++;
+        if (insert) {
+            if (b == '(' && previous == ',' && beforePrevious == ')') {
+                progress.addRows(1);
+            }
+            beforePrevious = previous;
+            previous = b;
+        }
+        if (b == '\n') {
+            if (comment) {
+                checkLine();
+            }
+            lineStart = position;
+        } else if (comment && lineLength < LINE_LIMIT) {
+            line[lineLength++] = b;
+        }
+    }
+
+    private void checkLine() {
+        String text = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+        String name = null;
+        if (text.startsWith(STRUCTURE_MARKER)) {
+            name = text.substring(STRUCTURE_MARKER.length());
+        } else if (text.startsWith(DATA_MARKER)) {
+            name = text.substring(DATA_MARKER.length());
+        }
+        if (name != null && name.endsWith("`")) {
+            String table = name.substring(0, name.length() - 1).replace("``", "`");
+            if (tables.putIfAbsent(table, lineStart) == null && progress != null) {
+                // A table's section ends where the next one starts
+                finish();
+                currentTable = table;
+                progress.tableStarted(table);
+            }
+        }
+    }
+
+    private void finish() {
+        if (currentTable != null) {
+            progress.tableDone();
+            currentTable = null;
+        }
+    }
+}
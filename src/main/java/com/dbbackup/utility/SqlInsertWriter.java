@@ -0,0 +1,182 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Builds mysqldump-style extended INSERTs, "INSERT INTO `t` VALUES (...),(...);", in one reusable
+// buffer. Values are escaped straight into it, and a statement goes out as soon as the next row
+// would take it past the size limit, so a restore never sees one bigger than that unless a single
+// row is. Nothing is allocated per row; the buffer only grows for a row larger than it.
+public class SqlInsertWriter {
+
+    // How a column's raw text-protocol bytes are written
+    public enum ValueKind {
+        NUMBER, HEX, STRING;
+
+        public static ValueKind of(int sqlType) {
+            return switch (sqlType) {
+                case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                     Types.DECIMAL, Types.NUMERIC, Types.FLOAT, Types.REAL, Types.DOUBLE -> NUMBER;
+                // mysqldump --hex-blob: binary strings, BIT and GEOMETRY survive any client charset
+                case Types.BIT, Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> HEX;
+                default -> STRING;
+            };
+        }
+    }
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "NULL".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EMPTY = "''".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = ";\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] prefix;
+    private final int statementSize;
+    private byte[] buffer;
+    private int length;
+    private int rowStart;
+    private int rowsInStatement;
+    private boolean firstValue;
+    private long rows;
+
+    // columns: null when the rows hold every column in table order
+    public SqlInsertWriter(OutputStream out, String table, List<String> columns, byte[] buffer, int statementSize) {
+        this.out = out;
+        String head = "INSERT INTO " + quote(table)
+                + (columns == null ? "" : columns.stream().map(SqlInsertWriter::quote).collect(Collectors.joining(",", " (", ")")))
+                + " VALUES ";
+        this.prefix = head.getBytes(StandardCharsets.UTF_8);
+        this.statementSize = statementSize;
+        this.buffer = buffer.length >= prefix.length + 64 ? buffer : new byte[Math.max(statementSize, prefix.length + 64)];
+    }
+
+    public void startRow() {
+        rowStart = length;
+        if (rowsInStatement == 0) {
+            append(prefix, 0, prefix.length);
+        } else {
+            ensure(1);
+            buffer[length++] = ',';
+        }
+        ensure(1);
+        buffer[length++] = '(';
+        firstValue = true;
+    }
+
+    public void add(ValueKind kind, byte[] value) {
+        ensure(1);
+        if (!firstValue) {
+            buffer[length++] = ',';
+        }
+        firstValue = false;
+        if (value == null) {
+            append(NULL, 0, NULL.length);
+            return;
+        }
+        switch (kind) {
+            case NUMBER -> append(value, 0, value.length);
+            case HEX -> appendHex(value);
+            case STRING -> appendString(value);
+        }
+    }
+
+    public void endRow() throws IOException {
+        ensure(1);
+        buffer[length++] = ')';
+        rows++;
+        if (length > statementSize && rowsInStatement > 0) {
+            // Send the statement without this row, then start the next one with it
+            int rowOffset = rowStart + 1;
+            int rowLength = length - rowOffset;
+            out.write(buffer, 0, rowStart);
+            out.write(END);
+            System.arraycopy(buffer, rowOffset, buffer, prefix.length, rowLength);
+            length = prefix.length + rowLength;
+            rowsInStatement = 1;
+        } else {
+            rowsInStatement++;
+        }
+    }
+
+    public void finish() throws IOException {
+        if (rowsInStatement > 0) {
+            out.write(buffer, 0, length);
+            out.write(END);
+        }
+        length = 0;
+        rowsInStatement = 0;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    // For handing back to a pool; possibly grown past the size it came in with
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    private void appendHex(byte[] value) {
+        if (value.length == 0) {
+            append(EMPTY, 0, EMPTY.length);
+            return;
+        }
+        ensure(2 + value.length * 2);
+        buffer[length++] = '0';
+        buffer[length++] = 'x';
+        for (byte b : value) {
+            buffer[length++] = HEX_DIGITS[(b >> 4) & 0xf];
+            buffer[length++] = HEX_DIGITS[b & 0xf];
+        }
+    }
+
+    // The escapes of mysql_real_escape_string; multi-byte UTF-8 never contains these bytes
+    private void appendString(byte[] value) {
+        ensure(2 + value.length * 2);
+        byte[] buf = buffer;
+        int pos = length;
+        buf[pos++] = '\'';
+        for (byte b : value) {
+            int escaped = switch (b) {
+                case 0 -> '0';
+                case '\n' -> 'n';
+                case '\r' -> 'r';
+                case '\\' -> '\\';
+                case '\'' -> '\'';
+                case '"' -> '"';
+                case 0x1a -> 'Z';
+                default -> -1;
+            };
+            if (escaped == -1) {
+                buf[pos++] = b;
+            } else {
+                buf[pos++] = '\\';
+                buf[pos++] = (byte) escaped;
+            }
+        }
+        buf[pos++] = '\'';
+        length = pos;
+    }
+
+    private void append(byte[] bytes, int off, int len) {
+        ensure(len);
+        System.arraycopy(bytes, off, buffer, length, len);
+        length += len;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "``") + "`";
+    }
+}
@@ -0,0 +1,279 @@
+package com.dbbackup.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Turns mysqldump's extended INSERTs into the tab-separated rows LOAD DATA reads, so the server
+// bulk-loads them instead of parsing every value as SQL. Only INSERTs of plain literals (quoted
+// strings, numbers, NULL, 0x../X'..' hex) into one target are taken; anything else, like b'..',
+// _binary or ON DUPLICATE KEY UPDATE, is refused and should run as it is. Rows are read as
+// utf8mb4, the connection charset the INSERTs would have been sent in, so the server converts
+// strings for latin1 and other columns the same way; hex literals are written as their bytes,
+// which binary columns take as they are.
+public class SqlLoadDataWriter {
+
+    private static final String IDENTIFIER = "(?:`(?:[^`]|``)++`|[\\w$]++)";
+    private static final Pattern HEAD = Pattern.compile("(?is)\\s*+(INSERT|REPLACE)((?:\\s++(?:LOW_PRIORITY|DELAYED|HIGH_PRIORITY|IGNORE))*+)"
+            + "\\s++(?:INTO\\s++)?(" + IDENTIFIER + "(?:\\s*+\\.\\s*+" + IDENTIFIER + ")?)"
+            + "\\s*+(\\((?:[^()`]|`(?:[^`]|``)*+`)*+\\))?\\s*+VALUES?\\s*+");
+    private static final Pattern IGNORE = Pattern.compile("(?i)\\bIGNORE\\b");
+    private static final byte[] NULL = {'\\', 'N'};
+
+    // "", " REPLACE" or " IGNORE": what happens to rows whose key is taken
+    private String mode;
+    private String target;
+    private String columns;
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int length;
+    private long rows;
+
+    // Appends the INSERT's rows. False, with nothing appended, when it isn't one this can turn into
+    // rows or names another target than the INSERTs before it.
+    public boolean add(String insert) {
+        Matcher head = HEAD.matcher(insert);
+        if (!head.lookingAt()) {
+            return false;
+        }
+        String mode = head.group(1).equalsIgnoreCase("REPLACE") ? " REPLACE" : IGNORE.matcher(head.group(2)).find() ? " IGNORE" : "";
+        String columns = head.group(4) != null ? head.group(4) : "";
+        if (target == null) {
+            this.mode = mode;
+            this.target = head.group(3);
+            this.columns = columns;
+        } else if (!mode.equals(this.mode) || !head.group(3).equals(target) || !columns.equals(this.columns)) {
+            return false;
+        }
+
+        int mark = length;
+        long markRows = rows;
+        if (!values(insert, head.end())) {
+            length = mark;
+            rows = markRows;
+            return false;
+        }
+        return true;
+    }
+
+    // The statement that loads what was added, from the stream given to the driver
+    public String loadStatement() {
+        return "LOAD DATA LOCAL INFILE 'quickdump-rows'" + mode + " INTO TABLE " + target
+                + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                + (columns.isEmpty() ? "" : " " + columns);
+    }
+
+    public InputStream open() {
+        return new ByteArrayInputStream(buffer, 0, length);
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    // Whether a row that hits a taken key is skipped or replaced rather than an error
+    public boolean toleratesDuplicates() {
+        return !mode.isEmpty();
+    }
+
+    // (v, v, ...), (v, ...) up to the end of the statement
+    private boolean values(String sql, int pos) {
+        int end = sql.length();
+        while (true) {
+            if (pos >= end || sql.charAt(pos) != '(') {
+                return false;
+            }
+            pos++;
+            while (true) {
+                pos = skipSpace(sql, pos);
+                pos = value(sql, pos);
+                if (pos < 0) {
+                    return false;
+                }
+                pos = skipSpace(sql, pos);
+                if (pos >= end) {
+                    return false;
+                }
+                char c = sql.charAt(pos++);
+                if (c == ')') {
+                    put('\n');
+                    rows++;
+                    break;
+                }
+                if (c != ',') {
+                    return false;
+                }
+                put('\t');
+            }
+            pos = skipSpace(sql, pos);
+            if (pos >= end) {
+                return true;
+            }
+            if (sql.charAt(pos) != ',') {
+                return false;
+            }
+            pos = skipSpace(sql, pos + 1);
+        }
+    }
+
+    // Writes one literal as a field; the position after it, or -1 for anything that isn't a literal
+    private int value(String sql, int pos) {
+        int end = sql.length();
+        if (pos >= end) {
+            return -1;
+        }
+        char c = sql.charAt(pos);
+        if (c == '\'') {
+            return string(sql, pos + 1);
+        }
+        if ((c == 'X' || c == 'x') && pos + 1 < end && sql.charAt(pos + 1) == '\'') {
+            int close = sql.indexOf('\'', pos + 2);
+            return close > 0 && hex(sql, pos + 2, close) ? close + 1 : -1;
+        }
+        if (c == '0' && pos + 1 < end && (sql.charAt(pos + 1) == 'x' || sql.charAt(pos + 1) == 'X')) {
+            int stop = pos + 2;
+            while (stop < end && Character.digit(sql.charAt(stop), 16) >= 0) {
+                stop++;
+            }
+            return stop > pos + 2 && hex(sql, pos + 2, stop) ? stop : -1;
+        }
+        if ((c == 'N' || c == 'n') && sql.regionMatches(true, pos, "NULL", 0, 4)
+                && (pos + 4 == end || !Character.isLetterOrDigit(sql.charAt(pos + 4)))) {
+            put(NULL);
+            return pos + 4;
+        }
+        int stop = pos;
+        while (stop < end && isNumberChar(sql.charAt(stop))) {
+            stop++;
+        }
+        if (stop == pos || !Character.isDigit(sql.charAt(stop - 1)) && sql.charAt(stop - 1) != '.') {
+            return -1;
+        }
+        for (int i = pos; i < stop; i++) {
+            put(sql.charAt(i));
+        }
+        return stop;
+    }
+
+    // A quoted string from just after its opening quote; SQL escapes become LOAD DATA escapes
+    private int string(String sql, int pos) {
+        int end = sql.length();
+        while (pos < end) {
+            char c = sql.charAt(pos);
+            if (c == '\\') {
+                if (pos + 1 >= end) {
+                    return -1;
+                }
+                char e = sql.charAt(pos + 1);
+                switch (e) {
+                    // The same escape in LOAD DATA
+                    case '0', 'b', 'n', 'r', 't', 'Z', '\\' -> {
+                        put('\\');
+                        put(e);
+                    }
+                    // Kept with their backslash in SQL, where they are LIKE wildcards
+                    case '%', '_' -> {
+                        put('\\');
+                        put('\\');
+                        put(e);
+                    }
+                    default -> character(e);
+                }
+                pos += 2;
+            } else if (c == '\'') {
+                if (pos + 1 < end && sql.charAt(pos + 1) == '\'') {
+                    put('\'');
+                    pos += 2;
+                } else {
+                    return pos + 1;
+                }
+            } else if (Character.isHighSurrogate(c) && pos + 1 < end) {
+                utf8(Character.toCodePoint(c, sql.charAt(pos + 1)));
+                pos += 2;
+            } else {
+                character(c);
+                pos++;
+            }
+        }
+        return -1;
+    }
+
+    private boolean hex(String sql, int from, int to) {
+        if ((to - from) % 2 != 0) {
+            return false;
+        }
+        for (int i = from; i < to; i += 2) {
+            int high = Character.digit(sql.charAt(i), 16);
+            int low = Character.digit(sql.charAt(i + 1), 16);
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            rawByte((byte) (high << 4 | low));
+        }
+        return true;
+    }
+
+    private void character(char c) {
+        if (c == '\t' || c == '\n' || c == '\\') {
+            rawByte((byte) c);
+        } else if (c < 0x80) {
+            put((byte) c);
+        } else {
+            utf8(c);
+        }
+    }
+
+    private void utf8(int codePoint) {
+        if (codePoint < 0x800) {
+            put((byte) (0xc0 | codePoint >> 6));
+        } else if (codePoint < 0x10000) {
+            put((byte) (0xe0 | codePoint >> 12));
+            put((byte) (0x80 | codePoint >> 6 & 0x3f));
+        } else {
+            put((byte) (0xf0 | codePoint >> 18));
+            put((byte) (0x80 | codePoint >> 12 & 0x3f));
+            put((byte) (0x80 | codePoint >> 6 & 0x3f));
+        }
+        put((byte) (0x80 | codePoint & 0x3f));
+    }
+
+    // A data byte; the ones LOAD DATA reads as separators or escapes are escaped
+    private void rawByte(byte b) {
+        switch (b) {
+            case '\t' -> put(new byte[]{'\\', 't'});
+            case '\n' -> put(new byte[]{'\\', 'n'});
+            case '\\' -> put(new byte[]{'\\', '\\'});
+            default -> put(b);
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return c >= '0' && c <= '9' || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+    }
+
+    private static int skipSpace(String sql, int pos) {
+        while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private void put(char c) {
+        put((byte) c);
+    }
+
+    private void put(byte b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = b;
+    }
+
+    private void put(byte[] bytes) {
+        for (byte b : bytes) {
+            put(b);
+        }
+    }
+}
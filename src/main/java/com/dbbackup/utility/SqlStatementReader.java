@@ -0,0 +1,370 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Splits a mysql client script into statements as it streams in, the way the mysql client does:
+// delimiters inside quotes and comments don't count, DELIMITER lines switch the delimiter, and
+// comment lines between statements are dropped. /*!...*/ version comments stay in the statement,
+// since the server runs them. Only one statement is held in memory at a time.
+//
+// Statements come out as UTF-8 text for JDBC. A quoted literal that isn't valid UTF-8, like a
+// BLOB mysqldump wrote without --hex-blob, is rewritten as an X'..' hex literal, which gives the
+// server the same bytes the mysql client would have sent.
+public class SqlStatementReader {
+
+    private static final int NORMAL = 0;
+    private static final int QUOTED = 1;
+    private static final int LINE_COMMENT = 2;
+    private static final int BLOCK_COMMENT = 3;
+
+    // Bytes that may start a quote or comment outside quotes: "-- " is recognized at its space,
+    // "/*" at its star
+    private static final boolean[] PLAIN_STOP = new boolean[256];
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (char c : "'\"`# *".toCharArray()) {
+            PLAIN_STOP[c] = true;
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] input = new byte[64 * 1024];
+    private int inputPos;
+    private int inputLength;
+
+    private byte[] statement = new byte[64 * 1024];
+    private int length;
+    private byte[] delimiter = {';'};
+
+    private int state = NORMAL;
+    private byte quote;
+    private boolean escaped;
+    private int literalStart;
+    private boolean literalHighBytes;
+
+    public SqlStatementReader(InputStream in) {
+        this.in = in;
+    }
+
+    // The next statement without its delimiter, or null at the end of the script
+    public String next() throws IOException {
+        length = 0;
+        state = NORMAL;
+        int b;
+        while (true) {
+            if (length > 0 && !escaped) {
+                if (state == QUOTED) {
+                    copyQuoted();
+                } else if (state == NORMAL) {
+                    copyPlain();
+                }
+            }
+            if ((b = read()) < 0) {
+                break;
+            }
+            if (length == 0) {
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    continue;
+                }
+                if ((b == '-' || b == '#' || b == 'D' || b == 'd') && skipClientLine(b)) {
+                    continue;
+                }
+            }
+            append((byte) b);
+            switch (state) {
+                case NORMAL -> {
+                    if (b == '\'' || b == '"' || b == '`') {
+                        state = QUOTED;
+                        quote = (byte) b;
+                        escaped = false;
+                        literalStart = length;
+                        literalHighBytes = false;
+                    } else if (b == '#' || (b == ' ' && endsWith("-- "))) {
+                        state = LINE_COMMENT;
+                    } else if (b == '*' && endsWith("/*")) {
+                        state = BLOCK_COMMENT;
+                    } else if (endsWith(delimiter)) {
+                        length -= delimiter.length;
+                        String sql = text();
+                        if (!sql.isEmpty()) {
+                            return sql;
+                        }
+                        length = 0;
+                    }
+                }
+                case QUOTED -> {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\' && quote != '`') {
+                        escaped = true;
+                    } else if (b == quote && peek(0) == quote) {
+                        // A doubled quote stands for one quote inside the literal
+                        escaped = true;
+                    } else if (b == quote) {
+                        state = NORMAL;
+                        if (literalHighBytes && quote == '\'' && !isUtf8(statement, literalStart, length - 1)) {
+                            rewriteAsHex(literalStart - 1);
+                        }
+                    } else if (b >= 0x80) {
+                        literalHighBytes = true;
+                    }
+                }
+                case LINE_COMMENT -> {
+                    if (b == '\n') {
+                        state = NORMAL;
+                    }
+                }
+                case BLOCK_COMMENT -> {
+                    if (b == '/' && endsWith("*/")) {
+                        state = NORMAL;
+                    }
+                }
+            }
+        }
+        String sql = text();
+        return sql.isEmpty() ? null : sql;
+    }
+
+    // Runs of bytes that can't change the state are copied in one go: the bulk of a dump is row
+    // values, and this keeps the per-byte state machine for the few bytes that matter
+    private void copyQuoted() {
+        int i = inputPos;
+        byte q = quote;
+        boolean high = false;
+        while (i < inputLength) {
+            byte c = input[i];
+            if (c == q || c == '\\') {
+                break;
+            }
+            high |= c < 0;
+            i++;
+        }
+        literalHighBytes |= high;
+        copy(i);
+    }
+
+    private void copyPlain() {
+        int i = inputPos;
+        byte d = delimiter[0];
+        while (i < inputLength) {
+            byte c = input[i];
+            if (c == d || PLAIN_STOP[c & 0xff]) {
+                break;
+            }
+            i++;
+        }
+        copy(i);
+    }
+
+    private void copy(int end) {
+        int n = end - inputPos;
+        if (n == 0) {
+            return;
+        }
+        ensure(n);
+        System.arraycopy(input, inputPos, statement, length, n);
+        length += n;
+        inputPos = end;
+    }
+
+    // "-- comment", "# comment" and "DELIMITER x" lines between statements are for the client only
+    private boolean skipClientLine(int first) throws IOException {
+        if (first == '-') {
+            int second = peek(0);
+            int third = peek(1);
+            if (second != '-' || (third != ' ' && third != '\t' && third != '\n' && third != '\r' && third != -1)) {
+                return false;
+            }
+            skipLine();
+            return true;
+        }
+        if (first == '#') {
+            skipLine();
+            return true;
+        }
+        byte[] keyword = "ELIMITER ".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < keyword.length; i++) {
+            int c = peek(i);
+            if (c < 0 || Character.toUpperCase(c) != keyword[i]) {
+                return false;
+            }
+        }
+        inputPos += keyword.length;
+        StringBuilder value = new StringBuilder();
+        int c;
+        while ((c = read()) >= 0 && c != '\n') {
+            value.append((char) c);
+        }
+        String trimmed = value.toString().trim();
+        if (!trimmed.isEmpty()) {
+            delimiter = trimmed.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return true;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '\n') {
+            // skipped
+        }
+    }
+
+    // Literal from quoteAt to the end of the statement, which is its closing quote
+    private void rewriteAsHex(int quoteAt) {
+        int end = length - 1;
+        byte[] raw = new byte[end - quoteAt - 1];
+        int n = 0;
+        for (int i = quoteAt + 1; i < end; i++) {
+            byte c = statement[i];
+            if (c == '\\' && i + 1 < end) {
+                byte next = statement[++i];
+                raw[n++] = (byte) switch (next) {
+                    case '0' -> 0;
+                    case 'b' -> '\b';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    case 't' -> '\t';
+                    case 'Z' -> 0x1a;
+                    default -> next;
+                };
+                // \% and \_ keep their backslash outside LIKE patterns
+                if (next == '%' || next == '_') {
+                    raw[n - 1] = '\\';
+                    raw[n++] = next;
+                }
+            } else if (c == '\'' && i + 1 < end && statement[i + 1] == '\'') {
+                raw[n++] = '\'';
+                i++;
+            } else {
+                raw[n++] = c;
+            }
+        }
+        length = quoteAt;
+        ensure(3 + 2 * n);
+        byte[] out = statement;
+        int pos = length;
+        out[pos++] = 'X';
+        out[pos++] = '\'';
+        for (int i = 0; i < n; i++) {
+            out[pos++] = HEX_DIGITS[(raw[i] >> 4) & 0xf];
+            out[pos++] = HEX_DIGITS[raw[i] & 0xf];
+        }
+        out[pos++] = '\'';
+        length = pos;
+    }
+
+    private static boolean isUtf8(byte[] b, int from, int to) {
+        int i = from;
+        while (i < to) {
+            int c = b[i++] & 0xff;
+            if (c < 0x80) {
+                continue;
+            }
+            int more;
+            int min = 0x80;
+            int max = 0xbf;
+            if (c >= 0xc2 && c <= 0xdf) {
+                more = 1;
+            } else if (c >= 0xe0 && c <= 0xef) {
+                more = 2;
+                // No overlong forms, no surrogates
+                if (c == 0xe0) min = 0xa0;
+                if (c == 0xed) max = 0x9f;
+            } else if (c >= 0xf0 && c <= 0xf4) {
+                more = 3;
+                if (c == 0xf0) min = 0x90;
+                if (c == 0xf4) max = 0x8f;
+            } else {
+                return false;
+            }
+            if (i + more > to) {
+                return false;
+            }
+            int second = b[i] & 0xff;
+            if (second < min || second > max) {
+                return false;
+            }
+            for (int k = 1; k < more; k++) {
+                if ((b[i + k] & 0xc0) != 0x80) {
+                    return false;
+                }
+            }
+            i += more;
+        }
+        return true;
+    }
+
+    private String text() {
+        int start = 0;
+        int end = length;
+        while (start < end && statement[start] <= ' ' && statement[start] >= 0) start++;
+        while (end > start && statement[end - 1] <= ' ' && statement[end - 1] >= 0) end--;
+        return new String(statement, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private boolean endsWith(String suffix) {
+        return endsWith(suffix.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private boolean endsWith(byte[] suffix) {
+        if (length < suffix.length) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length; i++) {
+            if (statement[length - suffix.length + i] != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        ensure(1);
+        statement[length++] = b;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > statement.length) {
+            byte[] grown = new byte[Math.max(statement.length * 2, length + extra)];
+            System.arraycopy(statement, 0, grown, 0, length);
+            statement = grown;
+        }
+    }
+
+    private int read() throws IOException {
+        if (inputPos == inputLength && !fill()) {
+            return -1;
+        }
+        return input[inputPos++] & 0xff;
+    }
+
+    // Looks ahead without consuming; the buffer is compacted so the bytes are there if the stream has them
+    private int peek(int offset) throws IOException {
+        while (inputPos + offset >= inputLength) {
+            if (inputPos > 0) {
+                System.arraycopy(input, inputPos, input, 0, inputLength - inputPos);
+                inputLength -= inputPos;
+                inputPos = 0;
+            }
+            int n = in.read(input, inputLength, input.length - inputLength);
+            if (n < 0) {
+                return -1;
+            }
+            inputLength += n;
+        }
+        return input[inputPos + offset] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(input, 0, input.length);
+        if (n <= 0) {
+            return false;
+        }
+        inputPos = 0;
+        inputLength = n;
+        return true;
+    }
+}
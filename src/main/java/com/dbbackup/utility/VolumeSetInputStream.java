@@ -0,0 +1,154 @@
+package com.dbbackup.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// The volumes of a multi-volume archive read back as one stream. Besides the volume being read,
+// the next readAhead volumes are fetched and decoded concurrently, each into a queue of up to
+// `buffers` chunks, so transfer and decompression of later volumes overlap with the restore of
+// earlier ones. A volume's failure surfaces when the reader gets to it.
+public class VolumeSetInputStream extends InputStream {
+
+    @FunctionalInterface
+    public interface Opener {
+        // The volume's decoded payload; a damaged volume fails on read
+        InputStream open(int volume) throws IOException;
+    }
+
+    private static final Chunk END = new Chunk(null, 0, null);
+
+    private final int count;
+    private final Opener opener;
+    private final int readAhead;
+    private final int chunkSize;
+    private final int buffers;
+    private final ExecutorService executor;
+    private final Deque<Reader> readers = new ArrayDeque<>();
+    private final byte[] single = new byte[1];
+    private int nextVolume;
+    private Chunk chunk;
+    private int position;
+    private boolean closed;
+
+    public VolumeSetInputStream(int count, Opener opener, int readAhead, int chunkSize, int buffers, ExecutorService executor) {
+        this.count = count;
+        this.opener = opener;
+        this.readAhead = Math.max(0, readAhead);
+        this.chunkSize = chunkSize;
+        this.buffers = Math.max(1, buffers);
+        this.executor = executor;
+        startReaders();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Volume set is closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (chunk == null || position == chunk.length()) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, chunk.length() - position);
+        System.arraycopy(chunk.data(), position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Reader reader : readers) {
+            reader.future.cancel(true);
+        }
+        readers.clear();
+    }
+
+    private boolean nextChunk() throws IOException {
+        Reader reader = readers.peek();
+        if (reader == null) {
+            return false;
+        }
+        Chunk next;
+        try {
+            next = reader.chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading volume " + (reader.volume + 1));
+        }
+        if (next.failure() != null) {
+            close();
+            throw new IOException("Volume " + (reader.volume + 1) + " of " + count + ": " + next.failure().getMessage(),
+                    next.failure());
+        }
+        if (next == END) {
+            readers.poll();
+            startReaders();
+            chunk = null;
+            return true;
+        }
+        chunk = next;
+        position = 0;
+        return true;
+    }
+
+    private void startReaders() {
+        while (readers.size() <= readAhead && nextVolume < count) {
+            readers.add(new Reader(nextVolume++));
+        }
+    }
+
+    private final class Reader {
+        private final int volume;
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(buffers);
+        private final Future<?> future;
+
+        private Reader(int volume) {
+            this.volume = volume;
+            this.future = executor.submit(this::run);
+        }
+
+        private void run() {
+            try (InputStream in = opener.open(volume)) {
+                while (true) {
+                    byte[] data = new byte[chunkSize];
+                    int n = in.readNBytes(data, 0, data.length);
+                    if (n > 0) {
+                        chunks.put(new Chunk(data, n, null));
+                    }
+                    if (n < data.length) {
+                        break;
+                    }
+                }
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                try {
+                    chunks.put(new Chunk(null, 0, e));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private record Chunk(byte[] data, int length, Exception failure) {
+    }
+}
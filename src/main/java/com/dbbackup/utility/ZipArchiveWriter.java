@@ -0,0 +1,59 @@
+package com.dbbackup.utility;
+
+import com.dbbackup.model.ArchiveEntry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipArchiveWriter implements ArchiveWriter {
+    private final OutputStream out;
+    private final CountingOutputStream counter;
+    private final ZipOutputStream zos;
+    private final List<ArchiveEntry> entries = new ArrayList<>();
+
+    private ZipEntry current;
+    private long currentOffset;
+
+    public ZipArchiveWriter(OutputStream out) {
+        this.out = out;
+        // ZipOutputStream writes straight through, so the count is always the archive offset
+        this.counter = new CountingOutputStream(out);
+        this.zos = new ZipOutputStream(counter);
+    }
+
+    @Override
+    public OutputStream putNextEntry(String name, int zipLevel) throws IOException {
+        zos.setLevel(zipLevel);
+        current = new ZipEntry(name);
+        currentOffset = counter.getCount();
+        zos.putNextEntry(current);
+        return zos;
+    }
+
+    @Override
+    public void closeEntry() throws IOException {
+        zos.closeEntry();
+        entries.add(new ArchiveEntry(current.getName(), currentOffset,
+                current.getCompressedSize(), current.getSize(), current.getCrc()));
+        current = null;
+    }
+
+    // Writes the central directory but leaves the target open for the caller to close
+    @Override
+    public void finish() throws IOException {
+        zos.finish();
+        out.flush();
+    }
+
+    public List<ArchiveEntry> getEntries() {
+        return entries;
+    }
+
+    public long getBytesWritten() {
+        return counter.getCount();
+    }
+}
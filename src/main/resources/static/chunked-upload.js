@@ -0,0 +1,100 @@
+// Resumable chunked upload to /api/uploads: chunks go up in parallel, each with its SHA-256 when
+// the browser can compute it, and failed chunks are retried. The session id is remembered per
+// file, so uploading the same file again after a failure only sends the chunks still missing.
+
+const UPLOAD_PARALLELISM = 4;
+const UPLOAD_RETRIES = 3;
+
+async function sha256Hex(blob) {
+    // crypto.subtle only exists on https and localhost; without it the server skips the check
+    if (!window.crypto || !window.crypto.subtle) {
+        return null;
+    }
+    const digest = await crypto.subtle.digest("SHA-256", await blob.arrayBuffer());
+    return Array.from(new Uint8Array(digest), b => b.toString(16).padStart(2, "0")).join("");
+}
+
+function uploadKey(file) {
+    return `quickdump-upload:${file.name}:${file.size}:${file.lastModified}`;
+}
+
+async function openUploadSession(file) {
+    const saved = localStorage.getItem(uploadKey(file));
+    if (saved) {
+        const response = await fetch(`/api/uploads/${encodeURIComponent(saved)}`);
+        if (response.ok) {
+            return response.json();
+        }
+        localStorage.removeItem(uploadKey(file));
+    }
+    const response = await fetch("/api/uploads", {
+        method: "POST",
+        headers: {"Content-Type": "application/json"},
+        body: JSON.stringify({fileName: file.name, size: file.size})
+    });
+    if (!response.ok) {
+        throw new Error(await response.text());
+    }
+    const session = await response.json();
+    localStorage.setItem(uploadKey(file), session.id);
+    return session;
+}
+
+async function putChunk(session, file, index) {
+    const start = index * session.chunkSize;
+    const chunk = file.slice(start, Math.min(start + session.chunkSize, file.size));
+    const headers = {"Content-Type": "application/octet-stream"};
+    const checksum = await sha256Hex(chunk);
+    if (checksum) {
+        headers["X-Chunk-Sha256"] = checksum;
+    }
+    let lastError;
+    for (let attempt = 0; attempt < UPLOAD_RETRIES; attempt++) {
+        try {
+            const response = await fetch(`/api/uploads/${session.id}/chunks/${index}`, {method: "PUT", headers, body: chunk});
+            if (response.ok) {
+                return chunk.size;
+            }
+            lastError = new Error(await response.text());
+        } catch (e) {
+            lastError = e;
+        }
+        await new Promise(resolve => setTimeout(resolve, 1000 * (attempt + 1)));
+    }
+    throw lastError;
+}
+
+// Sends whatever the server is missing; onProgress(sentBytes, totalBytes). Resolves to the session id.
+async function uploadInChunks(file, onProgress) {
+    const session = await openUploadSession(file);
+    const queue = [...session.missingChunks];
+    let sent = file.size - queue.reduce((sum, i) => sum + Math.min(session.chunkSize, file.size - i * session.chunkSize), 0);
+    onProgress(sent, file.size);
+
+    async function worker() {
+        while (queue.length > 0) {
+            const index = queue.shift();
+            sent += await putChunk(session, file, index);
+            onProgress(sent, file.size);
+        }
+    }
+    await Promise.all(Array.from({length: UPLOAD_PARALLELISM}, worker));
+    return session.id;
+}
+
+// Starts the restore from a finished upload; resolves to the restore job
+async function completeUpload(file, sessionId, request) {
+    const response = await fetch(`/api/uploads/${sessionId}/complete`, {
+        method: "POST",
+        headers: {"Content-Type": "application/json"},
+        body: JSON.stringify(request)
+    });
+    if (response.status === 503) {
+        throw new Error("too many jobs queued, try again later.");
+    }
+    if (!response.ok) {
+        throw new Error(await response.text());
+    }
+    localStorage.removeItem(uploadKey(file));
+    return response.json();
+}
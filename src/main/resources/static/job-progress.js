@@ -0,0 +1,83 @@
+// Live progress of a backup/restore job, from the Server-Sent Events at /api/jobs/{id}/events
+
+const MAX_LOG_LINES = 200;
+
+function formatBytes(bytes) {
+    const units = ["B", "KB", "MB", "GB", "TB"];
+    let value = bytes;
+    let unit = 0;
+    while (value >= 1024 && unit < units.length - 1) {
+        value /= 1024;
+        unit++;
+    }
+    return value.toFixed(unit === 0 ? 0 : 1) + " " + units[unit];
+}
+
+function formatDuration(seconds) {
+    const h = Math.floor(seconds / 3600);
+    const m = Math.floor((seconds % 3600) / 60);
+    const s = seconds % 60;
+    return (h > 0 ? h + "h " : "") + (h > 0 || m > 0 ? m + "m " : "") + s + "s";
+}
+
+function watchJob(jobId, panel, onDone) {
+    panel.innerHTML = `
+        <div class="h-2 w-full overflow-hidden rounded bg-[#f0f2f5]">
+            <div data-bar class="h-2 bg-[#0c7ff2]" style="width: 0%"></div>
+        </div>
+        <p data-summary class="text-[#111418] text-sm font-medium pt-2"></p>
+        <p data-detail class="text-[#60758a] text-sm"></p>
+        <pre data-log class="mt-2 max-h-64 overflow-y-auto whitespace-pre-wrap rounded bg-[#f0f2f5] p-2 text-xs text-[#111418]"></pre>`;
+    panel.classList.remove("hidden");
+    const bar = panel.querySelector("[data-bar]");
+    const summary = panel.querySelector("[data-summary]");
+    const detail = panel.querySelector("[data-detail]");
+    const log = panel.querySelector("[data-log]");
+    let lastLine = -1;
+
+    function render(job) {
+        const p = job.progress;
+        if (p.percent !== null) {
+            bar.style.width = p.percent.toFixed(1) + "%";
+        }
+        const rate = job.type === "restore" && p.archiveBytes > 0 ? p.archiveMbPerSecond : p.dumpMbPerSecond;
+        summary.textContent = `${job.state.toLowerCase()} · ${p.phase}` +
+            (p.percent !== null ? ` · ${p.percent.toFixed(1)}%` : "") +
+            ` · ${rate.toFixed(1)} MB/s` +
+            (p.etaSeconds !== null ? ` · ETA ${formatDuration(p.etaSeconds)}` : "");
+
+        const tables = p.tablesTotal > 0 ? `${p.tablesDone}/${p.tablesTotal}` : `${p.tablesDone}`;
+        detail.textContent = `Dump ${formatBytes(p.dumpBytes)} · archive ${formatBytes(p.archiveBytes)}` +
+            ` · tables ${tables}` + (p.currentTable ? ` (${p.currentTable})` : "") +
+            ` · rows ${p.rows.toLocaleString()}`;
+        if (job.state === "FAILED") {
+            summary.textContent += " · " + job.error;
+        }
+    }
+
+    const source = new EventSource(`/api/jobs/${encodeURIComponent(jobId)}/events`);
+    source.addEventListener("progress", e => render(JSON.parse(e.data)));
+    source.addEventListener("log", e => {
+        // After a reconnect the server starts over; lines already shown are skipped
+        for (const line of JSON.parse(e.data)) {
+            if (line.seq > lastLine) {
+                log.textContent += line.text + "\n";
+                lastLine = line.seq;
+            }
+        }
+        const lines = log.textContent.split("\n");
+        if (lines.length > MAX_LOG_LINES) {
+            log.textContent = lines.slice(lines.length - MAX_LOG_LINES).join("\n");
+        }
+        log.scrollTop = log.scrollHeight;
+    });
+    source.addEventListener("done", e => {
+        const job = JSON.parse(e.data);
+        render(job);
+        source.close();
+        if (onDone) {
+            onDone(job);
+        }
+    });
+    return source;
+}
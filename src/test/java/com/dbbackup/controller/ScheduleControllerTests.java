@@ -0,0 +1,48 @@
+package com.dbbackup.controller;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.BackupSchedule;
+import com.dbbackup.service.ScheduleService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ScheduleControllerTests {
+
+    @TempDir
+    Path backups;
+
+    @Test
+    void editingAFetchedScheduleKeepsItsPassword() throws Exception {
+        ScheduleService service = new ScheduleService(null, null, null, null, null, null, null,
+                backups.resolve("schedules.json").toString(), 0, 4, 1);
+        ScheduleController controller = new ScheduleController(service);
+        BackupRequest request = new BackupRequest();
+        request.setHost("db1");
+        request.setDbName("shop");
+        request.setUsername("backup");
+        request.setPassword("secret");
+        BackupSchedule schedule = new BackupSchedule();
+        schedule.setName("nightly");
+        schedule.setCron("0 0 2 * * *");
+        schedule.setRequest(request);
+        String id = service.createSchedule(schedule).getId();
+
+        BackupSchedule fetched = controller.getSchedule(id).getBody();
+        assertNull(fetched.getRequest().getPassword());
+        fetched.setCron("0 30 3 * * *");
+        controller.updateSchedule(id, fetched);
+
+        assertEquals("0 30 3 * * *", service.getSchedule(id).getCron());
+        assertEquals("secret", service.getSchedule(id).getRequest().getPassword());
+
+        // A new password still replaces the stored one
+        fetched.getRequest().setPassword("rotated");
+        controller.updateSchedule(id, fetched);
+        assertEquals("rotated", service.getSchedule(id).getRequest().getPassword());
+    }
+}
@@ -0,0 +1,71 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupManifest;
+import com.dbbackup.model.VolumeSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ArchiveVerificationServiceTests {
+
+    @TempDir
+    Path backups;
+
+    private ArchiveVerificationService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        BackupCatalogService catalog = new BackupCatalogService(backups.resolve("catalog.jsonl").toString());
+        catalog.add(stored("shop_20261017_020000.zip").toString(), manifest(null));
+        VolumeSet volumes = new VolumeSet(5 << 20, 1, "00", List.of(
+                new VolumeSet.Volume("crm_20261017_020000.vol0001.zip", 0, 1, 1, "00")));
+        catalog.add(stored("crm_20261017_020000.zip").toString(), manifest(volumes));
+        stored("crm_20261017_020000.vol0001.zip");
+        stored("crm_20261017_020000.vol0002.zip");
+        stored("shop_20261017_020000.zip.sha256");
+        stored("orphan_20261017_020000.zip");
+        Files.writeString(backups.resolve("schedules.json"), "[{\"request\":{\"password\":\"secret\"}}]");
+
+        service = new ArchiveVerificationService(catalog, backups, 1);
+    }
+
+    @Test
+    void servesCataloguedArchivesAndTheirVolumes() throws IOException {
+        assertEquals(backups.resolve("shop_20261017_020000.zip"), service.resolveStored("shop_20261017_020000.zip"));
+        assertEquals(backups.resolve("crm_20261017_020000.vol0001.zip"),
+                service.resolveStored("crm_20261017_020000.vol0001.zip"));
+    }
+
+    // The schedules keep each request's password; the rest are bookkeeping or not a backup at all
+    @ParameterizedTest
+    @ValueSource(strings = {"schedules.json", "catalog.jsonl", "shop_20261017_020000.zip.sha256",
+            "shop_20261017_020000.zip.manifest.json", "orphan_20261017_020000.zip",
+            "crm_20261017_020000.vol0002.zip", "../schedules.json"})
+    void refusesEverythingElse(String file) {
+        assertThrows(FileNotFoundException.class, () -> service.resolveStored(file));
+    }
+
+    private Path stored(String name) throws IOException {
+        return Files.write(backups.resolve(name), new byte[]{1});
+    }
+
+    private static BackupManifest manifest(VolumeSet volumes) {
+        BackupManifest manifest = new BackupManifest();
+        manifest.setDbName("shop");
+        manifest.setStartedAt(Instant.parse("2026-10-17T02:00:00Z"));
+        manifest.setVolumes(volumes);
+        return manifest;
+    }
+}
@@ -0,0 +1,32 @@
+package com.dbbackup.service;
+
+import com.dbbackup.utility.ConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupPermitServiceTests {
+
+    @Test
+    void batchesShareTheHostAndDiskCaps() {
+        BackupPermitService permits = new BackupPermitService(8, 2, 2);
+        ConcurrencyLimiter first = new ConcurrencyLimiter(4, 2, 2);
+        ConcurrencyLimiter second = new ConcurrencyLimiter(4, 2, 2);
+        ConcurrencyLimiter scheduler = new ConcurrencyLimiter(4, 1);
+
+        assertTrue(permits.tryAcquire(first, "db1", "disk-a"));
+        assertTrue(permits.tryAcquire(second, "db1", "disk-b"));
+        // Each batch is under its own cap, but db1 is at the shared one
+        assertFalse(permits.tryAcquire(second, "db1", "disk-b"));
+        assertFalse(permits.tryAcquire(scheduler, "db1", null));
+
+        assertTrue(permits.tryAcquire(scheduler, "db2", "disk-a"));
+        assertFalse(permits.tryAcquire(first, "db3", "disk-a"));
+        // The refused attempt gave back the batch's own permits
+        assertTrue(permits.tryAcquire(first, "db3", "disk-c"));
+
+        permits.release(first, "db1", "disk-a");
+        assertTrue(permits.tryAcquire(scheduler, "db1", null));
+    }
+}
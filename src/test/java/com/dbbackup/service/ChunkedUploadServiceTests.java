@@ -0,0 +1,91 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.UploadSession;
+import com.dbbackup.utility.ArchiveChecksums;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkedUploadServiceTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void assemblesChunksSentOutOfOrderAndResumesAfterARestart() throws IOException {
+        byte[] data = "0123456789abcdefghij-tail".getBytes(StandardCharsets.UTF_8);
+        JobService jobService = mock(JobService.class);
+        ChunkedUploadService uploads = service(jobService);
+
+        UploadSession request = new UploadSession();
+        request.setFileName("shop.zip");
+        request.setSize(data.length);
+        request.setChunkSize(10);
+        UploadSession session = uploads.create(request);
+        assertEquals(3, session.getChunkCount());
+
+        uploads.writeChunk(session.getId(), 2, chunk(data, 2), null);
+        // A corrupted chunk is refused and stays missing
+        assertThrows(IllegalArgumentException.class, () ->
+                uploads.writeChunk(session.getId(), 0, chunk(data, 0), ArchiveChecksums.sha256(chunk(data, 1))));
+        assertThrows(IllegalStateException.class, () -> uploads.complete(session.getId(), new BackupRequest()));
+
+        // A new instance picks the session up from disk
+        ChunkedUploadService restarted = service(jobService);
+        restarted.load();
+        assertEquals(List.of(0, 1), List.copyOf(restarted.getSession(session.getId()).getMissingChunks()));
+        restarted.writeChunk(session.getId(), 1, chunk(data, 1), ArchiveChecksums.sha256(chunk(data, 1)));
+        restarted.writeChunk(session.getId(), 0, chunk(data, 0), null);
+
+        Path archive = dir.resolve(session.getId() + ".zip");
+        when(jobService.submitRestore(eq(archive), any())).thenAnswer(call -> {
+            assertArrayEquals(data, Files.readAllBytes(archive));
+            return null;
+        });
+        restarted.complete(session.getId(), new BackupRequest());
+        verify(jobService).submitRestore(eq(archive), any());
+        assertThrows(FileNotFoundException.class, () -> restarted.getSession(session.getId()));
+    }
+
+    @Test
+    void refusesChunksTooSmallForTheUpload() {
+        ChunkedUploadService uploads = new ChunkedUploadService(mock(JobService.class), dir.toString(),
+                DataSize.ofMegabytes(8), DataSize.ofMegabytes(1), DataSize.ofMegabytes(64), Duration.ofHours(24));
+        UploadSession request = new UploadSession();
+        request.setFileName("shop.zip");
+        request.setSize(DataSize.ofGigabytes(1).toBytes());
+        request.setChunkSize(1);
+
+        assertThrows(IllegalArgumentException.class, () -> uploads.create(request));
+    }
+
+    // Ten-byte chunks keep the test data small
+    private ChunkedUploadService service(JobService jobService) {
+        return new ChunkedUploadService(jobService, dir.toString(), DataSize.ofMegabytes(8), DataSize.ofBytes(1),
+                DataSize.ofMegabytes(64), Duration.ofHours(24));
+    }
+
+    private static ByteArrayInputStream chunk(byte[] data, int index) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(data, index * 10, Math.min(data.length, (index + 1) * 10)));
+    }
+}
@@ -0,0 +1,78 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.mongodb.client.MongoClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionRegistryTests {
+
+    private final ConnectionRegistry registry = new ConnectionRegistry(1, Duration.ZERO, Duration.ofSeconds(5), 2,
+            new SimpleMeterRegistry());
+
+    @AfterEach
+    void tearDown() {
+        registry.closeAll();
+    }
+
+    @Test
+    void borrowedTargetOutlivesEvictionUntilReleased() throws InterruptedException {
+        ConnectionRegistry.MongoLease tailing = registry.mongoClient(target("shop"));
+
+        // Registry full and idle timeout passed, but the first client is still in use
+        try (ConnectionRegistry.MongoLease other = registry.mongoClient(target("crm"))) {
+            assertTrue(isOpen(other.client()));
+        }
+        Thread.sleep(10);
+        registry.evictIdle();
+        assertTrue(isOpen(tailing.client()));
+
+        tailing.close();
+        assertFalse(isOpen(tailing.client()));
+    }
+
+    @Test
+    void idleTargetIsEvicted() throws InterruptedException {
+        MongoClient client;
+        try (ConnectionRegistry.MongoLease lease = registry.mongoClient(target("shop"))) {
+            client = lease.client();
+        }
+        Thread.sleep(10);
+        registry.evictIdle();
+        assertFalse(isOpen(client));
+    }
+
+    // Nothing listens on the port: an open client waits for server selection, a closed one fails at once
+    private static boolean isOpen(MongoClient client) {
+        CompletableFuture<String> call = CompletableFuture.supplyAsync(() -> client.listDatabaseNames().first());
+        try {
+            call.get(300, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return true;
+        } catch (ExecutionException e) {
+            return !(e.getCause() instanceof IllegalStateException);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static BackupRequest target(String dbName) {
+        BackupRequest request = new BackupRequest();
+        request.setDbType("mongodb");
+        request.setHost("127.0.0.1");
+        request.setPort(1);
+        request.setDbName(dbName);
+        return request;
+    }
+}
@@ -0,0 +1,137 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupChain;
+import com.dbbackup.model.BackupRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class IncrementalBackupServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private RestoreService restoreService;
+    private IncrementalBackupService incrementalBackupService;
+
+    @BeforeEach
+    void setUp() {
+        restoreService = mock(RestoreService.class);
+        incrementalBackupService = new IncrementalBackupService(restoreService, mock(ConnectionRegistry.class),
+                mock(ArchiveVerificationService.class), new PipelineService(2, DataSize.ofKilobytes(64), 8, ""),
+                dir.resolve("chains").toString(), "--source-data=2");
+    }
+
+    @Test
+    void chainReplaysIntoItsSourceDatabase() throws Exception {
+        writeChain();
+        when(restoreService.restoreBackup(any(Path.class), any())).thenReturn("full restored\n");
+        when(restoreService.replayMongoOplog(any(), any(), isNull())).thenReturn("oplog replayed\n");
+
+        BackupRequest target = new BackupRequest();
+        target.setDbType("mongodb");
+        String result = incrementalBackupService.restoreChain("chain", target, null);
+
+        assertEquals("shop", target.getDbName());
+        verify(restoreService).restoreBackup(eq(dir.resolve("full.zip")), eq(target));
+        verify(restoreService).replayMongoOplog(eq(target), any(Path.class), isNull());
+        assertTrue(result.endsWith("full restored\noplog replayed\n"), result);
+    }
+
+    @Test
+    void chainIsNotSplitAcrossDatabases() throws Exception {
+        writeChain();
+        BackupRequest target = new BackupRequest();
+        target.setDbType("mongodb");
+        target.setDbName("shop_copy");
+
+        assertThrows(IllegalArgumentException.class, () -> incrementalBackupService.restoreChain("chain", target, null));
+        verifyNoInteractions(restoreService);
+    }
+
+    @Test
+    void keepsOnlyThisDatabasesTransactionOps() {
+        RawBsonDocument insert = raw(op("shop.orders"));
+        assertSame(insert, IncrementalBackupService.forDatabase(insert, "shop"));
+
+        BsonDocument transaction = new BsonDocument("op", new BsonString("c"))
+                .append("ns", new BsonString("admin.$cmd"))
+                .append("o", new BsonDocument("applyOps",
+                        new BsonArray(List.of(op("shop.orders"), op("shop_archive.orders"), op("shop.users")))));
+        BsonDocument kept = IncrementalBackupService.forDatabase(raw(transaction), "shop").decode(new BsonDocumentCodec());
+
+        List<String> namespaces = kept.getDocument("o").getArray("applyOps").stream()
+                .map(op -> op.asDocument().getString("ns").getValue())
+                .toList();
+        assertEquals(List.of("shop.orders", "shop.users"), namespaces);
+    }
+
+    // A full backup and one MongoDB incremental of "shop"
+    private void writeChain() throws IOException {
+        BackupChain chain = new BackupChain();
+        chain.setId("chain");
+        chain.setDbType("mongodb");
+        chain.setDbName("shop");
+        chain.getLinks().add(link(IncrementalBackupService.FULL, dir.resolve("full.zip"), null, "100:1"));
+        Path incremental = dir.resolve("incr.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(incremental))) {
+            zip.putNextEntry(new ZipEntry("incr/oplog.bson"));
+            ByteBuffer bytes = raw(op("shop.orders")).getByteBuffer().asNIO();
+            zip.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            zip.closeEntry();
+        }
+        chain.getLinks().add(link(IncrementalBackupService.INCREMENTAL, incremental, "100:1", "200:1"));
+
+        Files.createDirectories(dir.resolve("chains"));
+        new ObjectMapper().registerModule(new JavaTimeModule()).writeValue(dir.resolve("chains/chain.json").toFile(), chain);
+    }
+
+    private static BackupChain.Link link(String type, Path file, String start, String end) {
+        BackupChain.Link link = new BackupChain.Link();
+        link.setType(type);
+        link.setFile(file.toString());
+        link.setCreatedAt(Instant.parse("2026-10-17T02:00:00Z"));
+        link.setStartPosition(start);
+        link.setEndPosition(end);
+        return link;
+    }
+
+    private static BsonDocument op(String ns) {
+        return new BsonDocument("op", new BsonString("i"))
+                .append("ns", new BsonString(ns))
+                .append("o", new BsonDocument("_id", new BsonString("1")));
+    }
+
+    private static RawBsonDocument raw(BsonDocument document) {
+        return new RawBsonDocument(document, new BsonDocumentCodec());
+    }
+}
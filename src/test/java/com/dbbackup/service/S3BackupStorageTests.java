@@ -0,0 +1,247 @@
+package com.dbbackup.service;
+
+import com.dbbackup.utility.S3Client;
+import com.dbbackup.utility.S3MultipartOutputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Against an in-process stand-in for S3: just enough of the REST API for archive storage
+class S3BackupStorageTests {
+
+    private static final int PART_SIZE = S3MultipartOutputStream.MIN_PART_SIZE;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private S3BackupStorage storage;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private final AtomicInteger rangedGets = new AtomicInteger();
+    // Requests answered 503 SlowDown before the server accepts any, and when each one arrived
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final List<Long> arrivals = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        executor = Executors.newCachedThreadPool();
+        S3Client client = new S3Client(URI.create("http://127.0.0.1:" + server.getAddress().getPort()),
+                "us-east-1", "archives", "access", "secret", true);
+        storage = new S3BackupStorage(client, "quickdump", PART_SIZE, 3, 1024 * 1024, 4, executor);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void archiveUploadsInPartsAndReadsBackInRanges() throws Exception {
+        byte[] data = sample(3 * PART_SIZE + 12345);
+        String location;
+        try (BackupStorage.Upload upload = storage.create("shop_20261017_020000", "")) {
+            location = upload.location();
+            for (int off = 0; off < data.length; off += 100_000) {
+                upload.write(data, off, Math.min(100_000, data.length - off));
+            }
+        }
+        assertEquals("s3://archives/quickdump/shop_20261017_020000.zip", location);
+        assertArrayEquals(data, objects.get("quickdump/shop_20261017_020000.zip"));
+        assertTrue(uploads.isEmpty());
+        assertTrue(maxPartsInFlight.get() > 1, "parts should upload concurrently");
+
+        try (InputStream in = storage.open(location)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        assertEquals((data.length + 1024 * 1024 - 1) / (1024 * 1024), rangedGets.get());
+
+        // The same name is taken now, so the next archive gets a suffix
+        try (BackupStorage.Upload upload = storage.create("shop_20261017_020000", "")) {
+            upload.write(1);
+            assertEquals("shop_20261017_020000_2.zip", upload.name());
+        }
+    }
+
+    @Test
+    void smallArchiveIsOnePutAndDeletesWithItsSidecars() throws Exception {
+        String location;
+        try (BackupStorage.Upload upload = storage.create("small", "")) {
+            upload.write("tiny".getBytes(StandardCharsets.UTF_8));
+            location = upload.location();
+        }
+        storage.writeSidecar(location, ".sha256", "abc  small.zip\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, objects.size());
+
+        storage.delete(location);
+        assertTrue(objects.isEmpty());
+        assertThrows(FileNotFoundException.class, () -> storage.delete(location));
+    }
+
+    @Test
+    void throttledRequestsAreRetriedWithGrowingDelays() throws Exception {
+        throttled.set(3);
+        try (BackupStorage.Upload upload = storage.create("throttled", "")) {
+            upload.write("tiny".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(1, objects.size());
+
+        long first = arrivals.get(1) - arrivals.get(0);
+        long third = arrivals.get(3) - arrivals.get(2);
+        assertTrue(first >= TimeUnit.MILLISECONDS.toNanos(100), "first retry after " + first + "ns");
+        assertTrue(third >= TimeUnit.MILLISECONDS.toNanos(400), "third retry after " + third + "ns");
+    }
+
+    @Test
+    void abortedUploadLeavesNothingBehind() throws Exception {
+        BackupStorage.Upload upload = storage.create("failed", "");
+        upload.write(sample(2 * PART_SIZE + 1));
+        upload.abort();
+        assertTrue(objects.isEmpty());
+        assertTrue(uploads.isEmpty());
+        assertFalse(storage.owns("/var/backups/failed.zip"));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            arrivals.add(System.nanoTime());
+            if (throttled.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                respond(exchange, 503, "<Error><Code>SlowDown</Code><Message>Please reduce your request rate.</Message></Error>");
+                return;
+            }
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (auth == null || !auth.startsWith("AWS4-HMAC-SHA256 Credential=access/")
+                    || !sha256(body).equals(exchange.getRequestHeaders().getFirst("x-amz-content-sha256"))) {
+                respond(exchange, 403, "<Error><Code>AccessDenied</Code></Error>");
+                return;
+            }
+            String key = exchange.getRequestURI().getPath().substring("/archives/".length());
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            switch (exchange.getRequestMethod()) {
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        String id = "upload-" + uploads.size();
+                        uploads.put(id, new ConcurrentHashMap<>());
+                        respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>" + id + "</UploadId></InitiateMultipartUploadResult>");
+                    } else {
+                        Map<Integer, byte[]> parts = new TreeMap<>(uploads.remove(query.get("uploadId")));
+                        ByteArrayOutputStream object = new ByteArrayOutputStream();
+                        Matcher m = Pattern.compile("<PartNumber>(\\d+)</PartNumber>").matcher(new String(body, StandardCharsets.UTF_8));
+                        while (m.find()) {
+                            object.write(parts.get(Integer.parseInt(m.group(1))));
+                        }
+                        objects.put(key, object.toByteArray());
+                        respond(exchange, 200, "<CompleteMultipartUploadResult/>");
+                    }
+                }
+                case "PUT" -> {
+                    if (query.containsKey("partNumber")) {
+                        maxPartsInFlight.accumulateAndGet(partsInFlight.incrementAndGet(), Math::max);
+                        Thread.sleep(50);
+                        partsInFlight.decrementAndGet();
+                        uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), body);
+                        exchange.getResponseHeaders().set("ETag", "\"" + sha256(body) + "\"");
+                    } else {
+                        objects.put(key, body);
+                    }
+                    respond(exchange, 200, "");
+                }
+                case "HEAD" -> {
+                    byte[] object = objects.get(key);
+                    if (object != null) {
+                        exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.length));
+                    }
+                    exchange.sendResponseHeaders(object != null ? 200 : 404, -1);
+                }
+                case "GET" -> {
+                    Matcher range = Pattern.compile("bytes=(\\d+)-(\\d+)").matcher(exchange.getRequestHeaders().getFirst("Range"));
+                    range.matches();
+                    rangedGets.incrementAndGet();
+                    byte[] object = objects.get(key);
+                    int first = Integer.parseInt(range.group(1));
+                    int last = Math.min(object.length - 1, Integer.parseInt(range.group(2)));
+                    exchange.sendResponseHeaders(206, last - first + 1);
+                    exchange.getResponseBody().write(object, first, last - first + 1);
+                }
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> respond(exchange, 405, "");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> query = new TreeMap<>();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                query.put(eq < 0 ? pair : pair.substring(0, eq), eq < 0 ? "" : pair.substring(eq + 1));
+            }
+        }
+        return query;
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sample(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,46 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupSchedule;
+import com.dbbackup.model.RetentionPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduleRetentionTests {
+
+    @Test
+    void keepsNewestPerDayAndPerWeek() {
+        // Two backups a day for 21 days, starting Monday 2026-09-07
+        List<BackupSchedule.Archive> archives = new ArrayList<>();
+        Instant start = Instant.parse("2026-09-07T02:00:00Z");
+        for (int day = 0; day < 21; day++) {
+            archives.add(archive(start.plusSeconds(day * 86400L)));
+            archives.add(archive(start.plusSeconds(day * 86400L + 3600)));
+        }
+
+        RetentionPolicy policy = new RetentionPolicy();
+        policy.setKeepDaily(3);
+        policy.setKeepWeekly(3);
+        Set<BackupSchedule.Archive> kept = ScheduleService.selectKept(archives, policy, ZoneOffset.UTC);
+
+        // Days 20, 19, 18; the newest of the last week is day 20 again, then days 13 and 6
+        assertEquals(5, kept.size());
+        for (int day : new int[]{20, 19, 18, 13, 6}) {
+            assertTrue(kept.contains(archive(start.plusSeconds(day * 86400L + 3600))), "day " + day);
+        }
+    }
+
+    private static BackupSchedule.Archive archive(Instant createdAt) {
+        BackupSchedule.Archive archive = new BackupSchedule.Archive();
+        archive.setLocation("backups/db_" + createdAt.getEpochSecond() + ".zip");
+        archive.setCreatedAt(createdAt);
+        return archive;
+    }
+}
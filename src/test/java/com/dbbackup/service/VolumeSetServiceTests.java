@@ -0,0 +1,162 @@
+package com.dbbackup.service;
+
+import com.dbbackup.model.BackupRequest;
+import com.dbbackup.model.VolumeSet;
+import com.dbbackup.utility.ArchiveChecksums;
+import com.dbbackup.utility.CompressionCodec;
+import com.dbbackup.utility.CompressionSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VolumeSetServiceTests {
+
+    private static final int VOLUME_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private LocalBackupStorage storage;
+    private VolumeSetService volumeSetService;
+    private CompressionSettings compression;
+
+    @BeforeEach
+    void setUp() {
+        storage = new LocalBackupStorage(dir);
+        PipelineService pipelineService = new PipelineService(2, DataSize.ofKilobytes(64), 8,
+                Base64.getEncoder().encodeToString(new byte[32]));
+        volumeSetService = new VolumeSetService(pipelineService, DataSize.ofBytes(0), 2, 2, DataSize.ofMegabytes(2));
+        compression = new CompressionSettings(CompressionCodec.ZSTD, 0, pipelineService.pipeline());
+    }
+
+    @AfterEach
+    void tearDown() {
+        volumeSetService.shutdown();
+    }
+
+    @Test
+    void volumesReassembleIntoTheArchive() throws Exception {
+        byte[] data = sample(2 * VOLUME_SIZE + VOLUME_SIZE / 2);
+        BackupStorage.Upload index = storage.create("shop_20261017_020000", "");
+        VolumeSet set = write(index, data);
+
+        assertEquals(3, set.volumes().size());
+        assertEquals(data.length, set.size());
+        assertEquals("shop_20261017_020000.vol0002.zip", set.volumes().get(1).file());
+        assertEquals(VOLUME_SIZE, set.volumes().get(1).offset());
+        for (VolumeSet.Volume volume : set.volumes()) {
+            Path file = dir.resolve(volume.file());
+            assertEquals(volume.sha256(), ArchiveChecksums.readSidecar(file).orElseThrow());
+            assertEquals(volume.size(), Files.size(file));
+        }
+        try (ZipFile zip = new ZipFile(index.location())) {
+            assertTrue(zip.getEntry(VolumeSetService.INDEX_ENTRY) != null);
+        }
+
+        try (InputStream in = volumeSetService.open(storage, index.location(), set, false)) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void damagedVolumeFailsTheRead() throws Exception {
+        BackupStorage.Upload index = storage.create("damaged", "");
+        VolumeSet set = write(index, sample(3 * VOLUME_SIZE));
+
+        // A flipped byte in the zip's central directory: the payload itself still decodes
+        Path second = dir.resolve(set.volumes().get(1).file());
+        byte[] bytes = Files.readAllBytes(second);
+        bytes[bytes.length - 30] ^= 1;
+        Files.write(second, bytes);
+
+        try (InputStream in = volumeSetService.open(storage, index.location(), set, false)) {
+            IOException e = assertThrows(IOException.class, in::readAllBytes);
+            assertTrue(e.getMessage().contains("Volume 2 of 3"), e.getMessage());
+        }
+    }
+
+    @Test
+    void abortRemovesEveryVolume() throws Exception {
+        BackupStorage.Upload index = storage.create("aborted", "");
+        VolumeSetService.Writer writer = volumeSetService.create(storage, index, compression, VOLUME_SIZE);
+        writer.write(sample(2 * VOLUME_SIZE + 1));
+        writer.abort();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(), files.toList());
+        }
+    }
+
+    @Test
+    void requestVolumeSizeOverridesTheDefault() {
+        BackupRequest request = new BackupRequest();
+        assertEquals(0, volumeSetService.volumeSize(request));
+        request.setVolumeSize("512MB");
+        assertEquals(512L * 1024 * 1024, volumeSetService.volumeSize(request));
+    }
+
+    @Test
+    void refusesVolumesSmallerThanAnS3Part() {
+        BackupRequest request = new BackupRequest();
+        for (String size : new String[]{"1", "1KB", "4MB"}) {
+            request.setVolumeSize(size);
+            assertThrows(IllegalArgumentException.class, () -> volumeSetService.volumeSize(request), size);
+        }
+        request.setVolumeSize("5MB");
+        assertEquals(VolumeSetService.MIN_VOLUME_SIZE, volumeSetService.volumeSize(request));
+        request.setVolumeSize("0");
+        assertEquals(0, volumeSetService.volumeSize(request));
+
+        assertThrows(IllegalArgumentException.class, () -> new VolumeSetService(null, DataSize.ofKilobytes(1), 2, 2,
+                DataSize.ofMegabytes(2)));
+    }
+
+    @Test
+    void onlyAnExplicitVolumeSizeCountsAsRequested() {
+        VolumeSetService withDefault = new VolumeSetService(null, DataSize.ofGigabytes(1), 2, 2, DataSize.ofMegabytes(2));
+        try {
+            BackupRequest request = new BackupRequest();
+            assertEquals(1L << 30, withDefault.volumeSize(request));
+            assertEquals(0, withDefault.requestedVolumeSize(request));
+            request.setVolumeSize("64MB");
+            assertEquals(64L << 20, withDefault.requestedVolumeSize(request));
+        } finally {
+            withDefault.shutdown();
+        }
+    }
+
+    private VolumeSet write(BackupStorage.Upload index, byte[] data) throws IOException {
+        VolumeSetService.Writer writer = volumeSetService.create(storage, index, compression, VOLUME_SIZE);
+        for (int off = 0; off < data.length; off += 70_000) {
+            writer.write(data, off, Math.min(70_000, data.length - off));
+        }
+        writer.close();
+        return writer.writeIndex("0".repeat(64));
+    }
+
+    // Compressible, like a dump: random words from a small vocabulary
+    private static byte[] sample(int size) {
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (random.nextInt(8) == 0 ? ' ' : 'a' + random.nextInt(6));
+        }
+        return data;
+    }
+}
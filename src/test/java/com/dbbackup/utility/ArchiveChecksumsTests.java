@@ -0,0 +1,39 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArchiveChecksumsTests {
+
+    @Test
+    void inlineDigestMatchesMappedAndStreamedHashes(@TempDir Path dir) throws Exception {
+        // Just over two map windows, so the last window is a partial one
+        byte[] data = new byte[2 * 64 * 1024 * 1024 + 4321];
+        new Random(7).nextBytes(data);
+        Path archive = dir.resolve("db_20261017_000000.zip");
+
+        MessageDigest digest = ArchiveChecksums.newDigest();
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(archive), digest)) {
+            for (int off = 0; off < data.length; off += 1 << 20) {
+                out.write(data, off, Math.min(1 << 20, data.length - off));
+            }
+        }
+        String inline = ArchiveChecksums.hex(digest);
+        ArchiveChecksums.writeSidecar(archive, inline);
+
+        assertEquals(inline, ArchiveChecksums.sha256(archive));
+        assertEquals(inline, ArchiveChecksums.sha256(new ByteArrayInputStream(data)));
+        assertEquals(inline, ArchiveChecksums.readSidecar(archive).orElseThrow());
+        assertEquals(inline + "  db_20261017_000000.zip\n", Files.readString(ArchiveChecksums.sidecar(archive)));
+    }
+}
@@ -0,0 +1,43 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BinlogPositionSnifferTests {
+
+    @Test
+    void readsSourcePositionFromDumpHeader() throws IOException {
+        String dump = "-- MySQL dump 10.13\n" +
+                "-- CHANGE REPLICATION SOURCE TO SOURCE_LOG_FILE='binlog.000042', SOURCE_LOG_POS=1543;\n" +
+                "INSERT INTO t VALUES (1);\n";
+        assertEquals("binlog.000042:1543", sniff(dump));
+    }
+
+    @Test
+    void readsLegacyMasterPosition() throws IOException {
+        assertEquals("mysql-bin.000007:154",
+                sniff("-- CHANGE MASTER TO MASTER_LOG_FILE='mysql-bin.000007', MASTER_LOG_POS=154;\n"));
+    }
+
+    @Test
+    void noPositionWithoutSourceData() throws IOException {
+        assertNull(sniff("-- MySQL dump 10.13\nINSERT INTO t VALUES (1);\n"));
+    }
+
+    private static String sniff(String dump) throws IOException {
+        BinlogPositionSniffer sniffer = new BinlogPositionSniffer(
+                new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8)));
+        try (InputStream in = sniffer) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return sniffer.getPosition();
+    }
+}
@@ -0,0 +1,79 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompressionCodecTests {
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void roundTripsThroughZipEntry(CompressionCodec codec) throws Exception {
+        // A few MB so parallel gzip spans several blocks
+        byte[] data = sampleDump(5 * 1024 * 1024 + 123);
+        CompressionSettings settings = new CompressionSettings(codec, 0);
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(archive)) {
+            zos.setLevel(settings.zipLevel());
+            zos.putNextEntry(new ZipEntry(settings.entryName("db/db.sql")));
+            try (OutputStream entry = settings.wrap(zos)) {
+                entry.write(data);
+            }
+            zos.closeEntry();
+        }
+
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry = zis.getNextEntry();
+            assertEquals("db/db.sql", CompressionCodec.baseName(entry.getName()));
+            try (InputStream in = CompressionCodec.decode(zis)) {
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void parallelGzipWritesValidStreamForEmptyInput() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(out, 6).close();
+        try (InputStream in = CompressionCodec.decode(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(0, in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    void unknownCodecIsBadInput() {
+        assertEquals(CompressionCodec.ZSTD, CompressionCodec.fromName(" Zstd "));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodec.fromName("zstandard"));
+    }
+
+    @Test
+    void mongoArchiveNameKeepsItsSuffix() {
+        assertEquals("x/db.archive.gz", CompressionCodec.baseName("x/db.archive.gz"));
+        assertEquals("x/schema.sql", CompressionCodec.baseName("x/schema.sql.zst"));
+    }
+
+    private static byte[] sampleDump(int size) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) {
+            sb.append("INSERT INTO `t` VALUES (").append(random.nextInt(100000)).append(",'row ")
+                    .append(random.nextLong()).append("');\n");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTests {
+
+    @Test
+    void aBusyDiskBlocksOtherHostsButGivesBackTheirPermits() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(3, 2, 1);
+
+        assertTrue(limiter.tryAcquire("db1", "disk-a"));
+        assertFalse(limiter.tryAcquire("db2", "disk-a"));
+        // The refused attempt released its global and host permits again
+        assertTrue(limiter.tryAcquire("db2", "disk-b"));
+        assertTrue(limiter.tryAcquire("DB2", null));
+        assertFalse(limiter.tryAcquire("db3", null));
+
+        limiter.release("db1", "disk-a");
+        assertTrue(limiter.tryAcquire("db3", "disk-a"));
+    }
+}
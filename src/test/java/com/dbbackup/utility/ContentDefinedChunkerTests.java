@@ -0,0 +1,61 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentDefinedChunkerTests {
+
+    @Test
+    void insertionOnlyChangesNearbyChunks() throws Exception {
+        byte[] original = new byte[8 * 1024 * 1024];
+        new Random(7).nextBytes(original);
+
+        // Same data with a few bytes inserted near the start
+        byte[] edited = new byte[original.length + 3];
+        System.arraycopy(original, 0, edited, 0, 1000);
+        System.arraycopy(original, 1000, edited, 1003, original.length - 1000);
+
+        List<String> before = chunkHashes(original);
+        List<String> after = chunkHashes(edited);
+
+        Set<String> shared = new HashSet<>(before);
+        shared.retainAll(after);
+        assertTrue(shared.size() >= before.size() - 2, "only the chunks around the edit should change");
+    }
+
+    @Test
+    void chunksConcatenateBackToInput() throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        try (ContentDefinedChunker chunker = new ContentDefinedChunker((chunk, length) -> {
+            assertTrue(length <= ContentDefinedChunker.MAX_SIZE);
+            joined.write(chunk, 0, length);
+        })) {
+            chunker.write(data);
+        }
+        assertArrayEquals(data, joined.toByteArray());
+    }
+
+    private static List<String> chunkHashes(byte[] data) throws Exception {
+        List<String> hashes = new ArrayList<>();
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        try (ContentDefinedChunker chunker = new ContentDefinedChunker(
+                (chunk, length) -> hashes.add(Arrays.toString(sha256.digest(Arrays.copyOf(chunk, length)))))) {
+            chunker.write(data);
+        }
+        return hashes;
+    }
+}
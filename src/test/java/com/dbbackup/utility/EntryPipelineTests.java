@@ -0,0 +1,118 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntryPipelineTests {
+
+    private static final byte[] KEY = new byte[32];
+
+    @ParameterizedTest
+    @EnumSource(CompressionCodec.class)
+    void stagedAndEncryptedEntryRoundTrips(CompressionCodec codec) throws Exception {
+        // Several stage buffers and encryption segments, ending mid-buffer
+        byte[] data = sample(3 * 1024 * 1024 + 77);
+        EntryPipeline pipeline = new EntryPipeline(new BufferPool(256 * 1024, 8), 2, KEY);
+        CompressionSettings settings = new CompressionSettings(codec, 0, pipeline);
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(pipeline.stage("test-write", archive))) {
+            zos.setLevel(settings.zipLevel());
+            zos.putNextEntry(new ZipEntry(settings.entryName("db/db.sql")));
+            try (OutputStream entry = settings.wrap(zos)) {
+                for (int off = 0; off < data.length; off += 1000) {
+                    entry.write(data, off, Math.min(1000, data.length - off));
+                }
+            }
+            zos.closeEntry();
+        }
+
+        try (ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            zis.getNextEntry();
+            try (InputStream in = pipeline.decode(zis)) {
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    void encryptedEntriesNeedTheRightKey() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream entry = new CompressionSettings(CompressionCodec.STORE, 0, new EntryPipeline(null, 0, KEY)).wrap(out)) {
+            entry.write(sample(100_000));
+        }
+        byte[] sealed = out.toByteArray();
+
+        IOException noKey = assertThrows(IOException.class, () -> EntryPipeline.DIRECT.decode(new ByteArrayInputStream(sealed)));
+        assertTrue(noKey.getMessage().contains("quickdump.encryption.key"));
+
+        byte[] otherKey = Arrays.copyOf(KEY, KEY.length);
+        otherKey[0] = 1;
+        assertThrows(IOException.class, () -> new EntryPipeline(null, 0, otherKey).decode(new ByteArrayInputStream(sealed)).readAllBytes());
+
+        byte[] truncated = Arrays.copyOf(sealed, sealed.length - 10);
+        assertThrows(IOException.class, () -> new EntryPipeline(null, 0, KEY).decode(new ByteArrayInputStream(truncated)).readAllBytes());
+
+        byte[] flipped = sealed.clone();
+        flipped[sealed.length / 2] ^= 1;
+        assertThrows(IOException.class, () -> new EntryPipeline(null, 0, KEY).decode(new ByteArrayInputStream(flipped)).readAllBytes());
+    }
+
+    @Test
+    void plainEntriesAreRefusedOnceAKeyIsSet() throws Exception {
+        byte[] plain = sample(10_000);
+        EntryPipeline keyed = new EntryPipeline(null, 0, KEY);
+
+        IOException downgrade = assertThrows(IOException.class, () -> keyed.decode(new ByteArrayInputStream(plain)));
+        assertTrue(downgrade.getMessage().contains("allowUnencrypted"));
+        try (InputStream in = keyed.decode(new ByteArrayInputStream(plain), true)) {
+            assertArrayEquals(plain, in.readAllBytes());
+        }
+        // Without a key there is nothing to downgrade from
+        try (InputStream in = EntryPipeline.DIRECT.decode(new ByteArrayInputStream(plain))) {
+            assertArrayEquals(plain, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void downstreamFailureReachesTheWriter() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        IOException e = assertThrows(IOException.class, () -> {
+            try (OutputStream stage = new PipelineStage("test-stage", broken, new BufferPool(1024, 4), 2)) {
+                stage.write(new byte[64 * 1024]);
+            }
+        });
+        assertTrue(e.getMessage().contains("disk full"));
+    }
+
+    private static byte[] sample(int size) {
+        byte[] data = new byte[size];
+        Random random = new Random(42);
+        // Compressible, but not trivially
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,51 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileRangeSenderTests {
+
+    private static final String ETAG = "\"abc\"";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesRangesAndConditionalRequests() throws IOException {
+        Path file = dir.resolve("shop.zip");
+        Files.writeString(file, "0123456789");
+
+        MockHttpServletResponse full = send(file, null, null);
+        assertEquals(200, full.getStatus());
+        assertEquals("0123456789", full.getContentAsString());
+        assertEquals(10, full.getContentLengthLong());
+
+        MockHttpServletResponse middle = send(file, "Range", "bytes=2-5");
+        assertEquals(206, middle.getStatus());
+        assertEquals("2345", middle.getContentAsString(StandardCharsets.UTF_8));
+        assertEquals("bytes 2-5/10", middle.getHeader("Content-Range"));
+
+        assertEquals("789", send(file, "Range", "bytes=-3").getContentAsString());
+        assertEquals(416, send(file, "Range", "bytes=10-").getStatus());
+        assertEquals(304, send(file, "If-None-Match", "\"other\", " + ETAG).getStatus());
+    }
+
+    private static MockHttpServletResponse send(Path file, String header, String value) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/backup/files/shop.zip");
+        if (header != null) {
+            request.addHeader(header, value);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FileRangeSender.send(file, ETAG, "application/zip", "shop.zip", request, response);
+        return response;
+    }
+}
@@ -0,0 +1,72 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MySqlDumpTableFilterTests {
+
+    private static final String LONG_VALUES = "(1,'" + "x".repeat(2000) + "')";
+
+    private static final String DUMP = """
+            -- MySQL dump 10.13
+            /*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+            --
+            -- Table structure for table `orders`
+            --
+            DROP TABLE IF EXISTS `orders`;
+            CREATE TABLE `orders` (id int);
+            --
+            -- Dumping data for table `orders`
+            --
+            LOCK TABLES `orders` WRITE;
+            /*!40000 ALTER TABLE `orders` DISABLE KEYS */;
+            INSERT INTO `orders` VALUES %s;
+            UNLOCK TABLES;
+            --
+            -- Table structure for table `users`
+            --
+            CREATE TABLE `users` (id int);
+            --
+            -- Dumping data for table `users`
+            --
+            INSERT INTO `users` VALUES %s;
+            /*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
+            -- Dump completed on 2026-10-17
+            """.formatted(LONG_VALUES, LONG_VALUES);
+
+    // Chunk sizes that split lines, markers and the long INSERTs at every kind of boundary
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 512, 100_000})
+    void keepsOnlySelectedTable(int chunkSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] input = DUMP.getBytes(StandardCharsets.UTF_8);
+        try (MySqlDumpTableFilter filter = new MySqlDumpTableFilter(out, Set.of("users"))) {
+            for (int off = 0; off < input.length; off += chunkSize) {
+                filter.write(input, off, Math.min(chunkSize, input.length - off));
+            }
+        }
+
+        String expected = """
+                -- MySQL dump 10.13
+                /*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;
+                --
+                -- Table structure for table `users`
+                --
+                CREATE TABLE `users` (id int);
+                --
+                -- Dumping data for table `users`
+                --
+                INSERT INTO `users` VALUES %s;
+                /*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
+                -- Dump completed on 2026-10-17
+                """.formatted(LONG_VALUES);
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+    }
+}
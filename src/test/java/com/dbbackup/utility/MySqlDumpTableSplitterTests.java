@@ -0,0 +1,67 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MySqlDumpTableSplitterTests {
+
+    private static final String LONG_VALUES = "(1,'" + "x".repeat(2000) + "')";
+
+    private static final String HEADER = """
+            -- MySQL dump 10.13
+            --
+            -- Host: db    Database: shop
+            /*!40101 SET NAMES utf8mb4 */;
+
+            """;
+
+    private static final String ORDERS = """
+            --
+            -- Dumping data for table `orders`
+            --
+
+            LOCK TABLES `orders` WRITE;
+            INSERT INTO `orders` VALUES %s;
+            UNLOCK TABLES;
+
+            """.formatted(LONG_VALUES);
+
+    private static final String USERS = """
+            --
+            -- Dumping data for table `us``ers`
+            --
+
+            INSERT INTO `us``ers` VALUES %s;
+            -- 1 row
+            /*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;
+
+            -- Dump completed on 2026-10-17
+            """.formatted(LONG_VALUES);
+
+    // Chunk sizes that split lines, markers and the long INSERTs at every kind of boundary
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 512, 100_000})
+    void givesEachTableItsOwnScript(int chunkSize) throws IOException {
+        Map<String, ByteArrayOutputStream> scripts = new LinkedHashMap<>();
+        byte[] input = (HEADER + ORDERS + USERS).getBytes(StandardCharsets.UTF_8);
+        try (MySqlDumpTableSplitter splitter = new MySqlDumpTableSplitter(
+                table -> scripts.computeIfAbsent(table, t -> new ByteArrayOutputStream()))) {
+            for (int off = 0; off < input.length; off += chunkSize) {
+                splitter.write(input, off, Math.min(chunkSize, input.length - off));
+            }
+        }
+
+        assertEquals(List.of("orders", "us`ers"), List.copyOf(scripts.keySet()));
+        assertEquals(HEADER + ORDERS, scripts.get("orders").toString(StandardCharsets.UTF_8));
+        assertEquals(HEADER + USERS, scripts.get("us`ers").toString(StandardCharsets.UTF_8));
+    }
+}
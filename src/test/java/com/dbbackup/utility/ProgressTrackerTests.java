@@ -0,0 +1,106 @@
+package com.dbbackup.utility;
+
+import com.dbbackup.model.ProgressSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgressTrackerTests {
+
+    @Test
+    void countsTablesRowsAndBytesOfADump() throws IOException {
+        String dump = "-- Table structure for table `orders`\n" +
+                "CREATE TABLE `orders` (`id` int);\n" +
+                "-- Dumping data for table `orders`\n" +
+                "INSERT INTO `orders` VALUES (1,'a'),(2,'b'),(3,'c');\n" +
+                "INSERT INTO `orders` VALUES (4,'d');\n" +
+                "-- Table structure for table `users`\n" +
+                "-- Dumping data for table `users`\n" +
+                "INSERT INTO `users` VALUES (1),(2);\n";
+        byte[] bytes = dump.getBytes(StandardCharsets.UTF_8);
+
+        ProgressTracker progress = new ProgressTracker();
+        try (InputStream in = new SqlDumpTableScanner(progress.countDump(new ByteArrayInputStream(bytes)), progress)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        ProgressSnapshot snapshot = progress.snapshot();
+        assertEquals(bytes.length, snapshot.dumpBytes());
+        assertEquals(6, snapshot.rows());
+        assertEquals(2, snapshot.tablesDone());
+        assertEquals("users", snapshot.currentTable());
+    }
+
+    @Test
+    void readsFinishedCollectionsFromMongoToolOutput() {
+        ProgressTracker progress = new ProgressTracker();
+        progress.log("2026-10-17T10:00:00.000+0000\twriting shop.orders to archive on stdout");
+        progress.log("2026-10-17T10:00:02.000+0000\tdone dumping shop.orders (1200 documents)");
+        progress.log("2026-10-17T10:00:03.000+0000\tfinished restoring shop.users (35 documents, 0 failures)");
+
+        ProgressSnapshot snapshot = progress.snapshot();
+        assertEquals(1235, snapshot.rows());
+        assertEquals(2, snapshot.tablesDone());
+        assertEquals(3, progress.logsSince(0).size());
+    }
+
+    @Test
+    void ringBufferKeepsOnlyTheLastLines() {
+        LogRingBuffer buffer = new LogRingBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.add("line " + i);
+        }
+
+        List<LogRingBuffer.Line> lines = buffer.since(0);
+        assertEquals(List.of("line 2", "line 3", "line 4"), lines.stream().map(LogRingBuffer.Line::text).toList());
+        assertEquals(2, lines.get(0).seq());
+        assertEquals(List.of(new LogRingBuffer.Line(4, "line 4")), buffer.since(4));
+        assertEquals(2, buffer.dropped());
+        assertEquals("... 2 earlier lines dropped\nline 2\nline 3\nline 4\n", buffer.text());
+    }
+
+    @Test
+    void nestedStagesOnlyCountTheirOwnTime() throws IOException {
+        ProgressTracker progress = new ProgressTracker();
+        OutputStream disk = progress.timeOutput(ProgressTracker.WRITE, new SlowOutput(OutputStream.nullOutputStream(), 200));
+        try (OutputStream out = progress.timeOutput(ProgressTracker.COMPRESS, new SlowOutput(disk, 20))) {
+            out.write(new byte[16]);
+        }
+
+        Map<String, Long> stages = progress.getStageNanos();
+        long compressMillis = TimeUnit.NANOSECONDS.toMillis(stages.get(ProgressTracker.COMPRESS));
+        long writeMillis = TimeUnit.NANOSECONDS.toMillis(stages.get(ProgressTracker.WRITE));
+        assertTrue(writeMillis >= 200, "write took " + writeMillis + " ms");
+        assertTrue(compressMillis >= 20 && compressMillis < 200, "compress took " + compressMillis + " ms");
+    }
+
+    private static class SlowOutput extends FilterOutputStream {
+        private final long delayMillis;
+
+        SlowOutput(OutputStream out, long delayMillis) {
+            super(out);
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlInsertWriterTests {
+
+    private static final SqlInsertWriter.ValueKind NUMBER = SqlInsertWriter.ValueKind.NUMBER;
+    private static final SqlInsertWriter.ValueKind STRING = SqlInsertWriter.ValueKind.STRING;
+    private static final SqlInsertWriter.ValueKind HEX = SqlInsertWriter.ValueKind.HEX;
+
+    @Test
+    void escapesValuesAndSplitsStatementsAtTheSizeLimit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SqlInsertWriter writer = new SqlInsertWriter(out, "or`ders", List.of("id", "note", "raw"), new byte[16], 110);
+
+        row(writer, "1", "it's \"q\" \\ a\nb\r\0\u001a", new byte[]{0x00, (byte) 0xff});
+        row(writer, "2", null, new byte[0]);
+        // Would take the statement past 110 bytes, so it starts the next one
+        row(writer, "3", "é", null);
+        writer.finish();
+
+        assertEquals("""
+                INSERT INTO `or``ders` (`id`,`note`,`raw`) VALUES (1,'it\\'s \\"q\\" \\\\ a\\nb\\r\\0\\Z',0x00ff),(2,NULL,'');
+                INSERT INTO `or``ders` (`id`,`note`,`raw`) VALUES (3,'é',NULL);
+                """, out.toString(StandardCharsets.UTF_8));
+        assertEquals(3, writer.getRows());
+    }
+
+    private static void row(SqlInsertWriter writer, String id, String note, byte[] raw) throws IOException {
+        writer.startRow();
+        writer.add(NUMBER, id.getBytes(StandardCharsets.US_ASCII));
+        writer.add(STRING, note == null ? null : note.getBytes(StandardCharsets.UTF_8));
+        writer.add(HEX, raw);
+        writer.endRow();
+    }
+}
@@ -0,0 +1,66 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlLoadDataWriterTests {
+
+    @Test
+    void writesTheRowsLoadDataReads() throws IOException {
+        SqlLoadDataWriter rows = new SqlLoadDataWriter();
+        assertTrue(rows.add("INSERT INTO `t` VALUES (1,'it''s\\'\\\"',NULL,-2.5e3),(2,'a\\tb\\nc\\\\d\\%',0x0A5C0941,X'42')"));
+        assertTrue(rows.add("INSERT INTO `t` VALUES (3,'tab\there é 😀','',1.)"));
+
+        assertEquals(3, rows.getRows());
+        assertEquals("1\tit's'\"\t\\N\t-2.5e3\n"
+                        + "2\ta\\tb\\nc\\\\d\\\\%\t\\n\\\\\\tA\tB\n"
+                        + "3\ttab\\there é 😀\t\t1.\n",
+                new String(rows.open().readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals("LOAD DATA LOCAL INFILE 'quickdump-rows' INTO TABLE `t` CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'", rows.loadStatement());
+        assertFalse(rows.toleratesDuplicates());
+    }
+
+    @Test
+    void keepsTheTargetColumnsAndDuplicateHandling() {
+        SqlLoadDataWriter rows = new SqlLoadDataWriter();
+        assertTrue(rows.add("REPLACE INTO s.`t` (`a`, `b`) VALUES (1,2)"));
+        // Another target, or the same one with other columns, needs a statement of its own
+        assertFalse(rows.add("REPLACE INTO s.`u` (`a`, `b`) VALUES (1,2)"));
+        assertFalse(rows.add("REPLACE INTO s.`t` (`a`) VALUES (1)"));
+        assertFalse(rows.add("INSERT INTO s.`t` (`a`, `b`) VALUES (1,2)"));
+
+        assertEquals(1, rows.getRows());
+        assertTrue(rows.toleratesDuplicates());
+        assertTrue(rows.loadStatement().startsWith("LOAD DATA LOCAL INFILE 'quickdump-rows' REPLACE INTO TABLE s.`t` "));
+        assertTrue(rows.loadStatement().endsWith(" (`a`, `b`)"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "INSERT INTO t VALUES (1,b'101')",
+            "INSERT INTO t VALUES (1,_binary 'x')",
+            "INSERT INTO t VALUES (1,\"x\")",
+            "INSERT INTO t VALUES (1,NOW())",
+            "INSERT INTO t VALUES (1,2) ON DUPLICATE KEY UPDATE b = 2",
+            "INSERT INTO t SELECT * FROM u",
+            "INSERT INTO t SET a = 1",
+            "INSERT INTO t VALUES (1,'open"})
+    void refusesWhatIsNotPlainLiterals(String insert) throws IOException {
+        SqlLoadDataWriter rows = new SqlLoadDataWriter();
+        assertTrue(rows.add("INSERT INTO t VALUES (0,0)"));
+
+        assertFalse(rows.add(insert));
+        // Nothing of the refused statement was kept
+        assertEquals(1, rows.getRows());
+        assertEquals("0\t0\n", new String(rows.open().readAllBytes(), StandardCharsets.UTF_8));
+    }
+}
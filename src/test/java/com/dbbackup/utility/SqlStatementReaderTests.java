@@ -0,0 +1,58 @@
+package com.dbbackup.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqlStatementReaderTests {
+
+    @Test
+    void splitsLikeTheMysqlClient() throws IOException {
+        String script = """
+                -- MySQL dump
+                /*!40101 SET NAMES utf8mb4 */;
+                # client comment
+                INSERT INTO `t` VALUES (1,'a;b','it''s',"x\\";y"),(2,'c\\\\',NULL); -- trailing
+                CREATE TABLE `x;y` (
+                  `id` int /* ; */ NOT NULL
+                );
+                DELIMITER ;;
+                CREATE TRIGGER tr AFTER INSERT ON t FOR EACH ROW BEGIN INSERT INTO a VALUES (1); END ;;
+                DELIMITER ;
+                SELECT 'é'""";
+
+        assertEquals(List.of(
+                "/*!40101 SET NAMES utf8mb4 */",
+                "INSERT INTO `t` VALUES (1,'a;b','it''s',\"x\\\";y\"),(2,'c\\\\',NULL)",
+                "CREATE TABLE `x;y` (\n  `id` int /* ; */ NOT NULL\n)",
+                "CREATE TRIGGER tr AFTER INSERT ON t FOR EACH ROW BEGIN INSERT INTO a VALUES (1); END",
+                "SELECT 'é'"), read(script.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void rewritesLiteralsThatAreNotUtf8AsHex() throws IOException {
+        ByteArrayOutputStream script = new ByteArrayOutputStream();
+        script.writeBytes("INSERT INTO b VALUES ('".getBytes(StandardCharsets.US_ASCII));
+        script.writeBytes(new byte[]{(byte) 0xff, '\\', '0', '\'', '\'', '\\', 'n', (byte) 0xc3, (byte) 0xa9});
+        script.writeBytes("','é');".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(List.of("INSERT INTO b VALUES (X'ff00270ac3a9','é')"), read(script.toByteArray()));
+    }
+
+    private static List<String> read(byte[] script) throws IOException {
+        SqlStatementReader reader = new SqlStatementReader(new ByteArrayInputStream(script));
+        List<String> statements = new ArrayList<>();
+        String statement;
+        while ((statement = reader.next()) != null) {
+            statements.add(statement);
+        }
+        return statements;
+    }
+}